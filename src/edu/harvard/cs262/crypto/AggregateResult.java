@@ -0,0 +1,45 @@
+package edu.harvard.cs262.crypto;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The result of a private aggregate (see EVoteServer.aggregate): the sum of each value over
+ * every client that contributed, without any client's own values.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class AggregateResult implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** what was aggregated, and the aggregate's id (the same as its ballot's) */
+	public final String name;
+	public final String id;
+
+	/** the number of clients whose values were added up */
+	public final int contributors;
+
+	/** the sum of each value */
+	public final long[] sums;
+
+	public AggregateResult(String name, String id, int contributors, long[] sums) {
+		this.name = name;
+		this.id = id;
+		this.contributors = contributors;
+		this.sums = sums;
+	}
+
+	/** @return the average of each value over the contributors */
+	public double[] getAverages() {
+		double[] averages = new double[sums.length];
+		for (int i = 0; i < sums.length; i++) {
+			averages[i] = (double) sums[i] / contributors;
+		}
+		return averages;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s \"%s\" from %d clients: %s", id, name, contributors, Arrays.toString(sums));
+	}
+}
@@ -0,0 +1,84 @@
+package edu.harvard.cs262.crypto;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.harvard.cs262.crypto.cipher.MerkleTree;
+
+/**
+ * The archived outcome of a ballot a server ran: what was voted on and by how many voters,
+ * the tally, how long each phase took, and the root of the ballot's bulletin board, which
+ * commits to the whole transcript (see BulletinRoot). Servers keep one per ballot and can be
+ * queried for them (see CryptoServer.getBallotRecord and findBallotRecords).
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class BallotRecord implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public String ballotId;
+
+	/** what was voted on */
+	public String ballot;
+
+	/** the roster's size and hash (see EVote) */
+	public int numVoters;
+	public byte[] rosterHash;
+
+	/** the number of voters needed to decrypt (0 for all of them) */
+	public int threshold;
+
+	/** the cipher the votes were tallied with (ElGamal or Paillier), or "aggregate" for a private aggregate */
+	public String tally;
+
+	/** the votes in favor and against, both -1 if the ballot was aborted or is an aggregate */
+	public int yes;
+	public int no;
+
+	/** for an aggregate, the number of clients whose values were added up and the sums (null if aborted) */
+	public int contributors;
+	public long[] sums;
+
+	/** when the ballot started and ended (milliseconds since the epoch) */
+	public long startedAt;
+	public long endedAt;
+
+	/** phase name => milliseconds from the phase opening to its completion, in phase order */
+	public Map<String, Long> phaseMillis;
+
+	/** the size and root of the ballot's bulletin board when it ended */
+	public int transcriptSize;
+	public byte[] transcriptRoot;
+
+	public BallotRecord() {
+		phaseMillis = new LinkedHashMap<String, Long>();
+		yes = -1;
+		no = -1;
+	}
+
+	/** @return true if the ballot was aborted before it was tallied */
+	public boolean isAborted() {
+		return yes < 0 && sums == null;
+	}
+
+	/**
+	 * @return the result in the form initiateEVote returns it, (# yes, # no), or "" if aborted
+	 * 		(for an aggregate, the sums)
+	 */
+	public String getResult() {
+		if (isAborted()) {
+			return "";
+		}
+		return (sums != null) ? Arrays.toString(sums) : String.format("(%d,%d)", yes, no);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s %s \"%s\" %s with %d voters in %dms, transcript %s", ballotId, tally, ballot,
+				isAborted() ? "aborted" : (sums != null) ? contributors + " clients summed to " + getResult() : getResult(), 
+				numVoters, endedAt - startedAt,
+				(transcriptRoot == null) ? "-" : MerkleTree.toHex(transcriptRoot));
+	}
+}
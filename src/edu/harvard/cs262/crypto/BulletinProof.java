@@ -0,0 +1,86 @@
+package edu.harvard.cs262.crypto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.harvard.cs262.crypto.cipher.MerkleTree;
+
+/**
+ * One message on a ballot's bulletin board, together with the proof that it is the
+ * index-th message under the board's root when the board held treeSize messages.
+ *
+ * A board message keeps what every voter may see: the tag, the plaintext of unencrypted
+ * messages, and the cipher text (c1, c2) of encrypted votes.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class BulletinProof implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public String ballotId;
+	public int index;
+	public int treeSize;
+
+	/** the voter who posted the message */
+	public String author;
+	public CryptoMessage message;
+
+	/** sibling hashes from the message up to the root */
+	public List<byte[]> path;
+
+	public BulletinProof(String ballotId, int index, int treeSize, String author, CryptoMessage message,
+			List<byte[]> path) {
+		this.ballotId = ballotId;
+		this.index = index;
+		this.treeSize = treeSize;
+		this.author = author;
+		this.message = message;
+		this.path = path;
+	}
+
+	/**
+	 * Checks the message is on the board under a root.
+	 *
+	 * @param root
+	 * 		a root of the same ballot's board, with treeSize messages
+	 * @return true if the proof is valid
+	 */
+	public boolean verify(BulletinRoot root) {
+		return root.ballotId.equals(ballotId) && root.size == treeSize &&
+				MerkleTree.verify(entryData(author, message), index, treeSize, path, root.root);
+	}
+
+	/**
+	 * The bytes hashed into the board for a message.
+	 *
+	 * @param author
+	 * 		the voter who posted the message
+	 * @param m
+	 * 		the message as it appears on the board
+	 * @return the encoded message
+	 */
+	public static byte[] entryData(String author, CryptoMessage m) {
+		Object state = m.getEncryptionState();
+		String c1 = (state instanceof BigInteger || state instanceof EVoteCiphertext) ? state.toString() : "";
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			for (String field : Arrays.asList(author, m.getTag(), m.getPlainText(), m.getCipherText(), c1)) {
+				byte[] b = field.getBytes(Charset.forName("UTF-8"));
+				out.writeInt(b.length);
+				out.write(b);
+			}
+		} catch (IOException e) {
+			// writing to memory doesn't fail
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,59 @@
+package edu.harvard.cs262.crypto;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+
+import edu.harvard.cs262.crypto.cipher.MerkleTree;
+import edu.harvard.cs262.crypto.cipher.SchnorrSignature;
+
+/**
+ * A signed root of a ballot's bulletin board. The root commits to the first "size" messages
+ * the voters posted, so anyone holding it can check any one of those messages with a
+ * BulletinProof instead of downloading the whole transcript.
+ *
+ * The server signs each root with its board key. Voters get that key with the EVote;
+ * auditors should check that every root they see for a ballot is signed with the same key.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class BulletinRoot implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public String ballotId;
+
+	/** the evote phase that had just finished when the root was signed */
+	public String phase;
+
+	/** the number of messages on the board */
+	public int size;
+
+	public byte[] root;
+
+	/** the server's board key and its Schnorr signature (e, s) on the root */
+	public BigInteger publicKey;
+	public BigInteger[] signature;
+
+	public BulletinRoot(String ballotId, String phase, int size, byte[] root) {
+		this.ballotId = ballotId;
+		this.phase = phase;
+		this.size = size;
+		this.root = root;
+	}
+
+	/** The bytes that are signed */
+	public byte[] signedData() {
+		String data = String.format("%s|%s|%d|%s", ballotId, phase, size, MerkleTree.toHex(root));
+		return data.getBytes(Charset.forName("UTF-8"));
+	}
+
+	/** @return true if the root is signed by its publicKey */
+	public boolean verify() {
+		return SchnorrSignature.verify(signedData(), signature, publicKey, EVote.P, EVote.Q, EVote.G);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d messages after %s, root %s", size, phase, MerkleTree.toHex(root));
+	}
+}
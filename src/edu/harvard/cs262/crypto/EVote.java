@@ -2,15 +2,29 @@ package edu.harvard.cs262.crypto;
 
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
+import edu.harvard.cs262.crypto.cipher.MerkleTree;
+import edu.harvard.cs262.crypto.cipher.PackedEncoding;
 import edu.harvard.cs262.crypto.exception.EVoteInvalidResult;
 
 /**
  * An EVote is an object that represents an e-voting scenario.
  * It includes the voters and ballots involved.
  * Votes can only have a binary result (pass or fail).
+ * 
+ * The server keeps the full set of voters, but voters are sent a compact copy that only
+ * describes the roster (its version, size and hash), so starting a ballot doesn't cost
+ * every voter the names of all the others. A voter that needs the names fetches them from
+ * the server (CryptoServer.getRoster) and checks them against the hash with setRoster.
  *
  * @author Holly Anderson, Joshua Lee, and Tracy Lu
  */
@@ -18,16 +32,85 @@ public class EVote implements Serializable {
 	private static final long serialVersionUID = 1L;
 	public final int BITS = 32;
 	
-	/** The list of voters */
+	/** The group every evote uses (see p, q and g below) */
+	public static final BigInteger P = BigInteger.valueOf(2147483579L);
+	public static final BigInteger Q = BigInteger.valueOf(1073741789L);
+	public static final BigInteger G = BigInteger.valueOf(4L);
+	
+	/**
+	 * The modulus of every Paillier evote and aggregate (see paillierN below): the RSA-2048
+	 * challenge number, whose factors were destroyed when it was made and have never been found.
+	 * The factors would decrypt anything, but nobody knows them, so a tally can only be decrypted
+	 * with every voter's part of the key (see PaillierCipher).
+	 */
+	public static final BigInteger PAILLIER_N = new BigInteger(
+			"2519590847565789349402718324004839857142928212620403202777713783604366202070759555626401852588078440" +
+			"6918290641249515082189298559149176184502808489120072844992687392807287776735971418347270261896375014" +
+			"9718246911650776133798590957000973304597488084284017974291006424586918171951187461215151726546322822" +
+			"1686998754918242243363725908514186546204357679842338718477444792073993423658482382428119816381501067" +
+			"4810451660377306056201619676256133844143603833904414952634432190114657544454178424020924616515723350" +
+			"7787077498171257724679629263863563732899121548314381678998850404453640235273819513786365643912120103" +
+			"97122822120720357");
+	
+	/** The size of PAILLIER_N */
+	public static final int PAILLIER_BITS = 2048;
+	
+	/** The list of voters (null in the compact copy sent to voters, see compact) */
 	public Set<String> voters;
 	
+	/** The roster's version (the same for ballots with the same voters), size and hash */
+	public long rosterVersion;
+	public int numVoters;
+	public byte[] rosterHash;
+	
 	/** A string description of what the vote is regarding */
 	public String ballot;
 	public UUID id;
 
-	/** Public encryption parameters (for now we assume we use an e-voting scheme that uses ElGamal) */
+	/**
+	 * Public encryption parameters (for now we assume we use an e-voting scheme that uses ElGamal).
+	 * p = 2q + 1 is a safe prime and g generates the subgroup of prime order q, so secret keys
+	 * live in Z_q and can be shared with polynomials for threshold decryption.
+	 */
 	public BigInteger p;
 	public BigInteger g;
+	public BigInteger q;
+	
+	/**
+	 * The number of voters whose decryption shares are needed to decrypt the tally.
+	 * 0 means every voter must take part (no threshold key generation).
+	 */
+	public int threshold;
+	
+	/**
+	 * The fewest voters that must remain for the ballot to complete: voters who drop out are
+	 * left out as long as this many remain. 0 means the threshold for a threshold evote, and
+	 * every voter otherwise. Without a threshold, voters can only be left out before their key
+	 * is part of the election key, since every key in it is needed to decrypt the tally.
+	 */
+	public int quorum;
+	
+	/** The key the server signs the ballot's bulletin board with (see BulletinRoot) */
+	public BigInteger boardKey;
+	
+	/**
+	 * The public modulus N of a Paillier evote (always PAILLIER_N), or null if the votes are
+	 * tallied with ElGamal. Paillier votes are added up directly, so the tally decrypts without
+	 * a search, and the key is made jointly by the voters, so only all of them together can
+	 * decrypt (see PaillierCipher).
+	 */
+	public BigInteger paillierN;
+	
+	/**
+	 * For a private aggregate rather than a yes/no vote (see EVoteServer.aggregate): the number
+	 * of values each client contributes (0 for a vote) and their size in bits. The values are
+	 * packed into as few Paillier ciphertexts as they fit in (see getEncoding).
+	 */
+	public int aggregateLength;
+	public int valueBits;
+	
+	// voters in a fixed order, so every party agrees on each voter's share index
+	private transient List<String> roster;
 	
 	/**
 	 * Constructor
@@ -37,12 +120,157 @@ public class EVote implements Serializable {
 	 * 		The list of clients voting
 	 */
 	public EVote(String ballot, Set<String> voters) {
+		this(ballot, voters, 0);
+	}
+	
+	/**
+	 * Constructor for a threshold evote
+	 * @param ballot 
+	 * 		The item which is being voted on
+	 * @param voters 
+	 * 		The list of clients voting
+	 * @param threshold
+	 * 		The number of voters needed to decrypt the result (0 for all of them)
+	 */
+	public EVote(String ballot, Set<String> voters, int threshold) {
+		this(ballot, voters, threshold, 0);
+	}
+	
+	/**
+	 * Constructor for an evote that carries on when voters drop out
+	 * @param ballot 
+	 * 		The item which is being voted on
+	 * @param voters 
+	 * 		The list of clients voting
+	 * @param threshold
+	 * 		The number of voters needed to decrypt the result (0 for all of them)
+	 * @param quorum
+	 * 		The fewest voters that must remain for the ballot to complete (0 for the default, see quorum)
+	 */
+	public EVote(String ballot, Set<String> voters, int threshold, int quorum) {
 		this.ballot = ballot;
 		this.voters = voters;
+		this.threshold = threshold;
+		this.quorum = quorum;
+		numVoters = voters.size();
+		rosterHash = rosterHash(getRoster());
 		
 		id = UUID.randomUUID();
-		p = BigInteger.valueOf(31123L);
-		g = BigInteger.valueOf(2341L);
+		p = P;
+		q = Q;
+		g = G;
+	}
+	
+	/**
+	 * Copy constructor (e.g. for a sub-server that hands the ballot on to its own voters
+	 * with its own board key)
+	 * @param other
+	 * 		The evote to copy
+	 */
+	public EVote(EVote other) {
+		ballot = other.ballot;
+		voters = other.voters;
+		rosterVersion = other.rosterVersion;
+		numVoters = other.numVoters;
+		rosterHash = other.rosterHash;
+		threshold = other.threshold;
+		quorum = other.quorum;
+		id = other.id;
+		p = other.p;
+		q = other.q;
+		g = other.g;
+		boardKey = other.boardKey;
+		paillierN = other.paillierN;
+		aggregateLength = other.aggregateLength;
+		valueBits = other.valueBits;
+	}
+	
+	/** @return a copy to send to the voters, without the names of the voters */
+	public EVote compact() {
+		EVote copy = new EVote(this);
+		copy.voters = null;
+		return copy;
+	}
+	
+	/** @return true if the tally can be decrypted by fewer than all of the voters */
+	public boolean isThreshold() {
+		return threshold > 0 && threshold < numVoters;
+	}
+	
+	/** @return true if the votes are tallied with Paillier rather than ElGamal */
+	public boolean isPaillier() {
+		return paillierN != null;
+	}
+	
+	/** @return true if this is a private aggregate of the voters' values rather than a vote */
+	public boolean isAggregate() {
+		return aggregateLength > 0;
+	}
+	
+	/** @return how an aggregate's values are packed into Paillier plaintexts, with room for every voter's sum */
+	public PackedEncoding getEncoding() {
+		return new PackedEncoding(valueBits, numVoters, paillierN.bitLength());
+	}
+	
+	/** @return true if the names of the voters are known (see setRoster) */
+	public boolean hasRoster() {
+		return voters != null;
+	}
+	
+	/**
+	 * Fills in the names of the voters of a compact copy, once they are checked against the
+	 * roster's size and hash.
+	 * 
+	 * @param names
+	 * 		the names of the voters (e.g. from CryptoServer.getRoster)
+	 * @throws EVoteInvalidResult
+	 * 		if the names aren't the ballot's roster
+	 */
+	public void setRoster(Collection<String> names) throws EVoteInvalidResult {
+		List<String> sorted = new ArrayList<String>(names);
+		Collections.sort(sorted);
+		
+		if (sorted.size() != numVoters || !Arrays.equals(rosterHash(sorted), rosterHash)) {
+			throw new EVoteInvalidResult(String.format("roster %s does not match ballot %s", names, id));
+		}
+		voters = new HashSet<String>(sorted);
+		roster = sorted;
+	}
+	
+	/** SHA-256 of the sorted names of the voters, each followed by a newline */
+	private static byte[] rosterHash(List<String> sorted) {
+		StringBuilder sb = new StringBuilder();
+		for (String voter : sorted) {
+			sb.append(voter).append('\n');
+		}
+		return MerkleTree.sha256(sb.toString().getBytes(Charset.forName("UTF-8")));
+	}
+	
+	/**
+	 * @return the voters sorted by name
+	 * @throws IllegalStateException
+	 * 		if this is a compact copy whose roster hasn't been filled in (see setRoster)
+	 */
+	public List<String> getRoster() {
+		if (voters == null) {
+			throw new IllegalStateException(String.format("the roster of ballot %s has not been fetched", id));
+		}
+		if (roster == null) {
+			List<String> sorted = new ArrayList<String>(voters);
+			Collections.sort(sorted);
+			roster = sorted;
+		}
+		return roster;
+	}
+	
+	/**
+	 * The point at which a voter's key share is evaluated in threshold key generation.
+	 * @param voter
+	 * 		The name of the voter
+	 * @return the voter's index (starting at 1), or 0 if not voting
+	 */
+	public int indexOf(String voter) {
+		return getRoster().indexOf(voter) + 1;
 	}
 	
 	/**
@@ -0,0 +1,74 @@
+package edu.harvard.cs262.crypto;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+
+import edu.harvard.cs262.crypto.cipher.PaillierVoteProof;
+import edu.harvard.cs262.crypto.cipher.VoteProof;
+
+/**
+ * The encryption state of a voter's encrypted vote: c1 = g^y of the ElGamal ciphertext
+ * (c2 is the message's cipher text), plus the voter's proof that the ciphertext encrypts
+ * a vote of 0 or 1. The server and anyone auditing the bulletin board can check the proof.
+ *
+ * A Paillier vote has the same shape: c1 = A = G^r of the joint ciphertext (B is the
+ * message's cipher text, see PaillierCipher.jointEncrypt), and its proof is a PaillierVoteProof.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class EVoteCiphertext implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** g^y */
+	public BigInteger c1;
+
+	/** proof that (c1, c2) encrypts g^0 or g^1 */
+	public VoteProof proof;
+
+	/** Paillier votes only: proof that (c1, c2) encrypts 0 or 1 (proof is then null) */
+	public PaillierVoteProof paillierProof;
+
+	public EVoteCiphertext(BigInteger c1, VoteProof proof) {
+		this.c1 = c1;
+		this.proof = proof;
+	}
+
+	public EVoteCiphertext(BigInteger c1, PaillierVoteProof paillierProof) {
+		this.c1 = c1;
+		this.paillierProof = paillierProof;
+	}
+
+	/**
+	 * The bytes a proof is bound to, so it can't be copied into another ballot or by another voter.
+	 *
+	 * @param ballotId
+	 * 		the ballot
+	 * @param voter
+	 * 		the voter
+	 * @return the proof's context
+	 */
+	public static byte[] proofContext(String ballotId, String voter) {
+		return String.format("%s\n%s", ballotId, voter).getBytes(Charset.forName("UTF-8"));
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof EVoteCiphertext)) {
+			return false;
+		}
+		EVoteCiphertext other = (EVoteCiphertext) o;
+		return c1.equals(other.c1) && (proof == null ? other.proof == null : proof.equals(other.proof)) &&
+				(paillierProof == null ? other.paillierProof == null : paillierProof.equals(other.paillierProof));
+	}
+
+	@Override
+	public int hashCode() {
+		return c1.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s %s", c1, (paillierProof != null) ? paillierProof : proof);
+	}
+}
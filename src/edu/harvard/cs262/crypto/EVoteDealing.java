@@ -0,0 +1,28 @@
+package edu.harvard.cs262.crypto;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.Map;
+
+/**
+ * A voter's contribution to threshold key generation for an evote: public commitments to
+ * the polynomial hiding its secret key, plus the share of that polynomial owed to each
+ * other voter, encrypted under the recipient's public key so only the recipient (and not
+ * the server relaying it) can read it.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class EVoteDealing implements Serializable {
+	private static final long serialVersionUID = 1L;
+	
+	/** g^(a_k) for each coefficient a_k of the dealer's polynomial */
+	public BigInteger[] commitments;
+	
+	/** recipient name => the recipient's share, encrypted under the recipient's key */
+	public Map<String, CryptoMessage> shares;
+	
+	public EVoteDealing(BigInteger[] commitments, Map<String, CryptoMessage> shares) {
+		this.commitments = commitments;
+		this.shares = shares;
+	}
+}
@@ -7,6 +7,8 @@ import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Scanner;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** 
  * Class to put all global helper functions we need
@@ -49,22 +51,21 @@ public class Helpers {
 	}
 	
 	/**
-	 * When the scanner is interrupted during user input, it can be placed in a bad state where
-	 * it believes its scanner buffer is empty, causing nasty exceptions. This is fixed by
-	 * having the user hit enter, which resets the buffer properly.
-	 * @param s 
-	 *    The scanner
-	 * @return the same as s.hasNextLine(), but handles exceptions
+	 * A thread factory for worker pools that should not keep the program running on their own.
+	 * @param prefix
+	 * 		Name for the pool's threads (they are numbered after it)
+	 * @return the thread factory
 	 */
-	public static boolean concurrentHasNextLine(Scanner s) {
-		boolean res = false;
+	public static ThreadFactory daemonThreadFactory(final String prefix) {
+		final AtomicInteger count = new AtomicInteger(0);
 		
-		try {
-			res = s.hasNextLine();	
-		} catch (Exception e) {
-			System.out.println("Please hit enter to enable voting.");
-		}
-		
-		return res;
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
 	}
 }
@@ -0,0 +1,229 @@
+package edu.harvard.cs262.crypto.attack;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Factoring group orders (e.g. p - 1 for the group mod p), which the discrete log attacks need
+ * to find the order of a generator. Small primes are divided out first and the rest is split
+ * with Pollard's rho (Brent's variant), which finds a prime factor f in about sqrt(f) steps,
+ * so orders whose second largest prime factor is below 2^40 or so factor quickly.
+ *
+ * Reference
+ * http://en.wikipedia.org/wiki/Pollard%27s_rho_algorithm
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class Factorization {
+	// primes below this are found by trial division
+	private static final int TRIAL_LIMIT = 1 << 16;
+
+	private static final int CERTAINTY = 40;
+
+	private static final int[] SMALL_PRIMES = smallPrimes(TRIAL_LIMIT);
+
+	/**
+	 * Factors n.
+	 *
+	 * @param n
+	 * 		the number, at least 1
+	 * @return the prime factors of n with their exponents, smallest first
+	 */
+	public static SortedMap<BigInteger, Integer> factor(BigInteger n) {
+		return factor(n, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Factors n as far as it can in a limited number of rho steps, e.g. to see whether a group
+	 * order is smooth without trying to factor a 2048 bit number.
+	 *
+	 * @param n
+	 * 		the number, at least 1
+	 * @param maxSteps
+	 * 		the most rho steps spent splitting each composite factor
+	 * @return the factors of n with their exponents, smallest first; the ones that aren't prime
+	 * 		(see isComplete) are composites that couldn't be split in time
+	 */
+	public static SortedMap<BigInteger, Integer> factor(BigInteger n, long maxSteps) {
+		if (n.signum() <= 0) {
+			throw new IllegalArgumentException("can only factor positive numbers");
+		}
+		SortedMap<BigInteger, Integer> factors = new TreeMap<BigInteger, Integer>();
+
+		for (int p : SMALL_PRIMES) {
+			BigInteger bigP = BigInteger.valueOf(p);
+			if (bigP.multiply(bigP).compareTo(n) > 0) {
+				break;
+			}
+			while (n.mod(bigP).signum() == 0) {
+				add(factors, bigP, 1);
+				n = n.divide(bigP);
+			}
+		}
+
+		if (!n.equals(BigInteger.ONE)) {
+			split(n, factors, maxSteps);
+		}
+		return factors;
+	}
+
+	/** @return true if every factor is prime (factor didn't run out of steps) */
+	public static boolean isComplete(Map<BigInteger, Integer> factors) {
+		for (BigInteger f : factors.keySet()) {
+			if (!f.isProbablePrime(CERTAINTY)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The order of g in the group mod p: the smallest n with g^n = 1 mod p.
+	 *
+	 * @param g
+	 * 		an element of the group
+	 * @param p
+	 * 		the (prime) modulus
+	 * @return the order of g
+	 */
+	public static BigInteger order(BigInteger g, BigInteger p) {
+		return order(g, p, factor(p.subtract(BigInteger.ONE)));
+	}
+
+	/**
+	 * The order of g, given the factors of a multiple of it (e.g. of p - 1): each prime is divided
+	 * out of the multiple for as long as g to the rest is still 1.
+	 */
+	public static BigInteger order(BigInteger g, BigInteger p, Map<BigInteger, Integer> multipleFactors) {
+		BigInteger n = BigInteger.ONE;
+		for (Map.Entry<BigInteger, Integer> f : multipleFactors.entrySet()) {
+			n = n.multiply(f.getKey().pow(f.getValue()));
+		}
+		for (Map.Entry<BigInteger, Integer> f : multipleFactors.entrySet()) {
+			for (int i = 0; i < f.getValue(); i++) {
+				BigInteger rest = n.divide(f.getKey());
+				if (!g.modPow(rest, p).equals(BigInteger.ONE)) {
+					break;
+				}
+				n = rest;
+			}
+		}
+		return n;
+	}
+
+	/** Adds the prime factors of n (with no factors below TRIAL_LIMIT) to factors */
+	private static void split(BigInteger n, SortedMap<BigInteger, Integer> factors, long maxSteps) {
+		if (n.isProbablePrime(CERTAINTY)) {
+			add(factors, n, 1);
+			return;
+		}
+
+		// a perfect square would make rho find n itself for every c
+		BigInteger root = sqrt(n);
+		if (root.multiply(root).equals(n)) {
+			SortedMap<BigInteger, Integer> rootFactors = new TreeMap<BigInteger, Integer>();
+			split(root, rootFactors, maxSteps);
+			for (Map.Entry<BigInteger, Integer> f : rootFactors.entrySet()) {
+				add(factors, f.getKey(), 2 * f.getValue());
+			}
+			return;
+		}
+
+		BigInteger d = rho(n, maxSteps);
+		if (d == null) {
+			add(factors, n, 1);
+			return;
+		}
+		split(d, factors, maxSteps);
+		split(n.divide(d), factors, maxSteps);
+	}
+
+	/**
+	 * @return a non-trivial factor of the composite n, with Brent's variant of Pollard's rho, or
+	 * 		null if there is none after maxSteps steps
+	 */
+	private static BigInteger rho(BigInteger n, long maxSteps) {
+		Random rand = new Random(n.longValue());
+		long steps = 0;
+		while (steps < maxSteps) {
+			BigInteger c = new BigInteger(n.bitLength(), rand).mod(n);
+			BigInteger y = new BigInteger(n.bitLength(), rand).mod(n);
+			BigInteger x = y;
+			BigInteger ys = y;
+			BigInteger q = BigInteger.ONE;
+			BigInteger d = BigInteger.ONE;
+
+			// y runs ahead of x in stretches of doubling length, and the gcds are batched 128 at a time
+			for (int r = 1; d.equals(BigInteger.ONE) && steps < maxSteps; r <<= 1) {
+				steps += 2 * r;
+				x = y;
+				for (int i = 0; i < r; i++) {
+					y = y.multiply(y).add(c).mod(n);
+				}
+				for (int k = 0; k < r && d.equals(BigInteger.ONE); k += 128) {
+					ys = y;
+					for (int i = 0; i < Math.min(128, r - k); i++) {
+						y = y.multiply(y).add(c).mod(n);
+						q = q.multiply(x.subtract(y).abs()).mod(n);
+					}
+					d = q.gcd(n);
+				}
+			}
+
+			if (d.equals(BigInteger.ONE)) {
+				return null;
+			}
+
+			// a batch may have overshot to n, so redo it one gcd at a time
+			if (d.equals(n)) {
+				do {
+					ys = ys.multiply(ys).add(c).mod(n);
+					d = x.subtract(ys).abs().gcd(n);
+				} while (d.equals(BigInteger.ONE));
+			}
+			if (!d.equals(n)) {
+				return d;
+			}
+		}
+		return null;
+	}
+
+	private static BigInteger sqrt(BigInteger n) {
+		BigInteger x = BigInteger.ONE.shiftLeft((n.bitLength() + 1) / 2);
+		while (true) {
+			BigInteger y = x.add(n.divide(x)).shiftRight(1);
+			if (y.compareTo(x) >= 0) {
+				return x;
+			}
+			x = y;
+		}
+	}
+
+	private static void add(SortedMap<BigInteger, Integer> factors, BigInteger p, int e) {
+		Integer old = factors.get(p);
+		factors.put(p, (old != null) ? old + e : e);
+	}
+
+	private static int[] smallPrimes(int limit) {
+		boolean[] composite = new boolean[limit];
+		int count = 0;
+		for (int i = 2; i < limit; i++) {
+			if (!composite[i]) {
+				count++;
+				for (long j = (long) i * i; j < limit; j += i) {
+					composite[(int) j] = true;
+				}
+			}
+		}
+		int[] primes = new int[count];
+		for (int i = 2, k = 0; i < limit; i++) {
+			if (!composite[i]) {
+				primes[k++] = i;
+			}
+		}
+		return primes;
+	}
+}
@@ -0,0 +1,107 @@
+package edu.harvard.cs262.crypto.attack;
+
+import java.math.BigInteger;
+
+/**
+ * Modular multiplication mod an odd modulus m of up to 62 bits in Montgomery form, on longs.
+ * A value x is kept as x * 2^64 mod m, so a product needs two 64 x 64 bit multiplications and
+ * no division. The attacks do hundreds of millions of multiplications in groups this small,
+ * where a BigInteger multiply and mod (with its allocations) is several times slower.
+ *
+ * Reference
+ * http://en.wikipedia.org/wiki/Montgomery_modular_multiplication
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class Montgomery {
+	/** the largest modulus, so sums of two values below 2m still fit in a signed long */
+	public static final int MAX_BITS = 62;
+
+	private static final long LOW = 0xffffffffL;
+
+	public final long m;
+
+	// -m^-1 mod 2^64, and 2^64 mod m (1 in Montgomery form)
+	private final long mInv;
+	private final long one;
+
+	private final BigInteger bigM;
+
+	/**
+	 * @throws IllegalArgumentException
+	 * 		if m is even, less than 3 or more than MAX_BITS bits
+	 */
+	public Montgomery(long m) {
+		if (m < 3 || (m & 1) == 0 || 64 - Long.numberOfLeadingZeros(m) > MAX_BITS) {
+			throw new IllegalArgumentException(String.format("modulus %d is not odd, or not in [3, 2^%d)", m, MAX_BITS));
+		}
+		this.m = m;
+		bigM = BigInteger.valueOf(m);
+
+		// Newton's iteration doubles the correct low bits of the inverse each time (3 to start)
+		long inv = m;
+		for (int i = 0; i < 5; i++) {
+			inv *= 2 - m * inv;
+		}
+		mInv = -inv;
+		one = BigInteger.ONE.shiftLeft(64).mod(bigM).longValue();
+	}
+
+	/** @return x in Montgomery form */
+	public long toMontgomery(BigInteger x) {
+		return x.mod(bigM).shiftLeft(64).mod(bigM).longValue();
+	}
+
+	/** @return x in Montgomery form */
+	public long toMontgomery(long x) {
+		return toMontgomery(BigInteger.valueOf(x));
+	}
+
+	/** @return the value of x, from Montgomery form */
+	public long fromMontgomery(long x) {
+		return multiply(x, 1);
+	}
+
+	/** @return 1 in Montgomery form */
+	public long one() {
+		return one;
+	}
+
+	/** @return a * b in Montgomery form, for a and b in Montgomery form */
+	public long multiply(long a, long b) {
+		long lo = a * b;
+		long hi = multiplyHigh(a, b);
+
+		// lo + (lo * mInv mod 2^64) * m is divisible by 2^64, so only its carry is kept
+		long u = lo * mInv;
+		long r = hi + multiplyHigh(u, m) + ((lo != 0) ? 1 : 0);
+		return (r >= m) ? r - m : r;
+	}
+
+	/** @return x^e in Montgomery form, for x in Montgomery form and e >= 0 */
+	public long pow(long x, long e) {
+		long result = one;
+		while (e != 0) {
+			if ((e & 1) != 0) {
+				result = multiply(result, x);
+			}
+			x = multiply(x, x);
+			e >>>= 1;
+		}
+		return result;
+	}
+
+	/** @return the high 64 bits of the unsigned 128 bit product a * b */
+	static long multiplyHigh(long a, long b) {
+		long a0 = a & LOW, a1 = a >>> 32;
+		long b0 = b & LOW, b1 = b >>> 32;
+
+		long p00 = a0 * b0;
+		long p01 = a0 * b1;
+		long p10 = a1 * b0;
+		long p11 = a1 * b1;
+
+		long mid = (p00 >>> 32) + (p01 & LOW) + (p10 & LOW);
+		return p11 + (p01 >>> 32) + (p10 >>> 32) + (mid >>> 32);
+	}
+}
@@ -0,0 +1,160 @@
+package edu.harvard.cs262.crypto.attack;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import edu.harvard.cs262.crypto.cipher.DHTuple;
+
+/**
+ * Flags weak Diffie-Hellman parameters in a DHTuple: what Pohlig-Hellman (and rho) would cost
+ * against them, and why. A group is only as strong as the largest prime factor q of the order
+ * of g, since breaking a key costs about sqrt(q) multiplications; the small factors of the
+ * order leak x modulo them for almost nothing.
+ *
+ * p - 1 is factored with a limited number of rho steps, so a large order that doesn't factor
+ * counts as having a large prime factor (its smallest unfactored part bounds the factor from
+ * below).
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class ParameterReport {
+	/** the bits p should have, and the bits of the largest prime factor of the order of g (112 bit security) */
+	public static final int MIN_P_BITS = 2048;
+	public static final int MIN_Q_BITS = 224;
+
+	// factors below this are "small": they leak x modulo them at once
+	private static final int SMALL_FACTOR_BITS = 32;
+
+	private static final long FACTOR_STEPS = 1L << 18;
+
+	/** the parameters */
+	public final BigInteger p;
+	public final BigInteger g;
+
+	/** the order of g, as far as it factored (null if p isn't prime) */
+	public final BigInteger order;
+	public final SortedMap<BigInteger, Integer> orderFactors;
+
+	/**
+	 * the bits of the largest prime factor of the order (at least this many, if the order
+	 * didn't factor completely), and log2 of the multiplications Pohlig-Hellman needs
+	 */
+	public final int largestFactorBits;
+	public final double workBits;
+
+	/** the bits of x that the small factors of the order give away */
+	public final int leakedBits;
+
+	/** what is wrong with the parameters (empty if nothing is) */
+	public final List<String> weaknesses;
+
+	private ParameterReport(BigInteger p, BigInteger g, BigInteger order, SortedMap<BigInteger, Integer> orderFactors,
+			int largestFactorBits, double workBits, int leakedBits, List<String> weaknesses) {
+		this.p = p;
+		this.g = g;
+		this.order = order;
+		this.orderFactors = orderFactors;
+		this.largestFactorBits = largestFactorBits;
+		this.workBits = workBits;
+		this.leakedBits = leakedBits;
+		this.weaknesses = Collections.unmodifiableList(weaknesses);
+	}
+
+	/**
+	 * Analyzes the parameters of a DHTuple, and its public value xhat if it has one.
+	 *
+	 * @param tuple
+	 * 		the parameters (p, g) and an observed g^x (xhat, may be null)
+	 * @return the report
+	 */
+	public static ParameterReport analyze(DHTuple tuple) {
+		BigInteger p = tuple.p;
+		BigInteger g = tuple.g;
+		List<String> weaknesses = new ArrayList<String>();
+
+		if (!p.isProbablePrime(40)) {
+			weaknesses.add(String.format("p = %s is not prime", p));
+			return new ParameterReport(p, g, null, null, 0, 0, 0, weaknesses);
+		}
+		if (p.bitLength() < MIN_P_BITS) {
+			weaknesses.add(String.format("p has %d bits (at least %d are recommended)", p.bitLength(), MIN_P_BITS));
+		}
+		BigInteger pMinus1 = p.subtract(BigInteger.ONE);
+		if (g.mod(p).compareTo(BigInteger.ONE) <= 0 || g.mod(p).equals(pMinus1)) {
+			weaknesses.add(String.format("g = %s has order 1 or 2", g));
+		}
+
+		SortedMap<BigInteger, Integer> factors = Factorization.factor(pMinus1, FACTOR_STEPS);
+		BigInteger order = Factorization.order(g, p, factors);
+
+		// the factors of p - 1 that divide the order, and what each one costs
+		SortedMap<BigInteger, Integer> orderFactors = new TreeMap<BigInteger, Integer>();
+		int largest = 0;
+		int leaked = 0;
+		double work = 0;
+		for (Map.Entry<BigInteger, Integer> f : factors.entrySet()) {
+			int e = 0;
+			for (BigInteger rest = order; rest.mod(f.getKey()).signum() == 0 && e < f.getValue(); rest = rest.divide(f.getKey())) {
+				e++;
+			}
+			if (e == 0) {
+				continue;
+			}
+			orderFactors.put(f.getKey(), e);
+			int bits = f.getKey().bitLength();
+			largest = Math.max(largest, bits);
+			work += e * Math.pow(2, bits / 2.0);
+			if (bits <= SMALL_FACTOR_BITS) {
+				leaked += e * bits;
+			}
+		}
+		double workBits = (work > 0) ? Math.log(work) / Math.log(2) : 0;
+
+		if (largest < MIN_Q_BITS) {
+			weaknesses.add(String.format("the order of g is smooth: its largest prime factor has %d bits (at least %d are " +
+					"recommended), so Pohlig-Hellman breaks a key in about 2^%.0f multiplications", largest, MIN_Q_BITS, workBits));
+		}
+		if (leaked > 0 && largest >= MIN_Q_BITS) {
+			weaknesses.add(String.format("the order of g has small factors, so g^x gives away about %d bits of x " +
+					"(use g of prime order)", leaked));
+		}
+
+		if (tuple.xhat != null) {
+			if (!tuple.xhat.modPow(order, p).equals(BigInteger.ONE)) {
+				weaknesses.add("xhat is not a power of g");
+			} else {
+				BigInteger xhatOrder = Factorization.order(tuple.xhat, p, orderFactors);
+				if (!xhatOrder.equals(order)) {
+					weaknesses.add(String.format("xhat has order %s, less than g's (x shares a factor with it)", xhatOrder));
+				}
+			}
+		}
+
+		return new ParameterReport(p, g, order, orderFactors, largest, workBits, leaked, weaknesses);
+	}
+
+	/** @return true if anything is wrong with the parameters */
+	public boolean isWeak() {
+		return !weaknesses.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("p: %d bits, g = %s", p.bitLength(), g));
+		if (order != null) {
+			sb.append(String.format(", order of g: %d bits = %s%s", order.bitLength(), orderFactors,
+					Factorization.isComplete(orderFactors) ? "" : " (not fully factored)"));
+			sb.append(String.format(", Pohlig-Hellman: about 2^%.0f multiplications", workBits));
+		}
+		for (String w : weaknesses) {
+			sb.append("\n  weak: ").append(w);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,258 @@
+package edu.harvard.cs262.crypto.attack;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.harvard.cs262.crypto.Helpers;
+import edu.harvard.cs262.crypto.cipher.DHTuple;
+
+/**
+ * Discrete logs with Pohlig-Hellman, for groups whose order is smooth (a product of small
+ * primes): recovers a Diffie-Hellman secret x from the g^x mod p an eavesdropper sees go by.
+ *
+ * If g has order n = q_1^(e_1) * ... * q_k^(e_k), then x mod q_i^(e_i) only depends on the
+ * powers of g and g^x that land in the subgroup of order q_i^(e_i), and is found one base q_i
+ * digit at a time, each digit a discrete log in the subgroup of order q_i. The prime powers
+ * are solved in parallel and x mod n is put back together with the Chinese remainder theorem.
+ * Breaking a key costs about e_i * sqrt(q_i) multiplications for the largest q_i, instead of
+ * sqrt(n): DiffieHellman's group (p - 1 = 2 * 3^2 * 7 * 13 * 19) falls in well under a
+ * millisecond.
+ *
+ * Each prime order subgroup is searched with baby-step giant-step, whose table of baby steps is
+ * kept for the next key in the same group. Primes too big for the table go to Pollard's rho,
+ * if p is small enough for it (see PollardRho).
+ *
+ * Reference
+ * http://en.wikipedia.org/wiki/Pohlig%E2%80%93Hellman_algorithm
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class PohligHellman {
+	/** primes of up to this many bits are searched with baby-step giant-step (2^18 baby steps) */
+	public static final int BSGS_BITS = 36;
+
+	// p - 1 is factored with at most this many rho steps per composite factor
+	private static final long FACTOR_STEPS = 1L << 22;
+
+	// the most groups whose order factors and baby steps are kept
+	private static final int CACHED_GROUPS = 64;
+
+	private final ExecutorService pool;
+	private final PollardRho rho;
+
+	// (p, g) => factors of the order of g, and (p, subgroup generator) => its baby steps
+	private final Map<List<BigInteger>, SortedMap<BigInteger, Integer>> orders =
+			new ConcurrentHashMap<List<BigInteger>, SortedMap<BigInteger, Integer>>();
+	private final Map<List<BigInteger>, Map<BigInteger, Integer>> babySteps =
+			new ConcurrentHashMap<List<BigInteger>, Map<BigInteger, Integer>>();
+
+	/** An engine with one thread per core, and no rho for large primes */
+	public PohligHellman() {
+		this(Runtime.getRuntime().availableProcessors(), null);
+	}
+
+	/**
+	 * @param threads
+	 * 		the number of prime powers solved at once
+	 * @param rho
+	 * 		the solver for primes too big for baby-step giant-step (null for none)
+	 */
+	public PohligHellman(int threads, PollardRho rho) {
+		pool = Executors.newFixedThreadPool(threads, Helpers.daemonThreadFactory("pohlig-hellman"));
+		this.rho = rho;
+	}
+
+	/**
+	 * Recovers the secret behind an observed DHTuple: x with g^x = xhat mod p.
+	 *
+	 * @return x mod the order of g (all that matters for keys made from g^x)
+	 * @throws IllegalArgumentException
+	 * 		if xhat is not a power of g, or the order of g has a prime factor too big to solve
+	 */
+	public BigInteger solve(DHTuple tuple) throws InterruptedException {
+		return solve(tuple.g, tuple.xhat, tuple.p, orderFactors(tuple.g, tuple.p));
+	}
+
+	/**
+	 * The factors of the order of g mod p, kept for the next key in the same group.
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if p - 1 can't be factored (its order is then not smooth anyway)
+	 */
+	public SortedMap<BigInteger, Integer> orderFactors(BigInteger g, BigInteger p) {
+		List<BigInteger> group = Arrays.asList(p, g);
+		SortedMap<BigInteger, Integer> factors = orders.get(group);
+		if (factors != null) {
+			return factors;
+		}
+
+		SortedMap<BigInteger, Integer> multiple = Factorization.factor(p.subtract(BigInteger.ONE), FACTOR_STEPS);
+		if (!Factorization.isComplete(multiple)) {
+			throw new IllegalArgumentException(String.format("p - 1 = %s doesn't factor, so it isn't smooth", multiple));
+		}
+		BigInteger order = Factorization.order(g, p, multiple);
+
+		factors = new TreeMap<BigInteger, Integer>();
+		for (Map.Entry<BigInteger, Integer> f : multiple.entrySet()) {
+			int e = 0;
+			for (BigInteger rest = order; rest.mod(f.getKey()).signum() == 0; rest = rest.divide(f.getKey())) {
+				e++;
+			}
+			if (e > 0) {
+				factors.put(f.getKey(), e);
+			}
+		}
+
+		if (orders.size() >= CACHED_GROUPS) {
+			orders.clear();
+		}
+		orders.put(group, factors);
+		return factors;
+	}
+
+	/**
+	 * Computes the discrete log of h to the base g mod p.
+	 *
+	 * @param g
+	 * 		the base
+	 * @param h
+	 * 		the power of g
+	 * @param p
+	 * 		the (prime) modulus
+	 * @param orderFactors
+	 * 		the factors of the order of g
+	 * @return x in [0, order) with g^x = h mod p
+	 * @throws IllegalArgumentException
+	 * 		if h is not a power of g, or the order has a prime factor too big to solve
+	 */
+	public BigInteger solve(final BigInteger g, final BigInteger h, final BigInteger p,
+			SortedMap<BigInteger, Integer> orderFactors) throws InterruptedException {
+		BigInteger n = BigInteger.ONE;
+		for (Map.Entry<BigInteger, Integer> f : orderFactors.entrySet()) {
+			n = n.multiply(f.getKey().pow(f.getValue()));
+			if (f.getKey().bitLength() > BSGS_BITS && (rho == null || p.bitLength() > Montgomery.MAX_BITS)) {
+				throw new IllegalArgumentException(String.format("the order of g has a %d bit prime factor",
+						f.getKey().bitLength()));
+			}
+		}
+		if (!h.modPow(n, p).equals(BigInteger.ONE)) {
+			throw new IllegalArgumentException(String.format("%s is not a power of %s mod %s", h, g, p));
+		}
+
+		// x mod each prime power, in parallel
+		final BigInteger order = n;
+		List<BigInteger> moduli = new ArrayList<BigInteger>();
+		List<Future<BigInteger>> residues = new ArrayList<Future<BigInteger>>();
+		for (Map.Entry<BigInteger, Integer> f : orderFactors.entrySet()) {
+			final BigInteger q = f.getKey();
+			final int e = f.getValue();
+			moduli.add(q.pow(e));
+			residues.add(pool.submit(new Callable<BigInteger>() {
+				public BigInteger call() throws Exception {
+					return primePower(g, h, p, order, q, e);
+				}
+			}));
+		}
+
+		// x = sum of x_i * (n / n_i) * ((n / n_i)^-1 mod n_i)
+		BigInteger x = BigInteger.ZERO;
+		try {
+			for (int i = 0; i < moduli.size(); i++) {
+				BigInteger ni = moduli.get(i);
+				BigInteger rest = order.divide(ni);
+				x = x.add(residues.get(i).get().multiply(rest).multiply(rest.modInverse(ni)));
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IllegalArgumentException) {
+				throw (IllegalArgumentException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			for (Future<BigInteger> r : residues) {
+				r.cancel(true);
+			}
+		}
+		return x.mod(order);
+	}
+
+	/** Stops the engine's threads */
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	/** @return x mod q^e, one base q digit at a time */
+	private BigInteger primePower(BigInteger g, BigInteger h, BigInteger p, BigInteger order, BigInteger q, int e)
+			throws InterruptedException {
+		// gamma has order q, so each digit is a discrete log in its subgroup
+		BigInteger gamma = g.modPow(order.divide(q), p);
+		BigInteger gInverse = g.modInverse(p);
+
+		BigInteger x = BigInteger.ZERO;
+		BigInteger qk = BigInteger.ONE;
+		for (int k = 0; k < e; k++) {
+			// (g^-x * h)^(n / q^(k + 1)) = gamma^(digit k)
+			BigInteger hk = gInverse.modPow(x, p).multiply(h).mod(p).modPow(order.divide(qk.multiply(q)), p);
+			x = x.add(subgroupLog(gamma, hk, p, q).multiply(qk));
+			qk = qk.multiply(q);
+		}
+		return x;
+	}
+
+	/** @return the discrete log of h to the base gamma, which has prime order q */
+	private BigInteger subgroupLog(BigInteger gamma, BigInteger h, BigInteger p, BigInteger q) throws InterruptedException {
+		if (h.equals(BigInteger.ONE)) {
+			return BigInteger.ZERO;
+		}
+		if (q.bitLength() > BSGS_BITS) {
+			return rho.solve(gamma, h, p, q).x;
+		}
+
+		// baby steps gamma^j for j < m, giant steps h * gamma^(-m * i)
+		long m = (long) Math.ceil(Math.sqrt(q.doubleValue()));
+		Map<BigInteger, Integer> table = babySteps(gamma, p, m);
+
+		BigInteger giant = gamma.modPow(BigInteger.valueOf(m), p).modInverse(p);
+		BigInteger y = h;
+		for (long i = 0; i <= m; i++) {
+			Integer j = table.get(y);
+			if (j != null) {
+				return BigInteger.valueOf(i * m + j).mod(q);
+			}
+			y = y.multiply(giant).mod(p);
+		}
+		throw new IllegalArgumentException(String.format("%s is not a power of %s mod %s", h, gamma, p));
+	}
+
+	private Map<BigInteger, Integer> babySteps(BigInteger gamma, BigInteger p, long m) {
+		List<BigInteger> subgroup = Arrays.asList(p, gamma);
+		Map<BigInteger, Integer> table = babySteps.get(subgroup);
+		if (table != null) {
+			return table;
+		}
+
+		table = new HashMap<BigInteger, Integer>((int) (2 * m));
+		BigInteger y = BigInteger.ONE;
+		for (int j = 0; j < m; j++) {
+			table.put(y, j);
+			y = y.multiply(gamma).mod(p);
+		}
+
+		if (babySteps.size() >= CACHED_GROUPS) {
+			babySteps.clear();
+		}
+		babySteps.put(subgroup, table);
+		return table;
+	}
+}
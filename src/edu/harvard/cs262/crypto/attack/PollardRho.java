@@ -0,0 +1,308 @@
+package edu.harvard.cs262.crypto.attack;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.harvard.cs262.crypto.Helpers;
+import edu.harvard.cs262.crypto.cipher.DHTuple;
+
+/**
+ * Discrete logs with Pollard's rho, run as parallel walks with distinguished points (van
+ * Oorschot and Wiener): recovers a Diffie-Hellman secret x from the g^x mod p an eavesdropper
+ * sees go by (the xhat of a DHTuple).
+ *
+ * Every walk starts at a random y = g^a * h^b and takes pseudo-random steps, each multiplying y
+ * by one of a few fixed g^(a_j) * h^(b_j) picked by y itself, so two walks that ever meet
+ * follow the same path from then on. A walk reports only the "distinguished" points it passes
+ * (the ones whose hash ends in enough zero bits) to a store shared by all walks, and the first
+ * point reported twice with different (a, b) gives g^a * h^b = g^a' * h^b', which is solved
+ * for x. One walk runs per core, and they need about sqrt(pi * n / 2) steps between them for
+ * a group of order n, so every 2 bits of the order double the time to break it.
+ *
+ * The walks use 62 bit Montgomery arithmetic (see Montgomery), so p can be up to 62 bits;
+ * bigger groups are out of the reach of rho anyway.
+ *
+ * Reference
+ * http://people.scs.carleton.ca/~paulv/papers/JoC97.pdf
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class PollardRho {
+	// the number of multipliers a walk picks its steps from (Teske: 20 or more behave like a random walk)
+	private static final int PARTITIONS = 32;
+
+	// about this many distinguished points are stored before two walks meet
+	private static final int STORED_POINTS = 1 << 10;
+
+	// groups this small are searched exhaustively
+	private static final long BRUTE_FORCE = 1 << 10;
+
+	private final int walks;
+	private final ExecutorService pool;
+
+	/** The discrete log, and what it took to find it */
+	public static class Result {
+		/** the secret, in [0, order) */
+		public final BigInteger x;
+
+		/** the order of g, the steps taken by all walks, and the distinguished points they stored */
+		public final BigInteger order;
+		public final long steps;
+		public final int distinguishedPoints;
+
+		public Result(BigInteger x, BigInteger order, long steps, int distinguishedPoints) {
+			this.x = x;
+			this.order = order;
+			this.steps = steps;
+			this.distinguishedPoints = distinguishedPoints;
+		}
+	}
+
+	/** A solver with one walk per core */
+	public PollardRho() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param walks
+	 * 		the number of walks (and threads) to run at once
+	 */
+	public PollardRho(int walks) {
+		this.walks = walks;
+		pool = Executors.newFixedThreadPool(walks, Helpers.daemonThreadFactory("rho"));
+	}
+
+	/**
+	 * Recovers the secret behind an observed DHTuple: x with g^x = xhat mod p.
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if p is too big, or xhat is not a power of g
+	 */
+	public Result solve(DHTuple tuple) throws InterruptedException {
+		return solve(tuple.g, tuple.xhat, tuple.p, Factorization.order(tuple.g, tuple.p));
+	}
+
+	/**
+	 * Computes the discrete log of h to the base g mod p.
+	 *
+	 * @param g
+	 * 		the base
+	 * @param h
+	 * 		the power of g
+	 * @param p
+	 * 		the (prime) modulus, of up to 62 bits
+	 * @param order
+	 * 		the order of g
+	 * @return x in [0, order) with g^x = h mod p
+	 * @throws IllegalArgumentException
+	 * 		if p is too big, or h is not a power of g
+	 */
+	public Result solve(BigInteger g, BigInteger h, BigInteger p, BigInteger order) throws InterruptedException {
+		if (p.bitLength() > Montgomery.MAX_BITS) {
+			throw new IllegalArgumentException(String.format("a %d bit group is too big for rho", p.bitLength()));
+		}
+		// the group mod p is cyclic, so the powers of g are exactly the h with h^order = 1
+		if (!h.modPow(order, p).equals(BigInteger.ONE)) {
+			throw new IllegalArgumentException(String.format("%s is not a power of %s mod %s", h, g, p));
+		}
+
+		long n = order.longValue();
+		if (n <= BRUTE_FORCE) {
+			BigInteger y = BigInteger.ONE;
+			for (long x = 0; x < n; x++, y = y.multiply(g).mod(p)) {
+				if (y.equals(h.mod(p))) {
+					return new Result(BigInteger.valueOf(x), order, x, 0);
+				}
+			}
+		}
+
+		Search search = new Search(g, h, p, n);
+		List<Future<BigInteger>> futures = new ArrayList<Future<BigInteger>>();
+		for (int i = 0; i < walks; i++) {
+			futures.add(pool.submit(search));
+		}
+
+		BigInteger x;
+		try {
+			x = search.await();
+		} finally {
+			// wait for every walk to stop, so they have all counted their steps
+			search.stop();
+			for (Future<BigInteger> f : futures) {
+				try {
+					f.get();
+				} catch (ExecutionException e) {
+					// the search already has its answer
+				}
+			}
+		}
+		return new Result(x, order, search.steps.get(), search.points.size());
+	}
+
+	/** Stops the walks' threads */
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	/**
+	 * One discrete log, shared by every walk looking for it. Each walk is a call of call() on
+	 * its own thread, restarting from a fresh random point whenever it reaches a distinguished
+	 * point that doesn't solve it (or walks for too long without reaching one).
+	 */
+	private static class Search implements Callable<BigInteger> {
+		private final BigInteger g, h, p;
+		private final long n;
+		private final Montgomery mont;
+		private final long gMont, hMont;
+
+		// y is distinguished when its hash has dpBits trailing zeros
+		private final long dpMask;
+		private final long maxWalk;
+
+		// the multipliers g^(a_j) * h^(b_j) (in Montgomery form), and a_j and b_j
+		private final long[] multipliers = new long[PARTITIONS];
+		private final long[] as = new long[PARTITIONS];
+		private final long[] bs = new long[PARTITIONS];
+
+		// distinguished point => {a, b} of the walk that got there first
+		final ConcurrentMap<Long, long[]> points = new ConcurrentHashMap<Long, long[]>();
+		final AtomicLong steps = new AtomicLong();
+
+		private volatile BigInteger answer;
+		private volatile boolean stopped;
+
+		public Search(BigInteger g, BigInteger h, BigInteger p, long n) {
+			this.g = g;
+			this.h = h;
+			this.p = p;
+			this.n = n;
+			mont = new Montgomery(p.longValue());
+			gMont = mont.toMontgomery(g);
+			hMont = mont.toMontgomery(h);
+
+			// sqrt(n) steps in all, spread over STORED_POINTS distinguished points
+			int sqrtBits = (64 - Long.numberOfLeadingZeros(n)) / 2;
+			int dpBits = Math.max(0, sqrtBits - Integer.numberOfTrailingZeros(STORED_POINTS));
+			dpMask = (1L << dpBits) - 1;
+			maxWalk = 20L << dpBits;
+
+			ThreadLocalRandom rand = ThreadLocalRandom.current();
+			for (int j = 0; j < PARTITIONS; j++) {
+				as[j] = rand.nextLong(n);
+				bs[j] = rand.nextLong(n);
+				multipliers[j] = point(as[j], bs[j]);
+			}
+		}
+
+		/** @return g^a * h^b in Montgomery form */
+		private long point(long a, long b) {
+			return mont.multiply(mont.pow(gMont, a), mont.pow(hMont, b));
+		}
+
+		/** A hash of a point (in Montgomery form, which is as good as any) */
+		private static long mix(long y) {
+			long z = y * 0x9E3779B97F4A7C15L;
+			return z ^ (z >>> 29);
+		}
+
+		@Override
+		public BigInteger call() {
+			ThreadLocalRandom rand = ThreadLocalRandom.current();
+			long walked = 0;
+
+			while (!stopped) {
+				long a = rand.nextLong(n);
+				long b = rand.nextLong(n);
+				long y = point(a, b);
+
+				long z = mix(y);
+				for (long i = 0; i < maxWalk; i++) {
+					int j = (int) (z >>> 59);
+					y = mont.multiply(y, multipliers[j]);
+					a += as[j];
+					if (a >= n) {
+						a -= n;
+					}
+					b += bs[j];
+					if (b >= n) {
+						b -= n;
+					}
+					walked++;
+
+					z = mix(y);
+					if ((z & dpMask) == 0) {
+						distinguished(y, a, b);
+						break;
+					}
+
+					// don't count every step on the shared counter
+					if (walked >= 1 << 12) {
+						steps.addAndGet(walked);
+						walked = 0;
+						if (stopped) {
+							break;
+						}
+					}
+				}
+			}
+			steps.addAndGet(walked);
+			return answer;
+		}
+
+		/** Stores a distinguished point, and solves for x if another walk got there first */
+		private void distinguished(long y, long a, long b) {
+			long[] other = points.putIfAbsent(y, new long[] { a, b });
+			if (other == null || other[1] == b) {
+				return;
+			}
+
+			// g^a * h^b = g^a' * h^b', so (b' - b) * x = a - a' mod n
+			BigInteger bigN = BigInteger.valueOf(n);
+			BigInteger db = BigInteger.valueOf(other[1] - b).mod(bigN);
+			BigInteger da = BigInteger.valueOf(a - other[0]).mod(bigN);
+			BigInteger d = db.gcd(bigN);
+			if (da.mod(d).signum() != 0 || d.bitLength() > 20) {
+				return;
+			}
+
+			// x = x0 + k * n / d for one of the d solutions of the congruence
+			BigInteger reduced = bigN.divide(d);
+			BigInteger x0 = da.divide(d).multiply(db.divide(d).modInverse(reduced)).mod(reduced);
+			for (BigInteger x = x0; x.compareTo(bigN) < 0; x = x.add(reduced)) {
+				if (g.modPow(x, p).equals(h.mod(p))) {
+					found(x);
+					return;
+				}
+			}
+		}
+
+		private synchronized void found(BigInteger x) {
+			if (answer == null) {
+				answer = x;
+				stopped = true;
+				notifyAll();
+			}
+		}
+
+		public synchronized BigInteger await() throws InterruptedException {
+			while (answer == null) {
+				wait();
+			}
+			return answer;
+		}
+
+		public synchronized void stop() {
+			stopped = true;
+		}
+	}
+}
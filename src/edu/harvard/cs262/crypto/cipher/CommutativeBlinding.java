@@ -0,0 +1,268 @@
+package edu.harvard.cs262.crypto.cipher;
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Blinding of set elements with the commutative exponentiation that Diffie-Hellman is built
+ * on: (x^a)^b = (x^b)^a mod p. Two clients that hash their elements into the group and blind
+ * them with their own secret exponents end up with the same doubly blinded value H(x)^(ab) for
+ * the elements they have in common, without either of them seeing the other's H(y) or secret
+ * (see DHCryptoClient.intersect). Only 64 bit fingerprints of the doubly blinded values have to
+ * be compared.
+ *
+ * DiffieHellman's 15 bit group is far too small for hashing a large set into (its elements
+ * collide after a few hundred entries), so this uses the 2048 bit safe prime p = 2q + 1 of
+ * RFC 3526 (group 14). The secrets are even 257 bit exponents: a short exponent keeps each
+ * blinding at one fast modPow, and an even one puts every blinded value in the subgroup of
+ * squares, so a counterparty that sends values outside it learns nothing about the secret.
+ *
+ * Batches are blinded in parallel on a fork-join pool, since each element costs a 2048 bit
+ * modular exponentiation and the elements are independent.
+ *
+ * Reference
+ * http://tools.ietf.org/html/rfc3526#section-3
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class CommutativeBlinding {
+	/** the modulus, a safe prime, and the order of its subgroup of squares */
+	public static final BigInteger P = new BigInteger(
+			"FFFFFFFFFFFFFFFFC90FDAA22168C234C4C6628B80DC1CD1" +
+			"29024E088A67CC74020BBEA63B139B22514A08798E3404DD" +
+			"EF9519B3CD3A431B302B0A6DF25F14374FE1356D6D51C245" +
+			"E485B576625E7EC6F44C42E9A637ED6B0BFF5CB6F406B7ED" +
+			"EE386BFB5A899FA5AE9F24117C4B1FE649286651ECE45B3D" +
+			"C2007CB8A163BF0598DA48361C55D39A69163FA8FD24CF5F" +
+			"83655D23DCA3AD961C62F356208552BB9ED529077096966D" +
+			"670C354E4ABC9804F1746C08CA18217C32905E462E36CE3B" +
+			"E39E772C180E86039B2783A2EC07A28FB5C55DF06F4C52C9" +
+			"DE2BCBF6955817183995497CEA956AE515D2261898FA0510" +
+			"15728E5A8AACAA68FFFFFFFFFFFFFFFF", 16);
+	public static final BigInteger Q = P.shiftRight(1);
+
+	/** the bits of randomness in a secret exponent */
+	public static final int EXPONENT_BITS = 256;
+
+	// elements blinded in a plain loop by one task (each is a full modPow)
+	private static final int LEAF = 8;
+
+	// SHA-256 blocks hashed together for an element: 64 bits more than p, so H(x) mod p is close to uniform
+	private static final int HASH_BLOCKS = (P.bitLength() + 64 + 255) / 256;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static ForkJoinPool pool;
+
+	/** @return the pool batches are blinded on, with one worker per core */
+	public static synchronized ForkJoinPool pool() {
+		if (pool == null) {
+			pool = new ForkJoinPool();
+		}
+		return pool;
+	}
+
+	/** @return a fresh secret exponent (even, and less than 2q) */
+	public static BigInteger newSecret(SecureRandom rand) {
+		BigInteger s;
+		do {
+			s = new BigInteger(EXPONENT_BITS, rand);
+		} while (s.signum() == 0);
+		return s.shiftLeft(1);
+	}
+
+	/** @return H(element), a value in [0, p) made from the SHA-256 of the element */
+	public static BigInteger hash(String element) {
+		byte[] data = element.getBytes(UTF8);
+		byte[] digest = new byte[HASH_BLOCKS * 32];
+		for (int i = 0; i < HASH_BLOCKS; i++) {
+			byte[] block = MerkleTree.sha256(new byte[] { (byte) i }, data);
+			System.arraycopy(block, 0, digest, i * 32, 32);
+		}
+		return new BigInteger(1, digest).mod(P);
+	}
+
+	/**
+	 * Hashes and blinds a batch of elements: H(x)^secret mod p for each x.
+	 *
+	 * @param elements
+	 * 		the elements
+	 * @param from
+	 * 		the first element of the batch
+	 * @param to
+	 * 		one past the last element of the batch
+	 * @param secret
+	 * 		the secret exponent
+	 * @return the blinded values, in the order of the elements
+	 */
+	public static BigInteger[] hashAndBlind(List<String> elements, int from, int to, BigInteger secret) {
+		BigInteger[] blinded = new BigInteger[to - from];
+		pool().invoke(new hashTask(elements, from, blinded, 0, blinded.length, secret));
+		return blinded;
+	}
+
+	/**
+	 * Blinds a batch of values the counterparty blinded with its own secret, and fingerprints the
+	 * results: fingerprint(y^secret mod p) for each y.
+	 *
+	 * @param values
+	 * 		the counterparty's blinded values
+	 * @param secret
+	 * 		the secret exponent
+	 * @return the fingerprints, in the order of the values
+	 * @throws IllegalArgumentException
+	 * 		if a value is not in [2, p - 1)
+	 */
+	public static long[] blindFingerprints(BigInteger[] values, BigInteger secret) {
+		for (BigInteger y : values) {
+			if (y.compareTo(BigInteger.ONE) <= 0 || y.compareTo(P.subtract(BigInteger.ONE)) >= 0) {
+				throw new IllegalArgumentException("blinded value is not in [2, p - 1)");
+			}
+		}
+		long[] fingerprints = new long[values.length];
+		pool().invoke(new fingerprintTask(values, fingerprints, 0, values.length, secret));
+		return fingerprints;
+	}
+
+	/** @return the first 64 bits of the SHA-256 of a doubly blinded value */
+	public static long fingerprint(BigInteger value) {
+		byte[] digest = MerkleTree.sha256(value.toByteArray());
+		long fp = 0;
+		for (int i = 0; i < 8; i++) {
+			fp = (fp << 8) | (digest[i] & 0xff);
+		}
+		return fp;
+	}
+
+	/** @return the values as one string of comma-separated base 36 numbers (e.g. for a CryptoMessage) */
+	public static String toText(BigInteger[] values) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(values[i].toString(Character.MAX_RADIX));
+		}
+		return sb.toString();
+	}
+
+	/** @return the fingerprints as one string of comma-separated base 36 numbers */
+	public static String toText(long[] fingerprints) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < fingerprints.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(Long.toString(fingerprints[i], Character.MAX_RADIX));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The inverse of toText(BigInteger[]).
+	 *
+	 * @throws NumberFormatException
+	 * 		if the text isn't comma-separated base 36 numbers
+	 */
+	public static BigInteger[] valuesFromText(String text) {
+		if (text.isEmpty()) {
+			return new BigInteger[0];
+		}
+		String[] parts = text.split(",", -1);
+		BigInteger[] values = new BigInteger[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			values[i] = new BigInteger(parts[i], Character.MAX_RADIX);
+		}
+		return values;
+	}
+
+	/**
+	 * The inverse of toText(long[]).
+	 *
+	 * @throws NumberFormatException
+	 * 		if the text isn't comma-separated base 36 numbers
+	 */
+	public static long[] fingerprintsFromText(String text) {
+		if (text.isEmpty()) {
+			return new long[0];
+		}
+		String[] parts = text.split(",", -1);
+		long[] fingerprints = new long[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			fingerprints[i] = Long.parseLong(parts[i], Character.MAX_RADIX);
+		}
+		return fingerprints;
+	}
+
+	/** Hashes and blinds elements[offset + from, offset + to) into blinded[from, to) */
+	private static class hashTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<String> elements;
+		private final int offset;
+		private final BigInteger[] blinded;
+		private final int from;
+		private final int to;
+		private final BigInteger secret;
+
+		public hashTask(List<String> elements, int offset, BigInteger[] blinded, int from, int to, BigInteger secret) {
+			this.elements = elements;
+			this.offset = offset;
+			this.blinded = blinded;
+			this.from = from;
+			this.to = to;
+			this.secret = secret;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= LEAF) {
+				for (int i = from; i < to; i++) {
+					blinded[i] = hash(elements.get(offset + i)).modPow(secret, P);
+				}
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new hashTask(elements, offset, blinded, from, mid, secret),
+					new hashTask(elements, offset, blinded, mid, to, secret));
+		}
+	}
+
+	/** Blinds and fingerprints values[from, to) into fingerprints[from, to) */
+	private static class fingerprintTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final BigInteger[] values;
+		private final long[] fingerprints;
+		private final int from;
+		private final int to;
+		private final BigInteger secret;
+
+		public fingerprintTask(BigInteger[] values, long[] fingerprints, int from, int to, BigInteger secret) {
+			this.values = values;
+			this.fingerprints = fingerprints;
+			this.from = from;
+			this.to = to;
+			this.secret = secret;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= LEAF) {
+				for (int i = from; i < to; i++) {
+					fingerprints[i] = fingerprint(values[i].modPow(secret, P));
+				}
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new fingerprintTask(values, fingerprints, from, mid, secret),
+					new fingerprintTask(values, fingerprints, mid, to, secret));
+		}
+	}
+}
@@ -71,6 +71,16 @@ public class DiffieHellman implements KeyExchangeProtocol, Serializable {
 		return BITS;
 	}
 	
+	/** @return the public modulus (e.g. for an eavesdropper attacking the exchange) */
+	public BigInteger getP() {
+		return P;
+	}
+	
+	/** @return the public generator */
+	public BigInteger getG() {
+		return G;
+	}
+	
 	/**
 	 * Initiates DiffieHelman Key Exchange process. Blocks until another another client calls
 	 * reciprocate using the same Key Exchange protocol (identified using the protocol ID).
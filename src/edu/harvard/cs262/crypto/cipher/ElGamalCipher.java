@@ -71,10 +71,11 @@ public class ElGamalCipher implements CryptoCipher, Serializable {
 		 */
 		char[] cs = plaintext.toCharArray();
 		char[] new_cs = new char[cs.length];
+		BigInteger mask = dht.xhat.modPow(y, dht.p);
 		
 		for (int i = 0; i < cs.length; i++) {
 			BigInteger m = BigInteger.valueOf(cs[i]);
-			BigInteger tmp = dht.xhat.modPow(y, dht.p).multiply(m).mod(dht.p);
+			BigInteger tmp = mask.multiply(m).mod(dht.p);
 			new_cs[i] = (char) tmp.intValue();
 		}
 		
@@ -99,6 +100,25 @@ public class ElGamalCipher implements CryptoCipher, Serializable {
 		BigInteger y = new BigInteger(key.getBits(), rand).mod(dht.p);
 		BigInteger yhat = dht.g.modPow(y, dht.p);
 		
+		return encryptInteger(plaintext, y, yhat);
+	}
+	
+	/**
+	 * The same thing as encryptInteger, except the randomness y is chosen (and g^y computed)
+	 * by the caller, e.g. ahead of time with an ExponentPool. Never reuse y.
+	 * 
+	 * @param plaintext
+	 * 		The integer to be encrypted
+	 * @param y
+	 * 		The random exponent
+	 * @param yhat
+	 * 		g^y
+	 * @return 
+	 * 		The encrypted integer
+	 */
+	public CryptoMessage encryptInteger(BigInteger plaintext, BigInteger y, BigInteger yhat) {
+		DHTuple dht = (DHTuple) key.getPublic();
+		
 		BigInteger ciphertext = dht.xhat.modPow(y, dht.p).multiply(plaintext).mod(dht.p);
 		
 		CryptoMessage m = new CryptoMessage(plaintext.toString(), ciphertext.toString(), "");
@@ -148,11 +168,12 @@ public class ElGamalCipher implements CryptoCipher, Serializable {
 		 */
 		char[] cs = cm.getCipherText().toCharArray();
 		char[] new_cs = new char[cs.length];
+		BigInteger unmask = yhat.modPow(x, dht.p).modInverse(dht.p);
 		
 		for (int i = 0; i < cs.length; i++) {
 			BigInteger m = BigInteger.valueOf(cs[i]);
 			
-			BigInteger tmp = yhat.modPow(x, dht.p).modInverse(dht.p).multiply(m).mod(dht.p);
+			BigInteger tmp = unmask.multiply(m).mod(dht.p);
 			new_cs[i] = (char) tmp.intValue();
 		}
 		
@@ -0,0 +1,86 @@
+package edu.harvard.cs262.crypto.cipher;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import edu.harvard.cs262.crypto.Helpers;
+
+/**
+ * Random exponents x in [1, q) paired with g^x mod p, computed ahead of time by a background
+ * thread. ElGamal key pairs, ElGamal encryption randomness and the coefficients of a Feldman
+ * polynomial (with their commitments) are all such pairs, so a voter can do the expensive
+ * modular exponentiations while it is idle instead of after it has decided how to vote.
+ *
+ * The thread stops computing once the pool is full and picks up again as pairs are taken.
+ * Taking from an empty pool computes a pair on the spot, so callers never wait for it.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class ExponentPool {
+	private final BigInteger p;
+	private final BigInteger q;
+	private final BigInteger g;
+	private final SecureRandom rand;
+	private final BlockingQueue<BigInteger[]> pairs;
+
+	/**
+	 * Creates the pool and starts filling it.
+	 *
+	 * @param p
+	 * 		the modulus
+	 * @param q
+	 * 		the (prime) order of g
+	 * @param g
+	 * 		the generator
+	 * @param capacity
+	 * 		the most pairs kept ready
+	 * @param name
+	 * 		name for the background thread
+	 */
+	public ExponentPool(BigInteger p, BigInteger q, BigInteger g, int capacity, String name) {
+		this.p = p;
+		this.q = q;
+		this.g = g;
+		rand = new SecureRandom();
+		pairs = new ArrayBlockingQueue<BigInteger[]>(capacity);
+
+		Thread filler = Helpers.daemonThreadFactory(name).newThread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						pairs.put(compute());
+					}
+				} catch (InterruptedException e) {
+					// do nothing -- the pool is no longer needed
+				}
+			}
+		});
+		// only use time nothing else wants
+		filler.setPriority(Thread.MIN_PRIORITY);
+		filler.start();
+	}
+
+	/** @return true if the pool's pairs are for the group (p, q, g) */
+	public boolean isFor(BigInteger p, BigInteger q, BigInteger g) {
+		return this.p.equals(p) && this.q.equals(q) && this.g.equals(g);
+	}
+
+	/** @return a fresh pair {x, g^x mod p}; each pair is handed out only once */
+	public BigInteger[] take() {
+		BigInteger[] pair = pairs.poll();
+		return (pair != null) ? pair : compute();
+	}
+
+	/** @return the number of pairs ready to be taken */
+	public int available() {
+		return pairs.size();
+	}
+
+	private BigInteger[] compute() {
+		BigInteger x = SchnorrSignature.generateKey(q, rand);
+		return new BigInteger[] { x, g.modPow(x, p) };
+	}
+}
@@ -0,0 +1,111 @@
+package edu.harvard.cs262.crypto.cipher;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * Feldman verifiable secret sharing over the order q subgroup generated by g mod p.
+ * A dealer hides a secret in the constant term of a random polynomial f of degree t-1,
+ * gives party j the share f(j), and publishes commitments g^(a_k) to the coefficients so
+ * every party can check its share without learning anything else. Any t shares recover
+ * the secret (or, in the exponent, g^secret) using Lagrange interpolation at zero.
+ *
+ * Used for threshold key generation in evoting: every voter deals its secret key and
+ * each voter's decryption key is the sum of the shares dealt to it (Pedersen's protocol).
+ *
+ * Reference
+ * http://en.wikipedia.org/wiki/Verifiable_secret_sharing#Feldman.27s_scheme
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class FeldmanVSS {
+
+	/**
+	 * Picks a random polynomial of degree t-1 whose constant term is the secret.
+	 *
+	 * @param secret
+	 * 		the value being shared
+	 * @param t
+	 * 		the number of shares needed to recover the secret
+	 * @param q
+	 * 		the (prime) order of the group
+	 * @param rand
+	 * 		source of randomness for the other coefficients
+	 * @return the coefficients, lowest degree first
+	 */
+	public static BigInteger[] randomPolynomial(BigInteger secret, int t, BigInteger q, Random rand) {
+		BigInteger[] coeffs = new BigInteger[t];
+		coeffs[0] = secret.mod(q);
+		for (int k = 1; k < t; k++) {
+			coeffs[k] = new BigInteger(q.bitLength() + 8, rand).mod(q);
+		}
+		return coeffs;
+	}
+
+	/** Evaluates the polynomial at x (mod q) using Horner's rule */
+	public static BigInteger evaluate(BigInteger[] coeffs, int x, BigInteger q) {
+		BigInteger X = BigInteger.valueOf(x);
+		BigInteger result = BigInteger.ZERO;
+		for (int k = coeffs.length - 1; k >= 0; k--) {
+			result = result.multiply(X).add(coeffs[k]).mod(q);
+		}
+		return result;
+	}
+
+	/** The public commitments g^(a_k) to each coefficient */
+	public static BigInteger[] commit(BigInteger[] coeffs, BigInteger g, BigInteger p) {
+		BigInteger[] commitments = new BigInteger[coeffs.length];
+		for (int k = 0; k < coeffs.length; k++) {
+			commitments[k] = g.modPow(coeffs[k], p);
+		}
+		return commitments;
+	}
+
+	/**
+	 * Checks that a share handed to party x is consistent with the dealer's commitments,
+	 * i.e. that g^share = prod_k C_k^(x^k).
+	 *
+	 * @return true if the share is valid
+	 */
+	public static boolean verifyShare(BigInteger share, int x, BigInteger[] commitments,
+			BigInteger g, BigInteger p, BigInteger q) {
+		BigInteger X = BigInteger.valueOf(x);
+		BigInteger power = BigInteger.ONE;
+		BigInteger expected = BigInteger.ONE;
+
+		for (int k = 0; k < commitments.length; k++) {
+			expected = expected.multiply(commitments[k].modPow(power, p)).mod(p);
+			power = power.multiply(X).mod(q);
+		}
+
+		return g.modPow(share.mod(q), p).equals(expected);
+	}
+
+	/**
+	 * The Lagrange coefficient of party j for interpolating at zero from the given parties:
+	 * prod_{m != j} m / (m - j) mod q.
+	 *
+	 * @param j
+	 * 		the party whose coefficient we want
+	 * @param indices
+	 * 		every party taking part in the interpolation (including j)
+	 * @param q
+	 * 		the (prime) order of the group
+	 * @return the coefficient mod q
+	 */
+	public static BigInteger lagrangeAtZero(int j, Collection<Integer> indices, BigInteger q) {
+		BigInteger num = BigInteger.ONE;
+		BigInteger den = BigInteger.ONE;
+
+		for (int m : indices) {
+			if (m == j) {
+				continue;
+			}
+			num = num.multiply(BigInteger.valueOf(m)).mod(q);
+			den = den.multiply(BigInteger.valueOf(m - j)).mod(q);
+		}
+
+		return num.multiply(den.modInverse(q)).mod(q);
+	}
+}
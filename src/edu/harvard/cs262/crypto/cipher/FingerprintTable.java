@@ -0,0 +1,67 @@
+package edu.harvard.cs262.crypto.cipher;
+
+/**
+ * A set of 64 bit fingerprints (see CommutativeBlinding.fingerprint), hashed into buckets by
+ * their top bits. The fingerprints are already uniformly random, so the top bits are the
+ * hash, and the table is built in two passes (count each bucket, then fill it) into one flat
+ * array, with about two fingerprints per bucket. Unlike a HashSet of Longs it takes 8 bytes
+ * per fingerprint plus 4 per bucket, which matters for sets of hundreds of thousands.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class FingerprintTable {
+	private final int shift;
+
+	// bucket b holds fingerprints[start[b], start[b + 1])
+	private final int[] start;
+	private final long[] fingerprints;
+
+	/**
+	 * @param values
+	 * 		the fingerprints
+	 * @param length
+	 * 		how many of them to use (values[0, length))
+	 */
+	public FingerprintTable(long[] values, int length) {
+		int bits = 1;
+		while (bits < 30 && (1 << bits) < length / 2) {
+			bits++;
+		}
+		shift = 64 - bits;
+
+		start = new int[(1 << bits) + 1];
+		for (int i = 0; i < length; i++) {
+			start[bucket(values[i]) + 1]++;
+		}
+		for (int b = 1; b < start.length; b++) {
+			start[b] += start[b - 1];
+		}
+
+		fingerprints = new long[length];
+		int[] next = new int[start.length - 1];
+		System.arraycopy(start, 0, next, 0, next.length);
+		for (int i = 0; i < length; i++) {
+			fingerprints[next[bucket(values[i])]++] = values[i];
+		}
+	}
+
+	private int bucket(long fingerprint) {
+		return (int) (fingerprint >>> shift);
+	}
+
+	/** @return true if the fingerprint is in the table */
+	public boolean contains(long fingerprint) {
+		int b = bucket(fingerprint);
+		for (int i = start[b]; i < start[b + 1]; i++) {
+			if (fingerprints[i] == fingerprint) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** @return the number of fingerprints in the table */
+	public int size() {
+		return fingerprints.length;
+	}
+}
@@ -0,0 +1,189 @@
+package edu.harvard.cs262.crypto.cipher;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An append-only Merkle tree (the hash tree used by Certificate Transparency logs).
+ * The root of the first n entries commits to all of them, and an inclusion proof that
+ * entry i is one of them is just the log2(n) sibling hashes on the way up to the root.
+ *
+ * Leaves and interior nodes are hashed with different prefixes so an interior node
+ * can't be passed off as an entry.
+ *
+ * Reference
+ * http://tools.ietf.org/html/rfc6962#section-2.1
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class MerkleTree {
+	private static final byte LEAF = 0;
+	private static final byte NODE = 1;
+
+	// hashes of the entries, in the order they were appended
+	private final List<byte[]> leaves;
+
+	public MerkleTree() {
+		leaves = new ArrayList<byte[]>();
+	}
+
+	/**
+	 * Adds an entry to the end of the tree.
+	 *
+	 * @param data
+	 * 		the entry
+	 * @return the index of the entry
+	 */
+	public synchronized int append(byte[] data) {
+		leaves.add(leafHash(data));
+		return leaves.size() - 1;
+	}
+
+	/** @return the number of entries in the tree */
+	public synchronized int size() {
+		return leaves.size();
+	}
+
+	/**
+	 * The root of the tree as it was when it had "size" entries.
+	 *
+	 * @param size
+	 * 		the number of entries to include
+	 * @return the root hash
+	 */
+	public synchronized byte[] root(int size) {
+		if (size == 0) {
+			return sha256(new byte[0]);
+		}
+		return subtreeHash(0, size);
+	}
+
+	/**
+	 * The sibling hashes needed to show an entry is included under root(size).
+	 *
+	 * @param index
+	 * 		the index of the entry
+	 * @param size
+	 * 		the number of entries in the tree the proof is for
+	 * @return the sibling hashes, from the bottom of the tree up
+	 */
+	public synchronized List<byte[]> proof(int index, int size) {
+		List<byte[]> path = new ArrayList<byte[]>();
+		buildProof(index, 0, size, path);
+		return path;
+	}
+
+	// hash of the subtree over leaves [start, end)
+	private byte[] subtreeHash(int start, int end) {
+		if (end - start == 1) {
+			return leaves.get(start);
+		}
+
+		int k = split(end - start);
+		return nodeHash(subtreeHash(start, start + k), subtreeHash(start + k, end));
+	}
+
+	private void buildProof(int index, int start, int end, List<byte[]> path) {
+		if (end - start == 1) {
+			return;
+		}
+
+		int k = split(end - start);
+		if (index < start + k) {
+			buildProof(index, start, start + k, path);
+			path.add(subtreeHash(start + k, end));
+		}
+		else {
+			buildProof(index, start + k, end, path);
+			path.add(subtreeHash(start, start + k));
+		}
+	}
+
+	// the largest power of 2 smaller than n
+	private static int split(int n) {
+		return Integer.highestOneBit(n - 1);
+	}
+
+	/**
+	 * Checks an inclusion proof.
+	 *
+	 * @param data
+	 * 		the entry
+	 * @param index
+	 * 		the index the entry is claimed to be at
+	 * @param size
+	 * 		the number of entries in the tree the proof is for
+	 * @param path
+	 * 		the sibling hashes, from the bottom of the tree up
+	 * @param root
+	 * 		the root of the tree with "size" entries
+	 * @return true if the entry is at that index under the root
+	 */
+	public static boolean verify(byte[] data, int index, int size, List<byte[]> path, byte[] root) {
+		if (index < 0 || index >= size) {
+			return false;
+		}
+
+		long fn = index;
+		long sn = size - 1;
+		byte[] hash = leafHash(data);
+
+		for (byte[] sibling : path) {
+			if (sn == 0) {
+				return false;
+			}
+
+			if ((fn & 1) == 1 || fn == sn) {
+				hash = nodeHash(sibling, hash);
+				// skip levels where we are the last node and have no right sibling
+				while ((fn & 1) == 0 && fn != 0) {
+					fn >>= 1;
+					sn >>= 1;
+				}
+			}
+			else {
+				hash = nodeHash(hash, sibling);
+			}
+
+			fn >>= 1;
+			sn >>= 1;
+		}
+
+		return sn == 0 && Arrays.equals(hash, root);
+	}
+
+	/** The hash of an entry */
+	public static byte[] leafHash(byte[] data) {
+		return sha256(new byte[] { LEAF }, data);
+	}
+
+	private static byte[] nodeHash(byte[] left, byte[] right) {
+		return sha256(new byte[] { NODE }, left, right);
+	}
+
+	/** SHA-256 of the concatenation of the arguments */
+	public static byte[] sha256(byte[]... parts) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			for (byte[] part : parts) {
+				md.update(part);
+			}
+			return md.digest();
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** Formats a hash for printing */
+	public static String toHex(byte[] hash) {
+		StringBuilder sb = new StringBuilder();
+		for (byte b : hash) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+}
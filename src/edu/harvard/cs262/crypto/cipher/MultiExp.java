@@ -0,0 +1,101 @@
+package edu.harvard.cs262.crypto.cipher;
+
+import java.math.BigInteger;
+
+/**
+ * Products of many powers, b_1^(e_1) * b_2^(e_2) * ... * b_n^(e_n) mod p, computed together
+ * with Pippenger's bucket method. The exponents are scanned c bits at a time from the top;
+ * each window costs one multiplication per base (into the bucket for its digit) plus about
+ * 2^(c+1) to combine the buckets, and the windows share a single chain of c squarings.
+ * With c about log2(n) the whole product costs roughly bits/log2(n) multiplications per base,
+ * against about 1.5 * bits for each of n separate modPow calls.
+ *
+ * Reference
+ * http://cr.yp.to/papers/pippenger.pdf
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class MultiExp {
+
+	/**
+	 * Computes prod_i bases[i]^(exponents[i]) mod p.
+	 *
+	 * @param bases
+	 * 		the bases
+	 * @param exponents
+	 * 		the (non-negative) exponents, one per base
+	 * @param p
+	 * 		the modulus
+	 * @return the product mod p
+	 */
+	public static BigInteger product(BigInteger[] bases, BigInteger[] exponents, BigInteger p) {
+		if (bases.length != exponents.length) {
+			throw new IllegalArgumentException("need one exponent per base");
+		}
+
+		int bits = 0;
+		for (BigInteger e : exponents) {
+			if (e.signum() < 0) {
+				throw new IllegalArgumentException("exponents must not be negative");
+			}
+			bits = Math.max(bits, e.bitLength());
+		}
+		if (bits == 0) {
+			return BigInteger.ONE.mod(p);
+		}
+
+		int c = window(bases.length);
+		BigInteger[] buckets = new BigInteger[1 << c];
+		BigInteger result = BigInteger.ONE;
+
+		for (int w = (bits - 1) / c; w >= 0; w--) {
+			for (int i = 0; i < c; i++) {
+				result = result.multiply(result).mod(p);
+			}
+
+			for (int d = 1; d < buckets.length; d++) {
+				buckets[d] = null;
+			}
+			for (int i = 0; i < bases.length; i++) {
+				int d = digit(exponents[i], w * c, c);
+				if (d != 0) {
+					buckets[d] = (buckets[d] == null) ? bases[i].mod(p) : buckets[d].multiply(bases[i]).mod(p);
+				}
+			}
+
+			// prod_d bucket[d]^d, as the product of the running products from the top bucket down
+			BigInteger running = null;
+			BigInteger windowProduct = null;
+			for (int d = buckets.length - 1; d >= 1; d--) {
+				if (buckets[d] != null) {
+					running = (running == null) ? buckets[d] : running.multiply(buckets[d]).mod(p);
+				}
+				if (running != null) {
+					windowProduct = (windowProduct == null) ? running : windowProduct.multiply(running).mod(p);
+				}
+			}
+			if (windowProduct != null) {
+				result = result.multiply(windowProduct).mod(p);
+			}
+		}
+		return result;
+	}
+
+	// bits per window for n bases (the bucket work 2^c should not outgrow the n per window)
+	private static int window(int n) {
+		int c = 1;
+		while (c < 16 && (1 << (c + 1)) <= n) {
+			c++;
+		}
+		return Math.max(1, c - 1);
+	}
+
+	// the c-bit digit of e starting at bit offset
+	private static int digit(BigInteger e, int offset, int c) {
+		int d = 0;
+		for (int b = c - 1; b >= 0; b--) {
+			d = (d << 1) | (e.testBit(offset + b) ? 1 : 0);
+		}
+		return d;
+	}
+}
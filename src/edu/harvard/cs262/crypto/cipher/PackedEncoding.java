@@ -0,0 +1,132 @@
+package edu.harvard.cs262.crypto.cipher;
+
+import java.math.BigInteger;
+
+/**
+ * Packs a vector of small non-negative integers into a few big integers, so many values can be
+ * encrypted in one additively homomorphic ciphertext (see PaillierCipher) and added up
+ * together. Each value gets a slot of slotBits, and slots are laid out from the low bits up:
+ *
+ *   m = v_0 + v_1 * 2^slotBits + v_2 * 2^(2 * slotBits) + ...
+ *
+ * Adding packed integers adds their slots, as long as no slot carries into the next one. A
+ * slot has room for valueBits plus enough headroom for the sum of maxTerms values, so the sum
+ * of up to maxTerms packed vectors unpacks to the sums of their values.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class PackedEncoding {
+	/** the bits of each value, and of each slot (value bits plus headroom for the sum) */
+	public final int valueBits;
+	public final int slotBits;
+
+	/** the number of slots in each packed integer */
+	public final int slots;
+
+	/**
+	 * @param valueBits
+	 * 		the size of the values (each must be less than 2^valueBits)
+	 * @param maxTerms
+	 * 		the most vectors that will be added up
+	 * @param modulusBits
+	 * 		the size of the modulus the packed integers are added up mod (e.g. Paillier's N)
+	 * @throws IllegalArgumentException
+	 * 		if a sum wouldn't fit in a long, or a single slot wouldn't fit under the modulus
+	 */
+	public PackedEncoding(int valueBits, int maxTerms, int modulusBits) {
+		if (valueBits < 1 || maxTerms < 1) {
+			throw new IllegalArgumentException("need at least 1 value bit and 1 term");
+		}
+		this.valueBits = valueBits;
+		slotBits = valueBits + BigInteger.valueOf(maxTerms).bitLength();
+
+		// sums are returned as longs, and the packed integers must stay below the modulus
+		if (slotBits > 63) {
+			throw new IllegalArgumentException(String.format("sums of %d values of %d bits don't fit in a long",
+					maxTerms, valueBits));
+		}
+		slots = (modulusBits - 1) / slotBits;
+		if (slots < 1) {
+			throw new IllegalArgumentException(String.format("a %d bit slot doesn't fit in a %d bit modulus",
+					slotBits, modulusBits));
+		}
+	}
+
+	/** @return the number of packed integers a vector of this many values takes */
+	public int numIntegers(int length) {
+		return (length + slots - 1) / slots;
+	}
+
+	/**
+	 * Packs a vector.
+	 *
+	 * @param values
+	 * 		the values, each in [0, 2^valueBits)
+	 * @return the packed integers (see numIntegers)
+	 * @throws IllegalArgumentException
+	 * 		if a value is out of range
+	 */
+	public BigInteger[] pack(long[] values) {
+		BigInteger[] packed = new BigInteger[numIntegers(values.length)];
+
+		for (int i = 0; i < packed.length; i++) {
+			BigInteger m = BigInteger.ZERO;
+
+			// the highest slot first, so each value is shifted up past the ones below it
+			for (int j = Math.min(values.length, (i + 1) * slots) - 1; j >= i * slots; j--) {
+				if (values[j] < 0 || (valueBits < 63 && values[j] >> valueBits != 0)) {
+					throw new IllegalArgumentException(String.format("value %d is not in [0, 2^%d)", values[j], valueBits));
+				}
+				m = m.shiftLeft(slotBits).add(BigInteger.valueOf(values[j]));
+			}
+			packed[i] = m;
+		}
+		return packed;
+	}
+
+	/**
+	 * Unpacks a vector (e.g. the sums of many packed vectors).
+	 *
+	 * @param packed
+	 * 		the packed integers
+	 * @param length
+	 * 		the number of values in the vector
+	 * @return the values
+	 */
+	public long[] unpack(BigInteger[] packed, int length) {
+		long[] values = new long[length];
+		BigInteger mask = BigInteger.ONE.shiftLeft(slotBits).subtract(BigInteger.ONE);
+
+		for (int j = 0; j < length; j++) {
+			values[j] = packed[j / slots].shiftRight((j % slots) * slotBits).and(mask).longValue();
+		}
+		return values;
+	}
+
+	/** @return the integers as one string of comma-separated decimals (e.g. for a CryptoMessage) */
+	public static String toText(BigInteger[] values) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(values[i]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The inverse of toText.
+	 *
+	 * @throws NumberFormatException
+	 * 		if the text isn't comma-separated integers
+	 */
+	public static BigInteger[] fromText(String text) {
+		String[] parts = text.split(",", -1);
+		BigInteger[] values = new BigInteger[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			values[i] = new BigInteger(parts[i]);
+		}
+		return values;
+	}
+}
@@ -0,0 +1,380 @@
+package edu.harvard.cs262.crypto.cipher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.harvard.cs262.crypto.CryptoMessage;
+/**
+ * A Paillier cipher. Encryption is additively homomorphic: multiplying ciphertexts mod N^2
+ * adds their plaintexts mod N, so an evote tally is just the product of the encrypted votes,
+ * and it decrypts directly to the number of yes votes (no discrete log search, however many
+ * voters there are).
+ *
+ * With g = 1 + N, Enc(m) = (1 + N)^m * r^N mod N^2 for a random r in Z_N*. The private key
+ * is a single exponent d with d = 0 mod lambda and d = 1 mod N (lambda = lcm(p - 1, q - 1)),
+ * since then c^d = 1 + mN mod N^2 and m is read off without a search.
+ *
+ * The key is a CryptoKey whose public part is N and whose private part is d (null if the
+ * cipher can only encrypt). Whoever generates the key holds d, so evotes and aggregates
+ * don't use it: they use a joint key over a modulus whose factors nobody knows (see EVote.PAILLIER_N),
+ * made the way an ElGamal election key is. Each voter picks a secret exponent x_i and
+ * sends h_i = G^(x_i) mod N^2, for a generator G anyone can derive from N (see generator),
+ * and the joint key is h = h_1 * ... * h_k. A message is encrypted as
+ * (A, B) = (G^r, h^r * (1 + N)^m) (see jointEncrypt), which multiplies componentwise like any
+ * Paillier ciphertext. Each voter partially decrypts with A^(x_i), and B divided by the
+ * product of every voter's partial decryption is 1 + mN, so m is still read off without a
+ * search (see jointDecrypt). Nobody ever holds the sum of the x_i.
+ *
+ * Reference
+ * http://en.wikipedia.org/wiki/Paillier_cryptosystem
+ * Damgard and Jurik, "A Generalisation, a Simplification and Some Applications of Paillier's
+ * Probabilistic Public-Key System"
+ * Bresson, Catalano and Pointcheval, "A Simple Public-Key Cryptosystem with a Double Trapdoor
+ * Decryption Mechanism and its Applications"
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class PaillierCipher implements CryptoCipher, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	// extra bits in each joint key exponent beyond the size of N, so G^x says nothing about x
+	// mod the (unknown) order of G
+	private static final int EXPONENT_SLACK_BITS = 128;
+
+	// the generator of joint keys for each modulus used so far (see generator)
+	private static final Map<BigInteger, BigInteger> generators = new ConcurrentHashMap<BigInteger, BigInteger>();
+
+	private CryptoKey key;
+	private Random rand;
+
+	public PaillierCipher() {
+		key = null;
+		rand = new SecureRandom();
+	}
+
+	/**
+	 * The seed used by the cipher's random number generator. Only useful for tests that want
+	 * reproducible ciphertexts (by default the cipher uses a SecureRandom).
+	 * @param s
+	 * 		The seed
+	 */
+	public void seed(long s) {
+		rand = new Random(s);
+	}
+
+	/**
+	 * Sets the key used by the CryptoCipher.
+	 *
+	 * @param
+	 * 		k, the key to be used by the cipher (public N, private d or null)
+	 */
+	public void setKey(CryptoKey k) {
+		key = k;
+	}
+
+	/**
+	 * Generates a Paillier key pair.
+	 *
+	 * @param bits
+	 * 		the size of the modulus N
+	 * @param rand
+	 * 		source of randomness for the primes
+	 * @return a key with public N and private d
+	 */
+	public static CryptoKey generateKey(int bits, Random rand) {
+		while (true) {
+			BigInteger p = BigInteger.probablePrime(bits / 2, rand);
+			BigInteger q = BigInteger.probablePrime(bits - bits / 2, rand);
+			BigInteger n = p.multiply(q);
+
+			// equal sized primes make gcd(N, phi(N)) = 1 unless p = q
+			if (p.equals(q) || n.bitLength() != bits) {
+				continue;
+			}
+
+			BigInteger pm1 = p.subtract(BigInteger.ONE);
+			BigInteger qm1 = q.subtract(BigInteger.ONE);
+			BigInteger lambda = pm1.divide(pm1.gcd(qm1)).multiply(qm1);
+			if (!lambda.gcd(n).equals(BigInteger.ONE)) {
+				continue;
+			}
+
+			// d = 0 mod lambda, d = 1 mod N
+			BigInteger d = lambda.multiply(lambda.modInverse(n));
+			return new CryptoKey(d, n, bits);
+		}
+	}
+
+	/**
+	 * The generator G of joint keys mod N^2: a^(2N) mod N^2, where a is a hash of N. Anyone
+	 * can derive it from N, so nobody gets to pick one they know a trapdoor for. Being a 2N-th
+	 * power, it has no (1 + N)^k part.
+	 *
+	 * @param n
+	 * 		the public modulus N
+	 * @return G
+	 */
+	public static BigInteger generator(BigInteger n) {
+		BigInteger g = generators.get(n);
+		if (g != null) {
+			return g;
+		}
+		BigInteger n2 = n.multiply(n);
+
+		// hash N with a counter until there are enough bits for a nearly uniform a mod N^2
+		ByteArrayOutputStream seed = new ByteArrayOutputStream();
+		byte[] tag = "paillier generator".getBytes(Charset.forName("UTF-8"));
+		for (int counter = 0; seed.size() * 8 < n2.bitLength() + EXPONENT_SLACK_BITS; counter++) {
+			byte[] block = MerkleTree.sha256(tag, n.toByteArray(), BigInteger.valueOf(counter).toByteArray());
+			seed.write(block, 0, block.length);
+		}
+		BigInteger a = new BigInteger(1, seed.toByteArray()).mod(n2);
+
+		g = a.modPow(n.shiftLeft(1), n2);
+		generators.put(n, g);
+		return g;
+	}
+
+	/**
+	 * Picks a secret exponent for a joint key or for a joint encryption, EXPONENT_SLACK_BITS
+	 * longer than N.
+	 *
+	 * @param n
+	 * 		the public modulus N
+	 * @param rand
+	 * 		source of randomness
+	 * @return the exponent
+	 */
+	public static BigInteger randomExponent(BigInteger n, Random rand) {
+		return new BigInteger(exponentBits(n), rand);
+	}
+
+	/** @return the size of the secret exponents for modulus N (see randomExponent) */
+	public static int exponentBits(BigInteger n) {
+		return n.bitLength() + EXPONENT_SLACK_BITS;
+	}
+
+	/**
+	 * Encrypts m under a joint key: (A, B) = (G^r, h^r * (1 + N)^m) mod N^2.
+	 *
+	 * @param m
+	 * 		the plaintext, in [0, N)
+	 * @param r
+	 * 		the randomness (see randomExponent); never reuse r
+	 * @param h
+	 * 		the joint key, the product of every voter's G^(x_i)
+	 * @param n
+	 * 		the public modulus N
+	 * @return { A, B }
+	 */
+	public static BigInteger[] jointEncrypt(BigInteger m, BigInteger r, BigInteger h, BigInteger n) {
+		BigInteger n2 = n.multiply(n);
+		BigInteger gm = BigInteger.ONE.add(m.multiply(n)).mod(n2);
+		return new BigInteger[] { generator(n).modPow(r, n2), h.modPow(r, n2).multiply(gm).mod(n2) };
+	}
+
+	/**
+	 * Decrypts (A, B) given the product of every voter's partial decryption A^(x_i), which is h^r.
+	 *
+	 * @param b
+	 * 		B
+	 * @param partials
+	 * 		the product of the partial decryptions mod N^2
+	 * @param n
+	 * 		the public modulus N
+	 * @return m
+	 * @throws IllegalArgumentException
+	 * 		if a partial decryption was wrong or missing
+	 */
+	public static BigInteger jointDecrypt(BigInteger b, BigInteger partials, BigInteger n) {
+		BigInteger n2 = n.multiply(n);
+		if (partials.signum() <= 0 || !partials.gcd(n2).equals(BigInteger.ONE)) {
+			throw new IllegalArgumentException(String.format("%s is not a decryption mod %s", partials, n));
+		}
+		return decode(b.multiply(partials.modInverse(n2)).mod(n2), n);
+	}
+
+	/**
+	 * A voter's partial decryption of a joint ciphertext (A, B), A^(x_i) mod N^2.
+	 *
+	 * @param a
+	 * 		A
+	 * @param x
+	 * 		the voter's part of the joint key (see randomExponent)
+	 * @param n
+	 * 		the public modulus N
+	 * @return the partial decryption
+	 */
+	public static BigInteger partialDecrypt(BigInteger a, BigInteger x, BigInteger n) {
+		return a.modPow(x, n.multiply(n));
+	}
+
+	/**
+	 * Reads the plaintext off c^d mod N^2 = 1 + mN (or B / h^r for a joint ciphertext, see
+	 * jointDecrypt). Costs one division, whatever the plaintext.
+	 *
+	 * @param x
+	 * 		c^d mod N^2
+	 * @param n
+	 * 		the public modulus N
+	 * @return m
+	 * @throws IllegalArgumentException
+	 * 		if x is not 1 mod N (e.g. a partial decryption of a joint ciphertext was wrong or missing)
+	 */
+	public static BigInteger decode(BigInteger x, BigInteger n) {
+		BigInteger[] qr = x.subtract(BigInteger.ONE).divideAndRemainder(n);
+		if (qr[1].signum() != 0 || qr[0].signum() < 0 || qr[0].compareTo(n) >= 0) {
+			throw new IllegalArgumentException(String.format("%s is not a decryption mod %s", x, n));
+		}
+		return qr[0];
+	}
+
+	/**
+	 * Adds two encrypted integers: the result encrypts the sum of their plaintexts mod N.
+	 *
+	 * @param a, b
+	 * 		the ciphertexts
+	 * @param n
+	 * 		the public modulus N
+	 * @return the encrypted sum
+	 */
+	public static BigInteger add(BigInteger a, BigInteger b, BigInteger n) {
+		return a.multiply(b).mod(n.multiply(n));
+	}
+
+	/**
+	 * Picks encryption randomness r in Z_N*.
+	 *
+	 * @param n
+	 * 		the public modulus N
+	 * @param rand
+	 * 		source of randomness
+	 * @return r
+	 */
+	public static BigInteger randomUnit(BigInteger n, Random rand) {
+		while (true) {
+			BigInteger r = new BigInteger(n.bitLength(), rand);
+			if (r.signum() > 0 && r.compareTo(n) < 0 && r.gcd(n).equals(BigInteger.ONE)) {
+				return r;
+			}
+		}
+	}
+
+	/**
+	 * Encrypts m with randomness r: (1 + N)^m * r^N mod N^2, where (1 + N)^m = 1 + mN.
+	 *
+	 * @param m
+	 * 		the plaintext, in [0, N)
+	 * @param r
+	 * 		the randomness, in Z_N* (see randomUnit); never reuse r
+	 * @param n
+	 * 		the public modulus N
+	 * @return the ciphertext
+	 */
+	public static BigInteger encrypt(BigInteger m, BigInteger r, BigInteger n) {
+		BigInteger n2 = n.multiply(n);
+		BigInteger gm = BigInteger.ONE.add(m.multiply(n)).mod(n2);
+		return gm.multiply(r.modPow(n, n2)).mod(n2);
+	}
+
+	/**
+	 * Encrypts a message using the cipher's key. The message's UTF-8 bytes are encrypted as a
+	 * single integer, so the message must be shorter than the modulus.
+	 *
+	 * @param plaintext
+	 * 		The message to be encrypted
+	 * @return
+	 * 		The encrypted message
+	 */
+	public CryptoMessage encrypt(String plaintext) {
+		byte[] bytes = plaintext.getBytes(Charset.forName("UTF-8"));
+
+		// a leading 1 byte keeps any leading zero bytes of the message
+		byte[] padded = new byte[bytes.length + 1];
+		padded[0] = 1;
+		System.arraycopy(bytes, 0, padded, 1, bytes.length);
+
+		BigInteger m = new BigInteger(1, padded);
+		if (m.compareTo((BigInteger) key.getPublic()) >= 0) {
+			throw new IllegalArgumentException("message is too long for the Paillier modulus");
+		}
+
+		CryptoMessage cm = encryptInteger(m);
+		return new CryptoMessage(plaintext, cm.getCipherText(), "");
+	}
+
+	/**
+	 * The same thing as encrypt, except takes an integer as input. This is convenient for
+	 * evoting where the inputs are integers rather than strings.
+	 *
+	 * @param plaintext
+	 * 		The integer to be encrypted, in [0, N)
+	 * @return
+	 * 		The encrypted integer
+	 */
+	public CryptoMessage encryptInteger(BigInteger plaintext) {
+		BigInteger n = (BigInteger) key.getPublic();
+		return encryptInteger(plaintext, randomUnit(n, rand));
+	}
+
+	/**
+	 * The same thing as encryptInteger, except the randomness r is chosen by the caller (e.g.
+	 * to prove something about the ciphertext). Never reuse r.
+	 *
+	 * @param plaintext
+	 * 		The integer to be encrypted, in [0, N)
+	 * @param r
+	 * 		The randomness, in Z_N*
+	 * @return
+	 * 		The encrypted integer
+	 */
+	public CryptoMessage encryptInteger(BigInteger plaintext, BigInteger r) {
+		BigInteger n = (BigInteger) key.getPublic();
+		BigInteger ciphertext = encrypt(plaintext, r, n);
+		return new CryptoMessage(plaintext.toString(), ciphertext.toString(), "");
+	}
+
+	/**
+	 * The same thing as decrypt, except takes an encrypted integer as input. This is convenient for
+	 * evoting where the inputs are integers rather than strings.
+	 *
+	 * @param plaintext
+	 * 		The encrypted integer to be decrypted
+	 * @return
+	 * 		The decrypted integer
+	 */
+	public String decryptInteger(CryptoMessage cm) {
+		BigInteger n = (BigInteger) key.getPublic();
+		BigInteger d = (BigInteger) key.getPrivate();
+		BigInteger c = new BigInteger(cm.getCipherText());
+
+		return decode(c.modPow(d, n.multiply(n)), n).toString();
+	}
+
+	/**
+	 * Decrypts an encrypted message that was originally encrypted using this cipher's
+	 * encrypt function
+	 * @param cm
+	 * 		The encrypted message to be decrypted
+	 * @return
+	 * 		The decoded plaintext
+	 */
+	public String decrypt(CryptoMessage cm) {
+		byte[] padded = new BigInteger(decryptInteger(cm)).toByteArray();
+		return new String(padded, 1, padded.length - 1, Charset.forName("UTF-8"));
+	}
+
+	/**
+	 * Makes a copy of the current cipher (does NOT copy the key)
+	 * @return a copy of the current CryptoCipher with no key
+	 */
+	public CryptoCipher copy() {
+		return new PaillierCipher();
+	}
+}
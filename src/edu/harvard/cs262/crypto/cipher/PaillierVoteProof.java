@@ -0,0 +1,206 @@
+package edu.harvard.cs262.crypto.cipher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A non-interactive zero-knowledge proof that a joint Paillier ciphertext
+ * (A, B) = (G^r, h^r * (1 + N)^v) encrypts a valid vote, v = 0 or v = 1, without revealing which
+ * (see PaillierCipher.jointEncrypt). Branch k proves that A and B / (1 + N)^k have the same
+ * discrete log r to the bases G and h; the voter proves the branch for its real vote and
+ * simulates the other, and the two challenges must add up to the Fiat-Shamir challenge (the
+ * counterpart of VoteProof for the Paillier tally).
+ *
+ * Branch k holds commitments (a_k, b_k), challenge e_k and response z_k, and checks out when
+ * G^(z_k) = a_k * A^(e_k) and h^(z_k) = b_k * (B / (1 + N)^k)^(e_k) mod N^2. Nobody knows the
+ * order of G, so responses are computed over the integers, z = w + e * r, and w is
+ * STATISTICAL_BITS longer than e * r so z says nothing about r. Challenges are CHALLENGE_BITS
+ * long, far below the size of N's prime factors, as soundness requires.
+ *
+ * Reference
+ * Cramer, Damgard and Schoenmakers, "Proofs of Partial Knowledge and Simplified Design of
+ * Witness Hiding Protocols"
+ * Bresson, Catalano and Pointcheval, "A Simple Public-Key Cryptosystem with a Double Trapdoor
+ * Decryption Mechanism and its Applications"
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class PaillierVoteProof implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static final int CHALLENGE_BITS = 128;
+	private static final BigInteger CHALLENGE_MOD = BigInteger.ONE.shiftLeft(CHALLENGE_BITS);
+	private static final int STATISTICAL_BITS = 128;
+
+	/** commitments, challenges and responses for the branches v = 0 and v = 1 */
+	public final BigInteger[] a;
+	public final BigInteger[] b;
+	public final BigInteger[] e;
+	public final BigInteger[] z;
+
+	private PaillierVoteProof(BigInteger[] a, BigInteger[] b, BigInteger[] e, BigInteger[] z) {
+		this.a = a;
+		this.b = b;
+		this.e = e;
+		this.z = z;
+	}
+
+	/**
+	 * Proves that (A, B) = (G^r, h^r * (1 + N)^vote) mod N^2 encrypts 0 or 1.
+	 *
+	 * @param n
+	 * 		the public modulus N
+	 * @param h
+	 * 		the joint key the vote is encrypted under
+	 * @param c
+	 * 		the ciphertext { A, B }
+	 * @param vote
+	 * 		the vote encrypted (0 or 1)
+	 * @param r
+	 * 		the randomness it was encrypted with (see PaillierCipher.randomExponent)
+	 * @param context
+	 * 		what the proof is bound to (e.g. the ballot and voter), so it can't be replayed elsewhere
+	 * @param rand
+	 * 		source of randomness for the commitment and the simulated branch
+	 * @return the proof
+	 */
+	public static PaillierVoteProof prove(BigInteger n, BigInteger h, BigInteger[] c, int vote, BigInteger r,
+			byte[] context, Random rand) {
+		if (vote != 0 && vote != 1) {
+			throw new IllegalArgumentException("can only prove a vote of 0 or 1");
+		}
+		BigInteger n2 = n.multiply(n);
+		BigInteger g = PaillierCipher.generator(n);
+		int responseBits = responseBits(n);
+
+		BigInteger[] a = new BigInteger[2];
+		BigInteger[] b = new BigInteger[2];
+		BigInteger[] e = new BigInteger[2];
+		BigInteger[] z = new BigInteger[2];
+
+		// simulate the other branch: pick its challenge and response, and solve for its commitments
+		int other = 1 - vote;
+		e[other] = new BigInteger(CHALLENGE_BITS, rand);
+		z[other] = new BigInteger(responseBits, rand);
+		a[other] = g.modPow(z[other], n2).multiply(c[0].modPow(e[other].negate(), n2)).mod(n2);
+		b[other] = h.modPow(z[other], n2).multiply(shifted(c[1], other, n).modPow(e[other].negate(), n2)).mod(n2);
+
+		// commit to the real branch
+		BigInteger w = new BigInteger(responseBits, rand);
+		a[vote] = g.modPow(w, n2);
+		b[vote] = h.modPow(w, n2);
+
+		// its challenge is whatever is left of the Fiat-Shamir challenge
+		e[vote] = challenge(n, g, h, c, a, b, context).subtract(e[other]).mod(CHALLENGE_MOD);
+		z[vote] = w.add(e[vote].multiply(r));
+
+		return new PaillierVoteProof(a, b, e, z);
+	}
+
+	/**
+	 * Checks the proof.
+	 *
+	 * @param n
+	 * 		the public modulus N
+	 * @param h
+	 * 		the joint key the vote is encrypted under
+	 * @param c
+	 * 		the ciphertext { A, B }
+	 * @param context
+	 * 		what the proof should be bound to
+	 * @return true if (A, B) is proved to encrypt 0 or 1
+	 */
+	public boolean verify(BigInteger n, BigInteger h, BigInteger[] c, byte[] context) {
+		if (a == null || b == null || e == null || z == null || 
+				a.length != 2 || b.length != 2 || e.length != 2 || z.length != 2 || c.length != 2) {
+			return false;
+		}
+		BigInteger n2 = n.multiply(n);
+		if (!isUnit(h, n2) || !isUnit(c[0], n2) || !isUnit(c[1], n2)) {
+			return false;
+		}
+
+		// an honest response is at most one bit longer than w
+		int responseBits = responseBits(n) + 1;
+		for (int k = 0; k < 2; k++) {
+			if (!isUnit(a[k], n2) || !isUnit(b[k], n2) ||
+					e[k] == null || e[k].signum() < 0 || e[k].compareTo(CHALLENGE_MOD) >= 0 ||
+					z[k] == null || z[k].signum() < 0 || z[k].bitLength() > responseBits) {
+				return false;
+			}
+		}
+		BigInteger g = PaillierCipher.generator(n);
+		if (!e[0].add(e[1]).mod(CHALLENGE_MOD).equals(challenge(n, g, h, c, a, b, context))) {
+			return false;
+		}
+
+		for (int k = 0; k < 2; k++) {
+			boolean sameLog = g.modPow(z[k], n2).equals(a[k].multiply(c[0].modPow(e[k], n2)).mod(n2)) &&
+					h.modPow(z[k], n2).equals(b[k].multiply(shifted(c[1], k, n).modPow(e[k], n2)).mod(n2));
+			if (!sameLog) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// the size of the commitment exponent w, STATISTICAL_BITS longer than e * r
+	private static int responseBits(BigInteger n) {
+		return PaillierCipher.exponentBits(n) + CHALLENGE_BITS + STATISTICAL_BITS;
+	}
+
+	// 0 < x < m, and x is invertible mod m
+	private static boolean isUnit(BigInteger x, BigInteger m) {
+		return x != null && x.signum() > 0 && x.compareTo(m) < 0 && x.gcd(m).equals(BigInteger.ONE);
+	}
+
+	// H(context || N, G, h, A, B, a_0, b_0, a_1, b_1) mod 2^CHALLENGE_BITS
+	private static BigInteger challenge(BigInteger n, BigInteger g, BigInteger h, BigInteger[] c, 
+			BigInteger[] a, BigInteger[] b, byte[] context) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			for (BigInteger x : new BigInteger[] { n, g, h, c[0], c[1], a[0], b[0], a[1], b[1] }) {
+				byte[] encoded = x.toByteArray();
+				out.writeInt(encoded.length);
+				out.write(encoded);
+			}
+		} catch (IOException ex) {
+			// writing to memory doesn't fail
+			throw new IllegalStateException(ex);
+		}
+		return new BigInteger(1, MerkleTree.sha256(context, bytes.toByteArray())).mod(CHALLENGE_MOD);
+	}
+
+	// B / (1 + N)^k, where (1 + N)^(-1) = 1 - N mod N^2
+	private static BigInteger shifted(BigInteger b, int k, BigInteger n) {
+		BigInteger n2 = n.multiply(n);
+		return (k == 0) ? b : b.multiply(BigInteger.ONE.subtract(n)).mod(n2);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof PaillierVoteProof)) {
+			return false;
+		}
+		PaillierVoteProof other = (PaillierVoteProof) o;
+		return Arrays.equals(a, other.a) && Arrays.equals(b, other.b) && 
+				Arrays.equals(e, other.e) && Arrays.equals(z, other.z);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(a) * 31 + Arrays.hashCode(z);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("a=%s b=%s e=%s z=%s", Arrays.toString(a), Arrays.toString(b), 
+				Arrays.toString(e), Arrays.toString(z));
+	}
+}
@@ -0,0 +1,100 @@
+package edu.harvard.cs262.crypto.cipher;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Products of many values mod p, computed as a balanced tree of multiplications on a
+ * fork-join pool. The values are split in halves until a half is small enough to multiply
+ * in a plain loop; the halves are multiplied in parallel and their products combined on the
+ * way back up. The number of multiplications is the same as for one loop (n - 1), but they
+ * are spread over every core of the pool, and the tree has depth log2(n) instead of n.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class ProductTree {
+	// values multiplied in a plain loop by one task (enough work to be worth a fork)
+	private static final int LEAF = 512;
+	
+	// shared by every product that isn't given a pool of its own
+	private static ForkJoinPool pool;
+	
+	/** @return the pool products are computed on, with one worker per core */
+	public static synchronized ForkJoinPool pool() {
+		if (pool == null) {
+			pool = new ForkJoinPool();
+		}
+		return pool;
+	}
+	
+	/**
+	 * Computes the product of values mod p.
+	 * 
+	 * @param values
+	 * 		the values
+	 * @param p
+	 * 		the modulus
+	 * @return prod_i values[i] mod p (1 if there are no values)
+	 */
+	public static BigInteger product(List<BigInteger> values, BigInteger p) {
+		return product(values.toArray(new BigInteger[values.size()]), p, pool());
+	}
+	
+	/**
+	 * Computes the product of values mod p on the given pool.
+	 * 
+	 * @param values
+	 * 		the values
+	 * @param p
+	 * 		the modulus
+	 * @param pool
+	 * 		the pool to compute the product on (small products are computed in the caller's thread)
+	 * @return prod_i values[i] mod p (1 if there are no values)
+	 */
+	public static BigInteger product(BigInteger[] values, BigInteger p, ForkJoinPool pool) {
+		if (values.length <= LEAF) {
+			return multiply(values, 0, values.length, p);
+		}
+		return pool.invoke(new subtree(values, 0, values.length, p));
+	}
+	
+	private static BigInteger multiply(BigInteger[] values, int from, int to, BigInteger p) {
+		BigInteger result = BigInteger.ONE;
+		for (int i = from; i < to; i++) {
+			result = result.multiply(values[i]).mod(p);
+		}
+		return result.mod(p);
+	}
+	
+	/** The product of values[from, to), as the product of its two halves */
+	private static class subtree extends RecursiveTask<BigInteger> {
+		private static final long serialVersionUID = 1L;
+		
+		private final BigInteger[] values;
+		private final int from;
+		private final int to;
+		private final BigInteger p;
+		
+		public subtree(BigInteger[] values, int from, int to, BigInteger p) {
+			this.values = values;
+			this.from = from;
+			this.to = to;
+			this.p = p;
+		}
+		
+		@Override
+		protected BigInteger compute() {
+			if (to - from <= LEAF) {
+				return multiply(values, from, to, p);
+			}
+			
+			int mid = (from + to) >>> 1;
+			subtree left = new subtree(values, from, mid, p);
+			left.fork();
+			BigInteger right = new subtree(values, mid, to, p).compute();
+			return left.join().multiply(right).mod(p);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package edu.harvard.cs262.crypto.cipher;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * Schnorr signatures over the order q subgroup generated by g mod p (the evote group).
+ * The signer's secret key is x in Z_q and its public key is y = g^x. A signature on m is
+ * (e, s) where e = H(g^k || m) for a random k and s = k + e*x, and it checks out when
+ * H(g^s * y^(-e) || m) = e.
+ *
+ * Used by the evote server to sign the roots of its bulletin boards.
+ *
+ * Reference
+ * http://en.wikipedia.org/wiki/Schnorr_signature
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class SchnorrSignature {
+
+	/**
+	 * Picks a random secret key.
+	 *
+	 * @param q
+	 * 		the (prime) order of the group
+	 * @param rand
+	 * 		source of randomness
+	 * @return a secret key in [1, q)
+	 */
+	public static BigInteger generateKey(BigInteger q, Random rand) {
+		BigInteger x;
+		do {
+			x = new BigInteger(q.bitLength() + 8, rand).mod(q);
+		} while (x.signum() == 0);
+		return x;
+	}
+
+	/**
+	 * Signs a message.
+	 *
+	 * @param message
+	 * 		the bytes to sign
+	 * @param x
+	 * 		the signer's secret key
+	 * @param p, q, g
+	 * 		the group
+	 * @param rand
+	 * 		source of randomness for the nonce
+	 * @return the signature (e, s)
+	 */
+	public static BigInteger[] sign(byte[] message, BigInteger x, BigInteger p, BigInteger q,
+			BigInteger g, Random rand) {
+		BigInteger k = generateKey(q, rand);
+		BigInteger e = challenge(g.modPow(k, p), message, q);
+		BigInteger s = k.add(e.multiply(x)).mod(q);
+		return new BigInteger[] { e, s };
+	}
+
+	/**
+	 * Checks a signature.
+	 *
+	 * @param message
+	 * 		the bytes that were signed
+	 * @param signature
+	 * 		the signature (e, s)
+	 * @param y
+	 * 		the signer's public key g^x
+	 * @param p, q, g
+	 * 		the group
+	 * @return true if the signature is valid
+	 */
+	public static boolean verify(byte[] message, BigInteger[] signature, BigInteger y, BigInteger p,
+			BigInteger q, BigInteger g) {
+		if (signature == null || signature.length != 2 || y == null) {
+			return false;
+		}
+
+		BigInteger e = signature[0];
+		BigInteger s = signature[1];
+		BigInteger r = g.modPow(s, p).multiply(y.modPow(e.negate().mod(q), p)).mod(p);
+		return challenge(r, message, q).equals(e);
+	}
+
+	// H(r || m) mod q
+	private static BigInteger challenge(BigInteger r, byte[] message, BigInteger q) {
+		return new BigInteger(1, MerkleTree.sha256(r.toByteArray(), message)).mod(q);
+	}
+}
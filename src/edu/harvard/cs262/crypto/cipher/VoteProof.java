@@ -0,0 +1,319 @@
+package edu.harvard.cs262.crypto.cipher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A non-interactive zero-knowledge proof that an ElGamal ciphertext (c1, c2) = (g^y, h^y * g^v)
+ * encrypts a valid vote, v = 0 or v = 1, without revealing which. It is a disjunction of two
+ * Chaum-Pedersen proofs that log_g(c1) = log_h(c2 / g^k), one for each k: the voter proves the
+ * branch for its real vote and simulates the other, and the two challenges must add up to the
+ * Fiat-Shamir challenge, so at most one of them can be simulated.
+ *
+ * Branch k holds commitments (a_k, b_k), challenge e_k and response r_k, and checks out when
+ * g^(r_k) = a_k * c1^(e_k) and h^(r_k) = b_k * (c2 / g^k)^(e_k).
+ *
+ * The server checks all the proofs of a phase at once (see verifyAll): every check equation
+ * is raised to a small random power and the results multiplied, which gives one product of
+ * powers computed with MultiExp. A batch with a bad proof fails except with probability about
+ * 2^(-BATCH_BITS), and findInvalid narrows a failed batch down to the bad proofs.
+ *
+ * References
+ * Cramer, Gennaro and Schoenmakers, "A Secure and Optimally Efficient Multi-Authority Election Scheme"
+ * Bellare, Garay and Rabin, "Fast Batch Verification for Modular Exponentiation and Digital Signatures"
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class VoteProof implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	// bits in the random powers used to combine check equations (capped by the group order)
+	private static final int BATCH_BITS = 64;
+
+	/** commitments, challenges and responses for the branches v = 0 and v = 1 */
+	public final BigInteger[] a;
+	public final BigInteger[] b;
+	public final BigInteger[] e;
+	public final BigInteger[] r;
+
+	private VoteProof(BigInteger[] a, BigInteger[] b, BigInteger[] e, BigInteger[] r) {
+		this.a = a;
+		this.b = b;
+		this.e = e;
+		this.r = r;
+	}
+
+	/**
+	 * Proves that (c1, c2) = (g^y, h^y * g^vote) encrypts 0 or 1.
+	 *
+	 * @param p, q, g
+	 * 		the group
+	 * @param h
+	 * 		the public key the vote is encrypted under
+	 * @param c1, c2
+	 * 		the ciphertext
+	 * @param vote
+	 * 		the vote encrypted (0 or 1)
+	 * @param y
+	 * 		the randomness it was encrypted with
+	 * @param nonce
+	 * 		a fresh pair {w, g^w} (e.g. from an ExponentPool); never reuse w
+	 * @param context
+	 * 		what the proof is bound to (e.g. the ballot and voter), so it can't be replayed elsewhere
+	 * @param rand
+	 * 		source of randomness for the simulated branch
+	 * @return the proof
+	 */
+	public static VoteProof prove(BigInteger p, BigInteger q, BigInteger g, BigInteger h, BigInteger c1,
+			BigInteger c2, int vote, BigInteger y, BigInteger[] nonce, byte[] context, Random rand) {
+		if (vote != 0 && vote != 1) {
+			throw new IllegalArgumentException("can only prove a vote of 0 or 1");
+		}
+
+		BigInteger[] a = new BigInteger[2];
+		BigInteger[] b = new BigInteger[2];
+		BigInteger[] e = new BigInteger[2];
+		BigInteger[] r = new BigInteger[2];
+
+		// simulate the other branch: pick its challenge and response, and solve for its commitments
+		int other = 1 - vote;
+		e[other] = SchnorrSignature.generateKey(q, rand);
+		r[other] = SchnorrSignature.generateKey(q, rand);
+		BigInteger minusE = q.subtract(e[other]);
+		a[other] = g.modPow(r[other], p).multiply(c1.modPow(minusE, p)).mod(p);
+		b[other] = h.modPow(r[other], p).multiply(shifted(c2, other, p, g).modPow(minusE, p)).mod(p);
+
+		// commit to the real branch
+		BigInteger w = nonce[0];
+		a[vote] = nonce[1];
+		b[vote] = h.modPow(w, p);
+
+		// its challenge is whatever is left of the Fiat-Shamir challenge
+		BigInteger challenge = challenge(p, q, g, h, c1, c2, a, b, context);
+		e[vote] = challenge.subtract(e[other]).mod(q);
+		r[vote] = w.add(e[vote].multiply(y)).mod(q);
+
+		return new VoteProof(a, b, e, r);
+	}
+
+	/**
+	 * Checks a single proof.
+	 *
+	 * @return true if (c1, c2) is proved to encrypt 0 or 1
+	 */
+	public boolean verify(BigInteger p, BigInteger q, BigInteger g, BigInteger h, BigInteger c1, BigInteger c2,
+			byte[] context) {
+		return verifyAll(p, q, g, h, new BigInteger[] { c1 }, new BigInteger[] { c2 }, new VoteProof[] { this },
+				new byte[][] { context }, new Random());
+	}
+
+	/**
+	 * Checks many proofs at once (proof i is for ciphertext (c1[i], c2[i]) and context[i]).
+	 * Costs about as much as one multi-exponentiation over 6 bases per proof, most of them
+	 * with short exponents, instead of 8 full exponentiations per proof.
+	 *
+	 * @param p, q, g
+	 * 		the group (q must be prime)
+	 * @param h
+	 * 		the public key the votes are encrypted under
+	 * @param rand
+	 * 		source of the random powers; must not be predictable by the provers
+	 * @return true if every proof checks out
+	 */
+	public static boolean verifyAll(BigInteger p, BigInteger q, BigInteger g, BigInteger h, BigInteger[] c1,
+			BigInteger[] c2, VoteProof[] proofs, byte[][] context, Random rand) {
+		int n = proofs.length;
+		int batchBits = Math.min(BATCH_BITS, q.bitLength() - 1);
+		if (!inGroup(h, p, q)) {
+			return false;
+		}
+
+		// six bases per proof (a_0, a_1, b_0, b_1, c1, c2) plus g and h
+		BigInteger[] bases = new BigInteger[6 * n + 2];
+		BigInteger[] exponents = new BigInteger[6 * n + 2];
+		BigInteger gExp = BigInteger.ZERO;
+		BigInteger hExp = BigInteger.ZERO;
+
+		for (int i = 0; i < n; i++) {
+			VoteProof proof = proofs[i];
+			if (!proof.isWellFormed(p, q, c1[i], c2[i]) ||
+					!proof.e[0].add(proof.e[1]).mod(q).equals(
+							challenge(p, q, g, h, c1[i], c2[i], proof.a, proof.b, context[i]))) {
+				return false;
+			}
+
+			BigInteger c1Exp = BigInteger.ZERO;
+			BigInteger c2Exp = BigInteger.ZERO;
+
+			for (int k = 0; k < 2; k++) {
+				// a_k^delta * c1^(delta e_k) * g^(-delta r_k) = 1
+				BigInteger delta = new BigInteger(batchBits, rand);
+				bases[6 * i + k] = proof.a[k];
+				exponents[6 * i + k] = delta;
+				c1Exp = c1Exp.add(delta.multiply(proof.e[k]));
+				gExp = gExp.subtract(delta.multiply(proof.r[k]));
+
+				// b_k^gamma * c2^(gamma e_k) * g^(-k gamma e_k) * h^(-gamma r_k) = 1
+				BigInteger gamma = new BigInteger(batchBits, rand);
+				bases[6 * i + 2 + k] = proof.b[k];
+				exponents[6 * i + 2 + k] = gamma;
+				c2Exp = c2Exp.add(gamma.multiply(proof.e[k]));
+				gExp = gExp.subtract(gamma.multiply(proof.e[k]).multiply(BigInteger.valueOf(k)));
+				hExp = hExp.subtract(gamma.multiply(proof.r[k]));
+			}
+
+			bases[6 * i + 4] = c1[i];
+			exponents[6 * i + 4] = c1Exp.mod(q);
+			bases[6 * i + 5] = c2[i];
+			exponents[6 * i + 5] = c2Exp.mod(q);
+		}
+
+		bases[6 * n] = g;
+		exponents[6 * n] = gExp.mod(q);
+		bases[6 * n + 1] = h;
+		exponents[6 * n + 1] = hExp.mod(q);
+
+		return MultiExp.product(bases, exponents, p).equals(BigInteger.ONE);
+	}
+
+	/**
+	 * Finds the proofs that don't check out. A batch that passes costs one verifyAll; one
+	 * that fails is split in half until the bad proofs are found.
+	 *
+	 * @return the indices of the invalid proofs, in increasing order (empty if all are valid)
+	 */
+	public static List<Integer> findInvalid(BigInteger p, BigInteger q, BigInteger g, BigInteger h,
+			BigInteger[] c1, BigInteger[] c2, VoteProof[] proofs, byte[][] context, Random rand) {
+		List<Integer> invalid = new ArrayList<Integer>();
+		findInvalid(p, q, g, h, c1, c2, proofs, context, rand, 0, proofs.length, invalid);
+		return invalid;
+	}
+
+	private static void findInvalid(BigInteger p, BigInteger q, BigInteger g, BigInteger h, BigInteger[] c1,
+			BigInteger[] c2, VoteProof[] proofs, byte[][] context, Random rand, int from, int to, List<Integer> invalid) {
+		if (from >= to || verifyAll(p, q, g, h, Arrays.copyOfRange(c1, from, to), Arrays.copyOfRange(c2, from, to),
+				Arrays.copyOfRange(proofs, from, to), Arrays.copyOfRange(context, from, to), rand)) {
+			return;
+		}
+		if (to - from == 1) {
+			invalid.add(from);
+			return;
+		}
+
+		int mid = (from + to) >>> 1;
+		findInvalid(p, q, g, h, c1, c2, proofs, context, rand, from, mid, invalid);
+		findInvalid(p, q, g, h, c1, c2, proofs, context, rand, mid, to, invalid);
+	}
+
+	/**
+	 * Every element must be in the order q subgroup for the random powers to catch a bad proof
+	 * (and for exponents to be reduced mod q), and every scalar in [0, q).
+	 */
+	private boolean isWellFormed(BigInteger p, BigInteger q, BigInteger c1, BigInteger c2) {
+		if (a == null || b == null || e == null || r == null ||
+				a.length != 2 || b.length != 2 || e.length != 2 || r.length != 2) {
+			return false;
+		}
+
+		for (BigInteger x : new BigInteger[] { a[0], a[1], b[0], b[1], c1, c2 }) {
+			if (!inGroup(x, p, q)) {
+				return false;
+			}
+		}
+		for (BigInteger x : new BigInteger[] { e[0], e[1], r[0], r[1] }) {
+			if (x == null || x.signum() < 0 || x.compareTo(q) >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Whether x is in the order q subgroup of Z_p*. For a safe prime p = 2q + 1 that subgroup is
+	 * the quadratic residues, which a Jacobi symbol finds without an exponentiation.
+	 */
+	private static boolean inGroup(BigInteger x, BigInteger p, BigInteger q) {
+		if (x == null || x.signum() <= 0 || x.compareTo(p) >= 0) {
+			return false;
+		}
+		if (p.equals(q.shiftLeft(1).add(BigInteger.ONE))) {
+			return jacobi(x, p) == 1;
+		}
+		return x.modPow(q, p).equals(BigInteger.ONE);
+	}
+
+	// the Jacobi symbol (a/n) for odd n > 0
+	private static int jacobi(BigInteger a, BigInteger n) {
+		a = a.mod(n);
+		int result = 1;
+		while (a.signum() != 0) {
+			// (2/n) = -1 when n = 3 or 5 mod 8
+			int twos = a.getLowestSetBit();
+			a = a.shiftRight(twos);
+			int nMod8 = n.intValue() & 7;
+			if ((twos & 1) == 1 && (nMod8 == 3 || nMod8 == 5)) {
+				result = -result;
+			}
+
+			// quadratic reciprocity: (a/n) = -(n/a) when both are 3 mod 4
+			if ((a.intValue() & 3) == 3 && (n.intValue() & 3) == 3) {
+				result = -result;
+			}
+			BigInteger t = a;
+			a = n.mod(t);
+			n = t;
+		}
+		return n.equals(BigInteger.ONE) ? result : 0;
+	}
+
+	// H(context || p, g, h, c1, c2, a_0, b_0, a_1, b_1) mod q
+	private static BigInteger challenge(BigInteger p, BigInteger q, BigInteger g, BigInteger h, BigInteger c1,
+			BigInteger c2, BigInteger[] a, BigInteger[] b, byte[] context) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			for (BigInteger x : new BigInteger[] { p, g, h, c1, c2, a[0], b[0], a[1], b[1] }) {
+				byte[] encoded = x.toByteArray();
+				out.writeInt(encoded.length);
+				out.write(encoded);
+			}
+		} catch (IOException ex) {
+			// writing to memory doesn't fail
+			throw new IllegalStateException(ex);
+		}
+		return new BigInteger(1, MerkleTree.sha256(context, bytes.toByteArray())).mod(q);
+	}
+
+	// c2 / g^k
+	private static BigInteger shifted(BigInteger c2, int k, BigInteger p, BigInteger g) {
+		return (k == 0) ? c2 : c2.multiply(g.modInverse(p)).mod(p);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof VoteProof)) {
+			return false;
+		}
+		VoteProof other = (VoteProof) o;
+		return Arrays.equals(a, other.a) && Arrays.equals(b, other.b) &&
+				Arrays.equals(e, other.e) && Arrays.equals(r, other.r);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(a) * 31 + Arrays.hashCode(r);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("a=%s b=%s e=%s r=%s", Arrays.toString(a), Arrays.toString(b),
+				Arrays.toString(e), Arrays.toString(r));
+	}
+}
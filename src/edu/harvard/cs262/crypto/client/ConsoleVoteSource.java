@@ -0,0 +1,78 @@
+package edu.harvard.cs262.crypto.client;
+
+import java.util.Scanner;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import edu.harvard.cs262.crypto.EVote;
+import edu.harvard.cs262.crypto.Helpers;
+import edu.harvard.cs262.crypto.VPrint;
+
+/**
+ * Asks the user at the console how to vote.
+ * 
+ * Reading System.in can't be interrupted, so one daemon thread (shared by every console
+ * source, as they share System.in) reads lines as they are typed into a queue. A vote is
+ * taken from the queue the moment its line is entered, and an aborted ballot stops waiting
+ * right away instead of at the next line. Lines typed before a ballot arrives are dropped,
+ * since the user hadn't seen the proposal yet.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class ConsoleVoteSource implements VoteSource {
+	private static BlockingQueue<String> lines;
+	
+	private final VPrint log;
+	
+	/**
+	 * @param log
+	 * 		where to prompt the user
+	 */
+	public ConsoleVoteSource(VPrint log) {
+		this.log = log;
+	}
+	
+	/** Starts reading System.in the first time a console source needs it */
+	private static synchronized BlockingQueue<String> consoleLines() {
+		if (lines == null) {
+			final BlockingQueue<String> read = new LinkedBlockingQueue<String>();
+			Thread reader = Helpers.daemonThreadFactory("console").newThread(new Runnable() {
+				@Override
+				public void run() {
+					Scanner userInput = Helpers.nonClosingScanner(System.in);
+					while (userInput.hasNextLine()) {
+						read.add(userInput.nextLine());
+					}
+				}
+			});
+			reader.start();
+			lines = read;
+		}
+		return lines;
+	}
+	
+	@Override
+	public int getVote(EVote evote) throws InterruptedException {
+		BlockingQueue<String> input = consoleLines();
+		input.clear();
+		
+		log.print(VPrint.QUIET, "y: vote in favor");
+		log.print(VPrint.QUIET, "n: vote against");
+		log.print(VPrint.QUIET, "vote [y\\n]: ");
+		
+		while (true) {
+			String clientVote = input.take().trim();
+			if (clientVote.equals("y")) {
+				log.print(VPrint.QUIET, "you voted in favor of ballot %s", evote.id);
+				return 1;
+			}
+			else if (clientVote.equals("n")) {
+				log.print(VPrint.QUIET, "you voted against ballot %s", evote.id);
+				return 0;
+			}
+			else {
+				log.print(VPrint.QUIET, "try again [y\\n]: ");
+			}
+		}
+	}
+}
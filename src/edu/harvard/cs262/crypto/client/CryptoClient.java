@@ -12,6 +12,7 @@ import edu.harvard.cs262.crypto.cipher.CryptoCipher;
 import edu.harvard.cs262.crypto.cipher.KeyExchangeProtocol;
 import edu.harvard.cs262.crypto.exception.ClientNotFound;
 import edu.harvard.cs262.crypto.exception.EVoteInvalidResult;
+import edu.harvard.cs262.crypto.server.CryptoServer;
 /**
  * Interface for implementing a client that sends/receives encrypted messages.
  * Clients may also eavesdrop on other clients, simulating an attacker listening
@@ -173,6 +174,28 @@ public interface CryptoClient extends Remote {
 	 */
 	public void recvSecureChannel(String counterParty, KeyExchangeProtocol kx, CryptoCipher cipher) throws RemoteException, InterruptedException, ClientNotFound;
 	
+	/**
+	 * Take part in a private set intersection started by client "counterParty" (see
+	 * DHCryptoClient.intersect): blind its elements and this client's own set, and send them
+	 * back, so that counterParty learns which of its elements this client has and nothing else.
+	 * 
+	 * @param counterParty
+	 * 		The client that wants to learn the intersection
+	 * @param sid
+	 * 		The session id of the intersection
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public void recvIntersection(String counterParty, String sid) throws RemoteException, InterruptedException, ClientNotFound;
+	
+	/**
+	 * Tells the server whether this client can take part in evotes, so only clients that
+	 * can are enrolled in ballots.
+	 * 
+	 * @return true if the client supports evoting
+	 * @throws RemoteException
+	 */
+	public boolean supportsEVote() throws RemoteException;
+	
 	/*
 	 * Handlers for client to abort an e-vote if one if the other clients fail
 	 */
@@ -197,4 +220,23 @@ public interface CryptoClient extends Remote {
 	 * @throws RemoteException, ClientNotFound, InterruptedException, EVoteInvalidResult
 	 */
 	public void evote(EVote evote) throws RemoteException, ClientNotFound, InterruptedException, EVoteInvalidResult;
+	
+	/**
+	 * Picks up the evote the client is participating in with a server that took over the ballot
+	 * after the ballot's server crashed. The client takes the message that finished the last
+	 * phase the server has on record if it never got it, and resends what it posted after it.
+	 * 
+	 * @param server
+	 * 		The server now running the ballot
+	 * @param sid
+	 * 		The ballot
+	 * @param phasesDone
+	 * 		How many phases of the ballot the server has on record
+	 * @param outcome
+	 * 		The message that finished the last of them (null if none)
+	 * @return false if the client is not participating in the ballot
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public boolean evoteResume(CryptoServer server, String sid, int phasesDone, CryptoMessage outcome) 
+			throws RemoteException, ClientNotFound, InterruptedException;
 }
@@ -1,7 +1,15 @@
 package edu.harvard.cs262.crypto.client;
 
+import java.math.BigInteger;
 import java.rmi.RemoteException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
@@ -13,10 +21,12 @@ import java.util.concurrent.Future;
 import edu.harvard.cs262.crypto.CryptoMessage;
 import edu.harvard.cs262.crypto.EVote;
 import edu.harvard.cs262.crypto.VPrint;
+import edu.harvard.cs262.crypto.cipher.CommutativeBlinding;
 import edu.harvard.cs262.crypto.cipher.CryptoCipher;
 import edu.harvard.cs262.crypto.cipher.CryptoKey;
 import edu.harvard.cs262.crypto.cipher.DiffieHellman;
 import edu.harvard.cs262.crypto.cipher.ElGamalCipher;
+import edu.harvard.cs262.crypto.cipher.FingerprintTable;
 import edu.harvard.cs262.crypto.cipher.KeyExchangeProtocol;
 import edu.harvard.cs262.crypto.exception.ClientNotFound;
 import edu.harvard.cs262.crypto.exception.EVoteInvalidResult;
@@ -24,19 +34,41 @@ import edu.harvard.cs262.crypto.server.CryptoServer;
 
 /**
  * A CryptoClient that uses DiffieHellman key exchange and ElGamal encryption.
- * This client does not support e-voting.
+ * It can also intersect its set of identifiers with another client's without either of them
+ * revealing the rest (see intersect). This client does not support e-voting.
  *
  * @author Holly Anderson, Joshua Lee, and Tracy Lu
  */
 
 public class DHCryptoClient extends SimpleCryptoClient {	
+	/** elements sent in each message of a set intersection */
+	protected static final int INTERSECTION_BATCH = 1024;
+	
+	/*
+	 * The tags of set intersection messages, and the streams of an intersection: the
+	 * initiator's blinded elements, the responder's answer and blinded elements, and the
+	 * fingerprints of the initiator's elements blinded by both
+	 */
+	private static final String ACCEPTED_TAG = "intersection accepted";
+	private static final String REFUSED_TAG = "intersection refused";
+	private static final String BATCH_TAG = "intersection batch";
+	private static final String END_TAG = "intersection end";
+	private static final String INITIATOR_STREAM = "/initiator";
+	private static final String RESPONDER_STREAM = "/responder";
+	private static final String DOUBLED_STREAM = "/doubled";
+	
 	protected Map<String, CryptoCipher> ciphers;
 	protected Map<String, CryptoMessage> sessions;
 	
+	/** the set other clients intersect with (null to refuse) */
+	private volatile List<String> intersectionSet;
+	private final SecureRandom rand;
+	
 	public DHCryptoClient(String name, CryptoServer server) {
 		super(name, server);
 		this.ciphers = new ConcurrentHashMap<String, CryptoCipher>();
 		this.sessions = new ConcurrentHashMap<String, CryptoMessage>();
+		this.rand = new SecureRandom();
 	}
 	
 	/**
@@ -69,9 +101,12 @@ public class DHCryptoClient extends SimpleCryptoClient {
 		log.print(VPrint.DEBUG2, "(%s) recvMessage(%s, %s, m)", name, from, to);
 		
 		/*
-		 * Add message to message history
+		 * Add message to message history, except for batches of a set intersection
+		 * (they add up to hundreds of megabytes for large sets)
 		 */
-		recordMessage(from, to, m);
+		if (!(to.equals(name) && BATCH_TAG.equals(m.getTag()))) {
+			recordMessage(from, to, m);
+		}
 		
 		/*
 		 * Add message to session queue if it has a session id in order to
@@ -332,13 +367,11 @@ public class DHCryptoClient extends SimpleCryptoClient {
 		ExecutorService pool = Executors.newFixedThreadPool(2);
 		myFuture = pool.submit(new initSecureChannelCallable(counterParty, kx, this));
 		cpFuture = pool.submit(new recvSecureChannelCallable(counterParty, kx2, cipher2));
-		
-		/* myFuture doesn't finish until cpFuture finishes */
-		while (!cpFuture.isDone()) {}
+		pool.shutdown();
 		
 		/*
-		 * Check if counterparty succeeded or threw an error
-		 * (e.g. ClientNotFound)
+		 * myFuture doesn't finish until cpFuture finishes, so wait for cpFuture first
+		 * and check if counterparty succeeded or threw an error (e.g. ClientNotFound)
 		 */
 		try {
 			cpFuture.get();
@@ -368,6 +401,246 @@ public class DHCryptoClient extends SimpleCryptoClient {
 		return true;
 	}
 
+	/**
+	 * Sets the elements (e.g. identifiers) this client intersects with other clients' sets.
+	 * Without a set, the client refuses to take part in intersections.
+	 * 
+	 * @param elements
+	 * 		the set, or null
+	 */
+	public void setIntersectionSet(Collection<String> elements) {
+		this.intersectionSet = (elements != null) ? new ArrayList<String>(elements) : null;
+	}
+	
+	/**
+	 * Private set intersection: learn which of "elements" client "counterParty" has in its
+	 * intersection set (see setIntersectionSet), without either client seeing the rest of the
+	 * other's set. counterParty learns only how many elements this client has.
+	 * 
+	 * Both clients hash their elements into a group and blind them with a secret exponent (see
+	 * CommutativeBlinding). This client streams its blinded elements H(x)^a to counterParty in
+	 * batches, which blinds each batch again and sends back fingerprints of H(x)^(ab) in the
+	 * same order, while it streams its own blinded elements H(y)^b. This client blinds those
+	 * again into fingerprints of H(y)^(ba), and x is in the intersection when its H(x)^(ab)
+	 * fingerprint is among them. Each side blinds a batch in parallel, and the two clients
+	 * work on different batches at the same time.
+	 * 
+	 * @param counterParty
+	 * 		The client to intersect with
+	 * @param elements
+	 * 		This client's elements
+	 * @return the elements counterParty also has, or null if the intersection failed
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public Set<String> intersect(String counterParty, Collection<String> elements) throws RemoteException, ClientNotFound, InterruptedException {
+		final List<String> mine = new ArrayList<String>(elements);
+		final String sid = UUID.randomUUID().toString();
+		final BigInteger secret = CommutativeBlinding.newSecret(rand);
+		long start = System.nanoTime();
+		
+		log.print(VPrint.DEBUG2, "%s: intersect with %s", name, counterParty);
+		
+		/*
+		 * In one thread, tell the counterparty to take part. In two others, take its blinded
+		 * elements and the fingerprints of ours, while this thread sends ours.
+		 */
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		try {
+			final Future<Object> cpFuture = pool.submit(new relayIntersectionCallable(counterParty, sid));
+			
+			CryptoMessage answer = awaitIntersectionMessage(sid + RESPONDER_STREAM, cpFuture);
+			if (answer == null || !ACCEPTED_TAG.equals(answer.getTag())) {
+				log.print(VPrint.ERROR, "%s refused set intersection", counterParty);
+				return null;
+			}
+			final int theirSize = Integer.parseInt(answer.getPlainText());
+			
+			Future<long[]> theirs = pool.submit(new Callable<long[]>() {
+				public long[] call() throws Exception {
+					return receiveFingerprints(sid + RESPONDER_STREAM, theirSize, secret, cpFuture);
+				}
+			});
+			Future<long[]> doubled = pool.submit(new Callable<long[]>() {
+				public long[] call() throws Exception {
+					return receiveFingerprints(sid + DOUBLED_STREAM, mine.size(), null, cpFuture);
+				}
+			});
+			
+			sendBlinded(counterParty, mine, secret, sid + INITIATOR_STREAM);
+			
+			long[] theirFingerprints = theirs.get();
+			FingerprintTable table = new FingerprintTable(theirFingerprints, theirFingerprints.length);
+			long[] myFingerprints = doubled.get();
+			cpFuture.get();
+			
+			Set<String> intersection = new LinkedHashSet<String>();
+			for (int i = 0; i < mine.size(); i++) {
+				if (table.contains(myFingerprints[i])) {
+					intersection.add(mine.get(i));
+				}
+			}
+			
+			double seconds = (System.nanoTime() - start) / 1e9;
+			log.print(VPrint.LOUD, "intersected %d elements with %d of %s's in %.1f s (%.0f elements/s): %d in common",
+					mine.size(), theirSize, counterParty, seconds, (mine.size() + theirSize) / seconds, intersection.size());
+			return intersection;
+		} catch (ExecutionException e) {
+			log.print(VPrint.ERROR, "set intersection with %s failed: %s", counterParty, e.getCause().getMessage());
+			return null;
+		} catch (IllegalArgumentException e) {
+			log.print(VPrint.ERROR, "set intersection with %s failed: %s", counterParty, e.getMessage());
+			return null;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Take part in a private set intersection started by client "counterParty" (see intersect):
+	 * blind each batch of its elements again and send back their fingerprints, while sending
+	 * this client's intersection set blinded.
+	 * 
+	 * @param counterParty
+	 * 		The client that wants to learn the intersection
+	 * @param sid
+	 * 		The session id of the intersection
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public void recvIntersection(final String counterParty, final String sid) throws RemoteException, InterruptedException, ClientNotFound {
+		final List<String> mine = intersectionSet;
+		if (mine == null) {
+			log.print(VPrint.WARN, "no set to intersect with %s", counterParty);
+			sendIntersectionMessage(counterParty, "", sid + RESPONDER_STREAM, REFUSED_TAG);
+			return;
+		}
+		final BigInteger secret = CommutativeBlinding.newSecret(rand);
+		sendIntersectionMessage(counterParty, String.valueOf(mine.size()), sid + RESPONDER_STREAM, ACCEPTED_TAG);
+		
+		/* Send our blinded elements in another thread while blinding theirs in this one */
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		try {
+			Future<Object> sent = pool.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					sendBlinded(counterParty, mine, secret, sid + RESPONDER_STREAM);
+					return null;
+				}
+			});
+			
+			int blinded = 0;
+			CryptoMessage m;
+			while (!END_TAG.equals((m = waitForMessage(sid + INITIATOR_STREAM)).getTag())) {
+				long[] fingerprints = CommutativeBlinding.blindFingerprints(
+						CommutativeBlinding.valuesFromText(m.getPlainText()), secret);
+				sendIntersectionMessage(counterParty, CommutativeBlinding.toText(fingerprints), sid + DOUBLED_STREAM, BATCH_TAG);
+				blinded += fingerprints.length;
+			}
+			sendIntersectionMessage(counterParty, String.valueOf(blinded), sid + DOUBLED_STREAM, END_TAG);
+			
+			sent.get();
+			log.print(VPrint.LOUD, "intersected %d elements with %d of %s's", mine.size(), blinded, counterParty);
+		} catch (ExecutionException e) {
+			log.print(VPrint.ERROR, "set intersection with %s failed: %s", counterParty, e.getCause().getMessage());
+		} catch (IllegalArgumentException e) {
+			log.print(VPrint.ERROR, "set intersection with %s failed: %s", counterParty, e.getMessage());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Streams elements to client "to", hashed and blinded with secret, in batches of
+	 * INTERSECTION_BATCH, and then the number of elements sent.
+	 */
+	private void sendBlinded(String to, List<String> elements, BigInteger secret, String sid) throws RemoteException, ClientNotFound, InterruptedException {
+		for (int from = 0; from < elements.size(); from += INTERSECTION_BATCH) {
+			int end = Math.min(elements.size(), from + INTERSECTION_BATCH);
+			BigInteger[] blinded = CommutativeBlinding.hashAndBlind(elements, from, end, secret);
+			sendIntersectionMessage(to, CommutativeBlinding.toText(blinded), sid, BATCH_TAG);
+		}
+		sendIntersectionMessage(to, String.valueOf(elements.size()), sid, END_TAG);
+	}
+	
+	/**
+	 * Takes a stream of batches up to its end. With a secret, the batches are the counterparty's
+	 * blinded elements, which are blinded again into fingerprints; without one, they are
+	 * fingerprints already.
+	 * 
+	 * @return the fingerprints, exactly "expected" of them
+	 * @throws IllegalStateException
+	 * 		if the counterparty stops before the end or sends the wrong number of elements
+	 */
+	private long[] receiveFingerprints(String sid, int expected, BigInteger secret, Future<?> counterParty) throws InterruptedException {
+		long[] fingerprints = new long[expected];
+		int received = 0;
+		
+		CryptoMessage m;
+		while ((m = awaitIntersectionMessage(sid, counterParty)) != null && !END_TAG.equals(m.getTag())) {
+			long[] batch = (secret != null)
+					? CommutativeBlinding.blindFingerprints(CommutativeBlinding.valuesFromText(m.getPlainText()), secret)
+					: CommutativeBlinding.fingerprintsFromText(m.getPlainText());
+			if (received + batch.length > expected) {
+				throw new IllegalStateException(String.format("got more than the %d elements expected", expected));
+			}
+			System.arraycopy(batch, 0, fingerprints, received, batch.length);
+			received += batch.length;
+		}
+		
+		if (m == null) {
+			throw new IllegalStateException("counterparty stopped before the end of the intersection");
+		}
+		if (received != expected) {
+			throw new IllegalStateException(String.format("got %d elements, expected %d", received, expected));
+		}
+		return fingerprints;
+	}
+	
+	/**
+	 * Waits for a message of a set intersection, like waitForMessage, but gives up once the
+	 * counterparty's side of the intersection is done without sending it (e.g. it refused,
+	 * or failed).
+	 * 
+	 * @return the message, or null if the counterparty is done
+	 */
+	private CryptoMessage awaitIntersectionMessage(String sid, Future<?> counterParty) throws InterruptedException {
+		synchronized (sessions) {
+			while (!sessions.containsKey(sid)) {
+				if (counterParty.isDone()) {
+					return null;
+				}
+				sessions.wait(100);
+			}
+			CryptoMessage m = sessions.remove(sid);
+			sessions.notifyAll();
+			return m;
+		}
+	}
+	
+	private String sendIntersectionMessage(String to, String text, String sid, String tag) throws RemoteException, ClientNotFound, InterruptedException {
+		CryptoMessage m = new CryptoMessage(text, sid);
+		m.setTag(tag);
+		return server.sendMessage(name, to, m);
+	}
+	
+	/**
+	 * Class for creating callable object for the counterparty's side of a set intersection.
+	 * Needed in order to run it in a separate thread (it returns only once the counterparty is
+	 * done, while this client sends and receives its part).
+	 */
+	private class relayIntersectionCallable implements Callable<Object> {
+		private String counterParty;
+		private String sid;
+		
+		public relayIntersectionCallable(String cp, String sid) {
+			this.counterParty = cp;
+			this.sid = sid;
+		}
+		
+		public Object call() throws Exception {
+			server.relayIntersection(name, counterParty, sid);
+			return null;
+		}
+	}
+
 	/**
 	 * This DiffieHelman client cannot handle evoting, so it will just say so in the log
 	 * @param evote
@@ -2,11 +2,18 @@ package edu.harvard.cs262.crypto.client;
 
 import java.math.BigInteger;
 import java.rmi.ConnectException;
+import java.rmi.NoSuchObjectException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
-import java.util.Random;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -14,13 +21,25 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import edu.harvard.cs262.crypto.AggregateResult;
+import edu.harvard.cs262.crypto.BulletinProof;
+import edu.harvard.cs262.crypto.BulletinRoot;
 import edu.harvard.cs262.crypto.CryptoMessage;
 import edu.harvard.cs262.crypto.EVote;
+import edu.harvard.cs262.crypto.EVoteCiphertext;
+import edu.harvard.cs262.crypto.EVoteDealing;
 import edu.harvard.cs262.crypto.Helpers;
 import edu.harvard.cs262.crypto.VPrint;
 import edu.harvard.cs262.crypto.cipher.CryptoKey;
 import edu.harvard.cs262.crypto.cipher.DHTuple;
 import edu.harvard.cs262.crypto.cipher.ElGamalCipher;
+import edu.harvard.cs262.crypto.cipher.ExponentPool;
+import edu.harvard.cs262.crypto.cipher.FeldmanVSS;
+import edu.harvard.cs262.crypto.cipher.PackedEncoding;
+import edu.harvard.cs262.crypto.cipher.PaillierCipher;
+import edu.harvard.cs262.crypto.cipher.PaillierVoteProof;
+import edu.harvard.cs262.crypto.cipher.SchnorrSignature;
+import edu.harvard.cs262.crypto.cipher.VoteProof;
 import edu.harvard.cs262.crypto.exception.ClientNotFound;
 import edu.harvard.cs262.crypto.exception.EVoteInvalidResult;
 import edu.harvard.cs262.crypto.server.CryptoServer;
@@ -32,23 +51,73 @@ import edu.harvard.cs262.crypto.server.CryptoServer;
  */
 
 public class EVoteClient extends DHCryptoClient {		
+	// the most key pairs and encryption exponents kept ready for the next ballot
+	private static final int PRECOMPUTED = 32;
+	
 	 // thread that executes the evote -- stored in instance variable so it may be canceled
 	private Future<Object> currentVote;
 	
 	private Object currentVoteLock;
-	private Scanner userInput;
+	
+	// runs our evotes (its thread is kept between votes instead of made for each one)
+	private ExecutorService evotePool;
+	
+	// where our votes come from (the console unless told otherwise)
+	private volatile VoteSource voteSource;
+	
+	// where the values we contribute to aggregates come from (null if we have none)
+	private volatile MetricSource metricSource;
+	private AggregateResult lastAggregate;
+	
+	// messages we sent the server in the current vote, to check against its bulletin board
+	private List<CryptoMessage> posted;
+	
+	// the ballot we are voting in, and how many of its server messages we have taken
+	private String currentBallot;
+	private int received;
 	
 	// for testing
 	private Integer testVote;
+	private Boolean lastAudit;
+	
+	// random exponents x with g^x for the evote group, computed while we wait for a ballot
+	private ExponentPool precomputed;
+	
+	// the last roster we fetched, which ballots with the same roster version share
+	private List<String> roster;
+	private long rosterVersion;
 	
 	public EVoteClient(String name, CryptoServer server) {
 		super(name, server);
 		currentVoteLock = new Object();
 		currentVote = null;
-		userInput = Helpers.nonClosingScanner(System.in);
+		evotePool = Executors.newCachedThreadPool(Helpers.daemonThreadFactory(name + "-evote"));
+		precomputed = new ExponentPool(EVote.P, EVote.Q, EVote.G, PRECOMPUTED, name + "-precompute");
+		voteSource = new ConsoleVoteSource(log);
 		setTestVote(null);
 	}
 	
+	/**
+	 * Sets where the client's votes come from, in place of the console.
+	 * 
+	 * @param voteSource
+	 * 		the source of votes for the ballots to come
+	 */
+	public void setVoteSource(VoteSource voteSource) {
+		this.voteSource = voteSource;
+	}
+	
+	/**
+	 * Sets where the values the client contributes to private aggregates come from (see
+	 * EVoteServer.aggregate). Without one, the client can't take part in aggregates.
+	 * 
+	 * @param metricSource
+	 * 		the source of values for the aggregates to come
+	 */
+	public void setMetricSource(MetricSource metricSource) {
+		this.metricSource = metricSource;
+	}
+	
 	/**
 	 * Helper method that does the actual evoting in another thread. See comments below
 	 * for step by step walk through of evoting protocol.
@@ -57,13 +126,15 @@ public class EVoteClient extends DHCryptoClient {
 	 * 		The evote to participate in
 	 * @throws RemoteException, ClientNotFound
 	 */
-	private void doEvote(EVote evote) throws RemoteException, ClientNotFound {
+	private void doEvote(EVote evote) throws RemoteException, ClientNotFound, EVoteInvalidResult {
+		Future<Integer> decision = null;
 		
 		try {
-			long seed = (int) (Math.random() * 1000);
-			Random rand = new Random(seed);
 			String sid = evote.id.toString();
-			String serverName = server.getName();
+			synchronized (sessions) {
+				posted = new ArrayList<CryptoMessage>();
+				received = 0;
+			}
 			
 			/*
 			 * EVote phase one: 
@@ -74,14 +145,15 @@ public class EVoteClient extends DHCryptoClient {
 			log.print(VPrint.QUIET, "--------------------------------------");
 			log.print(VPrint.QUIET, "proposal: %s", evote.ballot);
 			
-			int yay_or_nay = 0;
-			String clientVote = "";
+			// an aggregate of our values rather than a vote
+			if (evote.isAggregate()) {
+				contribute(evote);
+				return;
+			}
 			
-			log.print(VPrint.QUIET, "y: vote in favor");
-			log.print(VPrint.QUIET, "n: vote against");
-			log.print(VPrint.QUIET, "vote [y\\n]: ");
+			int yay_or_nay = 0;
 			
-			// only accept input when not testing
+			// only ask the vote source when not testing
 			if (testVote != null) {
 				yay_or_nay = testVote.intValue();
 				
@@ -89,77 +161,82 @@ public class EVoteClient extends DHCryptoClient {
 				// for now we simulate failing whenever we are in test mode and
 				// we supply an invalid vote
 				if (yay_or_nay != 0 && yay_or_nay != 1) {
-					while (true) { }
+					while (true) {
+						Thread.sleep(Long.MAX_VALUE);
+					}
 				}
 			}
 			
-			while (testVote == null) {
-				while (!Helpers.concurrentHasNextLine(userInput)) {
-					try {
-						Thread.sleep(1000);
-					} catch (InterruptedException e) {
-						log.print(VPrint.DEBUG, "scanner interrupted");
-						throw e;
-					}					
-				}
-				
-				if (Thread.currentThread().isInterrupted()) {
-					throw new InterruptedException();
-				}
-				
-				clientVote = userInput.nextLine();
-				if (clientVote.equals("y")) {
-					log.print(VPrint.QUIET, "you voted in favor of ballot %s", sid);
-					yay_or_nay = 1;
-					break;
-				}
-				else if (clientVote.equals("n")) {
-					log.print(VPrint.QUIET, "you voted against ballot %s", sid);
-					yay_or_nay = 0;
-					break;
-				}
-				else {
-					log.print(VPrint.QUIET, "try again [y\\n]: ");
-				}
+			else {
+				// the vote isn't needed until our keys are set up, so decide it meanwhile
+				decision = evotePool.submit(new decideCallable(evote));
 			}
 			
 			log.print(VPrint.QUIET, "tallying vote...");
 			
+			if (evote.isPaillier()) {
+				paillierVote(evote, decision, yay_or_nay);
+				return;
+			}
+			
 			/*
 			 * EVote phase two: 
 			 * each client generates own secret key and sends to server
+			 * (the key pair is usually precomputed, so this is just a lookup)
 			 */
-			BigInteger sk_i = (new BigInteger(evote.BITS, rand)).mod(evote.p);
-			BigInteger pk_i = evote.g.modPow(sk_i, evote.p);
+			BigInteger[] keyPair = randomExponent(evote);
+			BigInteger sk_i = keyPair[0];
+			BigInteger pk_i = keyPair[1];
 			
 			log.print(VPrint.DEBUG, "g=%s, p=%s", evote.g, evote.p);
 			log.print(VPrint.DEBUG, "sk_i=%s, pk_i=%s", sk_i, pk_i);
 			
 			CryptoMessage phaseTwo = new CryptoMessage(pk_i.toString(), sid);
 			phaseTwo.setTag("secret key partition");
-			server.recvMessage(getName(), serverName, phaseTwo);
-			CryptoMessage pkMsg = waitForMessage(sid);
+			postToServer(phaseTwo);
+			CryptoMessage pkMsg = waitForServer(sid);
+			
+			/*
+			 * Threshold evotes only:
+			 * deal shares of sk_i to the other voters, then combine the shares dealt to us
+			 * into our share of the election secret key
+			 */
+			CryptoKey electionKey = new CryptoKey(sk_i, 
+					new DHTuple(evote.p, evote.g, new BigInteger(pkMsg.getPlainText())), evote.BITS);
+			if (evote.isThreshold()) {
+				electionKey = dealKeyShares(evote, sk_i, pk_i, pkMsg);
+			}
+			BigInteger decryptionKey = (BigInteger) electionKey.getPrivate();
 			
 			/*
 			 * EVote phase four:
 			 * client decides vote and encrypts using ElGamal 
 			 */
+			if (decision != null) {
+				yay_or_nay = awaitDecision(evote, decision);
+			}
 			
 			// since for now we only do the encryption phase,
 			// we only have to set the public key
 			ElGamalCipher EGCipher = new ElGamalCipher();
-			DHTuple	dht = new DHTuple(evote.p, evote.g, 
-					new BigInteger(pkMsg.getPlainText()));
-
-			CryptoKey publicKey = new CryptoKey(null, dht, evote.BITS);
+			CryptoKey publicKey = new CryptoKey(null, electionKey.getPublic(), evote.BITS);
 			EGCipher.setKey(publicKey);
 			
+			// with precomputed randomness y, only pk^y is left to compute
 			BigInteger vote = evote.g.pow(yay_or_nay).mod(evote.p);
-			CryptoMessage encryptedVote = EGCipher.encryptInteger(vote);
+			BigInteger[] y = randomExponent(evote);
+			CryptoMessage encryptedVote = EGCipher.encryptInteger(vote, y[0], y[1]);
 			encryptedVote.setSessionID(sid);
 			
+			// prove the vote is 0 or 1 without saying which, so the server can reject bad votes up front
+			BigInteger electionPk = ((DHTuple) electionKey.getPublic()).xhat;
+			VoteProof proof = VoteProof.prove(evote.p, evote.q, evote.g, electionPk, y[1], 
+					new BigInteger(encryptedVote.getCipherText()), yay_or_nay, y[0], randomExponent(evote), 
+					EVoteCiphertext.proofContext(sid, name), new SecureRandom());
+			encryptedVote.setEncryptionState(new EVoteCiphertext(y[1], proof));
+			
 			encryptedVote.setTag("encrypted vote");
-			server.recvMessage(name, serverName, encryptedVote);
+			postToServer(encryptedVote);
 			
 			/*
 			 * EVote phase 6:
@@ -168,23 +245,24 @@ public class EVoteClient extends DHCryptoClient {
 			 * compute (c1)^(sk_i) and send to server
 			 */
 			
-			CryptoMessage combinedCipher = waitForMessage(sid);
+			CryptoMessage combinedCipher = waitForServer(sid);
 			BigInteger c1 = (BigInteger) combinedCipher.getEncryptionState();
 			BigInteger c2 = new BigInteger(combinedCipher.getPlainText());
-			BigInteger encryptedC1 = c1.modPow(sk_i, evote.p);
+			BigInteger encryptedC1 = c1.modPow(decryptionKey, evote.p);
 			
 			CryptoMessage decryptKeyPart = new CryptoMessage(encryptedC1.toString(), sid);
 			decryptKeyPart.setTag("decryption key partition");
-			server.recvMessage(name, serverName, decryptKeyPart);
+			postToServer(decryptKeyPart);
 			
 			/*
 			 * EVote phase 8:
 			 * clients use decodingKey to decode message 
 			 */
 			int numYays, numNays;
-			int numVoters = evote.voters.size();
 			
-			CryptoMessage decodingKeyMsg = waitForMessage(sid);
+			// only the ballots actually cast are counted if some voters dropped out
+			CryptoMessage decodingKeyMsg = waitForServer(sid);
+			int numVoters = (Integer) decodingKeyMsg.getEncryptionState();
 			BigInteger decodingKey = new BigInteger(decodingKeyMsg.getPlainText());
 			BigInteger voteResult = c2.multiply(decodingKey.modInverse(evote.p)).mod(evote.p);
 			
@@ -209,8 +287,479 @@ public class EVoteClient extends DHCryptoClient {
 			else {
 				log.print(VPrint.QUIET, "[REJECTED] ballot %s", sid);
 			}
+			
+			lastAudit = auditBoard(evote);
 		} catch (InterruptedException e) {
 			log.print(VPrint.DEBUG, "evoting thread closed due to interuption: %s", e.getMessage());
+		} finally {
+			if (decision != null) {
+				decision.cancel(true);
+			}
+		}
+	}
+	
+	/**
+	 * Votes in a Paillier evote (see EVoteServer.doPaillierEvote). As in an ElGamal evote we make
+	 * the ballot's key together with the other voters, send our encrypted vote with a proof that
+	 * it is 0 or 1, and then partially decrypt the encrypted tally with our part of the key. The
+	 * tally can't be decrypted without every voter's partial decryption.
+	 * 
+	 * @param evote
+	 * 		The evote being voted on
+	 * @param decision
+	 * 		The vote source's pending decision (null when testing)
+	 * @param testVote
+	 * 		The vote to use when testing
+	 * @throws RemoteException, ClientNotFound, InterruptedException, EVoteInvalidResult
+	 * 		if the ballot's modulus isn't EVote.PAILLIER_N
+	 */
+	private void paillierVote(EVote evote, Future<Integer> decision, int testVote) 
+			throws RemoteException, ClientNotFound, InterruptedException, EVoteInvalidResult {
+		String sid = evote.id.toString();
+		BigInteger n = evote.paillierN;
+		
+		// whoever knows the factors of the modulus could read every vote, and nobody knows those of PAILLIER_N
+		if (!EVote.PAILLIER_N.equals(n)) {
+			String error = String.format("Paillier ballot %s does not use the standard modulus", sid);
+			log.print(VPrint.ERROR, error);
+			throw new EVoteInvalidResult(error);
+		}
+		BigInteger n2 = n.multiply(n);
+		SecureRandom rand = new SecureRandom();
+		
+		// our part of the ballot's key
+		BigInteger x_i = PaillierCipher.randomExponent(n, rand);
+		CryptoMessage keyPart = new CryptoMessage(PaillierCipher.generator(n).modPow(x_i, n2).toString(), sid);
+		keyPart.setTag("secret key partition");
+		postToServer(keyPart);
+		BigInteger publicKey = new BigInteger(waitForServer(sid).getPlainText());
+		
+		int yay_or_nay = (decision != null) ? awaitDecision(evote, decision) : testVote;
+		
+		BigInteger r = PaillierCipher.randomExponent(n, rand);
+		BigInteger[] c = PaillierCipher.jointEncrypt(BigInteger.valueOf(yay_or_nay), r, publicKey, n);
+		PaillierVoteProof proof = PaillierVoteProof.prove(n, publicKey, c, yay_or_nay, r, 
+				EVoteCiphertext.proofContext(sid, name), rand);
+		
+		CryptoMessage encryptedVote = new CryptoMessage(Integer.toString(yay_or_nay), c[1].toString(), sid);
+		encryptedVote.setEncryptionState(new EVoteCiphertext(c[0], proof));
+		encryptedVote.setTag("encrypted vote");
+		postToServer(encryptedVote);
+		
+		// the server multiplies the votes into an encryption (A, B) of the tally
+		CryptoMessage tallyMsg = waitForServer(sid);
+		BigInteger tallyA = (BigInteger) tallyMsg.getEncryptionState();
+		BigInteger tallyB = new BigInteger(tallyMsg.getPlainText());
+		
+		CryptoMessage partial = new CryptoMessage(PaillierCipher.partialDecrypt(tallyA, x_i, n).toString(), sid);
+		partial.setTag("decryption key partition");
+		postToServer(partial);
+		
+		// B divided by the product of the partial decryptions is 1 + (# yes) * N
+		CryptoMessage decryptedMsg = waitForServer(sid);
+		int numVoters = (Integer) decryptedMsg.getEncryptionState();
+		int numYays;
+		try {
+			numYays = PaillierCipher.jointDecrypt(tallyB, new BigInteger(decryptedMsg.getPlainText()), n).intValue();
+		} catch (IllegalArgumentException e) {
+			log.print(VPrint.ERROR, "evote failed: %s", e.getMessage());
+			return;
+		}
+		if (numYays > numVoters) {
+			log.print(VPrint.ERROR, "evote failed: tally %d is more than the %d voters", numYays, numVoters);
+			return;
+		}
+		int numNays = numVoters - numYays;
+		
+		log.print(VPrint.QUIET, "ballot %s vote results", sid);
+		log.print(VPrint.QUIET, "---------------------------------------------------------");
+		log.print(VPrint.QUIET, "in favor: %s", numYays);
+		log.print(VPrint.QUIET, "against: %s", numNays);
+		
+		if (numYays > numNays) {
+			log.print(VPrint.QUIET, "[PASSED] ballot %s", sid);
+		}
+		else {
+			log.print(VPrint.QUIET, "[REJECTED] ballot %s", sid);
+		}
+		
+		lastAudit = auditBoard(evote);
+	}
+	
+	/**
+	 * Contributes our values to a private aggregate (see EVoteServer.doAggregate). As in a
+	 * Paillier evote we make the key together with the other clients; we send our values packed
+	 * into as few ciphertexts as they fit in, and then partially decrypt each encrypted sum with
+	 * our part of the key. Only the sums over every client can be decrypted.
+	 * 
+	 * @param evote
+	 * 		The aggregate
+	 * @throws RemoteException, ClientNotFound, InterruptedException, EVoteInvalidResult
+	 * 		if we have no values, or values of the wrong length or size, or the aggregate's
+	 * 		modulus isn't EVote.PAILLIER_N
+	 */
+	private void contribute(EVote evote) throws RemoteException, ClientNotFound, InterruptedException, EVoteInvalidResult {
+		String sid = evote.id.toString();
+		BigInteger n = evote.paillierN;
+		
+		// as in paillierVote, only a modulus nobody can factor keeps our values secret
+		if (!EVote.PAILLIER_N.equals(n)) {
+			String error = String.format("aggregate %s does not use the standard modulus", sid);
+			log.print(VPrint.ERROR, error);
+			throw new EVoteInvalidResult(error);
+		}
+		BigInteger n2 = n.multiply(n);
+		SecureRandom rand = new SecureRandom();
+		
+		// our part of the aggregate's key
+		BigInteger x_i = PaillierCipher.randomExponent(n, rand);
+		CryptoMessage keyPart = new CryptoMessage(PaillierCipher.generator(n).modPow(x_i, n2).toString(), sid);
+		keyPart.setTag("secret key partition");
+		postToServer(keyPart);
+		BigInteger publicKey = new BigInteger(waitForServer(sid).getPlainText());
+		
+		MetricSource source = metricSource;
+		long[] values = (source != null) ? source.getValues(evote) : null;
+		if (values == null || values.length != evote.aggregateLength) {
+			String error = String.format("no %d values for aggregate %s", evote.aggregateLength, sid);
+			log.print(VPrint.ERROR, error);
+			throw new EVoteInvalidResult(error);
+		}
+		
+		PackedEncoding encoding = evote.getEncoding();
+		BigInteger[] packed;
+		try {
+			packed = encoding.pack(values);
+		} catch (IllegalArgumentException e) {
+			String error = String.format("aggregate %s: %s", sid, e.getMessage());
+			log.print(VPrint.ERROR, error);
+			throw new EVoteInvalidResult(error);
+		}
+		
+		// A_1, ..., A_k, B_1, ..., B_k
+		int k = packed.length;
+		BigInteger[] ciphertexts = new BigInteger[2 * k];
+		for (int j = 0; j < k; j++) {
+			BigInteger[] c = PaillierCipher.jointEncrypt(packed[j], PaillierCipher.randomExponent(n, rand), publicKey, n);
+			ciphertexts[j] = c[0];
+			ciphertexts[k + j] = c[1];
+		}
+		CryptoMessage encryptedValues = new CryptoMessage("", PackedEncoding.toText(ciphertexts), sid);
+		encryptedValues.setTag("encrypted values");
+		postToServer(encryptedValues);
+		
+		// the server multiplies each ciphertext over the clients into an encryption of the sums
+		BigInteger[] sums = PackedEncoding.fromText(waitForServer(sid).getPlainText());
+		if (sums.length != 2 * k) {
+			String error = String.format("aggregate %s: got %d encrypted sums, expected %d", sid, sums.length / 2, k);
+			log.print(VPrint.ERROR, error);
+			throw new EVoteInvalidResult(error);
+		}
+		BigInteger[] partials = new BigInteger[k];
+		for (int j = 0; j < k; j++) {
+			partials[j] = PaillierCipher.partialDecrypt(sums[j], x_i, n);
+		}
+		CryptoMessage partial = new CryptoMessage(PackedEncoding.toText(partials), sid);
+		partial.setTag("decryption key partition");
+		postToServer(partial);
+		
+		// B_j divided by the product of the partial decryptions of sum j is 1 + (packed sums) * N
+		CryptoMessage decryptedMsg = waitForServer(sid);
+		int contributors = (Integer) decryptedMsg.getEncryptionState();
+		BigInteger[] decrypted = PackedEncoding.fromText(decryptedMsg.getPlainText());
+		BigInteger[] packedSums = new BigInteger[k];
+		try {
+			if (decrypted.length != k) {
+				throw new IllegalArgumentException(String.format("got %d partial decryptions, expected %d", decrypted.length, k));
+			}
+			for (int j = 0; j < k; j++) {
+				packedSums[j] = PaillierCipher.jointDecrypt(sums[k + j], decrypted[j], n);
+			}
+		} catch (IllegalArgumentException e) {
+			log.print(VPrint.ERROR, "aggregate failed: %s", e.getMessage());
+			return;
+		}
+		
+		lastAggregate = new AggregateResult(evote.ballot, sid, contributors, encoding.unpack(packedSums, evote.aggregateLength));
+		log.print(VPrint.QUIET, "aggregate %s \"%s\" sums: %s", sid, evote.ballot, Arrays.toString(lastAggregate.sums));
+		
+		lastAudit = auditBoard(evote);
+	}
+	
+	/** Asks the vote source how to vote on a ballot */
+	private class decideCallable implements Callable<Integer> {
+		private EVote evote;
+		
+		public decideCallable(EVote evote) {
+			this.evote = evote;
+		}
+		
+		@Override
+		public Integer call() throws InterruptedException {
+			return voteSource.getVote(evote);
+		}
+	}
+	
+	/**
+	 * Waits for the vote source's decision on a ballot.
+	 * 
+	 * @return 1 to vote in favor, 0 to vote against
+	 * @throws InterruptedException, EVoteInvalidResult if the source failed or didn't give a vote
+	 */
+	private int awaitDecision(EVote evote, Future<Integer> decision) throws InterruptedException, EVoteInvalidResult {
+		int vote;
+		try {
+			vote = decision.get();
+		} catch (ExecutionException e) {
+			String error = String.format("no vote for ballot %s: %s", evote.id, e.getCause().getMessage());
+			log.print(VPrint.ERROR, error);
+			throw new EVoteInvalidResult(error);
+		}
+		
+		if (vote != 0 && vote != 1) {
+			String error = String.format("vote source gave %d for ballot %s (must be 0 or 1)", vote, evote.id);
+			log.print(VPrint.ERROR, error);
+			throw new EVoteInvalidResult(error);
+		}
+		return vote;
+	}
+	
+	/**
+	 * Threshold key generation (Pedersen's protocol with Feldman secret sharing). Deals a share
+	 * of sk_i to every other voter, encrypted under that voter's g^(sk_j), then checks each share
+	 * dealt to us against its dealer's commitments. Our share of the election key is the sum of
+	 * the shares dealt to us (including our own); any "threshold" of these shares can decrypt.
+	 * 
+	 * Voters who drop out before dealing are left out, so the election public key is the
+	 * product of g^(sk_j) over the voters whose shares we were dealt (and our own).
+	 * 
+	 * @param evote
+	 * 		The evote being voted on
+	 * @param sk_i
+	 * 		This voter's secret key
+	 * @param pk_i
+	 * 		This voter's public key g^(sk_i)
+	 * @param pkMsg
+	 * 		The server's message with every voter's public key g^(sk_j)
+	 * @return this voter's share of the election secret key and the election public key
+	 * @throws RemoteException, ClientNotFound, InterruptedException, EVoteInvalidResult
+	 */
+	@SuppressWarnings("unchecked")
+	private CryptoKey dealKeyShares(EVote evote, BigInteger sk_i, BigInteger pk_i, CryptoMessage pkMsg) 
+			throws RemoteException, ClientNotFound, InterruptedException, EVoteInvalidResult {
+		String sid = evote.id.toString();
+		Map<String, BigInteger> voterKeys = (Map<String, BigInteger>) pkMsg.getEncryptionState();
+		
+		// each voter's share is evaluated at its place in the roster
+		fetchRoster(evote);
+		
+		// a random polynomial with constant term sk_i; its coefficients and their commitments
+		// g^(a_k) are precomputed pairs
+		BigInteger[] poly = new BigInteger[evote.threshold];
+		BigInteger[] commitments = new BigInteger[evote.threshold];
+		poly[0] = sk_i;
+		commitments[0] = pk_i;
+		for (int k = 1; k < evote.threshold; k++) {
+			BigInteger[] coefficient = randomExponent(evote);
+			poly[k] = coefficient[0];
+			commitments[k] = coefficient[1];
+		}
+		
+		BigInteger keyShare = BigInteger.ZERO;
+		HashMap<String, CryptoMessage> shares = new HashMap<String, CryptoMessage>();
+		ElGamalCipher shareCipher = new ElGamalCipher();
+		
+		for (String voter : voterKeys.keySet()) {
+			BigInteger share = FeldmanVSS.evaluate(poly, evote.indexOf(voter), evote.q);
+			
+			if (voter.equals(name)) {
+				keyShare = share;
+			}
+			else {
+				// shares are encoded as share + 1 since ElGamal can't encrypt 0
+				DHTuple dht = new DHTuple(evote.p, evote.g, voterKeys.get(voter));
+				shareCipher.setKey(new CryptoKey(null, dht, evote.BITS));
+				BigInteger[] y = randomExponent(evote);
+				CryptoMessage encrypted = shareCipher.encryptInteger(share.add(BigInteger.ONE), y[0], y[1]);
+				
+				// the server relays the share, so send it only the cipher text
+				CryptoMessage relayed = new CryptoMessage("", encrypted.getCipherText(), "");
+				relayed.setEncryptionState(encrypted.getEncryptionState());
+				shares.put(voter, relayed);
+			}
+		}
+		
+		CryptoMessage dealing = new CryptoMessage(Arrays.toString(commitments), sid);
+		dealing.setEncryptionState(new EVoteDealing(commitments, shares));
+		dealing.setTag("secret key dealing");
+		postToServer(dealing);
+		
+		/*
+		 * Collect and check the shares dealt to us
+		 */
+		Map<String, EVoteDealing> dealt = (Map<String, EVoteDealing>) waitForServer(sid).getEncryptionState();
+		CryptoKey myKey = new CryptoKey(sk_i, new DHTuple(evote.p, evote.g, voterKeys.get(name)), evote.BITS);
+		shareCipher.setKey(myKey);
+		int myIndex = evote.indexOf(name);
+		BigInteger jointPk = voterKeys.get(name);
+		
+		for (Map.Entry<String, EVoteDealing> entry : dealt.entrySet()) {
+			String dealer = entry.getKey();
+			EVoteDealing d = entry.getValue();
+			BigInteger share = new BigInteger(shareCipher.decryptInteger(d.shares.get(name))).subtract(BigInteger.ONE);
+			
+			if (!d.commitments[0].equals(voterKeys.get(dealer)) ||
+					!FeldmanVSS.verifyShare(share, myIndex, d.commitments, evote.g, evote.p, evote.q)) {
+				String error = String.format("invalid key share dealt by %s", dealer);
+				log.print(VPrint.ERROR, error);
+				throw new EVoteInvalidResult(error);
+			}
+			
+			keyShare = keyShare.add(share).mod(evote.q);
+			jointPk = jointPk.multiply(d.commitments[0]).mod(evote.p);
+		}
+		
+		log.print(VPrint.DEBUG, "key share from %d dealers: %s", dealt.size() + 1, keyShare);
+		return new CryptoKey(keyShare, new DHTuple(evote.p, evote.g, jointPk), evote.BITS);
+	}
+	
+	/**
+	 * A random exponent x with g^x for the evote's group, precomputed if the evote uses the
+	 * group we precompute for.
+	 * 
+	 * @return {x, g^x mod p}
+	 */
+	private BigInteger[] randomExponent(EVote evote) {
+		if (precomputed.isFor(evote.p, evote.q, evote.g)) {
+			return precomputed.take();
+		}
+		
+		BigInteger x = SchnorrSignature.generateKey(evote.q, new SecureRandom());
+		return new BigInteger[] { x, evote.g.modPow(x, evote.p) };
+	}
+	
+	/** 
+	 * Sends the server a message for the current vote, remembering it for the audit. If the 
+	 * server has gone down, the message is kept for when the ballot is resumed (see evoteResume).
+	 */
+	private void postToServer(CryptoMessage m) throws RemoteException, ClientNotFound, InterruptedException {
+		CryptoServer to;
+		synchronized (sessions) {
+			posted.add(m);
+			to = server;
+		}
+		
+		try {
+			to.recvMessage(name, to.getName(), m);
+		} catch (ConnectException | NoSuchObjectException e) {
+			log.print(VPrint.WARN, "could not reach server, waiting for the ballot to be resumed: %s", e.getMessage());
+		}
+	}
+	
+	/** Waits for the server's next message in the current vote */
+	private CryptoMessage waitForServer(String sid) throws RemoteException, InterruptedException {
+		synchronized (sessions) {
+			CryptoMessage m = waitForMessage(sid);
+			received++;
+			return m;
+		}
+	}
+	
+	/**
+	 * Checks the ballot's bulletin board: its root must be signed with the board key we were
+	 * given with the ballot, and every message we sent must be on the board unchanged.
+	 * We only fetch our own messages, each with an inclusion proof of O(log n) hashes.
+	 * 
+	 * @param evote
+	 * 		The evote that was voted on
+	 * @return true if the board checks out
+	 * @throws RemoteException
+	 */
+	private boolean auditBoard(EVote evote) throws RemoteException {
+		String sid = evote.id.toString();
+		
+		try {
+			fetchRoster(evote);
+		} catch (EVoteInvalidResult e) {
+			log.print(VPrint.ERROR, "[AUDIT FAILED] %s", e.getMessage());
+			return false;
+		}
+		if (!evote.getRoster().contains(name)) {
+			log.print(VPrint.ERROR, "[AUDIT FAILED] ballot %s roster does not include us", sid);
+			return false;
+		}
+		BulletinRoot root = server.getBoardRoot(sid);
+		
+		if (root == null || !root.publicKey.equals(evote.boardKey) || !root.verify()) {
+			log.print(VPrint.ERROR, "[AUDIT FAILED] ballot %s board root is not signed with the board key", sid);
+			return false;
+		}
+		
+		List<BulletinProof> proofs = server.findBoardEntries(sid, name, root.size);
+		if (proofs.size() != posted.size()) {
+			log.print(VPrint.ERROR, "[AUDIT FAILED] ballot %s board has %d of our messages, we sent %d", 
+					sid, proofs.size(), posted.size());
+			return false;
+		}
+		
+		for (int i = 0; i < proofs.size(); i++) {
+			BulletinProof proof = proofs.get(i);
+			CryptoMessage sent = posted.get(i);
+			CryptoMessage onBoard = proof.message;
+			
+			boolean matches = proof.author.equals(name) && 
+					onBoard.getTag().equals(sent.getTag()) &&
+					onBoard.getCipherText().equals(sent.getCipherText()) &&
+					(sent.isEncrypted() || onBoard.getPlainText().equals(sent.getPlainText())) &&
+					(!(sent.getEncryptionState() instanceof BigInteger || sent.getEncryptionState() instanceof EVoteCiphertext) || 
+							sent.getEncryptionState().equals(onBoard.getEncryptionState()));
+			
+			if (!matches || !proof.verify(root)) {
+				log.print(VPrint.ERROR, "[AUDIT FAILED] ballot %s board entry %d (%s) does not match what we sent", 
+						sid, proof.index, sent.getTag());
+				return false;
+			}
+		}
+		
+		log.print(VPrint.QUIET, "[AUDIT OK] ballot %s board has our %d messages (%s)", sid, proofs.size(), root);
+		return true;
+	}
+	
+	/**
+	 * Fills in the names of a ballot's voters, which the server doesn't send with the ballot.
+	 * They are fetched from the server, unless the last roster we fetched has the same version,
+	 * and checked against the ballot's roster hash either way.
+	 * 
+	 * @param evote
+	 * 		the ballot
+	 * @throws RemoteException, EVoteInvalidResult if the server has no roster for the ballot or the wrong one
+	 */
+	private void fetchRoster(EVote evote) throws RemoteException, EVoteInvalidResult {
+		if (evote.hasRoster()) {
+			return;
+		}
+		
+		synchronized (sessions) {
+			if (roster != null && rosterVersion == evote.rosterVersion) {
+				try {
+					evote.setRoster(roster);
+					return;
+				} catch (EVoteInvalidResult e) {
+					// a new server reused the version number, so fetch the roster after all
+				}
+			}
+		}
+		
+		String sid = evote.id.toString();
+		List<String> names = server.getRoster(sid);
+		if (names == null) {
+			throw new EVoteInvalidResult(String.format("server has no roster for ballot %s", sid));
+		}
+		evote.setRoster(names);
+		
+		synchronized (sessions) {
+			roster = names;
+			rosterVersion = evote.rosterVersion;
 		}
 	}
 	
@@ -226,9 +775,12 @@ public class EVoteClient extends DHCryptoClient {
 		}
 		
 		@Override
-		public Object call() {
+		public Object call() throws EVoteInvalidResult {
 			try {
 				doEvote(evote);
+			} catch (EVoteInvalidResult e) {
+				// we can't go on with this ballot, so let the server know now rather than at its timeout
+				throw e;
 			} catch (Exception e) {
 				log.print(VPrint.ERROR, e.getMessage());
 			}
@@ -237,6 +789,17 @@ public class EVoteClient extends DHCryptoClient {
 		}
 	}
 	
+	/**
+	 * This client can take part in evotes.
+	 * 
+	 * @return true
+	 * @throws RemoteException
+	 */
+	@Override
+	public boolean supportsEVote() throws RemoteException {
+		return true;
+	}
+	
 	/**
 	 * Aborts an evote, if client is currently engaged in one. An evote will be aborted by the server
 	 * if any of the clients crash or take too long to respond. 
@@ -290,18 +853,15 @@ public class EVoteClient extends DHCryptoClient {
 				throw new EVoteInvalidResult(error);
 			}
 			else {				
-				ExecutorService pool = Executors.newSingleThreadExecutor();
 				evoteCallable evoteCall = new evoteCallable(evote);
-				evoteFuture = pool.submit(evoteCall);
+				evoteFuture = evotePool.submit(evoteCall);
 				currentVote = evoteFuture;
+				currentBallot = evote.id.toString();
 			}
 		}
 		
-		while (!evoteFuture.isDone()) {
-			// block until the vote finishes or throws an error
-		}
-		
 		try {
+			// block until the vote finishes or throws an error
 			evoteFuture.get();
 		} catch (ExecutionException e) {
 			String msg = e.getCause().getMessage();
@@ -321,14 +881,59 @@ public class EVoteClient extends DHCryptoClient {
 				
 	}
 
+	/**
+	 * Picks up the current evote with a server that took over the ballot after its server crashed.
+	 * The server tells us how many phases of the ballot it has on record and the message that
+	 * finished the last of them; we take that message if we never got it, and resend the
+	 * messages we posted after it, which the old server lost.
+	 * 
+	 * @param server
+	 * 		The server now running the ballot
+	 * @param sid
+	 * 		The ballot
+	 * @param phasesDone
+	 * 		How many phases the server has on record
+	 * @param outcome
+	 * 		The message that finished the last of them (null if none)
+	 * @return false if we are not voting in the ballot
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public boolean evoteResume(CryptoServer server, String sid, int phasesDone, CryptoMessage outcome) 
+			throws RemoteException, ClientNotFound, InterruptedException {
+		synchronized (currentVoteLock) {
+			if (currentVote == null || !sid.equals(currentBallot)) {
+				log.print(VPrint.WARN, "asked to resume ballot %s, but not voting in it", sid);
+				return false;
+			}
+		}
+		
+		List<CryptoMessage> lost;
+		synchronized (sessions) {
+			this.server = server;
+			
+			if (received < phasesDone && outcome != null && !sessions.containsKey(sid)) {
+				sessions.put(sid, outcome);
+				sessions.notifyAll();
+			}
+			
+			lost = new ArrayList<CryptoMessage>(posted.subList(Math.min(phasesDone, posted.size()), posted.size()));
+		}
+		
+		log.print(VPrint.QUIET, "resuming ballot %s with %s after %d phases", sid, server.getName(), phasesDone);
+		for (CryptoMessage m : lost) {
+			server.recvMessage(name, server.getName(), m);
+		}
+		return true;
+	}
+
 	/**
 	 * Console line application to allow users to perform the evoting via console.
 	 */
 	public static void main(String args[]) {
 		Scanner scan;
 		
-		if (args.length != 3) {
-			System.err.println("usage: java EVoteClient rmiHost rmiPort serverName");
+		if (args.length != 3 && args.length != 4) {
+			System.err.println("usage: java EVoteClient rmiHost rmiPort serverName [voteScript]");
 			System.exit(1);
 		}		
 
@@ -357,7 +962,10 @@ public class EVoteClient extends DHCryptoClient {
 					clientName = scan.nextLine().trim();
 				}
 			
-				CryptoClient myClient = new EVoteClient(clientName, server);
+				EVoteClient myClient = new EVoteClient(clientName, server);
+				if (args.length == 4) {
+					myClient.setVoteSource(new ScriptedVoteSource(Paths.get(args[3])));
+				}
 				CryptoClient myClientSer = ((CryptoClient)UnicastRemoteObject.exportObject(myClient, 0));
 				
 				// attempt registration				
@@ -380,6 +988,19 @@ public class EVoteClient extends DHCryptoClient {
 		}
 	}
 	
+	/** @return the sums of the last aggregate we contributed to (null if there was none) */
+	public AggregateResult getLastAggregate() {
+		return lastAggregate;
+	}
+	
+	/**
+	 * Whether the bulletin board of the last completed vote checked out (null if none).
+	 * THIS FUNCTION IS FOR TESTING ONLY.
+	 */
+	public Boolean getLastAudit() {
+		return lastAudit;
+	}
+	
 	/**
 	 * THIS FUNCTION IS FOR TESTING ONLY.
 	 */
@@ -0,0 +1,25 @@
+package edu.harvard.cs262.crypto.client;
+
+import edu.harvard.cs262.crypto.EVote;
+
+/**
+ * Votes the same way on every ballot, without waiting.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class FixedVoteSource implements VoteSource {
+	private final int vote;
+	
+	/**
+	 * @param inFavor
+	 * 		true to vote in favor of every ballot, false to vote against
+	 */
+	public FixedVoteSource(boolean inFavor) {
+		this.vote = inFavor ? 1 : 0;
+	}
+	
+	@Override
+	public int getVote(EVote evote) {
+		return vote;
+	}
+}
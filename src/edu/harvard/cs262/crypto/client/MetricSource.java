@@ -0,0 +1,27 @@
+package edu.harvard.cs262.crypto.client;
+
+import edu.harvard.cs262.crypto.EVote;
+
+/**
+ * Where an EVoteClient gets the values it contributes to private aggregates (see
+ * EVoteServer.aggregate), e.g. its telemetry counters. The values are encrypted before they
+ * leave the client, and the server only ever decrypts their sums over every contributor.
+ *
+ * Like VoteSource, getValues is run on the client's evote thread when an aggregate starts.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public interface MetricSource {
+	
+	/**
+	 * Give the values to contribute to an aggregate.
+	 *
+	 * @param aggregate
+	 * 		the aggregate (aggregate.ballot is its name, aggregate.aggregateLength the number
+	 * 		of values and aggregate.valueBits their size)
+	 * @return aggregate.aggregateLength values, each in [0, 2^aggregate.valueBits)
+	 * @throws InterruptedException
+	 * 		if the aggregate is aborted while collecting the values
+	 */
+	long[] getValues(EVote aggregate) throws InterruptedException;
+}
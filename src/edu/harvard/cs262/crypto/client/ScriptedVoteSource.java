@@ -0,0 +1,90 @@
+package edu.harvard.cs262.crypto.client;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import edu.harvard.cs262.crypto.EVote;
+
+/**
+ * Votes from a script file, read once when the source is made. Each line of the script is
+ * one of
+ * 
+ *   y                  vote in favor of the next ballot
+ *   n                  vote against the next ballot
+ *   proposal = y|n     vote on every ballot with exactly this proposal
+ * 
+ * Votes for a proposal take precedence over the ones for the next ballot. Blank lines and
+ * lines starting with # are skipped. A ballot the script has no vote left for fails (and the
+ * server carries on without the voter or aborts, as for any voter that fails).
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class ScriptedVoteSource implements VoteSource {
+	private final Queue<Integer> inOrder;
+	private final Map<String, Integer> byProposal;
+	
+	/**
+	 * @param script
+	 * 		the script file
+	 * @throws IOException
+	 * 		if the script can't be read, or has a line that isn't a vote
+	 */
+	public ScriptedVoteSource(Path script) throws IOException {
+		this(Files.readAllLines(script, Charset.forName("UTF-8")));
+	}
+	
+	/**
+	 * @param lines
+	 * 		the lines of a script
+	 * @throws IOException
+	 * 		if a line isn't a vote
+	 */
+	public ScriptedVoteSource(List<String> lines) throws IOException {
+		inOrder = new LinkedList<Integer>();
+		byProposal = new HashMap<String, Integer>();
+		
+		for (String line : lines) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			
+			int eq = line.lastIndexOf('=');
+			if (eq < 0) {
+				inOrder.add(parseVote(line));
+			}
+			else {
+				byProposal.put(line.substring(0, eq).trim(), parseVote(line.substring(eq + 1).trim()));
+			}
+		}
+	}
+	
+	private static int parseVote(String vote) throws IOException {
+		if (vote.equals("y")) {
+			return 1;
+		}
+		else if (vote.equals("n")) {
+			return 0;
+		}
+		throw new IOException(String.format("'%s' is not a vote (y or n)", vote));
+	}
+	
+	@Override
+	public synchronized int getVote(EVote evote) {
+		Integer vote = byProposal.get(evote.ballot);
+		if (vote == null) {
+			vote = inOrder.poll();
+		}
+		if (vote == null) {
+			throw new IllegalStateException(String.format("the vote script has no vote for ballot '%s'", evote.ballot));
+		}
+		return vote;
+	}
+}
@@ -256,6 +256,31 @@ public class SimpleCryptoClient implements CryptoClient {
 		return;
 	}
 	
+	/**
+	 * This simple client cannot handle set intersections, so it will just say so in the log.
+	 * 
+	 * @param counterParty
+	 * 		The client that wants to learn the intersection
+	 * @param sid
+	 * 		The session id of the intersection
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public void recvIntersection(String counterParty, String sid)
+			throws RemoteException, InterruptedException, ClientNotFound {
+		log.print(VPrint.ERROR, "simple client does not support set intersections");
+		return;
+	}
+	
+	/**
+	 * This simple client cannot handle evoting.
+	 * 
+	 * @return false
+	 * @throws RemoteException
+	 */
+	public boolean supportsEVote() throws RemoteException {
+		return false;
+	}
+	
 	/** 
 	 * This simple client actually cannot handle evoting, so it will just say so in the log.
 	 * 
@@ -279,4 +304,16 @@ public class SimpleCryptoClient implements CryptoClient {
 		log.print(VPrint.ERROR, "simple client does not support evoting");
 		return;
 	}
+	
+	/**
+	 * This simple client actually cannot handle evoting, so it will just say so in the log.
+	 * 
+	 * @return false, since the client is never participating in an evote
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public boolean evoteResume(CryptoServer server, String sid, int phasesDone, CryptoMessage outcome) 
+			throws RemoteException, ClientNotFound, InterruptedException {
+		log.print(VPrint.ERROR, "simple client does not support evoting");
+		return false;
+	}
 }
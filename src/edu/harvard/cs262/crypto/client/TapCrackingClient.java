@@ -0,0 +1,521 @@
+package edu.harvard.cs262.crypto.client;
+
+import java.math.BigInteger;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import edu.harvard.cs262.crypto.CryptoMessage;
+import edu.harvard.cs262.crypto.Helpers;
+import edu.harvard.cs262.crypto.VPrint;
+import edu.harvard.cs262.crypto.attack.ParameterReport;
+import edu.harvard.cs262.crypto.attack.PohligHellman;
+import edu.harvard.cs262.crypto.cipher.CryptoKey;
+import edu.harvard.cs262.crypto.cipher.DHTuple;
+import edu.harvard.cs262.crypto.cipher.DiffieHellman;
+import edu.harvard.cs262.crypto.cipher.ElGamalCipher;
+import edu.harvard.cs262.crypto.server.CryptoServer;
+
+/**
+ * An eavesdropper that breaks the DiffieHellman exchanges it overhears and reads the ElGamal
+ * messages that follow them as they go by.
+ *
+ * Tapped messages (see eavesdrop) are handed to a single tap thread, so the attack never holds
+ * up the victims' sends. The tap thread picks out key exchanges: two unencrypted messages in
+ * opposite directions with the same protocol id (a UUID session id), each carrying its sender's
+ * g^x. Once both halves are in, a pool of crack threads recovers both secrets with
+ * Pohlig-Hellman and gives the tap thread an ElGamal cipher for each direction (a message to A
+ * decrypts with A's secret and B's g^y, just as A decrypts it). The ciphertexts between the pair
+ * that were tapped while the keys were being cracked (the backlog) are then decrypted in order,
+ * and later ones as soon as they are tapped. A new exchange between the same pair takes over
+ * from the messages after it.
+ *
+ * The time from tapping a ciphertext to its plaintext, and from tapping an exchange to its keys,
+ * are kept for the report. Ciphertexts between a pair whose exchange was never overheard can't
+ * be read and are only counted.
+ *
+ * Eavesdropping on both ends of a pair delivers each of their messages twice, and the copies
+ * are dropped (so are identical messages between them, which only repeat if the cipher's
+ * randomness does).
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class TapCrackingClient extends DHCryptoClient {
+	/** latencies kept for the report */
+	public static final int SAMPLES = 4096;
+
+	// half finished exchanges kept (the oldest is dropped first), and uncopied messages per direction
+	private static final int HALF_EXCHANGES = 1024;
+	private static final int UNCOPIED = 64;
+
+	private final BigInteger p;
+	private final BigInteger g;
+	private final int bits;
+
+	private final PohligHellman solver;
+	private final boolean ownsSolver;
+	private final ExecutorService tap;
+	private final ExecutorService crack;
+
+	// the clients tapped, whose messages to each other arrive twice
+	private final Set<String> victims;
+
+	/*
+	 * State of the tap thread: session id => first half of an exchange, pair (in name order)
+	 * => its latest exchange, and direction => messages between two victims whose copy is due
+	 */
+	private final Map<String, Tapped> halfExchanges;
+	private final Map<ClientPair, Channel> channels;
+	private final Map<ClientPair, LinkedList<CryptoMessage>> uncopied;
+
+	// what was read, with the counts and latencies (guarded by plaintexts)
+	private final Map<ClientPair, List<String>> plaintexts;
+	private int decrypted;
+	private int unreadable;
+	private int keysRecovered;
+	private final long[] latencies;
+	private final long[] keyLatencies;
+
+	/** A tapper with its own Pohlig-Hellman engine and one crack thread per core */
+	public TapCrackingClient(String name, CryptoServer server) {
+		this(name, server, new PohligHellman(), Runtime.getRuntime().availableProcessors(), true);
+	}
+
+	/**
+	 * @param solver
+	 * 		the engine that breaks the exchanges (shared, e.g. with other tappers)
+	 * @param crackThreads
+	 * 		the number of exchanges broken at once
+	 */
+	public TapCrackingClient(String name, CryptoServer server, PohligHellman solver, int crackThreads) {
+		this(name, server, solver, crackThreads, false);
+	}
+
+	private TapCrackingClient(String name, CryptoServer server, PohligHellman solver, int crackThreads, boolean ownsSolver) {
+		super(name, server);
+
+		DiffieHellman dh = new DiffieHellman();
+		this.p = dh.getP();
+		this.g = dh.getG();
+		this.bits = dh.getBits();
+
+		this.solver = solver;
+		this.ownsSolver = ownsSolver;
+		this.tap = Executors.newSingleThreadExecutor(Helpers.daemonThreadFactory(name + "-tap"));
+		this.crack = Executors.newFixedThreadPool(crackThreads, Helpers.daemonThreadFactory(name + "-crack"));
+
+		this.victims = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		this.halfExchanges = new LinkedHashMap<String, Tapped>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Tapped> eldest) {
+				return size() > HALF_EXCHANGES;
+			}
+		};
+		this.channels = new HashMap<ClientPair, Channel>();
+		this.uncopied = new HashMap<ClientPair, LinkedList<CryptoMessage>>();
+
+		this.plaintexts = new HashMap<ClientPair, List<String>>();
+		this.latencies = new long[SAMPLES];
+		this.keyLatencies = new long[SAMPLES];
+
+		log.print(VPrint.DEBUG, "tapping %s", ParameterReport.analyze(new DHTuple(p, g, null)));
+	}
+
+	/** A message as it was tapped */
+	private static class Tapped {
+		final String from;
+		final String to;
+		final CryptoMessage m;
+		final long tappedAt;
+
+		Tapped(String from, String to, CryptoMessage m, long tappedAt) {
+			this.from = from;
+			this.to = to;
+			this.m = m;
+			this.tappedAt = tappedAt;
+		}
+	}
+
+	/** An exchange between a and b, and the ciphers that read their messages once it is broken */
+	private static class Channel {
+		final String a;
+		final String b;
+		final BigInteger aHat;
+		final BigInteger bHat;
+		final long tappedAt;
+
+		ElGamalCipher toA;
+		ElGamalCipher toB;
+		boolean failed;
+
+		// ciphertexts tapped before the keys were recovered
+		final List<Tapped> backlog = new ArrayList<Tapped>();
+
+		Channel(String a, String b, BigInteger aHat, BigInteger bHat, long tappedAt) {
+			this.a = a;
+			this.b = b;
+			this.aHat = aHat;
+			this.bHat = bHat;
+			this.tappedAt = tappedAt;
+		}
+	}
+
+	/**
+	 * Eavesdrop on a victim: its exchanges are broken and its messages read from now on.
+	 *
+	 * @param victim
+	 * 		The client that you want to eavesdrop on
+	 * @throws RemoteException
+	 */
+	public void eavesdrop(String victim) throws RemoteException {
+		super.eavesdrop(victim);
+		if (!name.equals(victim)) {
+			victims.add(victim);
+		}
+	}
+
+	public void stopEavesdrop(String victim) throws RemoteException {
+		super.stopEavesdrop(victim);
+		victims.remove(victim);
+	}
+
+	/**
+	 * Messages to this client are received as by DHCryptoClient. Tapped messages are queued for
+	 * the tap thread and their ciphertext (or plaintext, if they aren't encrypted) returned.
+	 */
+	public String recvMessage(String from, String to, CryptoMessage m) throws InterruptedException {
+		if (to.equals(name)) {
+			return super.recvMessage(from, to, m);
+		}
+
+		final Tapped t = new Tapped(from, to, m, System.nanoTime());
+		try {
+			tap.execute(new Runnable() {
+				public void run() {
+					tapped(t);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			log.print(VPrint.WARN, "tapper is shut down, dropping %s-%s", from, to);
+		}
+		return m.isEncrypted() ? m.getCipherText() : m.getPlainText();
+	}
+
+	/** Handles a tapped message (on the tap thread) */
+	private void tapped(Tapped t) {
+		if (isCopy(t)) {
+			return;
+		}
+		recordMessage(t.from, t.to, t.m);
+
+		if (!t.m.isEncrypted()) {
+			BigInteger hat = exchangeHalf(t.m);
+			if (hat != null) {
+				exchanged(t, hat);
+			}
+			return;
+		}
+
+		Channel channel = channels.get(pair(t.from, t.to));
+		if (channel == null || channel.failed) {
+			log.print(VPrint.DEBUG, "no key for %s-%s", t.from, t.to);
+			synchronized (plaintexts) {
+				unreadable++;
+			}
+		} else if (channel.toA == null) {
+			channel.backlog.add(t);
+		} else {
+			read(channel, t);
+		}
+	}
+
+	/** @return true if t is the second copy of a message between two victims */
+	private boolean isCopy(Tapped t) {
+		if (!victims.contains(t.from) || !victims.contains(t.to)) {
+			return false;
+		}
+
+		ClientPair direction = new ClientPair(t.from, t.to);
+		LinkedList<CryptoMessage> due = uncopied.get(direction);
+		if (due == null) {
+			due = new LinkedList<CryptoMessage>();
+			uncopied.put(direction, due);
+		}
+		for (Iterator<CryptoMessage> it = due.iterator(); it.hasNext();) {
+			if (sameMessage(it.next(), t.m)) {
+				it.remove();
+				return true;
+			}
+		}
+
+		due.add(t.m);
+		if (due.size() > UNCOPIED) {
+			due.removeFirst();
+		}
+		return false;
+	}
+
+	private static boolean sameMessage(CryptoMessage a, CryptoMessage b) {
+		if (a == b) {
+			return true;
+		}
+		if (!a.getSessionID().equals(b.getSessionID()) || !a.getCipherText().equals(b.getCipherText())) {
+			return false;
+		}
+		if (a.isEncrypted()) {
+			return a.getEncryptionState() != null && a.getEncryptionState().equals(b.getEncryptionState());
+		}
+		return a.getPlainText().equals(b.getPlainText());
+	}
+
+	/** @return the g^x in m if it looks like half of a DiffieHellman exchange, otherwise null */
+	private BigInteger exchangeHalf(CryptoMessage m) {
+		if (!m.hasSessionID() || m.hasTag()) {
+			return null;
+		}
+		try {
+			UUID.fromString(m.getSessionID());
+			BigInteger hat = new BigInteger(m.getPlainText());
+			return (hat.compareTo(BigInteger.ONE) > 0 && hat.compareTo(p) < 0) ? hat : null;
+		} catch (IllegalArgumentException e) {
+			// not a protocol id, or not a number
+			return null;
+		}
+	}
+
+	/** Pairs up the halves of an exchange and starts breaking it */
+	private void exchanged(Tapped t, BigInteger hat) {
+		String sid = t.m.getSessionID();
+		Tapped first = halfExchanges.get(sid);
+		if (first == null) {
+			halfExchanges.put(sid, t);
+			return;
+		}
+		if (!first.from.equals(t.to) || !first.to.equals(t.from)) {
+			return;
+		}
+		halfExchanges.remove(sid);
+
+		Channel channel = new Channel(first.from, t.from, new BigInteger(first.m.getPlainText()), hat, t.tappedAt);
+		channels.put(pair(t.from, t.to), channel);
+		log.print(VPrint.DEBUG, "tapped exchange %s between %s and %s", sid, channel.a, channel.b);
+
+		try {
+			crack.execute(new crackTask(channel));
+		} catch (RejectedExecutionException e) {
+			channel.failed = true;
+		}
+	}
+
+	/** Breaks an exchange on a crack thread and hands the ciphers back to the tap thread */
+	private class crackTask implements Runnable {
+		private final Channel channel;
+
+		crackTask(Channel channel) {
+			this.channel = channel;
+		}
+
+		public void run() {
+			ElGamalCipher toA = null;
+			ElGamalCipher toB = null;
+			try {
+				BigInteger a = solver.solve(new DHTuple(p, g, channel.aHat));
+				BigInteger b = solver.solve(new DHTuple(p, g, channel.bHat));
+				toA = cipher(a, channel.bHat);
+				toB = cipher(b, channel.aHat);
+			} catch (IllegalArgumentException e) {
+				log.print(VPrint.ERROR, "can't break the exchange between %s and %s: %s", channel.a, channel.b, e.getMessage());
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			final ElGamalCipher cipherToA = toA;
+			final ElGamalCipher cipherToB = toB;
+			try {
+				tap.execute(new Runnable() {
+					public void run() {
+						cracked(channel, cipherToA, cipherToB);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// shut down
+			}
+		}
+	}
+
+	/** @return a cipher that decrypts messages to the owner of secret, from the owner of otherHat */
+	private ElGamalCipher cipher(BigInteger secret, BigInteger otherHat) {
+		ElGamalCipher cipher = new ElGamalCipher();
+		cipher.setKey(new CryptoKey(secret, new DHTuple(p, g, otherHat), bits));
+		return cipher;
+	}
+
+	/** Installs the ciphers of a broken exchange and reads its backlog (on the tap thread) */
+	private void cracked(Channel channel, ElGamalCipher toA, ElGamalCipher toB) {
+		if (toA == null) {
+			channel.failed = true;
+			synchronized (plaintexts) {
+				unreadable += channel.backlog.size();
+			}
+			channel.backlog.clear();
+			return;
+		}
+
+		channel.toA = toA;
+		channel.toB = toB;
+		synchronized (plaintexts) {
+			keyLatencies[keysRecovered % SAMPLES] = System.nanoTime() - channel.tappedAt;
+			keysRecovered++;
+		}
+		log.print(VPrint.LOUD, "broke the exchange between %s and %s (%d messages waiting)", channel.a, channel.b,
+				channel.backlog.size());
+
+		for (Tapped t : channel.backlog) {
+			read(channel, t);
+		}
+		channel.backlog.clear();
+	}
+
+	private void read(Channel channel, Tapped t) {
+		String plaintext = (t.to.equals(channel.a) ? channel.toA : channel.toB).decrypt(t.m);
+		long latency = System.nanoTime() - t.tappedAt;
+
+		ClientPair direction = new ClientPair(t.from, t.to);
+		synchronized (plaintexts) {
+			List<String> read = plaintexts.get(direction);
+			if (read == null) {
+				read = new ArrayList<String>();
+				plaintexts.put(direction, read);
+			}
+			read.add(plaintext);
+			latencies[decrypted % SAMPLES] = latency;
+			decrypted++;
+			plaintexts.notifyAll();
+		}
+	}
+
+	/** @return the pair of a and b, in name order */
+	private static ClientPair pair(String a, String b) {
+		return (a.compareTo(b) <= 0) ? new ClientPair(a, b) : new ClientPair(b, a);
+	}
+
+	/** @return (from, to) => the plaintexts read so far between them, in the order sent */
+	public Map<ClientPair, List<String>> getPlaintexts() {
+		synchronized (plaintexts) {
+			Map<ClientPair, List<String>> copy = new HashMap<ClientPair, List<String>>();
+			for (Map.Entry<ClientPair, List<String>> read : plaintexts.entrySet()) {
+				copy.put(read.getKey(), new ArrayList<String>(read.getValue()));
+			}
+			return copy;
+		}
+	}
+
+	/**
+	 * Waits until count messages in all have been read.
+	 *
+	 * @return true if they were, false if the time ran out first
+	 */
+	public boolean waitForPlaintexts(int count, long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		synchronized (plaintexts) {
+			while (decrypted < count) {
+				long left = deadline - System.currentTimeMillis();
+				if (left <= 0) {
+					return false;
+				}
+				plaintexts.wait(left);
+			}
+			return true;
+		}
+	}
+
+	/** @return the number of ciphertexts read */
+	public int getDecryptedCount() {
+		synchronized (plaintexts) {
+			return decrypted;
+		}
+	}
+
+	/** @return the number of ciphertexts that can't be read (their exchange wasn't overheard or broken) */
+	public int getUnreadableCount() {
+		synchronized (plaintexts) {
+			return unreadable;
+		}
+	}
+
+	/** @return the number of exchanges broken */
+	public int getKeysRecovered() {
+		synchronized (plaintexts) {
+			return keysRecovered;
+		}
+	}
+
+	/**
+	 * A point of the distribution of the time from tapping a ciphertext to its plaintext, over
+	 * the latest SAMPLES ciphertexts read.
+	 *
+	 * @param percentile
+	 * 		the percentile, from 0 to 100 (50 for the median)
+	 * @return the latency in milliseconds, or 0 if nothing was read
+	 */
+	public double getLatencyMillis(double percentile) {
+		synchronized (plaintexts) {
+			return latencyMillis(latencies, decrypted, percentile);
+		}
+	}
+
+	/** The same as getLatencyMillis, for the time from tapping an exchange to its keys */
+	public double getKeyLatencyMillis(double percentile) {
+		synchronized (plaintexts) {
+			return latencyMillis(keyLatencies, keysRecovered, percentile);
+		}
+	}
+
+	private static double latencyMillis(long[] ring, int count, double percentile) {
+		int n = Math.min(count, SAMPLES);
+		if (n == 0) {
+			return 0;
+		}
+
+		long[] sorted = Arrays.copyOf(ring, n);
+		Arrays.sort(sorted);
+		int rank = (int) Math.ceil(percentile / 100 * n) - 1;
+		return sorted[Math.min(n - 1, Math.max(0, rank))] / 1e6;
+	}
+
+	/** @return a table of the latency distributions, and the counts */
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-20s %8s %10s %10s %10s %10s%n", "tap to", "count", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+		sb.append(String.format("%-20s %8d %10.2f %10.2f %10.2f %10.2f%n", "keys", getKeysRecovered(),
+				getKeyLatencyMillis(50), getKeyLatencyMillis(90), getKeyLatencyMillis(99), getKeyLatencyMillis(100)));
+		sb.append(String.format("%-20s %8d %10.2f %10.2f %10.2f %10.2f%n", "plaintext", getDecryptedCount(),
+				getLatencyMillis(50), getLatencyMillis(90), getLatencyMillis(99), getLatencyMillis(100)));
+		sb.append(String.format("unreadable ciphertexts: %d%n", getUnreadableCount()));
+		return sb.toString();
+	}
+
+	/** Stops the tap and crack threads (and the Pohlig-Hellman engine, if the tapper made it) */
+	public void shutdown() {
+		tap.shutdownNow();
+		crack.shutdownNow();
+		if (ownsSolver) {
+			solver.shutdown();
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package edu.harvard.cs262.crypto.client;
+
+import edu.harvard.cs262.crypto.EVote;
+
+/**
+ * Where an EVoteClient gets its votes from. The client asks as soon as a ballot arrives and
+ * sets up its keys for the ballot in the meantime, so the answer is only waited for when the
+ * encrypted vote is due. A source that already knows its answer (see FixedVoteSource) or an
+ * application deciding in code costs the ballot nothing.
+ * 
+ * Applications that decide each ballot themselves implement this interface directly: getVote
+ * is the callback, run on the client's evote thread.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public interface VoteSource {
+	
+	/**
+	 * Decide a vote.
+	 * 
+	 * @param evote
+	 * 		the ballot being voted on (evote.ballot is the proposal)
+	 * @return 1 to vote in favor, 0 to vote against
+	 * @throws InterruptedException
+	 * 		if the ballot is aborted while deciding
+	 */
+	int getVote(EVote evote) throws InterruptedException;
+}
@@ -0,0 +1,302 @@
+package edu.harvard.cs262.crypto.server;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.harvard.cs262.crypto.AggregateResult;
+import edu.harvard.cs262.crypto.EVote;
+
+/**
+ * Server-side state of an evote in progress: the voters still taking part and the
+ * accumulator for the phase currently being collected, plus the bulletin board holding the
+ * ballot's public transcript.
+ *
+ * A ballot with a quorum below its number of voters is dropout tolerant: voters who fail or
+ * stop responding are excluded and the ballot carries on without them, as long as the quorum
+ * remains. A threshold ballot's quorum is its threshold unless one is given (see
+ * EVote.quorum), and it can drop voters in any phase. Without a threshold every key in the
+ * election key is needed to decrypt, so voters can only be dropped before they send theirs.
+ * Any other ballot needs every voter.
+ *
+ * In a tree of servers, the participants of a ballot are the server's own voters plus its
+ * sub-servers, and a sub-server's ballot also knows the parent it reports to.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+class Ballot {
+	private final EVote evote;
+
+	// voters who have not dropped out
+	private final Set<String> participants;
+	private final int numParticipants;
+	
+	// the server this ballot's partial results go to (null if this server tallies the vote)
+	private final String parent;
+
+	private volatile PhaseAccumulator current;
+	
+	// set when the ballot is aborted
+	private volatile String abortReason;
+	
+	// told when the ballot is aborted
+	private volatile Runnable abortListener;
+	
+	// told when a phase is opened
+	private volatile Runnable phaseListener;
+	
+	private final BulletinBoard board;
+	
+	// true if the ballot is in the server's BallotLog
+	private volatile boolean logged;
+	
+	// when the ballot started (ms since the epoch), and how long each completed phase took
+	private final long startedAt;
+	private final Map<EVotePhase, Long> phaseMillis;
+	
+	// the sums, once a private aggregate has been decrypted
+	private volatile AggregateResult aggregateResult;
+
+	public Ballot(EVote evote) {
+		this(evote, evote.voters, null);
+	}
+	
+	/**
+	 * @param evote
+	 * 		the ballot
+	 * @param participants
+	 * 		the voters (and sub-servers) this server collects contributions from
+	 * @param parent
+	 * 		the server this server reports to, or null if this server tallies the vote
+	 */
+	public Ballot(EVote evote, Set<String> participants, String parent) {
+		this(evote, participants, parent, new BulletinBoard(evote));
+	}
+	
+	/**
+	 * @param evote
+	 * 		the ballot
+	 * @param participants
+	 * 		the voters (and sub-servers) this server collects contributions from
+	 * @param parent
+	 * 		the server this server reports to, or null if this server tallies the vote
+	 * @param board
+	 * 		the ballot's bulletin board (e.g. one rebuilt from a BallotLog)
+	 */
+	public Ballot(EVote evote, Set<String> participants, String parent, BulletinBoard board) {
+		this.evote = evote;
+		this.parent = parent;
+		this.participants = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		this.participants.addAll(participants);
+		numParticipants = participants.size();
+		this.board = board;
+		startedAt = System.currentTimeMillis();
+		phaseMillis = Collections.synchronizedMap(new EnumMap<EVotePhase, Long>(EVotePhase.class));
+	}
+
+	public EVote getEVote() {
+		return evote;
+	}
+
+	/** @return the voters still taking part in the ballot */
+	public Set<String> getParticipants() {
+		return participants;
+	}
+
+	public String getParent() {
+		return parent;
+	}
+	
+	public BulletinBoard getBoard() {
+		return board;
+	}
+	
+	public PhaseAccumulator getCurrentPhase() {
+		return current;
+	}
+
+	/**
+	 * Marks the ballot as aborted (by the parent server, a voter leaving or the protocol finding
+	 * a fault) and tells the abort listener, which does the actual abort.
+	 */
+	public void abort(String reason) {
+		abortReason = reason;
+		
+		Runnable listener = abortListener;
+		if (listener != null) {
+			listener.run();
+		}
+	}
+	
+	/**
+	 * Sets what to run when the ballot is aborted. The listener is not run for
+	 * an abort that happened before it was set, so check getAbortReason afterwards.
+	 */
+	public void setAbortListener(Runnable listener) {
+		abortListener = listener;
+	}
+	
+	/** Sets what to run each time a phase is opened (see open) */
+	public void setPhaseListener(Runnable listener) {
+		phaseListener = listener;
+	}
+	
+	/** @return why the ballot was aborted, or null if it wasn't */
+	public String getAbortReason() {
+		return abortReason;
+	}
+	
+	/** @return true if the ballot's progress is written to the server's BallotLog */
+	public boolean isLogged() {
+		return logged;
+	}
+	
+	public void setLogged(boolean logged) {
+		this.logged = logged;
+	}
+	
+	public long getStartedAt() {
+		return startedAt;
+	}
+	
+	/** Records how long a phase took from opening to completion */
+	public void recordPhaseTime(EVotePhase phase, long millis) {
+		phaseMillis.put(phase, millis);
+	}
+	
+	/** @return phase => milliseconds it took, for the phases completed so far */
+	public Map<EVotePhase, Long> getPhaseMillis() {
+		Map<EVotePhase, Long> copy = new EnumMap<EVotePhase, Long>(EVotePhase.class);
+		synchronized (phaseMillis) {
+			copy.putAll(phaseMillis);
+		}
+		return copy;
+	}
+	
+	/** @return the sums of a private aggregate, or null if it hasn't got them (yet) */
+	public AggregateResult getAggregateResult() {
+		return aggregateResult;
+	}
+	
+	public void setAggregateResult(AggregateResult result) {
+		aggregateResult = result;
+	}
+	
+	/** @return true if the ballot has a quorum, so some voters may drop out without aborting it */
+	public boolean isDropoutTolerant() {
+		return getQuorum() < numParticipants;
+	}
+	
+	/**
+	 * @return true if a voter dropping out now would be left out rather than abort the ballot
+	 * 		(whether enough voters remain is up to the phase, see PhaseAccumulator.isFailed)
+	 */
+	public boolean canDrop() {
+		if (!isDropoutTolerant()) {
+			return false;
+		}
+		if (evote.isThreshold()) {
+			return true;
+		}
+		
+		// the election key isn't set until its phase is over
+		PhaseAccumulator acc = current;
+		return acc != null && acc.getPhase() == EVotePhase.PUBLIC_KEY;
+	}
+
+	/** @return the fewest voters that must remain for the ballot to complete */
+	public int getQuorum() {
+		if (evote.quorum > 0) {
+			return evote.quorum;
+		}
+		return evote.isThreshold() ? evote.threshold : numParticipants;
+	}
+
+	public boolean hasQuorum() {
+		return participants.size() >= getQuorum();
+	}
+
+	/**
+	 * Starts accumulating contributions to the next phase. Must be called before the voters
+	 * are told to move on to that phase so no contribution is missed.
+	 *
+	 * @param phase
+	 * 		the phase to start
+	 * @return the accumulator for the phase
+	 */
+	public PhaseAccumulator open(EVotePhase phase) {
+		int required = 0;
+
+		// encrypted votes are kept to check their proofs; threshold evotes also keep public keys,
+		// dealings and decryption shares, which are used individually, and aggregates keep their
+		// ciphertexts and partial decryptions, which are multiplied once they are all in
+		boolean keepMessages = evote.isThreshold() || phase == EVotePhase.CIPHERTEXT || phase == EVotePhase.PAILLIER_VOTE ||
+				phase == EVotePhase.AGGREGATE || phase == EVotePhase.AGGREGATE_DECRYPTION;
+		
+		// Paillier ciphertexts and partial decryptions are multiplied mod N^2
+		BigInteger modulus = evote.isPaillier() ? evote.paillierN.multiply(evote.paillierN) : evote.p;
+
+		if (evote.isThreshold() && phase == EVotePhase.DECRYPTION) {
+			required = evote.threshold;
+		}
+
+		PhaseAccumulator acc = new PhaseAccumulator(phase, modulus, participants, required, getQuorum(), keepMessages);
+		current = acc;
+		
+		// a voter may have dropped out while the accumulator was being set up
+		for (String voter : acc.getMissing()) {
+			if (!participants.contains(voter)) {
+				acc.exclude(voter);
+			}
+		}
+		
+		Runnable listener = phaseListener;
+		if (listener != null) {
+			listener.run();
+		}
+		return acc;
+	}
+
+	/**
+	 * Drops a voter from the rest of the ballot.
+	 *
+	 * @param voter
+	 * 		the voter who failed
+	 * @return true if the voter was still taking part
+	 */
+	public boolean exclude(String voter) {
+		if (!participants.remove(voter)) {
+			return false;
+		}
+
+		PhaseAccumulator acc = current;
+		if (acc != null) {
+			acc.exclude(voter);
+		}
+		return true;
+	}
+
+	/**
+	 * Drops every voter the current phase is still waiting on.
+	 *
+	 * @return the voters who were dropped
+	 */
+	public List<String> excludeStragglers() {
+		List<String> excluded = new ArrayList<String>();
+		PhaseAccumulator acc = current;
+
+		if (acc != null) {
+			for (String voter : acc.getMissing()) {
+				if (exclude(voter)) {
+					excluded.add(voter);
+				}
+			}
+		}
+		return excluded;
+	}
+}
@@ -0,0 +1,293 @@
+package edu.harvard.cs262.crypto.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import edu.harvard.cs262.crypto.CryptoMessage;
+import edu.harvard.cs262.crypto.EVote;
+
+/**
+ * A write-ahead log of the ballots a server runs, so a restarted server can pick a ballot up
+ * at the last phase it completed instead of running it again from scratch.
+ *
+ * The log is an append-only memory-mapped file of records, each stored as
+ * [length][CRC-32][serialized Record]. Appending is a copy into the mapping, so it survives
+ * the server process crashing; the server forces the mapping to disk periodically (see sync)
+ * so it also survives the machine crashing, minus the last few records.
+ *
+ * When the log is opened, its records are read back up to the first one that is missing or
+ * torn, and new records are appended from there.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+class BallotLog {
+	// the log file is mapped (and grown) this many bytes at a time
+	private static final int REGION = 1 << 20;
+
+	// length and checksum in front of each record
+	private static final int HEADER = 8;
+
+	enum Type {
+		/** a ballot started: its evote, participants and board signing key */
+		START,
+		/** a voter's message was posted to the ballot's bulletin board */
+		POST,
+		/** a phase completed: what the server sent the voters and the values it needs later */
+		PHASE,
+		/** the ballot finished or was aborted, so there is nothing to recover */
+		END
+	}
+
+	/**
+	 * One entry in the log. Only the fields for its type are set.
+	 */
+	static class Record implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final Type type;
+		final String ballotId;
+
+		// START
+		EVote evote;
+		BigInteger signingKey;
+
+		// START and PHASE: the voters still taking part
+		Set<String> participants;
+
+		// POST
+		String author;
+		CryptoMessage message;
+
+		// PHASE: the phase that completed, how many phases the voters have now completed,
+		// the size of the board and the messages sent to each voter to finish the phase
+		EVotePhase phase;
+		int phasesDone;
+		int boardSize;
+		Map<String, CryptoMessage> outcome;
+		BigInteger[] values;
+
+		// END
+		String result;
+
+		private Record(Type type, String ballotId) {
+			this.type = type;
+			this.ballotId = ballotId;
+		}
+
+		static Record start(EVote evote, Set<String> participants, BigInteger signingKey) {
+			Record r = new Record(Type.START, evote.id.toString());
+			r.evote = evote;
+			r.participants = new HashSet<String>(participants);
+			r.signingKey = signingKey;
+			return r;
+		}
+
+		static Record post(String ballotId, String author, CryptoMessage message) {
+			Record r = new Record(Type.POST, ballotId);
+			r.author = author;
+			r.message = message;
+			return r;
+		}
+
+		static Record phase(String ballotId, EVotePhase phase, int phasesDone, Set<String> participants,
+				int boardSize, Map<String, CryptoMessage> outcome, BigInteger... values) {
+			Record r = new Record(Type.PHASE, ballotId);
+			r.phase = phase;
+			r.phasesDone = phasesDone;
+			r.participants = new HashSet<String>(participants);
+			r.boardSize = boardSize;
+			r.outcome = outcome;
+			r.values = values;
+			return r;
+		}
+
+		static Record end(String ballotId, String result) {
+			Record r = new Record(Type.END, ballotId);
+			r.result = result;
+			return r;
+		}
+	}
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+
+	// the part of the file currently mapped, and where it starts in the file
+	private MappedByteBuffer region;
+	private long regionStart;
+
+	private final List<Record> recovered;
+	private boolean dirty;
+	private IOException error;
+
+	/**
+	 * Opens a log, creating it if it doesn't exist, and reads back the records already in it.
+	 *
+	 * @param file
+	 * 		the log file
+	 * @throws IOException
+	 */
+	public BallotLog(File file) throws IOException {
+		this.file = file;
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+
+		recovered = new ArrayList<Record>();
+		long end = readRecords();
+
+		map(end, REGION);
+	}
+
+	/** @return the records that were in the log when it was opened, oldest first */
+	public List<Record> getRecovered() {
+		return Collections.unmodifiableList(recovered);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Appends a record. If the log can't be written it stops logging (see getError) rather
+	 * than failing the ballot.
+	 *
+	 * @return true if the record was appended
+	 */
+	public synchronized boolean append(Record r) {
+		if (error != null) {
+			return false;
+		}
+
+		try {
+			byte[] data = serialize(r);
+			if (region.remaining() < HEADER + data.length) {
+				// map the next region from right after the last record, growing the file
+				region.force();
+				map(regionStart + region.position(), Math.max(REGION, HEADER + data.length));
+			}
+
+			CRC32 crc = new CRC32();
+			crc.update(data);
+			region.putInt(data.length);
+			region.putInt((int) crc.getValue());
+			region.put(data);
+			dirty = true;
+			return true;
+		} catch (IOException e) {
+			error = e;
+			return false;
+		}
+	}
+
+	/**
+	 * Forces everything appended so far to disk.
+	 */
+	public synchronized void sync() {
+		if (dirty && error == null) {
+			region.force();
+			dirty = false;
+		}
+	}
+
+	/** @return the error that stopped the log from being written, or null if there was none */
+	public synchronized IOException getError() {
+		return error;
+	}
+
+	/**
+	 * Syncs and closes the log. Later appends are dropped.
+	 */
+	public synchronized void close() {
+		sync();
+		if (error == null) {
+			error = new IOException("ballot log is closed");
+		}
+		try {
+			channel.close();
+			raf.close();
+		} catch (IOException e) {
+			// do nothing -- everything appended has already been forced
+		}
+	}
+
+	/** Maps size bytes of the file starting at start for appending */
+	private void map(long start, int size) throws IOException {
+		regionStart = start;
+		region = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+	}
+
+	/**
+	 * Reads back the records in the file.
+	 *
+	 * @return where the next record goes
+	 */
+	private long readRecords() throws IOException {
+		long pos = 0;
+		long size = channel.size();
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+
+		while (pos + HEADER <= size) {
+			header.clear();
+			channel.read(header, pos);
+			header.flip();
+			int length = header.getInt();
+			int checksum = header.getInt();
+
+			// the rest of the file is zeros the mapping was grown with
+			if (length <= 0 || pos + HEADER + length > size) {
+				break;
+			}
+
+			ByteBuffer data = ByteBuffer.allocate(length);
+			channel.read(data, pos + HEADER);
+			CRC32 crc = new CRC32();
+			crc.update(data.array());
+			if ((int) crc.getValue() != checksum) {
+				// torn write: the server crashed in the middle of this record
+				break;
+			}
+
+			try {
+				recovered.add(deserialize(data.array()));
+			} catch (ClassNotFoundException e) {
+				break;
+			}
+			pos += HEADER + length;
+		}
+		return pos;
+	}
+
+	private static byte[] serialize(Record r) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(r);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static Record deserialize(byte[] data) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+		try {
+			return (Record) in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package edu.harvard.cs262.crypto.server;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.harvard.cs262.crypto.BulletinProof;
+import edu.harvard.cs262.crypto.BulletinRoot;
+import edu.harvard.cs262.crypto.CryptoMessage;
+import edu.harvard.cs262.crypto.EVote;
+import edu.harvard.cs262.crypto.cipher.MerkleTree;
+import edu.harvard.cs262.crypto.cipher.SchnorrSignature;
+
+/**
+ * The public transcript of a ballot: an append-only list of the messages voters posted,
+ * backed by a Merkle tree. At each phase boundary the server signs the root and sends only
+ * that to the voters; voters and auditors fetch the messages they care about, each with an
+ * inclusion proof of O(log n) hashes.
+ *
+ * Each board has its own signing key, which is handed to the voters in the EVote.
+ *
+ * If the server keeps a BallotLog, every post is also appended to the log (in the same order
+ * as on the board) so the board can be rebuilt after a crash.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+class BulletinBoard {
+	private final String ballotId;
+	private final BigInteger signingKey;
+	private final BigInteger publicKey;
+	private final SecureRandom rand;
+
+	private final List<String> authors;
+	private final List<CryptoMessage> messages;
+	private final MerkleTree tree;
+
+	// the most recently signed root and the phase it was signed after
+	private BulletinRoot latest;
+	private String phase;
+	
+	// where posts are logged (null if they aren't)
+	private BallotLog log;
+
+	/**
+	 * Creates the board for a ballot and sets the ballot's board key.
+	 *
+	 * @param evote
+	 * 		the ballot
+	 */
+	public BulletinBoard(EVote evote) {
+		this(evote, SchnorrSignature.generateKey(evote.q, new SecureRandom()));
+	}
+	
+	/**
+	 * Creates the board for a ballot with a given signing key (e.g. one recovered from a
+	 * BallotLog) and sets the ballot's board key.
+	 *
+	 * @param evote
+	 * 		the ballot
+	 * @param signingKey
+	 * 		the board's secret signing key
+	 */
+	public BulletinBoard(EVote evote, BigInteger signingKey) {
+		ballotId = evote.id.toString();
+		rand = new SecureRandom();
+		this.signingKey = signingKey;
+		publicKey = evote.g.modPow(signingKey, evote.p);
+		evote.boardKey = publicKey;
+
+		authors = new ArrayList<String>();
+		messages = new ArrayList<CryptoMessage>();
+		tree = new MerkleTree();
+		phase = "start";
+	}
+
+	/**
+	 * Appends a voter's message.
+	 *
+	 * @param author
+	 * 		the voter who sent it
+	 * @param m
+	 * 		the message as the other voters should see it
+	 * @return the message's index on the board
+	 */
+	public synchronized int post(String author, CryptoMessage m) {
+		if (log != null) {
+			log.append(BallotLog.Record.post(ballotId, author, m));
+		}
+		
+		authors.add(author);
+		messages.add(m);
+		return tree.append(BulletinProof.entryData(author, m));
+	}
+	
+	/**
+	 * Logs every post from now on.
+	 *
+	 * @param log
+	 * 		the log, or null to stop logging
+	 */
+	public synchronized void setLog(BallotLog log) {
+		this.log = log;
+	}
+	
+	/** @return the number of messages on the board */
+	public synchronized int size() {
+		return tree.size();
+	}
+	
+	/** @return the board's secret signing key (only for the server's own BallotLog) */
+	BigInteger getSigningKey() {
+		return signingKey;
+	}
+
+	/**
+	 * Signs the root of the board as it is now.
+	 *
+	 * @param phase
+	 * 		the phase that just finished
+	 * @return the signed root
+	 */
+	public synchronized BulletinRoot signRoot(String phase) {
+		this.phase = phase;
+		int size = tree.size();
+
+		BulletinRoot root = new BulletinRoot(ballotId, phase, size, tree.root(size));
+		root.publicKey = publicKey;
+		root.signature = SchnorrSignature.sign(root.signedData(), signingKey, EVote.P, EVote.Q, EVote.G, rand);
+		latest = root;
+		return root;
+	}
+
+	/** @return a signed root covering every message posted so far */
+	public synchronized BulletinRoot getRoot() {
+		if (latest == null || latest.size != tree.size()) {
+			return signRoot(phase);
+		}
+		return latest;
+	}
+
+	/**
+	 * Fetches a message with its inclusion proof.
+	 *
+	 * @param index
+	 * 		the index of the message
+	 * @param treeSize
+	 * 		the size of the signed root the proof is for
+	 * @return the message and proof, or null if there is no such message
+	 */
+	public synchronized BulletinProof getEntry(int index, int treeSize) {
+		if (index < 0 || index >= treeSize || treeSize > tree.size()) {
+			return null;
+		}
+		return new BulletinProof(ballotId, index, treeSize, authors.get(index), messages.get(index),
+				tree.proof(index, treeSize));
+	}
+
+	/**
+	 * Fetches every message a voter posted, with their inclusion proofs.
+	 *
+	 * @param author
+	 * 		the voter
+	 * @param treeSize
+	 * 		the size of the signed root the proofs are for
+	 * @return the voter's messages in the order they were posted
+	 */
+	public synchronized List<BulletinProof> findEntries(String author, int treeSize) {
+		List<BulletinProof> found = new ArrayList<BulletinProof>();
+		for (int i = 0; i < Math.min(treeSize, tree.size()); i++) {
+			if (authors.get(i).equals(author)) {
+				found.add(getEntry(i, treeSize));
+			}
+		}
+		return found;
+	}
+}
@@ -6,6 +6,8 @@ import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.rmi.registry.Registry;
 import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -19,13 +21,19 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import edu.harvard.cs262.crypto.AggregateResult;
+import edu.harvard.cs262.crypto.BallotRecord;
+import edu.harvard.cs262.crypto.BulletinProof;
+import edu.harvard.cs262.crypto.BulletinRoot;
 import edu.harvard.cs262.crypto.CryptoMessage;
+import edu.harvard.cs262.crypto.EVote;
 import edu.harvard.cs262.crypto.Helpers;
 import edu.harvard.cs262.crypto.VPrint;
 import edu.harvard.cs262.crypto.cipher.CryptoCipher;
 import edu.harvard.cs262.crypto.cipher.KeyExchangeProtocol;
 import edu.harvard.cs262.crypto.client.CryptoClient;
 import edu.harvard.cs262.crypto.exception.ClientNotFound;
+import edu.harvard.cs262.crypto.exception.EVoteInvalidResult;
 
 /**
  * A server that relays messages between clients and sends messages to eavesdropping clients.
@@ -349,6 +357,25 @@ public class CentralServer implements CryptoServer {
 		getClient(to).recvSecureChannel(from, kx, cipher);
 	}	
 
+	/**
+	 * Relay a request from client "from" to intersect its set with client "to"'s. This is a
+	 * remote method intended to be called by the client who wishes to learn the intersection.
+	 * 
+	 * @param from
+	 * 		the name of the client requesting the intersection
+	 * @param to
+	 * 		the name of the client whose set is intersected with
+	 * @param sid
+	 * 		the session id of the intersection
+	 * @throws ClientNotFound, RemoteException, InterruptedException
+	 */
+	public void relayIntersection(String from, String to, String sid) throws ClientNotFound, RemoteException, InterruptedException {
+		assertClientRegistered(from);
+		assertClientRegistered(to);
+		
+		getClient(to).recvIntersection(from, sid);
+	}
+
 	/** 
 	 * The CentralServer does not handle e-voting
 	 */
@@ -357,6 +384,148 @@ public class CentralServer implements CryptoServer {
 		return "";
 	}
 	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public String initiateEVote(String ballot, int threshold) throws RemoteException, ClientNotFound, InterruptedException {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+		return "";
+	}
+	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public String initiateEVote(String ballot, int threshold, int quorum) throws RemoteException, ClientNotFound, InterruptedException {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+		return "";
+	}
+	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public String initiateEVote(String ballot, Set<String> voters, int threshold) throws RemoteException, ClientNotFound, InterruptedException {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+		return "";
+	}
+	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public String initiateEVote(String ballot, Set<String> voters, int threshold, int quorum) throws RemoteException, ClientNotFound, InterruptedException {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+		return "";
+	}
+	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public void defineVoterGroup(String group, Set<String> members) throws RemoteException {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+	}
+	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public String initiateGroupEVote(String ballot, String group, int threshold) throws RemoteException, ClientNotFound, InterruptedException {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+		return "";
+	}
+	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public AggregateResult aggregate(String name, int length, int valueBits) throws RemoteException, ClientNotFound, InterruptedException {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+		return null;
+	}
+	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public boolean registerSubServer(CryptoServer child) throws RemoteException {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+		return false;
+	}
+	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public Set<String> getElectorate() throws RemoteException {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+		return new HashSet<String>();
+	}
+	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public void evoteSubtree(EVote evote, String parentName) throws RemoteException, ClientNotFound, InterruptedException, EVoteInvalidResult {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+		throw new EVoteInvalidResult("central server does not implement evoting");
+	}
+	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public void evoteAbort(String abortMessage) throws RemoteException {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+	}
+	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public List<String> getBulletinBoards() throws RemoteException {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+		return new ArrayList<String>();
+	}
+	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public BulletinRoot getBoardRoot(String ballotId) throws RemoteException {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+		return null;
+	}
+	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public List<String> getRoster(String ballotId) throws RemoteException {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+		return null;
+	}
+	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public BallotRecord getBallotRecord(String ballotId) throws RemoteException {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+		return null;
+	}
+	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public List<BallotRecord> findBallotRecords(long from, long to, int limit) throws RemoteException {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+		return new ArrayList<BallotRecord>();
+	}
+	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public BulletinProof getBoardEntry(String ballotId, int index, int treeSize) throws RemoteException {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+		return null;
+	}
+	
+	/** 
+	 * The CentralServer does not handle e-voting
+	 */
+	public List<BulletinProof> findBoardEntries(String ballotId, String author, int treeSize) throws RemoteException {
+		log.print(VPrint.ERROR, "central server does not implement evoting");
+		return new ArrayList<BulletinProof>();
+	}
+	
 	/** Create a Callable object used to ping clients */
 	private class ClientPingCallable implements Callable<Boolean> {
 		private CryptoClient client;
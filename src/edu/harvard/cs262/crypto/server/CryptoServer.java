@@ -2,12 +2,20 @@ package edu.harvard.cs262.crypto.server;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Set;
 
+import edu.harvard.cs262.crypto.AggregateResult;
+import edu.harvard.cs262.crypto.BallotRecord;
+import edu.harvard.cs262.crypto.BulletinProof;
+import edu.harvard.cs262.crypto.BulletinRoot;
 import edu.harvard.cs262.crypto.CryptoMessage;
+import edu.harvard.cs262.crypto.EVote;
 import edu.harvard.cs262.crypto.cipher.CryptoCipher;
 import edu.harvard.cs262.crypto.cipher.KeyExchangeProtocol;
 import edu.harvard.cs262.crypto.client.CryptoClient;
 import edu.harvard.cs262.crypto.exception.ClientNotFound;
+import edu.harvard.cs262.crypto.exception.EVoteInvalidResult;
 
 /**
  * The server interface. Servers are responsible for facilitating client to client interactions
@@ -142,6 +150,22 @@ public interface CryptoServer extends Remote {
 	 */
 	public void relaySecureChannel(String from, String to, KeyExchangeProtocol kx, CryptoCipher c) throws ClientNotFound, RemoteException, InterruptedException;
 
+	/**
+	 * Relay a request from client "from" to intersect its set with client "to"'s (see
+	 * DHCryptoClient.intersect). This is a remote method intended to be called by the client
+	 * who wishes to learn the intersection, and it returns once client "to" is done with its
+	 * side of the intersection.
+	 * 
+	 * @param from
+	 * 		the name of the client requesting the intersection
+	 * @param to
+	 * 		the name of the client whose set is intersected with
+	 * @param sid
+	 * 		the session id of the intersection
+	 * @throws ClientNotFound, RemoteException, InterruptedException
+	 */
+	public void relayIntersection(String from, String to, String sid) throws ClientNotFound, RemoteException, InterruptedException;
+
 	/**
 	 * Initiate an evote with all currently registered clients. Handles the coordination of the
 	 * evote protocol.
@@ -152,4 +176,225 @@ public interface CryptoServer extends Remote {
 	 * @throws RemoteException, ClientNotFound, InterruptedException
 	 */
 	public String initiateEVote(String ballot) throws RemoteException, ClientNotFound, InterruptedException;
+	
+	/**
+	 * Initiate an evote with all currently registered clients in which any "threshold" of the
+	 * voters can decrypt the result, so the tally does not wait on the slowest voters.
+	 * 
+	 * @param ballot
+	 * 		the item to voted on
+	 * @param threshold
+	 * 		the number of voters needed to decrypt the result (0 for all of them)
+	 * @return the result of the vote in the form (# yes, # no)
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public String initiateEVote(String ballot, int threshold) throws RemoteException, ClientNotFound, InterruptedException;
+	
+	/**
+	 * Initiate an evote with all currently registered clients that carries on without voters
+	 * who drop out, as long as "quorum" of them remain.
+	 * 
+	 * @param ballot
+	 * 		the item to voted on
+	 * @param threshold
+	 * 		the number of voters needed to decrypt the result (0 for all of them)
+	 * @param quorum
+	 * 		the fewest voters that must remain (at least the threshold, or 0 for the default)
+	 * @return the result of the vote in the form (# yes, # no)
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public String initiateEVote(String ballot, int threshold, int quorum) throws RemoteException, ClientNotFound, InterruptedException;
+	
+	/**
+	 * Initiate an evote with only some of the registered clients (and sub-servers, which vote
+	 * with all their voters). Every voter named must be registered and support evoting.
+	 * 
+	 * @param ballot
+	 * 		the item to voted on
+	 * @param voters
+	 * 		the clients and sub-servers that vote
+	 * @param threshold
+	 * 		the number of voters needed to decrypt the result (0 for all of them)
+	 * @return the result of the vote in the form (# yes, # no)
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public String initiateEVote(String ballot, Set<String> voters, int threshold) throws RemoteException, ClientNotFound, InterruptedException;
+	
+	/**
+	 * The same thing as initiateEVote(ballot, voters, threshold), but the evote carries on
+	 * without voters who drop out as long as "quorum" of them remain.
+	 * 
+	 * @param quorum
+	 * 		the fewest voters that must remain (at least the threshold, or 0 for the default)
+	 */
+	public String initiateEVote(String ballot, Set<String> voters, int threshold, int quorum) 
+			throws RemoteException, ClientNotFound, InterruptedException;
+	
+	/**
+	 * Names a group of voters so evotes can be run with just them (see initiateGroupEVote).
+	 * Members don't have to be registered yet.
+	 * 
+	 * @param group
+	 * 		the name of the group
+	 * @param members
+	 * 		the clients and sub-servers in the group (empty to remove the group)
+	 * @throws RemoteException
+	 */
+	public void defineVoterGroup(String group, Set<String> members) throws RemoteException;
+	
+	/**
+	 * Initiate an evote with the members of a voter group who are currently registered and
+	 * support evoting.
+	 * 
+	 * @param ballot
+	 * 		the item to voted on
+	 * @param group
+	 * 		the name of the group (see defineVoterGroup)
+	 * @param threshold
+	 * 		the number of voters needed to decrypt the result (0 for all of them)
+	 * @return the result of the vote in the form (# yes, # no)
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public String initiateGroupEVote(String ballot, String group, int threshold) throws RemoteException, ClientNotFound, InterruptedException;
+	
+	/**
+	 * Computes a private aggregate over every registered evoting client: each client contributes
+	 * a vector of values (e.g. telemetry counters), and only the sum of each value over all of
+	 * them is decrypted, so no one's values are revealed.
+	 * 
+	 * @param name
+	 * 		what is being aggregated
+	 * @param length
+	 * 		the number of values each client contributes
+	 * @param valueBits
+	 * 		the size of the values (each must be less than 2^valueBits)
+	 * @return the sums of the values (see AggregateResult), or null if the aggregate failed
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public AggregateResult aggregate(String name, int length, int valueBits) throws RemoteException, ClientNotFound, InterruptedException;
+	
+	/**
+	 * Register a sub-server that votes on behalf of its own voters in this server's evotes.
+	 * Function is designed to be called by the sub-server.
+	 * 
+	 * @param child
+	 * 		the registering sub-server
+	 * @return true if the sub-server successfully registered
+	 * @throws RemoteException
+	 */
+	public boolean registerSubServer(CryptoServer child) throws RemoteException;
+	
+	/**
+	 * Returns every voter that would vote in an evote run by this server, including the
+	 * voters of its sub-servers.
+	 * 
+	 * @return the names of the voters
+	 * @throws RemoteException
+	 */
+	public Set<String> getElectorate() throws RemoteException;
+	
+	/**
+	 * Take part in an evote run by this server's parent on behalf of this server's voters.
+	 * Blocks until this server's part of the evote is done.
+	 * 
+	 * @param evote
+	 * 		the evote to participate in
+	 * @param parentName
+	 * 		the name of the parent server running the evote
+	 * @throws RemoteException, ClientNotFound, InterruptedException, EVoteInvalidResult
+	 */
+	public void evoteSubtree(EVote evote, String parentName) throws RemoteException, ClientNotFound, InterruptedException, EVoteInvalidResult;
+	
+	/**
+	 * Aborts this server's part in an evote run by its parent, if it is taking part in one.
+	 * 
+	 * @param abortMessage
+	 * 		the reason the evote needs to be aborted
+	 * @throws RemoteException
+	 */
+	public void evoteAbort(String abortMessage) throws RemoteException;
+	
+	/**
+	 * Returns the ids of the ballots this server has run, oldest first, so auditors can
+	 * look up their bulletin boards.
+	 * 
+	 * @return the ballot ids
+	 * @throws RemoteException
+	 */
+	public List<String> getBulletinBoards() throws RemoteException;
+	
+	/**
+	 * Returns a signed root covering every message posted to a ballot's bulletin board.
+	 * 
+	 * @param ballotId
+	 * 		the ballot
+	 * @return the root, or null if there is no such ballot
+	 * @throws RemoteException
+	 */
+	public BulletinRoot getBoardRoot(String ballotId) throws RemoteException;
+	
+	/**
+	 * Returns a message from a ballot's bulletin board with the proof that it is on the
+	 * board under the root with treeSize messages.
+	 * 
+	 * @param ballotId
+	 * 		the ballot
+	 * @param index
+	 * 		the index of the message on the board
+	 * @param treeSize
+	 * 		the size of the signed root the proof is for
+	 * @return the message and proof, or null if there is no such message
+	 * @throws RemoteException
+	 */
+	public BulletinProof getBoardEntry(String ballotId, int index, int treeSize) throws RemoteException;
+	
+	/**
+	 * Returns every message a voter posted to a ballot's bulletin board, with the proofs
+	 * that they are on the board under the root with treeSize messages.
+	 * 
+	 * @param ballotId
+	 * 		the ballot
+	 * @param author
+	 * 		the voter
+	 * @param treeSize
+	 * 		the size of the signed root the proofs are for
+	 * @return the voter's messages in the order they were posted
+	 * @throws RemoteException
+	 */
+	public List<BulletinProof> findBoardEntries(String ballotId, String author, int treeSize) throws RemoteException;
+	
+	/**
+	 * Returns the names of a ballot's voters. Voters are only sent the roster's size and hash
+	 * when a ballot starts (see EVote), and fetch the names when they need them.
+	 * 
+	 * @param ballotId
+	 * 		the ballot
+	 * @return the voters sorted by name, or null if there is no such ballot
+	 * @throws RemoteException
+	 */
+	public List<String> getRoster(String ballotId) throws RemoteException;
+	
+	/**
+	 * Returns the archived record of a ballot this server ran (see BallotRecord).
+	 * 
+	 * @param ballotId
+	 * 		the ballot
+	 * @return the ballot's record, or null if it isn't in the archive (e.g. it is still running)
+	 * @throws RemoteException
+	 */
+	public BallotRecord getBallotRecord(String ballotId) throws RemoteException;
+	
+	/**
+	 * Returns the archived records of the ballots this server ran that ended in a window of time.
+	 * 
+	 * @param from
+	 * 		the start of the window (milliseconds since the epoch, inclusive)
+	 * @param to
+	 * 		the end of the window (exclusive)
+	 * @param limit
+	 * 		the most records to return
+	 * @return the records, most recent first
+	 * @throws RemoteException
+	 */
+	public List<BallotRecord> findBallotRecords(long from, long to, int limit) throws RemoteException;
 }
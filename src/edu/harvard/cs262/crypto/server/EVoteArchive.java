@@ -0,0 +1,328 @@
+package edu.harvard.cs262.crypto.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import edu.harvard.cs262.crypto.BallotRecord;
+
+/**
+ * An archive of the results of the ballots a server has run, so past ballots can be looked up
+ * (e.g. by a dashboard) without going through the server's logs.
+ *
+ * Records are kept in memory, indexed by ballot id and by the time the ballot ended, and, if
+ * the archive has a file, appended to it. The file is append-only, each record stored as
+ * [length][CRC-32][fields], with the fields written out one by one (not with Java
+ * serialization) so a record takes a few hundred bytes. When an archive is opened its records
+ * are read back up to the first one that is missing or torn, and new records go from there.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+class EVoteArchive {
+	// length and checksum in front of each record
+	private static final int HEADER = 8;
+
+	// the archive file (null if the records are only kept in memory)
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private IOException error;
+
+	// the indexes: ballot id => record, and end time => the records of ballots that ended then
+	private final Map<String, BallotRecord> byId;
+	private final NavigableMap<Long, List<BallotRecord>> byTime;
+
+	/**
+	 * An archive that only keeps its records in memory.
+	 */
+	public EVoteArchive() {
+		file = null;
+		raf = null;
+		channel = null;
+		byId = new HashMap<String, BallotRecord>();
+		byTime = new TreeMap<Long, List<BallotRecord>>();
+	}
+
+	/**
+	 * Opens an archive file, creating it if it doesn't exist, and reads back the records
+	 * already in it.
+	 *
+	 * @param file
+	 * 		the archive file
+	 * @throws IOException
+	 */
+	public EVoteArchive(File file) throws IOException {
+		this.file = file;
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		byId = new HashMap<String, BallotRecord>();
+		byTime = new TreeMap<Long, List<BallotRecord>>();
+
+		// drop a torn record at the end, so the next one is appended after the last good one
+		channel.truncate(readRecords());
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Adds a ballot's record. If the archive file can't be written the record is still
+	 * indexed, but the file stops being written (see getError).
+	 *
+	 * @param r
+	 * 		the record
+	 * @return true if the record was written to the file (or there is no file)
+	 */
+	public synchronized boolean append(BallotRecord r) {
+		index(r);
+		if (channel == null) {
+			return true;
+		}
+		if (error != null) {
+			return false;
+		}
+
+		try {
+			byte[] data = encode(r);
+			CRC32 crc = new CRC32();
+			crc.update(data);
+
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER + data.length);
+			buffer.putInt(data.length);
+			buffer.putInt((int) crc.getValue());
+			buffer.put(data);
+			buffer.flip();
+
+			long pos = channel.size();
+			while (buffer.hasRemaining()) {
+				pos += channel.write(buffer, pos);
+			}
+			channel.force(false);
+			return true;
+		} catch (IOException e) {
+			error = e;
+			return false;
+		}
+	}
+
+	/** @return the ballot's record, or null if it isn't in the archive */
+	public synchronized BallotRecord get(String ballotId) {
+		return byId.get(ballotId);
+	}
+
+	/**
+	 * Finds the ballots that ended in a window of time.
+	 *
+	 * @param from
+	 * 		the start of the window (milliseconds since the epoch, inclusive)
+	 * @param to
+	 * 		the end of the window (exclusive)
+	 * @param limit
+	 * 		the most records to return
+	 * @return the records, most recent first
+	 */
+	public synchronized List<BallotRecord> find(long from, long to, int limit) {
+		List<BallotRecord> found = new ArrayList<BallotRecord>();
+		if (from >= to) {
+			return found;
+		}
+
+		for (List<BallotRecord> records : byTime.subMap(from, true, to, false).descendingMap().values()) {
+			for (int i = records.size() - 1; i >= 0 && found.size() < limit; i--) {
+				found.add(records.get(i));
+			}
+			if (found.size() >= limit) {
+				break;
+			}
+		}
+		return found;
+	}
+
+	/** @return the number of records in the archive */
+	public synchronized int size() {
+		return byId.size();
+	}
+
+	/** @return every record, oldest first */
+	public synchronized List<BallotRecord> getAll() {
+		List<BallotRecord> all = new ArrayList<BallotRecord>();
+		for (List<BallotRecord> records : byTime.values()) {
+			all.addAll(records);
+		}
+		return all;
+	}
+
+	/** @return the error that stopped the file from being written, or null if there was none */
+	public synchronized IOException getError() {
+		return error;
+	}
+
+	/**
+	 * Closes the archive file. Later records are only kept in memory.
+	 */
+	public synchronized void close() {
+		if (channel == null) {
+			return;
+		}
+		if (error == null) {
+			error = new IOException("archive is closed");
+		}
+		try {
+			channel.close();
+			raf.close();
+		} catch (IOException e) {
+			// do nothing -- every record was forced when it was appended
+		}
+	}
+
+	private void index(BallotRecord r) {
+		BallotRecord old = byId.put(r.ballotId, r);
+		if (old != null) {
+			byTime.get(old.endedAt).remove(old);
+		}
+
+		List<BallotRecord> records = byTime.get(r.endedAt);
+		if (records == null) {
+			records = new ArrayList<BallotRecord>(1);
+			byTime.put(r.endedAt, records);
+		}
+		records.add(r);
+	}
+
+	/**
+	 * Reads back the records in the file.
+	 *
+	 * @return where the next record goes
+	 */
+	private long readRecords() throws IOException {
+		long pos = 0;
+		long size = channel.size();
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+
+		while (pos + HEADER <= size) {
+			header.clear();
+			channel.read(header, pos);
+			header.flip();
+			int length = header.getInt();
+			int checksum = header.getInt();
+
+			if (length <= 0 || pos + HEADER + length > size) {
+				break;
+			}
+
+			ByteBuffer data = ByteBuffer.allocate(length);
+			channel.read(data, pos + HEADER);
+			CRC32 crc = new CRC32();
+			crc.update(data.array());
+			if ((int) crc.getValue() != checksum) {
+				// torn write: the server crashed in the middle of this record
+				break;
+			}
+
+			index(decode(data.array()));
+			pos += HEADER + length;
+		}
+		return pos;
+	}
+
+	private static byte[] encode(BallotRecord r) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeUTF(r.ballotId);
+		out.writeUTF(r.ballot);
+		out.writeInt(r.numVoters);
+		writeBytes(out, r.rosterHash);
+		out.writeInt(r.threshold);
+		out.writeUTF(r.tally);
+		out.writeInt(r.yes);
+		out.writeInt(r.no);
+		out.writeLong(r.startedAt);
+		out.writeLong(r.endedAt);
+
+		out.writeInt(r.phaseMillis.size());
+		for (Map.Entry<String, Long> phase : r.phaseMillis.entrySet()) {
+			out.writeUTF(phase.getKey());
+			out.writeLong(phase.getValue());
+		}
+
+		out.writeInt(r.transcriptSize);
+		writeBytes(out, r.transcriptRoot);
+
+		out.writeInt(r.contributors);
+		out.writeInt((r.sums == null) ? -1 : r.sums.length);
+		if (r.sums != null) {
+			for (long sum : r.sums) {
+				out.writeLong(sum);
+			}
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static BallotRecord decode(byte[] data) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		BallotRecord r = new BallotRecord();
+
+		r.ballotId = in.readUTF();
+		r.ballot = in.readUTF();
+		r.numVoters = in.readInt();
+		r.rosterHash = readBytes(in);
+		r.threshold = in.readInt();
+		r.tally = in.readUTF();
+		r.yes = in.readInt();
+		r.no = in.readInt();
+		r.startedAt = in.readLong();
+		r.endedAt = in.readLong();
+
+		int phases = in.readInt();
+		for (int i = 0; i < phases; i++) {
+			r.phaseMillis.put(in.readUTF(), in.readLong());
+		}
+
+		r.transcriptSize = in.readInt();
+		r.transcriptRoot = readBytes(in);
+
+		r.contributors = in.readInt();
+		int sums = in.readInt();
+		if (sums >= 0) {
+			r.sums = new long[sums];
+			for (int i = 0; i < sums; i++) {
+				r.sums[i] = in.readLong();
+			}
+		}
+		return r;
+	}
+
+	// a byte array as [length][bytes], with length -1 for null
+	private static void writeBytes(DataOutputStream out, byte[] b) throws IOException {
+		out.writeInt((b == null) ? -1 : b.length);
+		if (b != null) {
+			out.write(b);
+		}
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] b = new byte[length];
+		in.readFully(b);
+		return b;
+	}
+}
@@ -0,0 +1,140 @@
+package edu.harvard.cs262.crypto.server;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import edu.harvard.cs262.crypto.CryptoMessage;
+import edu.harvard.cs262.crypto.EVoteCiphertext;
+import edu.harvard.cs262.crypto.cipher.ProductTree;
+
+/**
+ * The phases of the evote protocol in which every voter sends the server a value that the
+ * server combines by multiplication. Each phase knows how to pull the values it combines
+ * out of a voter's message.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public enum EVotePhase {
+	/** EVote phase 3: each voter sends g^(sk_i) (G^(x_i) mod N^2 in a Paillier evote or aggregate) */
+	PUBLIC_KEY(1) {
+		BigInteger[] components(CryptoMessage m) {
+			return new BigInteger[] { new BigInteger(m.getPlainText()) };
+		}
+	},
+
+	/**
+	 * Threshold evotes only: each voter deals shares of its secret key to the other voters.
+	 * Nothing is multiplied; the server just routes each share to its recipient.
+	 */
+	DEALING(0) {
+		BigInteger[] components(CryptoMessage m) {
+			return new BigInteger[0];
+		}
+	},
+
+	/**
+	 * EVote phase 4: each voter sends its encrypted vote (c1_i, c2_i) with a proof that it is
+	 * valid (a sub-server sends the product of its voters' checked votes, without a proof)
+	 */
+	CIPHERTEXT(2) {
+		BigInteger[] components(CryptoMessage m) {
+			Object state = m.getEncryptionState();
+			BigInteger c1 = (state instanceof EVoteCiphertext) ? ((EVoteCiphertext) state).c1 : (BigInteger) state;
+			return new BigInteger[] { c1, new BigInteger(m.getCipherText()) };
+		}
+	},
+
+	/** EVote phase 7: each voter sends its decryption share c1^(sk_i) */
+	DECRYPTION(1) {
+		BigInteger[] components(CryptoMessage m) {
+			return new BigInteger[] { new BigInteger(m.getPlainText()) };
+		}
+	},
+
+	/**
+	 * Paillier evotes only: each voter sends its encrypted vote (A_i, B_i) with a proof that it
+	 * is valid. The product of the votes mod N^2 encrypts the number of yes votes.
+	 */
+	PAILLIER_VOTE(2) {
+		BigInteger[] components(CryptoMessage m) {
+			return new BigInteger[] { ((EVoteCiphertext) m.getEncryptionState()).c1, new BigInteger(m.getCipherText()) };
+		}
+	},
+
+	/** Paillier evotes only: each voter sends its partial decryption A^(x_i) of the tally */
+	PAILLIER_DECRYPTION(1) {
+		BigInteger[] components(CryptoMessage m) {
+			return new BigInteger[] { new BigInteger(m.getPlainText()) };
+		}
+	},
+
+	/**
+	 * Aggregates only: each client sends its values packed into Paillier ciphertexts (A_j, B_j)
+	 * under the clients' joint key, as A_1, ..., A_k, B_1, ..., B_k. The number
+	 * of ciphertexts depends on the aggregate, so nothing is multiplied as they arrive; the server
+	 * multiplies each ciphertext over the clients once they have all sent theirs.
+	 */
+	AGGREGATE(0) {
+		BigInteger[] components(CryptoMessage m) {
+			return new BigInteger[0];
+		}
+	},
+
+	/** Aggregates only: each client sends its partial decryption A_j^(x_i) of each encrypted sum */
+	AGGREGATE_DECRYPTION(0) {
+		BigInteger[] components(CryptoMessage m) {
+			return new BigInteger[0];
+		}
+	};
+
+	private final int numComponents;
+
+	private EVotePhase(int numComponents) {
+		this.numComponents = numComponents;
+	}
+
+	/** The number of values each voter contributes in this phase */
+	int numComponents() {
+		return numComponents;
+	}
+
+	/**
+	 * Combines a batch of voters' messages at once (e.g. the votes left once cheaters are
+	 * dropped), multiplying each component as a product tree on the fork-join pool.
+	 *
+	 * @param messages
+	 * 		the voters' messages for this phase
+	 * @param p
+	 * 		the modulus the products are taken over
+	 * @return the product of each component over the messages
+	 */
+	BigInteger[] combine(Collection<CryptoMessage> messages, BigInteger p) {
+		List<List<BigInteger>> columns = new ArrayList<List<BigInteger>>();
+		for (int c = 0; c < numComponents; c++) {
+			columns.add(new ArrayList<BigInteger>(messages.size()));
+		}
+		for (CryptoMessage m : messages) {
+			BigInteger[] values = components(m);
+			for (int c = 0; c < numComponents; c++) {
+				columns.get(c).add(values[c]);
+			}
+		}
+		
+		BigInteger[] products = new BigInteger[numComponents];
+		for (int c = 0; c < numComponents; c++) {
+			products[c] = ProductTree.product(columns.get(c), p);
+		}
+		return products;
+	}
+	
+	/**
+	 * Extracts the values a voter contributes in this phase from its message.
+	 *
+	 * @param m
+	 * 		the voter's message
+	 * @return the values to be multiplied into the phase's running products
+	 */
+	abstract BigInteger[] components(CryptoMessage m);
+}
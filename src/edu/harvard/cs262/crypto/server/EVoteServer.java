@@ -1,28 +1,53 @@
 package edu.harvard.cs262.crypto.server;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+import edu.harvard.cs262.crypto.AggregateResult;
+import edu.harvard.cs262.crypto.BallotRecord;
+import edu.harvard.cs262.crypto.BulletinProof;
+import edu.harvard.cs262.crypto.BulletinRoot;
 import edu.harvard.cs262.crypto.CryptoMessage;
 import edu.harvard.cs262.crypto.EVote;
+import edu.harvard.cs262.crypto.EVoteCiphertext;
+import edu.harvard.cs262.crypto.EVoteDealing;
+import edu.harvard.cs262.crypto.Helpers;
 import edu.harvard.cs262.crypto.VPrint;
+import edu.harvard.cs262.crypto.cipher.FeldmanVSS;
+import edu.harvard.cs262.crypto.cipher.PackedEncoding;
+import edu.harvard.cs262.crypto.cipher.PaillierCipher;
+import edu.harvard.cs262.crypto.cipher.ProductTree;
+import edu.harvard.cs262.crypto.cipher.VoteProof;
 import edu.harvard.cs262.crypto.client.CryptoClient;
 import edu.harvard.cs262.crypto.exception.ClientNotFound;
 import edu.harvard.cs262.crypto.exception.EVoteInvalidResult;
@@ -30,6 +55,10 @@ import edu.harvard.cs262.crypto.exception.EVoteInvalidResult;
 /**
  * A server that handles e-voting by using the send/receive message protocols of CentralServer.
  * Designed to work with EVoteClient.
+ * 
+ * EVote servers can be arranged in a tree to share the load of a large electorate. A sub-server
+ * (see joinParent) combines the contributions of its own voters and passes the partial products
+ * up to its parent as if it were a single voter, then passes the parent's replies back down.
  *
  * @author Holly Anderson, Joshua Lee, and Tracy Lu
  */
@@ -37,43 +66,188 @@ public class EVoteServer extends CentralServer {
 	// the number of seconds the server waits for a client to respond before aborting evote
 	private static int EVOTETIMEOUT = 120;
 	
+	// the most voters the server sends messages to at once
+	private static final int BROADCAST_THREADS = 64;
+	
 	// list of clients engaged in current vote
 	private Set<String> currentVotingClients;
 	
-	// map to store "waiting" messages
-	protected Map<String, Map<String, CryptoMessage>> sessions;
+	// messages that are waited on, by session (keyed by session id)
+	protected ConcurrentMap<String, Session> sessions;
+	
+	// ballots in progress (keyed by ballot id)
+	protected Map<String, Ballot> ballots;
+	
+	// bulletin boards of the ballots running or recently over, kept for auditing (keyed by ballot id)
+	protected Map<String, BulletinBoard> boards;
+	
+	// the voters of the ballots running or recently over, sorted by name (keyed by ballot id)
+	protected Map<String, List<String>> rosters;
+	
+	// how long a ballot's board and roster are kept once it is over (in seconds; see setBoardRetention)
+	private static final int BOARD_RETENTION = 600;
+	private volatile int boardRetention = BOARD_RETENTION;
+	
+	// the voters of the last ballot started here, and the version number of that roster
+	private Set<String> lastRoster;
+	private long rosterVersion;
+	
+	// sends evote messages to voters in parallel (shared by all ballots)
+	protected ExecutorService broadcastPool;
+	
+	// runs the evote calls to participants and the server's side of each ballot (shared by all ballots)
+	protected ExecutorService evotePool;
+	
+	// fires the phase deadlines of every ballot
+	protected ScheduledExecutorService timers;
+	
+	// sub-servers that vote on behalf of their own voters (keyed by server name)
+	protected Map<String, CryptoServer> children;
+	
+	// the server this server reports to, if it is a sub-server
+	protected CryptoServer parent;
+	
+	// registered clients that support evoting (see CryptoClient.supportsEVote)
+	protected Set<String> evoters;
+	
+	// named groups of voters (see defineVoterGroup)
+	protected Map<String, Set<String>> voterGroups;
+	
+	// deadlines (seconds) of the phases that don't use EVOTETIMEOUT
+	private Map<EVotePhase, Integer> phaseTimeouts;
+	
+	// how long voters take in each phase
+	protected PhaseTelemetry telemetry;
+	
+	// whether new ballots are tallied with Paillier rather than ElGamal (see setPaillierTally)
+	private volatile boolean paillierTally;
+	
+	// how often the ballot log is forced to disk (in milliseconds)
+	private static final int LOG_SYNC_MILLIS = 1000;
+	
+	// write-ahead log of this server's ballots (null if it doesn't keep one)
+	protected BallotLog ballotLog;
+	
+	// ballots the log says were interrupted, which can be resumed (keyed by ballot id)
+	protected Map<String, RecoveredBallot> recovered;
+	
+	// the results of the ballots this server has run (in memory only until openArchive)
+	protected EVoteArchive archive;
+	
+	// random powers for checking vote proofs in batches (must be unpredictable to voters)
+	private final SecureRandom proofRand = new SecureRandom();
 	
 	public EVoteServer(String name) {
 		super(name);
-		sessions = new ConcurrentHashMap<String, Map<String, CryptoMessage>>();
+		sessions = new ConcurrentHashMap<String, Session>();
+		ballots = new ConcurrentHashMap<String, Ballot>();
+		boards = Collections.synchronizedMap(new LinkedHashMap<String, BulletinBoard>());
+		rosters = new ConcurrentHashMap<String, List<String>>();
 		currentVotingClients = new HashSet<String>();
+		broadcastPool = Executors.newFixedThreadPool(BROADCAST_THREADS, Helpers.daemonThreadFactory(name + "-broadcast"));
+		evotePool = Executors.newCachedThreadPool(Helpers.daemonThreadFactory(name + "-evote"));
+		timers = Executors.newSingleThreadScheduledExecutor(Helpers.daemonThreadFactory(name + "-timer"));
+		children = new ConcurrentHashMap<String, CryptoServer>();
+		recovered = new ConcurrentHashMap<String, RecoveredBallot>();
+		evoters = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		voterGroups = new ConcurrentHashMap<String, Set<String>>();
+		phaseTimeouts = new ConcurrentHashMap<EVotePhase, Integer>();
+		telemetry = new PhaseTelemetry(log);
+		archive = new EVoteArchive();
+	}
+	
+	/**
+	 * Register a remote client with the server, and find out whether it can evote. Clients
+	 * that can't are still registered (they can message other clients), but are never enrolled
+	 * in a ballot, where they would only hold it up until it times out.
+	 * 
+	 * @param c the registering client
+	 * @return true if the client successfully registered
+	 */
+	@Override
+	public boolean registerClient(CryptoClient c) throws RemoteException {
+		if (!super.registerClient(c)) {
+			return false;
+		}
+		
+		String clientName = c.getName();
+		boolean canVote;
+		try {
+			canVote = c.supportsEVote();
+		} catch (RemoteException e) {
+			canVote = false;
+		}
+		
+		if (canVote) {
+			evoters.add(clientName);
+		}
+		else {
+			log.print(VPrint.WARN, "%s does not support evoting, so it won't be enrolled in ballots", clientName);
+		}
+		return true;
 	}
 	
 	/**
 	 * Unregister a remote client so server can no longer forward it messages.
 	 * 
-	 * If the unregistering client is participating in an evote, abort the vote.
+	 * If the unregistering client is participating in an evote, abort that vote
+	 * (or, if the vote tolerates dropouts, carry on without the client).
 	 * 
 	 * @param c the unregistering client 
 	 * @return true if the client successfully unregistered
 	 */
 	public boolean unregisterClient(String clientName) throws RemoteException {
+		evoters.remove(clientName);
 		
-		synchronized (currentVotingClients) {
-			if (currentVotingClients.contains(clientName)) {
-				String msg = String.format("aborting vote because %s unregistered midvote", clientName);
-				/**
-				 * Because we don't have a reference to the server thread doing the vote here
-				 * we don't cancel it. In the future, we can make the server thread into
-				 * an instance variable so we have a reference.
-				 */
-				abortEVote(msg, null, currentVotingClients);
-			}
+		Ballot ballot = findBallot(clientName);
+		if (ballot != null && ballot.canDrop()) {
+			dropVoter(ballot, clientName, "unregistered midvote");
+			return super.unregisterClient(clientName);
+		}
+		
+		/*
+		 * Only the client's own ballot is aborted; ballots running side by side carry on. The
+		 * ballot's coordinator does the abort, so it knows not to blame the other voters.
+		 */
+		if (ballot != null) {
+			ballot.abort(String.format("aborting vote because %s unregistered midvote", clientName));
 		}
 		
 		return super.unregisterClient(clientName);
 	}
 		
+	/** Returns the ballot in progress that the client is voting in, or null if there is none */
+	private Ballot findBallot(String clientName) {
+		for (Ballot ballot : ballots.values()) {
+			if (ballot.getParticipants().contains(clientName)) {
+				return ballot;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Carry on with a dropout tolerant ballot without a voter who failed. If that leaves too
+	 * few voters, the phase being collected fails and the ballot is aborted (see awaitPhase).
+	 * 
+	 * @param ballot
+	 * 		the ballot the voter is taking part in
+	 * @param voter
+	 * 		the voter who failed
+	 * @param reason
+	 * 		why the voter is being dropped (for the log)
+	 */
+	private void dropVoter(Ballot ballot, String voter, String reason) {
+		if (ballot.exclude(voter)) {
+			log.print(VPrint.WARN, "dropping %s from ballot %s because %s (%d voters remain, quorum is %d)",
+					voter, ballot.getEVote().id, reason, ballot.getParticipants().size(), ballot.getQuorum());
+		}
+		
+		synchronized (currentVotingClients) {
+			currentVotingClients.remove(voter);
+		}
+	}
+	
 	/**
 	 * Blocks until all clients in "clientList" have sent a message with sid.
 	 * Returns a map containing all the messages. 
@@ -89,28 +263,7 @@ public class EVoteServer extends CentralServer {
 	 * @throws InterruptedException 
 	 */
 	public Map<String, CryptoMessage> waitForAll(Set<String> clientList, String sid) throws InterruptedException {
-		Map<String, CryptoMessage> clientMap;
-		
-		synchronized (sessions) {
-			while (!sessions.containsKey(sid)) {
-				sessions.wait();
-			}
-			
-			clientMap = sessions.get(sid);
-		}
-		
-		synchronized (clientMap) {
-			for (String client : clients.keySet()) {
-				while (!clientMap.containsKey(client)) {
-					clientMap.wait();
-				}
-			}
-			
-			clientMap = sessions.remove(sid);
-			clientMap.notifyAll();
-		}
-		
-		return clientMap;
+		return getSession(sid).takeAll(clientList);
 	}
 	
 	/**
@@ -125,25 +278,20 @@ public class EVoteServer extends CentralServer {
 	 * @throws InterruptedException 
 	 */
 	public CryptoMessage waitForMessage(String from, String sid) throws InterruptedException {
-		Map<String, CryptoMessage> clientMap;
-		CryptoMessage m;
-		
-		synchronized (sessions) {
-			while (!sessions.containsKey(sid)) {
-				sessions.wait();
-			}
-			
-			clientMap = sessions.get(sid);
-		
-			while (!clientMap.containsKey(from)) {
-				clientMap.wait();
+		return getSession(sid).take(from);
+	}
+	
+	/** Returns the session with the given id, starting it if this is its first message or waiter */
+	private Session getSession(String sid) {
+		Session session = sessions.get(sid);
+		if (session == null) {
+			Session created = new Session(sid);
+			session = sessions.putIfAbsent(sid, created);
+			if (session == null) {
+				session = created;
 			}
-			
-			m = clientMap.remove(from);
-			sessions.notifyAll();
 		}
-		
-		return m;
+		return session;
 	}
 	
 	/**
@@ -152,8 +300,9 @@ public class EVoteServer extends CentralServer {
 	 * Sessions are distinguished by the tuple (session id, client name)
 	 * (so a server may have a separate session with each client)
 	 * 
-	 * In addition, facilitates waiting for messages. When a message with
-	 * a session id comes in, the server adds it to the proper wait list so
+	 * In addition, facilitates waiting for messages. When a message belongs to a ballot
+	 * in progress, the voter's contribution is folded straight into that ballot's running
+	 * products. Any other message with a session id is added to the proper wait list so
 	 * another thread can claim the message.
 	 * 
 	 * @param from: the name of the client sending the message
@@ -162,43 +311,48 @@ public class EVoteServer extends CentralServer {
 	 * @throws RemoteException, ClientNotFound, InterruptedException 
 	 */
 	public String recvMessage(String from, String to, CryptoMessage m) throws RemoteException, ClientNotFound, InterruptedException {
-		Map<String, CryptoMessage> sessionMap;
-		
-		/* Relay message to all other voting clients */	
-		CryptoMessage relayMessage = new CryptoMessage(m.getPlainText(), m.getCipherText(), "");
-		relayMessage.setTag(m.getTag());
-		
-		synchronized (currentVotingClients) {
-			for (String clientName : currentVotingClients) {
-				if (!clientName.equals(from)) {
-					getClient(clientName).recvMessage(from, "voters", relayMessage);	
-				}
-			}
-		}
-		
 		if (m.hasSessionID()) {
 			String sid = m.getSessionID();
 			
-			synchronized (sessions) {
-				sessionMap = sessions.get(sid);
+			Ballot ballot = ballots.get(sid);
+			PhaseAccumulator acc = (ballot != null) ? ballot.getCurrentPhase() : null;
+			
+			// replies from the parent server are waited on like any other session message
+			if (acc != null && !from.equals(ballot.getParent())) {
+				if (!acc.isExpected(from)) {
+					log.print(VPrint.WARN, "(%s, %s) ignoring unexpected %s message", sid, from, acc.getPhase());
+					return "";
+				}
 				
-				if (sessionMap == null) {
-					sessionMap = new Hashtable<String, CryptoMessage>();
-					sessions.put(sid, sessionMap);
+				/* 
+				 * Post the message to the ballot's bulletin board for the other voters to see
+				 * (only the cipher text of encrypted votes). The accumulator posts it once it
+				 * accepts it, so a repeated message isn't posted twice, and before it can
+				 * complete the phase, so the root signed at the end of the phase covers it.
+				 */
+				String plainText = m.isEncrypted() ? "" : m.getPlainText();
+				final CryptoMessage boardMessage = new CryptoMessage(plainText, m.getCipherText(), "");
+				boardMessage.setTag(m.getTag());
+				if (m.getEncryptionState() instanceof BigInteger || m.getEncryptionState() instanceof EVoteCiphertext) {
+					boardMessage.setEncryptionState(m.getEncryptionState());
 				}
+				final BulletinBoard board = ballot.getBoard();
+				final String author = from;
+				Runnable post = new Runnable() {
+					@Override
+					public void run() {
+						board.post(author, boardMessage);
+					}
+				};
 				
-				sessions.notifyAll();
-			}
-			
-			synchronized (sessionMap) {
-				while (sessionMap.containsKey(from)) {
-					log.print(VPrint.WARN, "(%s, %s) already has a waiting message", sid, from);
-					sessionMap.wait();
+				if (!acc.add(from, m, post)) {
+					log.print(VPrint.WARN, "(%s, %s) ignoring repeated %s message", sid, from, acc.getPhase());
 				}
-				sessionMap.put(from, m);
-				sessionMap.notifyAll();
+				return "";
 			}
 			
+			getSession(sid).arrive(from, m);
+			
 			/* Don't print message, because another thread will handle it */
 			return "";
 		}
@@ -223,20 +377,315 @@ public class EVoteServer extends CentralServer {
 		}
 	}
 	
+	/** Creates callable object for a sub-server e-voting for its voters (used for threading) */
+	protected class childEVote implements Callable<Object> {
+		private CryptoServer child;
+		private EVote evote;
+		
+		public childEVote(CryptoServer child, EVote evote) {
+			this.child = child;
+			this.evote = evote;
+		}
+		
+		public Object call() throws Exception {
+			child.evoteSubtree(evote, name);
+			return null;
+		}
+	}
+	
 	/**
-	 * Helper method to send a message to all clients in the list.
+	 * Helper method to send a message to all voters still taking part in a ballot.
 	 * 
-	 * @param clientList
-	 * 		the clients to send the message to
+	 * @param ballot
+	 * 		the ballot whose voters to send the message to
 	 * @param m
 	 * 		the message
 	 * 
 	 * @throws RemoteException, InterruptedException, ClientNotFound
 	 */
-	private void broadcastMessage(Set<String> clientList, CryptoMessage m) throws RemoteException, InterruptedException, ClientNotFound {
-		for (String client : clientList) {
-			getClient(client).recvMessage(name, client, m);
+	private void broadcastMessage(Ballot ballot, CryptoMessage m) throws RemoteException, InterruptedException, ClientNotFound {
+		Map<String, CryptoMessage> messages = new HashMap<String, CryptoMessage>();
+		for (String client : ballot.getParticipants()) {
+			messages.put(client, m);
+		}
+		sendToVoters(ballot, messages);
+	}
+	
+	/**
+	 * Sends each voter its own message. The messages are sent in parallel, so this takes about
+	 * one round trip however many voters there are, and returns once every voter has its
+	 * message or has failed.
+	 * 
+	 * If a voter can't be reached and the ballot tolerates dropouts, the voter is dropped.
+	 * Otherwise the ballot is aborted and the failure is thrown.
+	 * 
+	 * @param ballot
+	 * 		the ballot the messages belong to
+	 * @param messages
+	 * 		voter name => message for that voter
+	 * 
+	 * @throws RemoteException, InterruptedException, ClientNotFound
+	 */
+	private void sendToVoters(Ballot ballot, Map<String, CryptoMessage> messages) throws RemoteException, InterruptedException, ClientNotFound {
+		Map<String, Future<String>> deliveries = new HashMap<String, Future<String>>();
+		for (Entry<String, CryptoMessage> entry : messages.entrySet()) {
+			deliveries.put(entry.getKey(), broadcastPool.submit(new sendToClient(entry.getKey(), entry.getValue())));
+		}
+		
+		String failedClient = null;
+		Throwable failure = null;
+		
+		try {
+			for (Entry<String, Future<String>> delivery : deliveries.entrySet()) {
+				String client = delivery.getKey();
+				try {
+					delivery.getValue().get();
+				} catch (ExecutionException e) {
+					log.print(VPrint.DEBUG, "could not send to %s: %s", client, e.getCause());
+					if (ballot.canDrop()) {
+						dropVoter(ballot, client, "server could not reach it");
+					}
+					else if (failure == null) {
+						failedClient = client;
+						failure = e.getCause();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// the ballot was aborted; don't leave sends running for it
+			for (Future<String> delivery : deliveries.values()) {
+				delivery.cancel(true);
+			}
+			throw e;
+		}
+		
+		if (failure != null) {
+			String reason = String.format("abort vote for ballot %s because %s could not be reached", 
+					ballot.getEVote().id, failedClient);
+			ballot.abort(reason);
+			
+			if (failure instanceof ClientNotFound) {
+				throw (ClientNotFound) failure;
+			}
+			if (failure instanceof RemoteException) {
+				throw (RemoteException) failure;
+			}
+			throw new RemoteException(reason, failure);
+		}
+	}
+	
+	/**
+	 * Sends a ballot participant (a voter, or a sub-server voting for its own voters) a message.
+	 * 
+	 * @param participant
+	 * 		the voter or sub-server
+	 * @param to
+	 * 		who the message is addressed to
+	 * @param m
+	 * 		the message
+	 * @return the participant's reply
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	private String deliver(String participant, String to, CryptoMessage m) throws RemoteException, ClientNotFound, InterruptedException {
+		CryptoServer child = children.get(participant);
+		if (child != null) {
+			return child.recvMessage(name, to, m);
+		}
+		return getClient(participant).recvMessage(name, to, m);
+	}
+	
+	/** Creates callable object for sending a client one message (used for threading) */
+	protected class sendToClient implements Callable<String> {
+		private String clientName;
+		private CryptoMessage m;
+		
+		public sendToClient(String clientName, CryptoMessage m) {
+			this.clientName = clientName;
+			this.m = m;
+		}
+		
+		public String call() throws Exception {
+			return deliver(clientName, clientName, m);
+		}
+	}
+	
+	/**
+	 * Signs the root of a ballot's bulletin board and sends it to every voter. Voters fetch
+	 * the messages themselves (see getBoardEntry). The roots are sent in the background, so
+	 * the ballot doesn't wait on them.
+	 * 
+	 * @param ballot
+	 * 		the ballot whose board to publish
+	 */
+	private void publishRoot(Ballot ballot) {
+		BulletinRoot root = ballot.getBoard().signRoot(ballot.getCurrentPhase().getPhase().toString());
+		log.print(VPrint.DEBUG, "ballot %s board: %s", ballot.getEVote().id, root);
+		
+		CryptoMessage rootMsg = new CryptoMessage(root.toString(), "");
+		rootMsg.setTag("bulletin board root");
+		rootMsg.setEncryptionState(root);
+		
+		for (String client : ballot.getParticipants()) {
+			broadcastPool.submit(new publishToClient(client, rootMsg));
+		}
+	}
+	
+	/** Creates runnable object for sending a client a board root (used for threading) */
+	protected class publishToClient implements Runnable {
+		private String clientName;
+		private CryptoMessage rootMsg;
+		
+		public publishToClient(String clientName, CryptoMessage rootMsg) {
+			this.clientName = clientName;
+			this.rootMsg = rootMsg;
+		}
+		
+		public void run() {
+			try {
+				deliver(clientName, "voters", rootMsg);
+			} catch (Exception e) {
+				// the voter can still fetch the root itself; failures that matter show up in the ballot
+				log.print(VPrint.WARN, "could not publish board root to %s: %s", clientName, e);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the ids of the ballots this server is running or has recently run, oldest first
+	 * (older ballots are only in the archive; see setBoardRetention).
+	 * 
+	 * @return the ballot ids
+	 * @throws RemoteException
+	 */
+	public List<String> getBulletinBoards() throws RemoteException {
+		synchronized (boards) {
+			return new ArrayList<String>(boards.keySet());
+		}
+	}
+	
+	/**
+	 * Returns the names of a ballot's voters (a sub-server asks its parent for the ballots
+	 * its parent started).
+	 * 
+	 * @param ballotId
+	 * 		the ballot
+	 * @return the voters sorted by name, or null if there is no such ballot
+	 * @throws RemoteException
+	 */
+	public List<String> getRoster(String ballotId) throws RemoteException {
+		List<String> roster = rosters.get(ballotId);
+		if (roster == null && parent != null) {
+			return parent.getRoster(ballotId);
+		}
+		return roster;
+	}
+	
+	/**
+	 * Returns the archived record of a ballot this server ran.
+	 * 
+	 * @param ballotId
+	 * 		the ballot
+	 * @return the ballot's record, or null if it isn't in the archive (e.g. it is still running)
+	 * @throws RemoteException
+	 */
+	public BallotRecord getBallotRecord(String ballotId) throws RemoteException {
+		return archive.get(ballotId);
+	}
+	
+	/**
+	 * Returns the archived records of the ballots this server ran that ended in a window of time.
+	 * The archive is indexed by time, so this only touches the records returned.
+	 * 
+	 * @param from
+	 * 		the start of the window (milliseconds since the epoch, inclusive)
+	 * @param to
+	 * 		the end of the window (exclusive)
+	 * @param limit
+	 * 		the most records to return
+	 * @return the records, most recent first
+	 * @throws RemoteException
+	 */
+	public List<BallotRecord> findBallotRecords(long from, long to, int limit) throws RemoteException {
+		return archive.find(from, to, limit);
+	}
+	
+	/** The version of a roster: unchanged as long as ballots keep the same voters */
+	private synchronized long rosterVersion(Set<String> voters) {
+		if (!voters.equals(lastRoster)) {
+			lastRoster = new HashSet<String>(voters);
+			rosterVersion++;
+		}
+		return rosterVersion;
+	}
+	
+	/**
+	 * Returns a signed root covering every message posted to a ballot's bulletin board.
+	 * 
+	 * @param ballotId
+	 * 		the ballot
+	 * @return the root, or null if there is no such ballot
+	 * @throws RemoteException
+	 */
+	public BulletinRoot getBoardRoot(String ballotId) throws RemoteException {
+		BulletinBoard board = boards.get(ballotId);
+		return (board != null) ? board.getRoot() : null;
+	}
+	
+	/**
+	 * Returns a message from a ballot's bulletin board with its inclusion proof.
+	 * 
+	 * @param ballotId
+	 * 		the ballot
+	 * @param index
+	 * 		the index of the message on the board
+	 * @param treeSize
+	 * 		the size of the signed root the proof is for
+	 * @return the message and proof, or null if there is no such message
+	 * @throws RemoteException
+	 */
+	public BulletinProof getBoardEntry(String ballotId, int index, int treeSize) throws RemoteException {
+		BulletinBoard board = boards.get(ballotId);
+		return (board != null) ? board.getEntry(index, treeSize) : null;
+	}
+	
+	/**
+	 * Returns every message a voter posted to a ballot's bulletin board with their inclusion proofs.
+	 * 
+	 * @param ballotId
+	 * 		the ballot
+	 * @param author
+	 * 		the voter
+	 * @param treeSize
+	 * 		the size of the signed root the proofs are for
+	 * @return the voter's messages in the order they were posted
+	 * @throws RemoteException
+	 */
+	public List<BulletinProof> findBoardEntries(String ballotId, String author, int treeSize) throws RemoteException {
+		BulletinBoard board = boards.get(ballotId);
+		return (board != null) ? board.findEntries(author, treeSize) : new ArrayList<BulletinProof>();
+	}
+	
+	/**
+	 * Waits for the phase being collected to complete. If too many voters dropped out for it
+	 * to ever complete, the ballot is aborted.
+	 * 
+	 * @return true if the phase completed
+	 * @throws InterruptedException
+	 */
+	private boolean awaitPhase(Ballot ballot, PhaseAccumulator acc) throws InterruptedException {
+		boolean completed = acc.await();
+		telemetry.record(acc.getPhase(), acc.getLatencies(), new ArrayList<String>());
+		
+		if (completed) {
+			ballot.recordPhaseTime(acc.getPhase(), acc.getElapsedMillis());
+			publishRoot(ballot);
+			return true;
 		}
+		
+		String reason = String.format("abort vote for ballot %s because fewer than %d voters remain", 
+				ballot.getEVote().id, ballot.getQuorum());
+		ballot.abort(reason);
+		return false;
 	}
 
 	/** 
@@ -252,78 +701,319 @@ public class EVoteServer extends CentralServer {
 	 */
 	private String doEvote(EVote evote, Set<String> votingClients) throws InterruptedException, RemoteException, ClientNotFound {
 		String sid = evote.id.toString();
-		log.print(VPrint.QUIET, "initiating ballot %s with %d voters", sid, votingClients.size());
+		log.print(VPrint.QUIET, "initiating ballot %s with %d voters", sid, evote.numVoters);
+		
+		try {
+			return tallyEvote(ballots.get(sid));
+		} finally {
+			ballots.remove(sid);
+		}
+	}
+	
+	/** Runs the phases of the evote protocol (see doEvote) */
+	private String tallyEvote(Ballot ballot) throws InterruptedException, RemoteException, ClientNotFound {
+		EVote evote = ballot.getEVote();
+		String sid = evote.id.toString();
 		
 		/*
 		 * EVote phase 3:
 		 * server receives g^(sk_i) from each client and calculates shared public key
+		 * (the phase was opened by initiateEVote before the ballot went out)
 		 */
-		Map<String, CryptoMessage> pkMsgs = waitForAll(votingClients, sid);
-		BigInteger publicKey = BigInteger.valueOf(1L);
-		for (CryptoMessage pkMsg : pkMsgs.values()) {
-			BigInteger pk = new BigInteger(pkMsg.getPlainText());
-			publicKey = publicKey.multiply(pk).mod(evote.p);
+		PhaseAccumulator pkAcc = ballot.getCurrentPhase();
+		if (!awaitPhase(ballot, pkAcc)) {
+			return "";
 		}
+		BigInteger publicKey = pkAcc.product(0);
 		
 		log.print(VPrint.DEBUG2, "publicKey: %s", publicKey);
 		CryptoMessage publicKeyMessage = new CryptoMessage(publicKey.toString(), sid);
 		
-		broadcastMessage(votingClients, publicKeyMessage);
-		
-		/*
-		 * EVote phase 4:
-		 * server combines c_i from clients to form combined cipher text
-		 */
-		Map<String, CryptoMessage> cipherMsgs = waitForAll(votingClients, sid);
-		BigInteger c1 = BigInteger.valueOf(1L);
-		BigInteger c2 = BigInteger.valueOf(1L);
-		for (CryptoMessage cipherMsg : cipherMsgs.values()) {
-			BigInteger c1_i = (BigInteger) cipherMsg.getEncryptionState();
-			BigInteger c2_i = new BigInteger(cipherMsg.getCipherText());
-			c1 = c1.multiply(c1_i).mod(evote.p);
-			c2 = c2.multiply(c2_i).mod(evote.p);
+		if (evote.isThreshold()) {
+			/*
+			 * Threshold key generation:
+			 * every voter also needs each other voter's g^(sk_i) to check the commitments
+			 * it is dealt and to encrypt the shares it deals
+			 */
+			HashMap<String, BigInteger> voterKeys = new HashMap<String, BigInteger>();
+			for (Entry<String, CryptoMessage> entry : pkAcc.getMessages(Integer.MAX_VALUE).entrySet()) {
+				voterKeys.put(entry.getKey(), new BigInteger(entry.getValue().getPlainText()));
+			}
+			publicKeyMessage.setEncryptionState(voterKeys);
+			
+			PhaseAccumulator dealAcc = ballot.open(EVotePhase.DEALING);
+			logPhase(ballot, EVotePhase.PUBLIC_KEY, toAll(ballot, publicKeyMessage));
+			broadcastMessage(ballot, publicKeyMessage);
+			
+			return dealEvote(ballot, dealAcc, voterKeys);
 		}
 		
-		log.print(VPrint.DEBUG2, "c1: %s", c1);
-		log.print(VPrint.DEBUG2, "c2: %s", c2);
+		PhaseAccumulator cipherAcc = ballot.open(EVotePhase.CIPHERTEXT);
 		
-		CryptoMessage combinedCipherMsg = new CryptoMessage(c2.toString(), sid);
-		combinedCipherMsg.setEncryptionState(c1);
+		// every key in the election key is needed to decrypt, so none of their voters may have been
+		// dropped (once the next phase is open no more voters can be)
+		if (pkAcc.getNumArrived() != ballot.getParticipants().size()) {
+			ballot.abort(String.format("abort vote for ballot %s because a voter whose key is in the election key dropped out", sid));
+			return "";
+		}
+		logPhase(ballot, EVotePhase.PUBLIC_KEY, toAll(ballot, publicKeyMessage));
+		broadcastMessage(ballot, publicKeyMessage);
 		
-		broadcastMessage(votingClients, combinedCipherMsg);
+		return finishEvote(ballot, cipherAcc, publicKey);
+	}
+	
+	/** Runs the dealing phase of a threshold evote, then the rest of the protocol */
+	private String dealEvote(Ballot ballot, PhaseAccumulator dealAcc, Map<String, BigInteger> voterKeys)
+			throws InterruptedException, RemoteException, ClientNotFound {
+		EVote evote = ballot.getEVote();
+		String sid = evote.id.toString();
 		
 		/*
-		 * EVote phase 7:
-		 * compute the decryption key and share with all clients
+		 * Each voter deals a share of its secret key to every other voter.
+		 * Route the shares so each voter gets every dealer's commitments and its own share.
+		 * Voters who dropped out before dealing are left out of the election key.
 		 */
-		Map<String, CryptoMessage> decryptMsgs = waitForAll(votingClients, sid);
-		BigInteger decrypt = BigInteger.valueOf(1L);
-		for (CryptoMessage decryptMsg : decryptMsgs.values()) {
-			BigInteger decrypt_i = new BigInteger(decryptMsg.getPlainText());
-			decrypt = decrypt.multiply(decrypt_i).mod(evote.p);
+		if (!awaitPhase(ballot, dealAcc)) {
+			return "";
 		}
+		Map<String, CryptoMessage> dealings = dealAcc.getMessages(Integer.MAX_VALUE);
 		
-		log.print(VPrint.DEBUG2, "decrypt: %s", decrypt);
+		List<BigInteger> dealerKeys = new ArrayList<BigInteger>();
+		for (String dealer : dealings.keySet()) {
+			dealerKeys.add(voterKeys.get(dealer));
+		}
+		BigInteger publicKey = ProductTree.product(dealerKeys, evote.p);
+		log.print(VPrint.DEBUG2, "publicKey from %d dealers: %s", dealings.size(), publicKey);
 		
-		CryptoMessage decryptKeyMsg = new CryptoMessage(decrypt.toString(), sid);
-		broadcastMessage(votingClients, decryptKeyMsg);
+		PhaseAccumulator cipherAcc = ballot.open(EVotePhase.CIPHERTEXT);
+		Map<String, CryptoMessage> dealtMessages = new HashMap<String, CryptoMessage>();
+		for (String recipient : ballot.getParticipants()) {
+			HashMap<String, EVoteDealing> dealt = new HashMap<String, EVoteDealing>();
+			for (Entry<String, CryptoMessage> entry : dealings.entrySet()) {
+				EVoteDealing d = (EVoteDealing) entry.getValue().getEncryptionState();
+				if (!entry.getKey().equals(recipient)) {
+					// pass on (and log) only the cipher text, in case the dealer left the share in the clear
+					CryptoMessage share = d.shares.get(recipient);
+					CryptoMessage encryptedShare = null;
+					if (share != null) {
+						encryptedShare = new CryptoMessage("", share.getCipherText(), "");
+						encryptedShare.setEncryptionState(share.getEncryptionState());
+					}
+					dealt.put(entry.getKey(), new EVoteDealing(d.commitments,
+							Collections.singletonMap(recipient, encryptedShare)));
+				}
+			}
+			
+			CryptoMessage dealtMsg = new CryptoMessage(publicKey.toString(), sid);
+			dealtMsg.setEncryptionState(dealt);
+			dealtMessages.put(recipient, dealtMsg);
+		}
+		logPhase(ballot, EVotePhase.DEALING, dealtMessages);
+		sendToVoters(ballot, dealtMessages);
+		
+		return finishEvote(ballot, cipherAcc, publicKey);
+	}
+	
+	/** Runs the phases of the evote protocol after the voters' public key has been set up */
+	private String finishEvote(Ballot ballot, PhaseAccumulator cipherAcc, BigInteger publicKey)
+			throws InterruptedException, RemoteException, ClientNotFound {
+		EVote evote = ballot.getEVote();
+		String sid = evote.id.toString();
 		
 		/*
-		 * EVote phase 8:
-		 * decrypt vote
+		 * EVote phase 4:
+		 * server combines c_i from clients to form combined cipher text
+		 * (only the ballots actually cast are counted if some voters dropped out)
 		 */
-		int positiveVotes, negativeVotes;
-		BigInteger voteResult = c2.multiply(decrypt.modInverse(evote.p)).mod(evote.p);
-		int numVoters = votingClients.size();		
+		if (!awaitPhase(ballot, cipherAcc)) {
+			return "";
+		}
+		BigInteger c1 = cipherAcc.product(0);
+		BigInteger c2 = cipherAcc.product(1);
+		// (ballots that can drop voters have no sub-servers, so each contribution is one voter's)
+		int numVoters = (evote.isThreshold() || evote.quorum > 0) ? cipherAcc.getNumArrived() : evote.numVoters;
 		
-		try {
-			positiveVotes = evote.countYays(voteResult, numVoters);
+		/*
+		 * Every vote must be proved to encrypt 0 or 1. A voter who cheats is dropped from a
+		 * dropout tolerant ballot (and its vote left out of the tally); otherwise the ballot is aborted.
+		 */
+		Map<String, CryptoMessage> votes = cipherAcc.getMessages(Integer.MAX_VALUE);
+		List<String> invalid = invalidVotes(ballot, votes, publicKey);
+		if (!invalid.isEmpty()) {
+			String reason = String.format("abort vote for ballot %s because the votes of %s are invalid", sid, invalid);
+			if (!ballot.canDrop()) {
+				ballot.abort(reason);
+				return "";
+			}
+			
+			for (String cheater : invalid) {
+				votes.remove(cheater);
+				dropVoter(ballot, cheater, "its vote is invalid");
+				try {
+					getClient(cheater).evoteAbort(String.format("dropped from ballot %s because its vote is invalid", sid));
+				} catch (ClientNotFound | RemoteException e) {
+					// do nothing -- it is out of the ballot either way
+				}
+			}
+			if (!ballot.hasQuorum()) {
+				ballot.abort(reason);
+				return "";
+			}
+			
+			BigInteger[] cipher = EVotePhase.CIPHERTEXT.combine(votes.values(), evote.p);
+			c1 = cipher[0];
+			c2 = cipher[1];
+			numVoters = votes.size();
+		}
+		
+		log.print(VPrint.DEBUG2, "c1: %s", c1);
+		log.print(VPrint.DEBUG2, "c2: %s", c2);
+		
+		CryptoMessage combinedCipherMsg = new CryptoMessage(c2.toString(), sid);
+		combinedCipherMsg.setEncryptionState(c1);
+		
+		PhaseAccumulator decryptAcc = ballot.open(EVotePhase.DECRYPTION);
+		logPhase(ballot, EVotePhase.CIPHERTEXT, toAll(ballot, combinedCipherMsg),
+				c1, c2, BigInteger.valueOf(numVoters));
+		broadcastMessage(ballot, combinedCipherMsg);
+		
+		return decryptEvote(ballot, decryptAcc, c2, numVoters);
+	}
+	
+	/**
+	 * Checks the proofs that a phase's encrypted votes are each 0 or 1, all in one batch (see
+	 * VoteProof.findInvalid), so the check costs little more than a single proof would. Votes
+	 * from sub-servers were already checked by the sub-server.
+	 * 
+	 * @param ballot
+	 * 		the ballot voted in
+	 * @param votes
+	 * 		voter name => encrypted vote
+	 * @param publicKey
+	 * 		the election public key the votes are encrypted under
+	 * @return the voters whose votes are invalid
+	 */
+	private List<String> invalidVotes(Ballot ballot, Map<String, CryptoMessage> votes, BigInteger publicKey) {
+		EVote evote = ballot.getEVote();
+		List<String> voters = new ArrayList<String>();
+		List<String> invalid = new ArrayList<String>();
+		
+		for (Entry<String, CryptoMessage> vote : votes.entrySet()) {
+			if (children.containsKey(vote.getKey())) {
+				continue;
+			}
+			Object state = vote.getValue().getEncryptionState();
+			if (state instanceof EVoteCiphertext && ((EVoteCiphertext) state).proof != null) {
+				voters.add(vote.getKey());
+			}
+			else {
+				invalid.add(vote.getKey());
+			}
+		}
+		
+		int n = voters.size();
+		BigInteger[] c1 = new BigInteger[n];
+		BigInteger[] c2 = new BigInteger[n];
+		VoteProof[] proofs = new VoteProof[n];
+		byte[][] contexts = new byte[n][];
+		
+		for (int i = 0; i < n; i++) {
+			CryptoMessage vote = votes.get(voters.get(i));
+			EVoteCiphertext cipher = (EVoteCiphertext) vote.getEncryptionState();
+			c1[i] = cipher.c1;
+			c2[i] = new BigInteger(vote.getCipherText());
+			proofs[i] = cipher.proof;
+			contexts[i] = EVoteCiphertext.proofContext(evote.id.toString(), voters.get(i));
+		}
+		
+		long start = System.nanoTime();
+		for (int i : VoteProof.findInvalid(evote.p, evote.q, evote.g, publicKey, c1, c2, proofs, contexts, proofRand)) {
+			invalid.add(voters.get(i));
+		}
+		log.print(VPrint.DEBUG, "checked %d vote proofs in %.1fms", n, (System.nanoTime() - start) / 1e6);
+		
+		if (!invalid.isEmpty()) {
+			log.print(VPrint.ERROR, "ballot %s: invalid votes from %s", evote.id, invalid);
+		}
+		return invalid;
+	}
+	
+	/** Runs the last phase of the evote protocol once the votes have been combined into c2 */
+	private String decryptEvote(Ballot ballot, PhaseAccumulator decryptAcc, BigInteger c2, int numVoters)
+			throws InterruptedException, RemoteException, ClientNotFound {
+		EVote evote = ballot.getEVote();
+		String sid = evote.id.toString();
+		
+		/*
+		 * EVote phase 7:
+		 * compute the decryption key and share with all clients
+		 */
+		if (!awaitPhase(ballot, decryptAcc)) {
+			return "";
+		}
+		BigInteger decrypt;
+		
+		if (evote.isThreshold()) {
+			/*
+			 * Only the first t shares are needed: c1^(sk) = prod_j (c1^(s_j))^(lambda_j)
+			 * where lambda_j are the Lagrange coefficients for the voters who answered
+			 */
+			Map<String, CryptoMessage> shares = decryptAcc.getMessages(evote.threshold);
+			List<Integer> indices = new ArrayList<Integer>();
+			for (String voter : shares.keySet()) {
+				indices.add(evote.indexOf(voter));
+			}
+			
+			decrypt = BigInteger.ONE;
+			for (Entry<String, CryptoMessage> entry : shares.entrySet()) {
+				BigInteger lambda = FeldmanVSS.lagrangeAtZero(evote.indexOf(entry.getKey()), indices, evote.q);
+				BigInteger share = new BigInteger(entry.getValue().getPlainText());
+				decrypt = decrypt.multiply(share.modPow(lambda, evote.p)).mod(evote.p);
+			}
+			
+			log.print(VPrint.DEBUG, "decrypted with shares from %s", shares.keySet());
+		}
+		else {
+			decrypt = decryptAcc.product(0);
+		}
+		
+		log.print(VPrint.DEBUG2, "decrypt: %s", decrypt);
+		
+		// voters also need to know how many ballots were cast to decode the tally
+		CryptoMessage decryptKeyMsg = new CryptoMessage(decrypt.toString(), sid);
+		decryptKeyMsg.setEncryptionState(numVoters);
+		logPhase(ballot, EVotePhase.DECRYPTION, toAll(ballot, decryptKeyMsg),
+				c2, decrypt, BigInteger.valueOf(numVoters));
+		broadcastMessage(ballot, decryptKeyMsg);
+		
+		return countEvote(ballot, c2, decrypt, numVoters);
+	}
+	
+	/** Decrypts the tally once the decryption key is known */
+	private String countEvote(Ballot ballot, BigInteger c2, BigInteger decrypt, int numVoters) {
+		EVote evote = ballot.getEVote();
+		String sid = evote.id.toString();
+		
+		/*
+		 * EVote phase 8:
+		 * decrypt vote
+		 */
+		int positiveVotes, negativeVotes;
+		BigInteger voteResult = c2.multiply(decrypt.modInverse(evote.p)).mod(evote.p);
+		
+		try {
+			positiveVotes = evote.countYays(voteResult, numVoters);
 			negativeVotes = numVoters - positiveVotes;
 		} catch (EVoteInvalidResult e) {
 			log.print(VPrint.ERROR, "evote failed: %s", e.getMessage());
 			return "";
 		}
 		
+		return announceResult(sid, positiveVotes, negativeVotes);
+	}
+	
+	/** Logs the result of a ballot and formats it as (# yes, # no) */
+	private String announceResult(String sid, int positiveVotes, int negativeVotes) {
 		log.print(VPrint.QUIET, "ballot %s vote results", sid);
 		log.print(VPrint.QUIET, "---------------------------------------------------------");
 		log.print(VPrint.QUIET, "in favor: %s", positiveVotes);
@@ -339,126 +1029,1319 @@ public class EVoteServer extends CentralServer {
 		return String.format("(%s,%s)", positiveVotes, negativeVotes);
 	}
 	
+	/**
+	 * Runs the server's side of a Paillier evote. It goes like an ElGamal evote: the voters make
+	 * the ballot's key together, each sending its part G^(x_i) (see PaillierCipher), and then send
+	 * their encrypted votes; the server multiplies the votes into an encryption (A, B) of the tally,
+	 * and every voter partially decrypts it with A^(x_i). B divided by the product of the partial
+	 * decryptions is 1 + (# yes) * N mod N^2, so the tally is read off directly. Nobody, the
+	 * server included, ever holds the whole private key.
+	 * 
+	 * @param ballot
+	 * 		the ballot, whose first phase (PUBLIC_KEY) is already open
+	 * @return String containing the number of positive and negative votes
+	 * @throws InterruptedException, RemoteException, ClientNotFound
+	 */
+	private String doPaillierEvote(Ballot ballot) throws InterruptedException, RemoteException, ClientNotFound {
+		EVote evote = ballot.getEVote();
+		String sid = evote.id.toString();
+		BigInteger n = evote.paillierN;
+		log.print(VPrint.QUIET, "initiating Paillier ballot %s with %d voters", sid, evote.numVoters);
+		
+		/*
+		 * Each voter sends G^(x_i); their product is the ballot's public key h
+		 */
+		PhaseAccumulator pkAcc = ballot.getCurrentPhase();
+		if (!awaitPhase(ballot, pkAcc)) {
+			return "";
+		}
+		BigInteger publicKey = pkAcc.product(0);
+		log.print(VPrint.DEBUG2, "publicKey: %s", publicKey);
+		
+		PhaseAccumulator voteAcc = ballot.open(EVotePhase.PAILLIER_VOTE);
+		broadcastMessage(ballot, new CryptoMessage(publicKey.toString(), sid));
+		
+		/*
+		 * Each voter sends (A_i, B_i) = Enc(v_i) with a proof that v_i is 0 or 1;
+		 * the product of the votes encrypts the tally
+		 */
+		if (!awaitPhase(ballot, voteAcc)) {
+			return "";
+		}
+		
+		List<String> invalid = invalidPaillierVotes(evote, voteAcc.getMessages(Integer.MAX_VALUE), publicKey);
+		if (!invalid.isEmpty()) {
+			ballot.abort(String.format("abort vote for ballot %s because the votes of %s are invalid", sid, invalid));
+			return "";
+		}
+		BigInteger tallyA = voteAcc.product(0);
+		BigInteger tallyB = voteAcc.product(1);
+		log.print(VPrint.DEBUG2, "encrypted tally: (%s, %s)", tallyA, tallyB);
+		
+		PhaseAccumulator decryptAcc = ballot.open(EVotePhase.PAILLIER_DECRYPTION);
+		CryptoMessage tallyMsg = new CryptoMessage(tallyB.toString(), sid);
+		tallyMsg.setEncryptionState(tallyA);
+		broadcastMessage(ballot, tallyMsg);
+		
+		/*
+		 * Each voter sends A^(x_i); since h is the product of the G^(x_i), the product is h^r
+		 */
+		if (!awaitPhase(ballot, decryptAcc)) {
+			return "";
+		}
+		BigInteger partials = decryptAcc.product(0);
+		log.print(VPrint.DEBUG2, "partial decryptions: %s", partials);
+		
+		CryptoMessage decryptedMsg = new CryptoMessage(partials.toString(), sid);
+		decryptedMsg.setEncryptionState(evote.numVoters);
+		broadcastMessage(ballot, decryptedMsg);
+		
+		int positiveVotes;
+		try {
+			positiveVotes = PaillierCipher.jointDecrypt(tallyB, partials, n).intValue();
+		} catch (IllegalArgumentException e) {
+			log.print(VPrint.ERROR, "evote failed: %s", e.getMessage());
+			return "";
+		}
+		if (positiveVotes > evote.numVoters) {
+			log.print(VPrint.ERROR, "evote failed: tally %d is more than the %d voters", positiveVotes, evote.numVoters);
+			return "";
+		}
+		
+		return announceResult(sid, positiveVotes, evote.numVoters - positiveVotes);
+	}
+	
+	/**
+	 * Checks the proofs that a Paillier ballot's encrypted votes are each 0 or 1.
+	 * 
+	 * @param evote
+	 * 		the ballot voted in
+	 * @param votes
+	 * 		voter name => encrypted vote
+	 * @param publicKey
+	 * 		the ballot's public key h
+	 * @return the voters whose votes are invalid
+	 */
+	private List<String> invalidPaillierVotes(EVote evote, Map<String, CryptoMessage> votes, BigInteger publicKey) {
+		List<String> invalid = new ArrayList<String>();
+		long start = System.nanoTime();
+		
+		for (Entry<String, CryptoMessage> vote : votes.entrySet()) {
+			// the accumulator already read A and B, so the state is an EVoteCiphertext
+			EVoteCiphertext state = (EVoteCiphertext) vote.getValue().getEncryptionState();
+			BigInteger[] c = new BigInteger[] { state.c1, new BigInteger(vote.getValue().getCipherText()) };
+			byte[] context = EVoteCiphertext.proofContext(evote.id.toString(), vote.getKey());
+			
+			if (state.paillierProof == null || !state.paillierProof.verify(evote.paillierN, publicKey, c, context)) {
+				invalid.add(vote.getKey());
+			}
+		}
+		log.print(VPrint.DEBUG, "checked %d Paillier vote proofs in %.1fms", votes.size(), (System.nanoTime() - start) / 1e6);
+		
+		if (!invalid.isEmpty()) {
+			log.print(VPrint.ERROR, "ballot %s: invalid votes from %s", evote.id, invalid);
+		}
+		return invalid;
+	}
+	
+	/** Creates callable object for server performing a Paillier e-vote (used for threading) */
+	protected class paillierEVote implements Callable<String> {
+		private Ballot ballot;
+		
+		public paillierEVote(Ballot ballot) {
+			this.ballot = ballot;
+		}
+		
+		public String call() throws Exception {
+			String sid = ballot.getEVote().id.toString();
+			try {
+				return doPaillierEvote(ballot);
+			} catch (InterruptedException e) {
+				log.print(VPrint.ERROR, "paillierEVote: %s", e.getMessage());
+				// do nothing -- vote was aborted because client failed 
+			} finally {
+				ballots.remove(sid);
+			}
+			
+			return "";
+		}
+	}
+	
+	/**
+	 * Runs the server's side of a private aggregate. It goes like a Paillier evote, except that
+	 * each client sends a vector of values packed into a few ciphertexts (see PackedEncoding)
+	 * instead of one encrypted vote: the clients make a joint key, the server multiplies each
+	 * ciphertext over the clients into an encryption of the sums of the values in its slots, and
+	 * every client partially decrypts each sum with its part of the key. Only the sums are ever
+	 * decrypted, and nobody holds the private key.
+	 * 
+	 * The values aren't proved to be in range, so a client can skew the sums (but doesn't
+	 * learn anything it shouldn't).
+	 * 
+	 * @param ballot
+	 * 		the aggregate's ballot, whose first phase (PUBLIC_KEY) is already open
+	 * @return the sums, or null if the aggregate failed
+	 * @throws InterruptedException, RemoteException, ClientNotFound
+	 */
+	private AggregateResult doAggregate(Ballot ballot) throws InterruptedException, RemoteException, ClientNotFound {
+		EVote evote = ballot.getEVote();
+		String sid = evote.id.toString();
+		BigInteger n = evote.paillierN;
+		PackedEncoding encoding = evote.getEncoding();
+		int numCiphertexts = encoding.numIntegers(evote.aggregateLength);
+		log.print(VPrint.QUIET, "initiating aggregate %s of %d values (%d to a ciphertext) from %d clients", 
+				sid, evote.aggregateLength, encoding.slots, evote.numVoters);
+		
+		/*
+		 * Each client sends G^(x_i); their product is the aggregate's public key h
+		 */
+		PhaseAccumulator pkAcc = ballot.getCurrentPhase();
+		if (!awaitPhase(ballot, pkAcc)) {
+			return null;
+		}
+		BigInteger publicKey = pkAcc.product(0);
+		
+		PhaseAccumulator valueAcc = ballot.open(EVotePhase.AGGREGATE);
+		broadcastMessage(ballot, new CryptoMessage(publicKey.toString(), sid));
+		
+		/*
+		 * Each client sends Enc(m_1), ..., Enc(m_k), its values packed into k integers, as
+		 * A_1, ..., A_k, B_1, ..., B_k; the product of the j-th ciphertexts encrypts the j-th packed sums
+		 */
+		if (!awaitPhase(ballot, valueAcc)) {
+			return null;
+		}
+		
+		List<String> invalid = new ArrayList<String>();
+		BigInteger[] sums = combineColumns(valueAcc.getMessages(Integer.MAX_VALUE), true, 2 * numCiphertexts, n, invalid);
+		if (!invalid.isEmpty()) {
+			ballot.abort(String.format("abort aggregate %s because the values of %s are invalid", sid, invalid));
+			return null;
+		}
+		
+		PhaseAccumulator decryptAcc = ballot.open(EVotePhase.AGGREGATE_DECRYPTION);
+		broadcastMessage(ballot, new CryptoMessage(PackedEncoding.toText(sums), sid));
+		
+		/*
+		 * Each client sends A_j^(x_i) for each encrypted sum; the products are h^(r_j)
+		 */
+		if (!awaitPhase(ballot, decryptAcc)) {
+			return null;
+		}
+		BigInteger[] decrypted = combineColumns(decryptAcc.getMessages(Integer.MAX_VALUE), false, numCiphertexts, n, invalid);
+		
+		CryptoMessage decryptedMsg = new CryptoMessage(PackedEncoding.toText(decrypted), sid);
+		decryptedMsg.setEncryptionState(evote.numVoters);
+		broadcastMessage(ballot, decryptedMsg);
+		
+		BigInteger[] packedSums = new BigInteger[numCiphertexts];
+		try {
+			if (!invalid.isEmpty()) {
+				throw new IllegalArgumentException(String.format("partial decryptions of %s are malformed", invalid));
+			}
+			for (int j = 0; j < numCiphertexts; j++) {
+				packedSums[j] = PaillierCipher.jointDecrypt(sums[numCiphertexts + j], decrypted[j], n);
+			}
+		} catch (IllegalArgumentException e) {
+			log.print(VPrint.ERROR, "aggregate failed: %s", e.getMessage());
+			return null;
+		}
+		
+		AggregateResult result = new AggregateResult(evote.ballot, sid, evote.numVoters, 
+				encoding.unpack(packedSums, evote.aggregateLength));
+		log.print(VPrint.QUIET, "aggregate %s sums: %s", sid, Arrays.toString(result.sums));
+		return result;
+	}
+	
+	/**
+	 * Multiplies the j-th value of every client's message mod N^2, for each j. The columns are
+	 * multiplied as product trees on the fork-join pool, all at once.
+	 * 
+	 * @param messages
+	 * 		client name => message with comma-separated values (see PackedEncoding.toText)
+	 * @param encrypted
+	 * 		true if the values are the messages' cipher text, false if their plain text
+	 * @param numValues
+	 * 		the number of values each message must have
+	 * @param n
+	 * 		the public modulus N
+	 * @param invalid
+	 * 		gets the clients whose messages aren't numValues units mod N^2 (left out of the products)
+	 * @return the product of each column
+	 */
+	private BigInteger[] combineColumns(Map<String, CryptoMessage> messages, boolean encrypted, int numValues, 
+			BigInteger n, List<String> invalid) throws InterruptedException {
+		long start = System.nanoTime();
+		final BigInteger n2 = n.multiply(n);
+		final BigInteger[][] columns = new BigInteger[numValues][messages.size()];
+		int rows = 0;
+		
+		for (Entry<String, CryptoMessage> m : messages.entrySet()) {
+			BigInteger[] values;
+			try {
+				values = PackedEncoding.fromText(encrypted ? m.getValue().getCipherText() : m.getValue().getPlainText());
+			} catch (NumberFormatException e) {
+				values = null;
+			}
+			
+			boolean valid = values != null && values.length == numValues;
+			for (int j = 0; valid && j < numValues; j++) {
+				valid = values[j].signum() > 0 && values[j].compareTo(n2) < 0 && values[j].gcd(n).equals(BigInteger.ONE);
+			}
+			if (!valid) {
+				invalid.add(m.getKey());
+				continue;
+			}
+			
+			for (int j = 0; j < numValues; j++) {
+				columns[j][rows] = values[j];
+			}
+			rows++;
+		}
+		
+		final int numRows = rows;
+		List<Callable<BigInteger>> products = new ArrayList<Callable<BigInteger>>();
+		for (final BigInteger[] column : columns) {
+			products.add(new Callable<BigInteger>() {
+				@Override
+				public BigInteger call() {
+					return ProductTree.product(Arrays.copyOf(column, numRows), n2, ProductTree.pool());
+				}
+			});
+		}
+		
+		BigInteger[] result = new BigInteger[numValues];
+		try {
+			List<Future<BigInteger>> done = ProductTree.pool().invokeAll(products);
+			for (int j = 0; j < numValues; j++) {
+				result[j] = done.get(j).get();
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+		
+		log.print(VPrint.DEBUG, "combined %d columns of %d values in %.1fms", numValues, numRows, (System.nanoTime() - start) / 1e6);
+		return result;
+	}
+	
+	/** Creates callable object for server performing a private aggregate (used for threading) */
+	protected class aggregateEVote implements Callable<String> {
+		private Ballot ballot;
+		private volatile AggregateResult result;
+		
+		public aggregateEVote(Ballot ballot) {
+			this.ballot = ballot;
+		}
+		
+		/** @return the sums, once the aggregate is done (null if it failed) */
+		public AggregateResult getResult() {
+			return result;
+		}
+		
+		public String call() throws Exception {
+			String sid = ballot.getEVote().id.toString();
+			try {
+				result = doAggregate(ballot);
+				ballot.setAggregateResult(result);
+				return (result != null) ? sid : "";
+			} catch (InterruptedException e) {
+				log.print(VPrint.ERROR, "aggregateEVote: %s", e.getMessage());
+				// do nothing -- aggregate was aborted because client failed 
+			} finally {
+				ballots.remove(sid);
+			}
+			
+			return "";
+		}
+	}
+	
 	/** Creates callable object for server performing e-vote on all the clients (used for threading) */
 	protected class serverEVote implements Callable<String> {
 		private EVote evote;
 		private Set<String> votingClients;
 		
-		public serverEVote(EVote evote, Set<String> votingClients) {
-			this.evote = evote;
-			this.votingClients = votingClients;
+		public serverEVote(EVote evote, Set<String> votingClients) {
+			this.evote = evote;
+			this.votingClients = votingClients;
+		}
+		
+		public String call() throws Exception {
+			try {
+				return doEvote(evote, votingClients);
+			} catch (InterruptedException e) {
+				log.print(VPrint.DEBUG2, e.getMessage());
+				log.print(VPrint.ERROR, "serverEVote: %s", e.getMessage());
+				// do nothing -- vote was aborted because client failed 
+			}
+			
+			return "";		
+		}
+	}
+	
+	/**
+	 * Initiate an evote with all currently registered clients. Handles the coordination of the
+	 * evote protocol.
+	 * 
+	 * In reality, perform the evote protocol in a separate thread while this thread waits for
+	 * the result. If any of the clients fail, abort the evote.
+	 * 
+	 * @param ballot
+	 * 		the item to voted on
+	 * @return the result of the vote in the form (# yes, # no)
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public String initiateEVote(String ballot) throws RemoteException, ClientNotFound, InterruptedException {
+		return initiateEVote(ballot, 0);
+	}
+	
+	/**
+	 * Initiate a threshold evote with all currently registered clients. The voters generate
+	 * the election key so that any "threshold" of them can decrypt the tally, so the result
+	 * is available as soon as that many voters have sent their decryption shares.
+	 * 
+	 * @param ballot
+	 * 		the item to voted on
+	 * @param threshold
+	 * 		the number of voters needed to decrypt the result (0 for all of them)
+	 * @return the result of the vote in the form (# yes, # no)
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public String initiateEVote(String ballot, int threshold) throws RemoteException, ClientNotFound, InterruptedException {
+		return initiateEVote(ballot, threshold, 0);
+	}
+	
+	/**
+	 * Initiate an evote with all currently registered clients that carries on without voters who
+	 * drop out, as long as "quorum" of them remain. Without a threshold, voters can only be
+	 * dropped before they have sent their part of the election key.
+	 * 
+	 * @param ballot
+	 * 		the item to voted on
+	 * @param threshold
+	 * 		the number of voters needed to decrypt the result (0 for all of them)
+	 * @param quorum
+	 * 		the fewest voters that must remain (at least the threshold, or 0 for the default, see EVote.quorum)
+	 * @return the result of the vote in the form (# yes, # no)
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public String initiateEVote(String ballot, int threshold, int quorum) throws RemoteException, ClientNotFound, InterruptedException {
+		Set<String> votingClients = eligibleVoters();
+		
+		if (votingClients.size() == 0) {
+			log.print(VPrint.WARN, "cannot start evote because no evoting clients are registered");
+			return "";
+		}
+		
+		return startEVote(ballot, votingClients, threshold, quorum);
+	}
+	
+	/**
+	 * Initiate an evote with only some of the registered clients (and sub-servers, which vote
+	 * with all their voters). The other clients are not involved at all, so a small committee
+	 * votes as fast as if it were the only one registered.
+	 * 
+	 * @param ballot
+	 * 		the item to voted on
+	 * @param voters
+	 * 		the clients and sub-servers that vote; each must be registered and support evoting
+	 * @param threshold
+	 * 		the number of voters needed to decrypt the result (0 for all of them)
+	 * @return the result of the vote in the form (# yes, # no)
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public String initiateEVote(String ballot, Set<String> voters, int threshold) throws RemoteException, ClientNotFound, InterruptedException {
+		return initiateEVote(ballot, voters, threshold, 0);
+	}
+	
+	/**
+	 * The same thing as initiateEVote(ballot, voters, threshold), but the evote carries on
+	 * without voters who drop out as long as "quorum" of them remain (see initiateEVote(ballot, threshold, quorum)).
+	 * 
+	 * @param quorum
+	 * 		the fewest voters that must remain (at least the threshold, or 0 for the default, see EVote.quorum)
+	 */
+	public String initiateEVote(String ballot, Set<String> voters, int threshold, int quorum) 
+			throws RemoteException, ClientNotFound, InterruptedException {
+		Set<String> eligible = eligibleVoters();
+		for (String voter : voters) {
+			if (!eligible.contains(voter)) {
+				log.print(VPrint.ERROR, "cannot start evote because %s is not a registered evoting client", voter);
+				return "";
+			}
+		}
+		
+		if (voters.size() == 0) {
+			log.print(VPrint.WARN, "cannot start evote without any voters");
+			return "";
+		}
+		
+		return startEVote(ballot, new HashSet<String>(voters), threshold, quorum);
+	}
+	
+	/**
+	 * Names a group of voters so evotes can be run with just them (see initiateGroupEVote).
+	 * Members don't have to be registered yet.
+	 * 
+	 * @param group
+	 * 		the name of the group
+	 * @param members
+	 * 		the clients and sub-servers in the group (empty to remove the group)
+	 * @throws RemoteException
+	 */
+	public void defineVoterGroup(String group, Set<String> members) throws RemoteException {
+		if (members == null || members.isEmpty()) {
+			voterGroups.remove(group);
+			log.print(VPrint.QUIET, "removed voter group %s", group);
+			return;
+		}
+		
+		voterGroups.put(group, Collections.unmodifiableSet(new HashSet<String>(members)));
+		log.print(VPrint.QUIET, "voter group %s: %s", group, members);
+	}
+	
+	/**
+	 * Initiate an evote with the members of a voter group who are currently registered and
+	 * support evoting. Members who aren't are left out (and logged).
+	 * 
+	 * @param ballot
+	 * 		the item to voted on
+	 * @param group
+	 * 		the name of the group (see defineVoterGroup)
+	 * @param threshold
+	 * 		the number of voters needed to decrypt the result (0 for all of them)
+	 * @return the result of the vote in the form (# yes, # no)
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public String initiateGroupEVote(String ballot, String group, int threshold) throws RemoteException, ClientNotFound, InterruptedException {
+		Set<String> members = voterGroups.get(group);
+		if (members == null) {
+			log.print(VPrint.ERROR, "cannot start evote because there is no voter group %s", group);
+			return "";
+		}
+		
+		Set<String> votingClients = new HashSet<String>(members);
+		votingClients.retainAll(eligibleVoters());
+		if (votingClients.size() < members.size()) {
+			Set<String> absent = new HashSet<String>(members);
+			absent.removeAll(votingClients);
+			log.print(VPrint.WARN, "voter group %s members %s are not registered evoting clients", group, absent);
+		}
+		
+		if (votingClients.size() == 0) {
+			log.print(VPrint.WARN, "cannot start evote because no members of voter group %s are registered", group);
+			return "";
+		}
+		
+		return startEVote(ballot, votingClients, threshold, 0);
+	}
+	
+	/** Starts an evote with the given clients and sub-servers (see initiateEVote) */
+	private String startEVote(String ballot, Set<String> votingClients, int threshold, int quorum) 
+			throws RemoteException, ClientNotFound, InterruptedException {
+		boolean withChildren = !Collections.disjoint(votingClients, children.keySet());
+		if ((threshold > 0 || quorum > 0) && withChildren) {
+			log.print(VPrint.ERROR, "threshold and quorum evotes are not supported with sub-servers");
+			return "";
+		}
+		if (quorum < 0 || quorum > votingClients.size() || (quorum > 0 && quorum < threshold)) {
+			log.print(VPrint.ERROR, "cannot start evote with a quorum of %d: it must be at least the threshold (%d) "
+					+ "and at most the number of voters (%d)", quorum, threshold, votingClients.size());
+			return "";
+		}
+		boolean paillier = paillierTally;
+		if (paillier && (threshold > 0 || quorum > 0 || withChildren)) {
+			log.print(VPrint.ERROR, "Paillier evotes are not supported with thresholds, quorums or sub-servers");
+			return "";
+		}
+		
+		if (!reserveVoters(votingClients)) {
+			return "";
+		}
+		
+		try {
+			EVote evote = new EVote(ballot, getElectorate(votingClients), threshold, quorum);
+			evote.rosterVersion = rosterVersion(evote.voters);
+			if (paillier) {
+				evote.paillierN = EVote.PAILLIER_N;
+			}
+			Ballot ballotState = new Ballot(evote, votingClients, null);
+			
+			// Paillier ballots aren't logged: only ElGamal ballots can be resumed (see resumedEVote)
+			if (paillier) {
+				return runBallot(ballotState, new paillierEVote(ballotState));
+			}
+			
+			// sub-servers keep their own part of the ballot, so only ballots without them can be resumed
+			if (!withChildren) {
+				logStart(ballotState);
+			}
+			
+			return runBallot(ballotState, new serverEVote(evote, votingClients));
+		} catch (RuntimeException | RemoteException | ClientNotFound e) {
+			// the ballot could not be started (e.g. a voter is gone), so its voters are free again
+			releaseVoters(votingClients);
+			throw e;
+		}
+	}
+	
+	/**
+	 * A voter can only be in one ballot at a time, but ballots with different voters can run
+	 * side by side. The voters are checked and marked as voting in one step, before anything
+	 * slow (like contacting the voters) is done for the ballot, so two ballots can't both get them.
+	 * 
+	 * @return true if none of the voters was in a ballot and they now are (otherwise logs the
+	 * 		ones who were)
+	 */
+	private boolean reserveVoters(Set<String> voters) {
+		synchronized (currentVotingClients) {
+			if (!Collections.disjoint(voters, currentVotingClients)) {
+				Set<String> busy = new HashSet<String>(voters);
+				busy.retainAll(currentVotingClients);
+				log.print(VPrint.ERROR, "cannot start evote because %s are already voting", busy);
+				return false;
+			}
+			currentVotingClients.addAll(voters);
+		}
+		return true;
+	}
+	
+	/** Frees voters reserved for a ballot that could not be started (see reserveVoters) */
+	private void releaseVoters(Set<String> voters) {
+		synchronized (currentVotingClients) {
+			currentVotingClients.removeAll(voters);
+		}
+	}
+	
+	/**
+	 * Computes a private aggregate over every registered evoting client: each client contributes
+	 * a vector of values (see EVoteClient.setMetricSource), and only the sum of each value over
+	 * all of the clients is decrypted. It runs like a Paillier evote with the values packed many
+	 * to a ciphertext (see doAggregate), so a vector of hundreds of counters costs each client a
+	 * few encryptions. Sub-servers don't take part.
+	 * 
+	 * @param name
+	 * 		what is being aggregated (passed on to the clients' metric sources)
+	 * @param length
+	 * 		the number of values each client contributes
+	 * @param valueBits
+	 * 		the size of the values (each must be less than 2^valueBits)
+	 * @return the sums of the values, or null if the aggregate failed (e.g. a client had no values)
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public AggregateResult aggregate(String name, int length, int valueBits) throws RemoteException, ClientNotFound, InterruptedException {
+		Set<String> contributors = new HashSet<String>(evoters);
+		contributors.retainAll(clients.keySet());
+		
+		if (contributors.size() == 0) {
+			log.print(VPrint.WARN, "cannot start aggregate because no evoting clients are registered");
+			return null;
+		}
+		if (length < 1) {
+			log.print(VPrint.ERROR, "cannot start aggregate of %d values", length);
+			return null;
+		}
+		try {
+			new PackedEncoding(valueBits, contributors.size(), EVote.PAILLIER_BITS);
+		} catch (IllegalArgumentException e) {
+			log.print(VPrint.ERROR, "cannot start aggregate: %s", e.getMessage());
+			return null;
+		}
+		if (!reserveVoters(contributors)) {
+			return null;
+		}
+		
+		aggregateEVote protocol;
+		String result;
+		try {
+			EVote evote = new EVote(name, contributors);
+			evote.aggregateLength = length;
+			evote.valueBits = valueBits;
+			evote.paillierN = EVote.PAILLIER_N;
+			evote.rosterVersion = rosterVersion(evote.voters);
+			Ballot ballotState = new Ballot(evote, contributors, null);
+			
+			// like Paillier ballots, aggregates aren't logged
+			protocol = new aggregateEVote(ballotState);
+			result = runBallot(ballotState, protocol);
+		} catch (RuntimeException | RemoteException | ClientNotFound e) {
+			// the aggregate could not be started (e.g. a client is gone), so its clients are free again
+			releaseVoters(contributors);
+			throw e;
+		}
+		return result.isEmpty() ? null : protocol.getResult();
+	}
+	
+	/**
+	 * @param voter
+	 * 		a client or sub-server
+	 * @return true if the voter is taking part in a ballot, so it can't be in a new one yet
+	 */
+	public boolean isVoting(String voter) {
+		synchronized (currentVotingClients) {
+			return currentVotingClients.contains(voter);
+		}
+	}
+	
+	/** @return the registered clients that support evoting, and the sub-servers */
+	private Set<String> eligibleVoters() {
+		Set<String> voters = new HashSet<String>(evoters);
+		voters.retainAll(clients.keySet());
+		voters.addAll(children.keySet());
+		return voters;
+	}
+	
+	/**
+	 * Takes part in an evote started by this server's parent on behalf of this server's own
+	 * voters (and sub-servers). Blocks until this server's part of the vote is done.
+	 * 
+	 * @param evote
+	 * 		the evote to participate in
+	 * @param parentName
+	 * 		the name of the parent server running the evote
+	 * @throws RemoteException, ClientNotFound, InterruptedException, EVoteInvalidResult
+	 */
+	public void evoteSubtree(EVote evote, String parentName) throws RemoteException, ClientNotFound, InterruptedException, EVoteInvalidResult {
+		if (parent == null || !parent.getName().equals(parentName)) {
+			String error = String.format("%s is not a sub-server of %s", name, parentName);
+			log.print(VPrint.ERROR, error);
+			throw new EVoteInvalidResult(error);
+		}
+		
+		Set<String> votingClients = eligibleVoters();
+		
+		// our voters get our own board key, so don't touch the parent's copy of the evote
+		Ballot ballotState = new Ballot(new EVote(evote), votingClients, parentName);
+		
+		String result = runBallot(ballotState, new subtreeEVote(ballotState));
+		if (!result.equals(evote.id.toString())) {
+			String error = String.format("%s could not complete ballot %s", name, evote.id);
+			throw new EVoteInvalidResult(error);
+		}
+	}
+	
+	/**
+	 * Runs a ballot: sends the evote to each participant and runs the server's side of the
+	 * protocol on the evote pool, with a ballotCoordinator watching over them.
+	 * 
+	 * @param ballotState
+	 * 		the ballot to run
+	 * @param protocol
+	 * 		the server's side of the protocol
+	 * @return the result of the protocol, or "" if the vote was aborted
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	private String runBallot(Ballot ballotState, Callable<String> protocol) throws RemoteException, ClientNotFound, InterruptedException {
+		// the voters get the roster's size and hash; they fetch the names if they need them
+		EVote evote = ballotState.getEVote().compact();
+		
+		// look up every participant first so a missing client can't leave the ballot half started
+		Map<String, Callable<Object>> calls = new HashMap<String, Callable<Object>>();
+		for (String clientName : ballotState.getParticipants()) {
+			CryptoServer child = children.get(clientName);
+			if (child != null) {
+				calls.put(clientName, new childEVote(child, evote));
+			}
+			else {
+				calls.put(clientName, new clientEVote(getClient(clientName), evote));
+			}
+		}
+		
+		return runBallot(ballotState, EVotePhase.PUBLIC_KEY, calls, protocol);
+	}
+	
+	/**
+	 * Runs a ballot from any phase (see runBallot above).
+	 * 
+	 * @param ballotState
+	 * 		the ballot to run
+	 * @param firstPhase
+	 * 		the phase the voters start in, or null if they don't send the server anything more
+	 * @param calls
+	 * 		the call that brings each participant into the ballot
+	 * @param protocol
+	 * 		the server's side of the protocol
+	 * @return the result of the protocol, or "" if the vote was aborted
+	 * @throws InterruptedException
+	 */
+	private String runBallot(Ballot ballotState, EVotePhase firstPhase, Map<String, Callable<Object>> calls,
+			Callable<String> protocol) throws InterruptedException {
+		EVote evote = ballotState.getEVote();
+		Set<String> votingClients = ballotState.getParticipants();
+		
+		// ballots started here have reserved their voters already (see reserveVoters), but not sub-server or resumed ones
+		synchronized (currentVotingClients) {
+			currentVotingClients.addAll(votingClients);
+		}
+		
+		ballots.put(evote.id.toString(), ballotState);
+		boards.put(evote.id.toString(), ballotState.getBoard());
+		if (evote.hasRoster()) {
+			rosters.put(evote.id.toString(), evote.getRoster());
+		}
+		if (firstPhase != null) {
+			ballotState.open(firstPhase);
+		}
+		
+		/*
+		 * EVote phase one:
+		 * initiates vote by sending evote to each client (and sub-server).
+		 * From here on the coordinator reacts to the calls finishing, deadlines passing
+		 * and the parent aborting; this thread just sleeps until the ballot is over.
+		 */
+		ballotCoordinator coordinator = new ballotCoordinator(ballotState);
+		coordinator.start(calls, protocol);
+		
+		String result;
+		try {
+			result = coordinator.awaitResult();
+		} finally {
+			retireBoard(evote.id.toString());
+		}
+		logEnd(ballotState, result);
+		
+		// a sub-server's part of a ballot is archived by the root
+		if (ballotState.getParent() == null) {
+			archiveBallot(ballotState, result);
+		}
+		return result;
+	}
+	
+	/**
+	 * Forgets a ballot's bulletin board and roster once its voters have had time to audit the
+	 * board, so a long running server doesn't keep every ballot's transcript. The ballot's
+	 * archived record keeps the board's root (see archiveBallot).
+	 * 
+	 * @param ballotId
+	 * 		a ballot that is over
+	 */
+	private void retireBoard(final String ballotId) {
+		timers.schedule(new Runnable() {
+			@Override
+			public void run() {
+				// a ballot resumed since then is using them again
+				if (!ballots.containsKey(ballotId)) {
+					boards.remove(ballotId);
+					rosters.remove(ballotId);
+				}
+			}
+		}, boardRetention, TimeUnit.SECONDS);
+	}
+	
+	/** Where a ballot run by this server is up to */
+	private enum BallotStatus {
+		// the protocol is running
+		RUNNING,
+		// the protocol is done; waiting for the voters to finish up
+		TALLIED,
+		// telling the participants the ballot is aborted
+		ABORTING,
+		FINISHED,
+		ABORTED
+	}
+	
+	/**
+	 * A task that tells its ballot's coordinator when it finishes, so nothing has to poll it.
+	 */
+	protected class watchedTask<V> extends FutureTask<V> {
+		private ballotCoordinator coordinator;
+		private String participant;
+		
+		/**
+		 * @param participant
+		 * 		the voter (or sub-server) the task runs the evote for, or null for the
+		 * 		server's own side of the protocol
+		 */
+		public watchedTask(ballotCoordinator coordinator, String participant, Callable<V> task) {
+			super(task);
+			this.coordinator = coordinator;
+			this.participant = participant;
+		}
+		
+		@Override
+		protected void done() {
+			if (participant == null) {
+				coordinator.protocolDone();
+			}
+			else {
+				coordinator.participantDone(participant, this);
+			}
+		}
+	}
+	
+	/**
+	 * Watches over a ballot as a state machine driven by events: a participant's evote call
+	 * returning or failing, the server's protocol finishing, a phase deadline passing and the
+	 * ballot being aborted. Nothing polls, so a ballot waiting on its voters uses no CPU.
+	 * 
+	 * If any of the participants fail, abort the evote (unless the ballot tolerates dropouts).
+	 * Every abort goes through the coordinator (see Ballot.abort), so the voters' calls failing
+	 * because of it aren't taken for faults of their own.
+	 */
+	protected class ballotCoordinator {
+		private Ballot ballot;
+		private EVote evote;
+		
+		// participants whose evote call hasn't returned yet
+		private Set<String> pending;
+		
+		private FutureTask<String> serverFuture;
+		private ScheduledFuture<?> deadline;
+		private BallotStatus status;
+		private String result;
+		
+		// runs on the evote pool so a slow abort can't hold up other ballots' timers
+		public ballotCoordinator(Ballot ballot) {
+			this.ballot = ballot;
+			this.evote = ballot.getEVote();
+			this.pending = new HashSet<String>(ballot.getParticipants());
+			this.status = BallotStatus.RUNNING;
+			this.result = "";
+		}
+		
+		/**
+		 * Sends the evote to each participant and starts the server's side of the protocol.
+		 * 
+		 * @param calls
+		 * 		the evote call for each participant
+		 * @param protocol
+		 * 		the server's side of the protocol
+		 */
+		public void start(Map<String, Callable<Object>> calls, Callable<String> protocol) {
+			synchronized (this) {
+				// the calls may finish before we're done starting them; their events wait for us
+				for (Entry<String, Callable<Object>> call : calls.entrySet()) {
+					evotePool.execute(new watchedTask<Object>(this, call.getKey(), call.getValue()));
+				}
+				
+				// each phase gets its own deadline, starting when it opens
+				ballot.setPhaseListener(new Runnable() {
+					@Override
+					public void run() {
+						phaseOpened();
+					}
+				});
+				scheduleDeadline();
+				
+				serverFuture = new watchedTask<String>(this, null, protocol);
+				evotePool.execute(serverFuture);
+			}
+			
+			ballot.setAbortListener(new Runnable() {
+				@Override
+				public void run() {
+					abort(ballot.getAbortReason());
+				}
+			});
+			
+			if (ballot.getAbortReason() != null) {
+				abort(ballot.getAbortReason());
+			}
+		}
+		
+		/**
+		 * Blocks until the ballot is finished or aborted.
+		 * 
+		 * @return the result of the protocol, or "" if the vote was aborted
+		 * @throws InterruptedException
+		 */
+		public String awaitResult() throws InterruptedException {
+			try {
+				synchronized (this) {
+					while (status != BallotStatus.FINISHED && status != BallotStatus.ABORTED) {
+						wait();
+					}
+					return result;
+				}
+			} catch (InterruptedException e) {
+				abort(String.format("abort vote for ballot %s because the server was interrupted", evote.id));
+				throw e;
+			}
+		}
+		
+		/** Event: a participant's evote call returned or failed */
+		private void participantDone(String participant, Future<?> call) {
+			String reason = null;
+			boolean drop = false;
+			
+			synchronized (this) {
+				pending.remove(participant);
+				if (status == BallotStatus.FINISHED) {
+					// a straggler in a threshold evote is free to vote again once it is done with this one
+					synchronized (currentVotingClients) {
+						currentVotingClients.remove(participant);
+					}
+					return;
+				}
+				else if (status != BallotStatus.RUNNING && status != BallotStatus.TALLIED) {
+					// the ballot is being aborted, which is what made the call fail; it's not the voter's fault
+					return;
+				}
+				
+				try {
+					getDone(call);
+				} catch (ExecutionException e) {
+					log.print(VPrint.DEBUG, "ExecutionException: %s", e.getMessage());
+					log.print(VPrint.DEBUG, "ExecutionException reason: %s", e.getCause().getMessage());
+					
+					if (ballot.canDrop()) {
+						/* a voting client failed! carry on without it unless we already dropped it */
+						drop = ballot.getParticipants().contains(participant);
+					}
+					else {
+						/* a voting client failed! */
+						reason = String.format("abort vote for ballot %s because %s failed", evote.id, participant);
+						startAbort();
+					}
+				}
+				
+				checkFinished();
+			}
+			
+			if (drop || reason != null) {
+				try {
+					// an abort was started above, so the other voters' calls failing with it aren't blamed on them
+					unregisterClient(participant);
+				} catch (RemoteException e) {
+					// do nothing -- unregistering a local client doesn't go over the network
+				}
+			}
+			if (reason != null) {
+				finishAbort(reason);
+			}
+		}
+		
+		/** Event: the server's side of the protocol finished */
+		private void protocolDone() {
+			synchronized (this) {
+				if (status != BallotStatus.RUNNING) {
+					return;
+				}
+				
+				try {
+					result = getDone(serverFuture);
+				} catch (ExecutionException e) {
+					result = "";
+				}
+				
+				status = BallotStatus.TALLIED;
+				checkFinished();
+			}
+		}
+		
+		/** Event: the server opened the next phase of the ballot */
+		private synchronized void phaseOpened() {
+			if (status == BallotStatus.RUNNING && deadline != null) {
+				deadline.cancel(false);
+				scheduleDeadline();
+			}
+		}
+		
+		/** Event: a phase took longer than its deadline (see getPhaseTimeout) */
+		private void deadlinePassed(PhaseAccumulator acc) {
+			List<String> stragglers;
+			EVotePhase phase = (acc != null) ? acc.getPhase() : null;
+			int timeout = getPhaseTimeout(phase);
+			
+			synchronized (this) {
+				if (status == BallotStatus.TALLIED) {
+					// the result is in, so don't hold up the server for voters who never said goodbye
+					log.print(VPrint.WARN, "ballot %s finished without hearing back from %s", evote.id, pending);
+					pending.clear();
+					finish();
+					return;
+				}
+				else if (status != BallotStatus.RUNNING || ballot.getCurrentPhase() != acc) {
+					// the phase finished after all (its successor has a deadline of its own)
+					return;
+				}
+				else if (!ballot.canDrop()) {
+					stragglers = null;
+				}
+				else {
+					/* carry on without the voters holding up this phase if enough remain */
+					stragglers = ballot.excludeStragglers();
+					telemetry.record(phase, new HashMap<String, Long>(), stragglers);
+					
+					// in case this was the last phase, wait as long again for the voters to finish
+					scheduleDeadline();
+				}
+			}
+			
+			if (stragglers == null) {
+				List<String> missing = (acc != null) ? acc.getMissing() : new ArrayList<String>();
+				if (acc != null) {
+					telemetry.record(phase, acc.getLatencies(), missing);
+				}
+				abort(String.format("abort vote for ballot %s because the %s phase took longer than %ssec (waiting on %s)", 
+						evote.id, phase, timeout, missing));
+				return;
+			}
+			
+			for (String clientName : stragglers) {
+				String reason = String.format("dropped from ballot %s because the %s phase took longer than %ssec", 
+						evote.id, phase, timeout);
+				log.print(VPrint.WARN, "%s", reason);
+				dropVoter(ballot, clientName, reason);
+				try {
+					getClient(clientName).evoteAbort(reason);
+				} catch (ClientNotFound e) {
+					// do nothing -- client probably died and we automatically unregistered 
+				} catch (RemoteException e) {
+					// do nothing -- probably the client that failed
+				}
+			}
+		}
+		
+		/** Event: the ballot has to be aborted (does nothing if it is already over) */
+		private void abort(String reason) {
+			synchronized (this) {
+				if (!startAbort()) {
+					return;
+				}
+			}
+			finishAbort(reason);
+		}
+		
+		/** Marks the ballot as aborting (the caller holds the lock); returns false if it is already over */
+		private boolean startAbort() {
+			if (status != BallotStatus.RUNNING && status != BallotStatus.TALLIED) {
+				return false;
+			}
+			status = BallotStatus.ABORTING;
+			result = "";
+			deadline.cancel(false);
+			return true;
+		}
+		
+		/** Tells the participants the ballot is aborted, once startAbort has marked it as aborting */
+		private void finishAbort(String reason) {
+			// talk to the participants without holding up their own events
+			abortEVote(reason, serverFuture, ballot.getParticipants());
+			
+			synchronized (this) {
+				status = BallotStatus.ABORTED;
+				notifyAll();
+			}
+		}
+		
+		/** Finishes the ballot once the protocol is done and (unless stragglers may finish on their own) every voter is */
+		private void checkFinished() {
+			// stragglers in a threshold evote finish on their own once they see the result
+			if (status == BallotStatus.TALLIED && (pending.isEmpty() || evote.isThreshold())) {
+				finish();
+			}
+		}
+		
+		private void finish() {
+			status = BallotStatus.FINISHED;
+			deadline.cancel(false);
+			
+			/* Evote successful! (stragglers are released when their evote calls return) */
+			synchronized (currentVotingClients) {
+				for (String participant : ballot.getParticipants()) {
+					if (!pending.contains(participant)) {
+						currentVotingClients.remove(participant);
+					}
+				}
+			}
+			
+			notifyAll();
+		}
+		
+		private void scheduleDeadline() {
+			final PhaseAccumulator acc = ballot.getCurrentPhase();
+			final Runnable deadlineCheck = new Runnable() {
+				@Override
+				public void run() {
+					deadlinePassed(acc);
+				}
+			};
+			
+			deadline = timers.schedule(new Runnable() {
+				@Override
+				public void run() {
+					evotePool.execute(deadlineCheck);
+				}
+			}, getPhaseTimeout((acc != null) ? acc.getPhase() : null), TimeUnit.SECONDS);
+		}
+	}
+	
+	/** Gets the result of a finished task */
+	private static <V> V getDone(Future<V> task) throws ExecutionException {
+		try {
+			return task.get();
+		} catch (CancellationException e) {
+			throw new ExecutionException(e);
+		} catch (InterruptedException e) {
+			// can't happen -- the task is already done
+			Thread.currentThread().interrupt();
+			throw new ExecutionException(e);
+		}
+	}
+	
+	/** Creates callable object for a sub-server's part of an e-vote (used for threading) */
+	protected class subtreeEVote implements Callable<String> {
+		private Ballot ballot;
+		
+		public subtreeEVote(Ballot ballot) {
+			this.ballot = ballot;
 		}
 		
 		public String call() throws Exception {
 			try {
-				return doEvote(evote, votingClients);
+				return doSubtreeEvote(ballot);
 			} catch (InterruptedException e) {
-				log.print(VPrint.DEBUG2, e.getMessage());
-				log.print(VPrint.ERROR, "serverEVote: %s", e.getCause().getMessage());
-				// do nothing -- vote was aborted because client failed 
+				// do nothing -- vote was aborted
+				log.print(VPrint.DEBUG, "subtreeEVote interrupted");
 			}
 			
-			return "";		
+			return "";
 		}
 	}
 	
 	/**
-	 * Initiate an evote with all currently registered clients. Handles the coordination of the
-	 * evote protocol.
-	 * 
-	 * In reality, perform the evote protocol in a separate thread and use this thread to
-	 * periodically ping the voting clients. If any of the clients fail, abort the evote.
+	 * A sub-server's part of the evote protocol. Each phase, combine the contributions of this
+	 * server's voters and pass the partial product up to the parent as this server's
+	 * contribution, then pass the parent's reply down to the voters.
 	 * 
 	 * @param ballot
-	 * 		the item to voted on
-	 * @return the result of the vote in the form (# yes, # no)
-	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 * 		the ballot being voted on
+	 * @return the ballot id once this server's part is done, or "" if it was aborted
+	 * @throws InterruptedException, RemoteException, ClientNotFound
 	 */
-	public String initiateEVote(String ballot) throws RemoteException, ClientNotFound, InterruptedException {
-		Future<Object> clientFuture = null;
-		Future<String> serverFuture = null;
-		ExecutorService pool = Executors.newCachedThreadPool();
-		Set<String> votingClients = clients.keySet();
-		
-		if (votingClients.size() == 0) {
-			log.print(VPrint.WARN, "cannot start evote because no clients are registered");
-			return "";
-		}
-		
-		synchronized (currentVotingClients) {
-			currentVotingClients.addAll(votingClients);
-		}
-		
-		// hack because concurrentSet is not serializable
-		Set<String> votingClientsSer = new HashSet<String>(votingClients);
-		EVote evote = new EVote(ballot, votingClientsSer);
-		
-		Map<String, Future<Object>> clientFutures = new HashMap<String, Future<Object>>();
-		
-		/*
-		 * EVote phase one:
-		 * initiates vote by sending evote to each client
-		 */
-		for (String clientName : votingClients) {
-			clientFuture = pool.submit(new clientEVote(getClient(clientName), evote));
-			clientFutures.put(clientName, clientFuture);
-		}
-		
-		serverFuture = pool.submit(new serverEVote(evote, votingClients));
-		
-		/* Do abortion handling... */
-		long elapsedTime = 0;
-		long startTime = System.currentTimeMillis();
+	private String doSubtreeEvote(Ballot ballot) throws InterruptedException, RemoteException, ClientNotFound {
+		EVote evote = ballot.getEVote();
+		String sid = evote.id.toString();
+		String parentName = ballot.getParent();
+		log.print(VPrint.QUIET, "joining ballot %s from %s with %d voters", sid, parentName, ballot.getParticipants().size());
 		
-		while (!serverFuture.isDone()) {
-			elapsedTime = System.currentTimeMillis() - startTime;
-			if (elapsedTime > EVOTETIMEOUT * 1000) {
-				String reason = String.format("abort vote for ballot %s because took longer than %ssec", evote.id, EVOTETIMEOUT);
-				abortEVote(reason, serverFuture, votingClients);
+		try {
+			/* partial g^(sk) of our voters */
+			PhaseAccumulator pkAcc = ballot.getCurrentPhase();
+			if (!awaitPhase(ballot, pkAcc)) {
 				return "";
 			}
+			CryptoMessage partialKey = new CryptoMessage(pkAcc.product(0).toString(), sid);
+			partialKey.setTag("partial public key");
+			parent.recvMessage(name, parentName, partialKey);
 			
-			for (Entry<String, Future<Object>> entry : clientFutures.entrySet()) {
-				String clientName = entry.getKey();
-				clientFuture = entry.getValue();
-				if (clientFuture.isDone()) {
-					try {
-						clientFuture.get();
-					} catch (ExecutionException e) {
-						/* a voting client failed! */
-						log.print(VPrint.DEBUG, "ExecutionException: %s", e.getMessage());
-						log.print(VPrint.DEBUG, "ExecutionException reason: %s", e.getCause().getMessage());
-						String reason = String.format("abort vote for ballot %s because %s failed", evote.id, clientName);
-						unregisterClient(clientName);
-						abortEVote(reason, serverFuture, votingClients);
-						return "";
-					}
-				}
+			/* partial (c1, c2) of our voters' encrypted votes, each checked to be 0 or 1 */
+			CryptoMessage publicKeyMessage = waitForMessage(parentName, sid);
+			PhaseAccumulator cipherAcc = ballot.open(EVotePhase.CIPHERTEXT);
+			broadcastMessage(ballot, publicKeyMessage);
+			
+			if (!awaitPhase(ballot, cipherAcc)) {
+				return "";
 			}
-		}
-		
-		for (Entry<String, Future<Object>> entry : clientFutures.entrySet()) {
-			clientFuture = entry.getValue();
-			while (!clientFuture.isDone()) {
-				// wait for all clients to finish before we allow server to return
-				// small sleep so we don't purely busy wait
-				Thread.sleep(100);
+			List<String> invalid = invalidVotes(ballot, cipherAcc.getMessages(Integer.MAX_VALUE), 
+					new BigInteger(publicKeyMessage.getPlainText()));
+			if (!invalid.isEmpty()) {
+				ballot.abort(String.format("abort vote for ballot %s because the votes of %s are invalid", sid, invalid));
+				return "";
+			}
+			CryptoMessage partialCipher = new CryptoMessage("", cipherAcc.product(1).toString(), sid);
+			partialCipher.setEncryptionState(cipherAcc.product(0));
+			partialCipher.setTag("partial encrypted tally");
+			parent.recvMessage(name, parentName, partialCipher);
+			
+			/* partial c1^(sk) of our voters */
+			CryptoMessage combinedCipherMsg = waitForMessage(parentName, sid);
+			PhaseAccumulator decryptAcc = ballot.open(EVotePhase.DECRYPTION);
+			broadcastMessage(ballot, combinedCipherMsg);
+			
+			if (!awaitPhase(ballot, decryptAcc)) {
+				return "";
 			}
+			CryptoMessage partialDecrypt = new CryptoMessage(decryptAcc.product(0).toString(), sid);
+			partialDecrypt.setTag("partial decryption key");
+			parent.recvMessage(name, parentName, partialDecrypt);
+			
+			/* the decryption key, so our voters can decode the result */
+			CryptoMessage decryptKeyMsg = waitForMessage(parentName, sid);
+			broadcastMessage(ballot, decryptKeyMsg);
+			
+			log.print(VPrint.QUIET, "finished ballot %s", sid);
+			return sid;
+		} finally {
+			ballots.remove(sid);
+			sessions.remove(sid);
 		}
+	}
+	
+	/**
+	 * Makes this server a sub-server of another EVote server. From then on this server's voters
+	 * vote in the parent's evotes, with this server combining their contributions.
+	 * 
+	 * @param parentServer
+	 * 		the parent server
+	 * @return true if the parent accepted this server
+	 * @throws RemoteException
+	 */
+	public boolean joinParent(CryptoServer parentServer) throws RemoteException {
+		parent = parentServer;
+		return parentServer.registerSubServer(this);
+	}
+	
+	/**
+	 * Register a sub-server that will vote on behalf of its own voters.
+	 * 
+	 * @param child
+	 * 		the sub-server
+	 * @return true if the sub-server successfully registered
+	 * @throws RemoteException
+	 */
+	public boolean registerSubServer(CryptoServer child) throws RemoteException {
+		String childName = child.getName();
 		
-		String result;
-		try {
-			result = serverFuture.get();
-		} catch (ExecutionException e) {
-			result = "";
+		if (clients.containsKey(childName) || children.containsKey(childName)) {
+			log.print(VPrint.ERROR, "client or sub-server with name %s already exists", childName);
+			return false;
 		}
 		
-		/* Evote successful! */
-		synchronized (currentVotingClients) {
-			currentVotingClients.clear();
+		children.put(childName, child);
+		log.print(VPrint.QUIET, "registered new sub-server: %s", childName);
+		return true;
+	}
+	
+	/**
+	 * Returns every voter that would vote in an evote run by this server: its own clients and
+	 * the voters of its sub-servers.
+	 * 
+	 * @return the voters
+	 * @throws RemoteException
+	 */
+	public Set<String> getElectorate() throws RemoteException {
+		return getElectorate(eligibleVoters());
+	}
+	
+	/** The voters of a ballot with the given participants (a sub-server stands for all its voters) */
+	private Set<String> getElectorate(Set<String> participants) throws RemoteException {
+		Set<String> electorate = new HashSet<String>();
+		for (String participant : participants) {
+			CryptoServer child = children.get(participant);
+			if (child != null) {
+				electorate.addAll(child.getElectorate());
+			}
+			else {
+				electorate.add(participant);
+			}
+		}
+		return electorate;
+	}
+	
+	/**
+	 * Aborts this server's part in any evote run by its parent.
+	 * 
+	 * @param abortMessage
+	 * 		the reason the evote needs to be aborted
+	 * @throws RemoteException
+	 */
+	public void evoteAbort(String abortMessage) throws RemoteException {
+		for (Ballot ballot : ballots.values()) {
+			if (ballot.getParent() != null) {
+				ballot.abort(abortMessage);
+			}
 		}
-		
-		return result;
 	}
 	
 	/* Abort the vote when necessary */
@@ -474,11 +2357,17 @@ public class EVoteServer extends CentralServer {
 		
 		log.print(VPrint.ERROR, "%s", abortMessage);
 		
-		/* Abort client threads */
+		/* Abort client threads (and sub-servers) */
 		for (String clientName: votingClients) {
 			try {
 				log.print(VPrint.DEBUG, "calling %s.evoteAbort", clientName);
-				getClient(clientName).evoteAbort(abortMessage);
+				CryptoServer child = children.get(clientName);
+				if (child != null) {
+					child.evoteAbort(abortMessage);
+				}
+				else {
+					getClient(clientName).evoteAbort(abortMessage);
+				}
 			} catch (ClientNotFound e) {
 				// do nothing -- client probably died and we automatically unregistered 
 			} catch (RemoteException e) {
@@ -492,8 +2381,374 @@ public class EVoteServer extends CentralServer {
 		}
 		
 		synchronized (currentVotingClients) {
-			currentVotingClients.clear();
+			currentVotingClients.removeAll(new HashSet<String>(votingClients));
+		}
+	}
+	
+	/**
+	 * Starts keeping a write-ahead log of ballots in a file (see BallotLog). If the file is the
+	 * log of an earlier run of this server, reads back the ballots that run didn't finish so
+	 * they can be resumed with resumeEVote, and rebuilds their bulletin boards.
+	 * 
+	 * @param path
+	 * 		the log file
+	 * @return the ids of the interrupted ballots
+	 * @throws IOException
+	 */
+	public List<String> openBallotLog(String path) throws IOException {
+		final BallotLog opened = new BallotLog(new File(path));
+		Map<String, RecoveredBallot> found = new LinkedHashMap<String, RecoveredBallot>();
+		
+		for (BallotLog.Record r : opened.getRecovered()) {
+			RecoveredBallot b = found.get(r.ballotId);
+			switch (r.type) {
+			case START:
+				found.put(r.ballotId, new RecoveredBallot(r));
+				break;
+			case POST:
+				if (b != null) {
+					b.posts.add(r);
+				}
+				break;
+			case PHASE:
+				if (b != null) {
+					// posts past the board's size at this phase were lost, and are posted again if resumed
+					while (b.posts.size() > r.boardSize) {
+						b.posts.remove(b.posts.size() - 1);
+					}
+					b.last = r;
+				}
+				break;
+			case END:
+				found.remove(r.ballotId);
+				break;
+			}
+		}
+		
+		for (RecoveredBallot b : found.values()) {
+			b.rebuildBoard();
+			boards.put(b.evote.id.toString(), b.board);
+			log.print(VPrint.QUIET, "ballot %s was interrupted after %s", b.evote.id,
+					(b.last == null) ? "it started" : b.last.phase);
+		}
+		recovered.putAll(found);
+		
+		ballotLog = opened;
+		timers.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				opened.sync();
+			}
+		}, LOG_SYNC_MILLIS, LOG_SYNC_MILLIS, TimeUnit.MILLISECONDS);
+		
+		return new ArrayList<String>(found.keySet());
+	}
+	
+	/**
+	 * Keeps the results of this server's ballots in an archive file from now on (they are
+	 * otherwise only kept in memory), and loads the ballots already archived in it.
+	 * Ballots archived in memory before the file was opened are added to it.
+	 * 
+	 * @param path
+	 * 		the archive file (created if it doesn't exist)
+	 * @return the number of ballots in the archive
+	 * @throws IOException
+	 */
+	public int openArchive(String path) throws IOException {
+		EVoteArchive opened = new EVoteArchive(new File(path));
+		
+		synchronized (this) {
+			for (BallotRecord r : archive.getAll()) {
+				if (opened.get(r.ballotId) == null) {
+					opened.append(r);
+				}
+			}
+			archive.close();
+			archive = opened;
+		}
+		
+		log.print(VPrint.QUIET, "archiving ballots to %s (%d so far)", path, opened.size());
+		return opened.size();
+	}
+	
+	/**
+	 * Resumes a ballot that was interrupted when this server crashed, at the phase after the
+	 * last one it completed. Its voters must have registered with this server again and still
+	 * be waiting in the ballot; they resend only the messages the crash lost.
+	 * 
+	 * @param sid
+	 * 		the id of the interrupted ballot (see openBallotLog)
+	 * @return the result of the vote in the form (# yes, # no), or "" if it couldn't be finished
+	 * @throws RemoteException, ClientNotFound, InterruptedException
+	 */
+	public String resumeEVote(String sid) throws RemoteException, ClientNotFound, InterruptedException {
+		RecoveredBallot b = recovered.remove(sid);
+		if (b == null) {
+			log.print(VPrint.ERROR, "no interrupted ballot %s to resume", sid);
+			return "";
+		}
+		
+		EVote evote = b.evote;
+		BallotLog.Record last = b.last;
+		int phasesDone = (last == null) ? 0 : last.phasesDone;
+		
+		Set<String> participants = new HashSet<String>();
+		for (String voter : (last == null) ? b.participants : last.participants) {
+			if (clients.containsKey(voter)) {
+				participants.add(voter);
+			}
+			else if (!evote.isThreshold()) {
+				log.print(VPrint.ERROR, "cannot resume ballot %s because %s has not reconnected", sid, voter);
+				recovered.put(sid, b);
+				return "";
+			}
+		}
+		
+		Ballot ballotState = new Ballot(evote, participants, null, b.board);
+		if (!ballotState.hasQuorum()) {
+			log.print(VPrint.ERROR, "cannot resume ballot %s because fewer than %d voters have reconnected", 
+					sid, ballotState.getQuorum());
+			recovered.put(sid, b);
+			return "";
+		}
+		if (ballotLog != null) {
+			// log where the ballot picks up again, so the posts the crash lost are dropped if it is resumed again
+			ballotState.setLogged(ballotLog.append((last == null) ? b.start : last));
+			b.board.setLog(ballotLog);
+		}
+		
+		Map<String, Callable<Object>> calls = new HashMap<String, Callable<Object>>();
+		for (String voter : participants) {
+			CryptoMessage outcome = (last == null) ? null : last.outcome.get(voter);
+			calls.put(voter, new resumeVoter(getClient(voter), sid, phasesDone, outcome));
+		}
+		
+		log.print(VPrint.QUIET, "resuming ballot %s with %d voters after %d phases", sid, participants.size(), phasesDone);
+		return runBallot(ballotState, nextPhase(evote, last), calls, new resumedEVote(ballotState, last));
+	}
+	
+	/** The phase that follows the last one logged for a ballot (null if there is none) */
+	private static EVotePhase nextPhase(EVote evote, BallotLog.Record last) {
+		if (last == null) {
+			return EVotePhase.PUBLIC_KEY;
+		}
+		
+		switch (last.phase) {
+		case PUBLIC_KEY:
+			return evote.isThreshold() ? EVotePhase.DEALING : EVotePhase.CIPHERTEXT;
+		case DEALING:
+			return EVotePhase.CIPHERTEXT;
+		case CIPHERTEXT:
+			return EVotePhase.DECRYPTION;
+		default:
+			return null;
+		}
+	}
+	
+	/** Creates callable object for bringing a voter into a resumed ballot (used for threading) */
+	protected class resumeVoter implements Callable<Object> {
+		private CryptoClient client;
+		private String sid;
+		private int phasesDone;
+		private CryptoMessage outcome;
+		
+		public resumeVoter(CryptoClient client, String sid, int phasesDone, CryptoMessage outcome) {
+			this.client = client;
+			this.sid = sid;
+			this.phasesDone = phasesDone;
+			this.outcome = outcome;
+		}
+		
+		public Object call() throws Exception {
+			if (!client.evoteResume(EVoteServer.this, sid, phasesDone, outcome)) {
+				throw new EVoteInvalidResult(String.format("%s is no longer voting in ballot %s", client.getName(), sid));
+			}
+			return null;
+		}
+	}
+	
+	/** Creates callable object for the server's side of a resumed ballot (used for threading) */
+	protected class resumedEVote implements Callable<String> {
+		private Ballot ballot;
+		private BallotLog.Record last;
+		
+		public resumedEVote(Ballot ballot, BallotLog.Record last) {
+			this.ballot = ballot;
+			this.last = last;
+		}
+		
+		@SuppressWarnings("unchecked")
+		public String call() throws Exception {
+			EVote evote = ballot.getEVote();
+			PhaseAccumulator acc = ballot.getCurrentPhase();
+			
+			try {
+				if (last == null) {
+					return tallyEvote(ballot);
+				}
+				
+				switch (last.phase) {
+				case PUBLIC_KEY:
+					if (evote.isThreshold()) {
+						CryptoMessage publicKeyMessage = last.outcome.values().iterator().next();
+						return dealEvote(ballot, acc, (Map<String, BigInteger>) publicKeyMessage.getEncryptionState());
+					}
+					return finishEvote(ballot, acc, loggedPublicKey());
+				case DEALING:
+					return finishEvote(ballot, acc, loggedPublicKey());
+				case CIPHERTEXT:
+					return decryptEvote(ballot, acc, last.values[1], last.values[2].intValue());
+				default:
+					return countEvote(ballot, last.values[0], last.values[1], last.values[2].intValue());
+				}
+			} catch (InterruptedException e) {
+				// do nothing -- vote was aborted
+				log.print(VPrint.DEBUG, "resumedEVote interrupted");
+				return "";
+			} finally {
+				ballots.remove(evote.id.toString());
+			}
+		}
+		
+		// the election public key is the plain text of what the server sent at the end of key set up
+		private BigInteger loggedPublicKey() {
+			return new BigInteger(last.outcome.values().iterator().next().getPlainText());
+		}
+	}
+	
+	/**
+	 * A ballot read back from the log: how it started, its board's posts and the last phase
+	 * it completed (null if none).
+	 */
+	protected static class RecoveredBallot {
+		private BallotLog.Record start;
+		private EVote evote;
+		private Set<String> participants;
+		private BigInteger signingKey;
+		private List<BallotLog.Record> posts;
+		private BallotLog.Record last;
+		private BulletinBoard board;
+		
+		public RecoveredBallot(BallotLog.Record start) {
+			this.start = start;
+			evote = start.evote;
+			participants = start.participants;
+			signingKey = start.signingKey;
+			posts = new ArrayList<BallotLog.Record>();
+		}
+		
+		/** Rebuilds the board as it was when the last phase completed */
+		private void rebuildBoard() {
+			board = new BulletinBoard(evote, signingKey);
+			int size = (last == null) ? 0 : Math.min(last.boardSize, posts.size());
+			for (int i = 0; i < size; i++) {
+				board.post(posts.get(i).author, posts.get(i).message);
+			}
+			if (last != null) {
+				board.signRoot(last.phase.toString());
+			}
+		}
+	}
+	
+	/** Logs the start of a ballot, if this server keeps a log */
+	private void logStart(Ballot ballot) {
+		BallotLog wal = ballotLog;
+		if (wal == null) {
+			return;
+		}
+		
+		BulletinBoard board = ballot.getBoard();
+		ballot.setLogged(wal.append(BallotLog.Record.start(ballot.getEVote(), ballot.getParticipants(), board.getSigningKey())));
+		board.setLog(wal);
+	}
+	
+	/**
+	 * Logs that a phase of a ballot completed, with the messages that tell each voter so and
+	 * the values the rest of the protocol needs. Call this after opening the next phase and
+	 * before sending the messages, so a resumed ballot never skips a message a voter needs.
+	 */
+	private void logPhase(Ballot ballot, EVotePhase phase, Map<String, CryptoMessage> outcome, BigInteger... values) {
+		BallotLog wal = ballotLog;
+		if (wal == null || !ballot.isLogged()) {
+			return;
+		}
+		
+		EVote evote = ballot.getEVote();
+		
+		// every voter sends one message each phase, and phases run in EVotePhase order
+		int phasesDone = phase.ordinal() + 1;
+		if (!evote.isThreshold() && phase.compareTo(EVotePhase.DEALING) > 0) {
+			phasesDone--;
+		}
+		
+		if (!wal.append(BallotLog.Record.phase(evote.id.toString(), phase, phasesDone, ballot.getParticipants(),
+				ballot.getBoard().size(), outcome, values))) {
+			log.print(VPrint.ERROR, "could not write ballot log: %s", wal.getError());
+		}
+	}
+	
+	/** Logs that a ballot is over (finished or aborted), so it is not resumed */
+	private void logEnd(Ballot ballot, String result) {
+		BallotLog wal = ballotLog;
+		if (wal != null && ballot.isLogged()) {
+			wal.append(BallotLog.Record.end(ballot.getEVote().id.toString(), result));
+			ballot.getBoard().setLog(null);
+		}
+	}
+	
+	/**
+	 * Archives the result of a ballot once it is over (whether it was tallied or aborted).
+	 * 
+	 * @param ballot
+	 * 		the ballot
+	 * @param result
+	 * 		the result of the vote in the form (# yes, # no), or "" if it was aborted (an
+	 * 		aggregate's sums are taken from the ballot instead)
+	 */
+	private void archiveBallot(Ballot ballot, String result) {
+		EVote evote = ballot.getEVote();
+		BallotRecord r = new BallotRecord();
+		r.ballotId = evote.id.toString();
+		r.ballot = evote.ballot;
+		r.numVoters = evote.numVoters;
+		r.rosterHash = evote.rosterHash;
+		r.threshold = evote.threshold;
+		r.tally = evote.isAggregate() ? "aggregate" : evote.isPaillier() ? "Paillier" : "ElGamal";
+		r.startedAt = ballot.getStartedAt();
+		r.endedAt = System.currentTimeMillis();
+		
+		if (result.matches("\\(\\d+,\\d+\\)")) {
+			String[] votes = result.substring(1, result.length() - 1).split(",");
+			r.yes = Integer.parseInt(votes[0]);
+			r.no = Integer.parseInt(votes[1]);
+		}
+		else if (evote.isAggregate() && ballot.getAggregateResult() != null) {
+			r.contributors = ballot.getAggregateResult().contributors;
+			r.sums = ballot.getAggregateResult().sums;
+		}
+		for (Entry<EVotePhase, Long> phase : ballot.getPhaseMillis().entrySet()) {
+			r.phaseMillis.put(phase.getKey().toString(), phase.getValue());
+		}
+		
+		BulletinRoot root = ballot.getBoard().getRoot();
+		r.transcriptSize = root.size;
+		r.transcriptRoot = root.root;
+		
+		// don't append to an archive openArchive is replacing
+		synchronized (this) {
+			if (!archive.append(r)) {
+				log.print(VPrint.ERROR, "could not write ballot archive: %s", archive.getError());
+			}
+		}
+	}
+	
+	/** The same message for every participant of a ballot */
+	private static Map<String, CryptoMessage> toAll(Ballot ballot, CryptoMessage m) {
+		Map<String, CryptoMessage> messages = new HashMap<String, CryptoMessage>();
+		for (String participant : ballot.getParticipants()) {
+			messages.put(participant, m);
 		}
+		return messages;
 	}
 	
 	/*
@@ -502,8 +2757,9 @@ public class EVoteServer extends CentralServer {
 	public static void main(String args[]) {
 		Scanner scan;
 		
-		if (args.length != 2) {
-			System.err.println("usage: java EVoteServer rmiport servername");
+		if (args.length != 2 && args.length != 3 && args.length != 5) {
+			System.err.println("usage: java EVoteServer rmiport servername [threshold]");
+			System.err.println("       java EVoteServer rmiport servername parenthost parentport parentname");
 			System.exit(1);
 		}
 		
@@ -515,8 +2771,9 @@ public class EVoteServer extends CentralServer {
 			String rmiHost = InetAddress.getLocalHost().getHostAddress();
 			int rmiPort = Integer.parseInt(args[0]);
 			String serverName = args[1];
+			int threshold = (args.length == 3) ? Integer.parseInt(args[2]) : 0;
 			
-			CentralServer server = new EVoteServer(serverName);
+			EVoteServer server = new EVoteServer(serverName);
 			CryptoServer serverStub = (CryptoServer) UnicastRemoteObject
 					.exportObject(server, 0);
 
@@ -529,6 +2786,34 @@ public class EVoteServer extends CentralServer {
 					serverName, rmiHost, rmiPort));
 			System.out.println("Waiting for client connections...");
 			
+			/*
+			 * Join the parent server, if this is a sub-server
+			 */
+			if (args.length == 5) {
+				Registry parentRegistry = LocateRegistry.getRegistry(args[2], Integer.parseInt(args[3]));
+				CryptoServer parentServer = (CryptoServer) parentRegistry.lookup(args[4]);
+				
+				if (!server.joinParent(parentServer)) {
+					System.err.println(String.format("Could not join parent server '%s'", args[4]));
+					System.exit(1);
+				}
+				System.out.println(String.format("Joined parent server '%s'", args[4]));
+			}
+			
+			/*
+			 * Keep a log of our ballots, and list the ones a crash interrupted last time
+			 */
+			String logPath = serverName + ".wal";
+			List<String> interrupted = server.openBallotLog(logPath);
+			System.out.println(String.format("Logging ballots to %s", logPath));
+			for (String sid : interrupted) {
+				System.out.println(String.format("Ballot %s was interrupted (enter 'resume %s' once its voters reconnect)", sid, sid));
+			}
+			
+			String archivePath = serverName + ".archive";
+			int archived = server.openArchive(archivePath);
+			System.out.println(String.format("Archiving ballot results to %s (%d ballots so far)", archivePath, archived));
+			
 			/*
 			 * Prompt user for ballot
 			 */
@@ -537,7 +2822,66 @@ public class EVoteServer extends CentralServer {
 			while (true) {
 				System.out.println("Enter ballot:");
 				String ballot = scan.nextLine();
-				server.initiateEVote(ballot);
+				try {
+					if (ballot.startsWith("resume ")) {
+						server.resumeEVote(ballot.substring("resume ".length()).trim());
+					}
+					else if (ballot.equals("history") || ballot.startsWith("history ")) {
+						// history [n]: the last n ballots (10 by default)
+						String n = ballot.substring("history".length()).trim();
+						int limit;
+						try {
+							limit = n.isEmpty() ? 10 : Integer.parseInt(n);
+						} catch (NumberFormatException e) {
+							limit = 0;
+						}
+						if (limit <= 0) {
+							System.err.println("usage: history [number of ballots]");
+						}
+						else {
+							for (BallotRecord r : server.findBallotRecords(0, Long.MAX_VALUE, limit)) {
+								System.out.println(r);
+							}
+						}
+					}
+					else if (ballot.equals("stats")) {
+						System.out.print(server.getTelemetry().report());
+					}
+					else if (ballot.startsWith("deadline ")) {
+						// deadline <phase> <seconds>
+						String[] words = ballot.trim().split("\\s+");
+						try {
+							server.setPhaseTimeout(EVotePhase.valueOf(words[1].toUpperCase()), Integer.parseInt(words[2]));
+						} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+							System.err.println("usage: deadline <phase> <seconds>, where <phase> is one of " 
+									+ Arrays.toString(EVotePhase.values()));
+						}
+					}
+					else if (ballot.startsWith("tally ")) {
+						// tally paillier|elgamal
+						server.setPaillierTally(ballot.substring("tally ".length()).trim().equalsIgnoreCase("paillier"));
+					}
+					else if (ballot.startsWith("evict ")) {
+						server.unregisterClient(ballot.substring("evict ".length()).trim());
+					}
+					else if (ballot.startsWith("group ")) {
+						// group <name> <member> <member> ...
+						String[] words = ballot.trim().split("\\s+");
+						Set<String> members = new HashSet<String>(Arrays.asList(words).subList(2, words.length));
+						server.defineVoterGroup(words[1], members);
+					}
+					else if (ballot.matches(".* @\\S+")) {
+						// <ballot> @<group>
+						int at = ballot.lastIndexOf(" @");
+						server.initiateGroupEVote(ballot.substring(0, at), ballot.substring(at + 2), threshold);
+					}
+					else {
+						server.initiateEVote(ballot, threshold);
+					}
+				} catch (Exception e) {
+					// a bad command shouldn't stop the console
+					System.err.println("Command failed: " + e.toString());
+				}
 			}
 
 		} catch (Exception e) {
@@ -551,4 +2895,58 @@ public class EVoteServer extends CentralServer {
 	public static void setTimeout(int to) {
 		EVOTETIMEOUT = to;
 	}
+	
+	/**
+	 * Sets how long voters have to send their contribution to a phase, from when the phase
+	 * opens. Voters who miss it are dropped from threshold evotes; other evotes are aborted.
+	 * 
+	 * @param phase
+	 * 		the phase
+	 * @param seconds
+	 * 		the phase's deadline (0 to go back to the default timeout)
+	 */
+	public void setPhaseTimeout(EVotePhase phase, int seconds) {
+		if (seconds > 0) {
+			phaseTimeouts.put(phase, seconds);
+		}
+		else {
+			phaseTimeouts.remove(phase);
+		}
+	}
+	
+	/**
+	 * Sets how long a ballot's bulletin board and roster are kept once the ballot is over, for
+	 * voters still auditing it (10 minutes by default). After that only the ballot's archived
+	 * record is left.
+	 * 
+	 * @param seconds
+	 * 		how long to keep the board of each ballot that ends from now on
+	 */
+	public void setBoardRetention(int seconds) {
+		boardRetention = seconds;
+	}
+	
+	/** @return the deadline of the phase in seconds (the default timeout for a null phase) */
+	public int getPhaseTimeout(EVotePhase phase) {
+		Integer timeout = (phase != null) ? phaseTimeouts.get(phase) : null;
+		return (timeout != null) ? timeout : EVOTETIMEOUT;
+	}
+	
+	/**
+	 * Chooses how the ballots started from now on are tallied: with Paillier, whose tally
+	 * decrypts directly however many voters there are, or with exponential ElGamal (the default).
+	 * Paillier ballots can't have a threshold or sub-servers, and can't be resumed.
+	 * 
+	 * @param paillier
+	 * 		true to tally with Paillier
+	 */
+	public void setPaillierTally(boolean paillier) {
+		paillierTally = paillier;
+		log.print(VPrint.QUIET, "new ballots are tallied with %s", paillier ? "Paillier" : "ElGamal");
+	}
+	
+	/** @return how long voters take in each phase, and who holds ballots up */
+	public PhaseTelemetry getTelemetry() {
+		return telemetry;
+	}
 }
\ No newline at end of file
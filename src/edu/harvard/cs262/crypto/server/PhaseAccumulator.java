@@ -0,0 +1,299 @@
+package edu.harvard.cs262.crypto.server;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import edu.harvard.cs262.crypto.CryptoMessage;
+
+/**
+ * Running products for one phase of an evote. Each voter's contribution is folded in as soon
+ * as it arrives (in the thread delivering the message), so once the last voter reports the
+ * phase result is already computed and completing the phase is just a count check.
+ *
+ * Phases that need the individual contributions (e.g. to route key shares or to interpolate
+ * threshold decryption shares) can also keep every voter's message, in arrival order.
+ *
+ * Voters that drop out can be excluded from a phase they have not yet contributed to. The
+ * phase then completes without them, unless fewer than its minimum number of voters remain.
+ *
+ * The products are striped: a voter is hashed to one of several partial products that are
+ * updated with compare-and-set, so concurrent arrivals rarely contend and never block.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+class PhaseAccumulator {
+	// number of partial products kept per component
+	private static final int STRIPES = 8;
+
+	private final EVotePhase phase;
+	private final BigInteger p;
+
+	// voters still expected to take part in this phase (including those who already have)
+	private final Set<String> participants;
+
+	// contributions needed to complete the phase (0 means every participant)
+	private final int required;
+
+	// the phase fails if fewer participants than this remain
+	private final int minimum;
+
+	// partial products, indexed by (component * STRIPES + stripe)
+	private final AtomicReferenceArray<BigInteger> products;
+
+	// voters who have already contributed to this phase
+	private final Set<String> arrived;
+	private final AtomicInteger numArrived;
+
+	// individual messages and the order they arrived in (only if asked to keep them)
+	private final Map<String, CryptoMessage> messages;
+	private final ConcurrentLinkedQueue<String> arrivalOrder;
+
+	// when the phase was opened, and how long after that each voter's contribution arrived (ns)
+	private final long openedAt;
+	private final Map<String, Long> latencies;
+	
+	/**
+	 * @param phase
+	 * 		the evote phase being accumulated
+	 * @param p
+	 * 		the modulus the products are taken over
+	 * @param voters
+	 * 		the voters expected to contribute
+	 */
+	public PhaseAccumulator(EVotePhase phase, BigInteger p, Set<String> voters) {
+		this(phase, p, voters, 0, voters.size(), false);
+	}
+
+	/**
+	 * @param phase
+	 * 		the evote phase being accumulated
+	 * @param p
+	 * 		the modulus the products are taken over
+	 * @param voters
+	 * 		the voters expected to contribute
+	 * @param required
+	 * 		the number of contributions after which the phase is complete (0 for every voter)
+	 * @param minimum
+	 * 		the fewest voters that may remain in the phase before it fails
+	 * @param keepMessages
+	 * 		whether to keep each voter's message as well as the running products
+	 */
+	public PhaseAccumulator(EVotePhase phase, BigInteger p, Set<String> voters, int required,
+			int minimum, boolean keepMessages) {
+		this.phase = phase;
+		this.p = p;
+		this.required = required;
+		this.minimum = minimum;
+
+		participants = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		participants.addAll(voters);
+
+		products = new AtomicReferenceArray<BigInteger>(phase.numComponents() * STRIPES);
+		for (int i = 0; i < products.length(); i++) {
+			products.set(i, BigInteger.ONE);
+		}
+
+		arrived = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		numArrived = new AtomicInteger(0);
+
+		messages = keepMessages ? new ConcurrentHashMap<String, CryptoMessage>() : null;
+		arrivalOrder = new ConcurrentLinkedQueue<String>();
+		
+		latencies = new ConcurrentHashMap<String, Long>();
+		openedAt = System.nanoTime();
+	}
+
+	public EVotePhase getPhase() {
+		return phase;
+	}
+
+	/** @return true if the voter is part of this phase and hasn't contributed to it yet */
+	public boolean isExpected(String voter) {
+		return participants.contains(voter) && !arrived.contains(voter);
+	}
+	
+	/**
+	 * Fold a voter's message into the running products.
+	 *
+	 * @param from
+	 * 		the voter sending the message
+	 * @param m
+	 * 		the voter's message for this phase
+	 * @return false if the voter is not part of this phase or already contributed to it
+	 * @throws RuntimeException
+	 * 		if the message can't be read as a contribution to this phase (the voter is then
+	 * 		still expected, so it can be excluded)
+	 */
+	public boolean add(String from, CryptoMessage m) {
+		return add(from, m, null);
+	}
+
+	/**
+	 * The same thing as add, but runs onAccept once the message is accepted and before it
+	 * can complete the phase (e.g. to post it to the ballot's bulletin board). It runs at
+	 * most once per voter, however many copies of the message arrive.
+	 *
+	 * @param onAccept
+	 * 		what to do with an accepted message (or null)
+	 */
+	public boolean add(String from, CryptoMessage m, Runnable onAccept) {
+		if (!participants.contains(from)) {
+			return false;
+		}
+
+		// a malformed message must not count as the voter's arrival
+		BigInteger[] values = phase.components(m);
+
+		if (!arrived.add(from)) {
+			return false;
+		}
+		latencies.put(from, System.nanoTime() - openedAt);
+
+		if (messages != null) {
+			messages.put(from, m);
+		}
+		arrivalOrder.add(from);
+
+		if (onAccept != null) {
+			onAccept.run();
+		}
+
+		int stripe = (from.hashCode() & 0x7fffffff) % STRIPES;
+
+		for (int c = 0; c < values.length; c++) {
+			int slot = c * STRIPES + stripe;
+			BigInteger current, next;
+			do {
+				current = products.get(slot);
+				next = current.multiply(values[c]).mod(p);
+			} while (!products.compareAndSet(slot, current, next));
+		}
+
+		// only the arrival that completes the phase needs to wake the waiting thread
+		if (numArrived.incrementAndGet() >= target()) {
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stop waiting for a voter that dropped out. Voters who already contributed to this
+	 * phase keep their contribution.
+	 *
+	 * @param voter
+	 * 		the voter to exclude
+	 * @return true if the phase was still waiting on the voter
+	 */
+	public boolean exclude(String voter) {
+		if (arrived.contains(voter) || !participants.remove(voter)) {
+			return false;
+		}
+
+		synchronized (this) {
+			notifyAll();
+		}
+		return true;
+	}
+
+	/** @return the voters this phase is still waiting on */
+	public List<String> getMissing() {
+		List<String> missing = new ArrayList<String>();
+		for (String voter : participants) {
+			if (!arrived.contains(voter)) {
+				missing.add(voter);
+			}
+		}
+		return missing;
+	}
+
+	// the number of contributions needed for the phase to complete
+	private int target() {
+		return (required > 0) ? required : participants.size();
+	}
+
+	public boolean isComplete() {
+		return numArrived.get() >= target();
+	}
+
+	/** @return true if too many voters dropped out for the phase to complete */
+	public boolean isFailed() {
+		return !isComplete() && participants.size() < Math.max(minimum, target());
+	}
+
+	/**
+	 * Blocks until enough voters have contributed to complete this phase, or until so many
+	 * voters have been excluded that it never will.
+	 *
+	 * @return true if the phase completed
+	 * @throws InterruptedException
+	 */
+	public synchronized boolean await() throws InterruptedException {
+		while (!isComplete() && !isFailed()) {
+			wait();
+		}
+		return isComplete();
+	}
+
+	/** @return milliseconds since the phase was opened */
+	public long getElapsedMillis() {
+		return (System.nanoTime() - openedAt) / 1000000;
+	}
+	
+	/** @return voter name => nanoseconds from the phase opening to the voter's contribution */
+	public Map<String, Long> getLatencies() {
+		return new HashMap<String, Long>(latencies);
+	}
+	
+	/** @return the number of voters who contributed to this phase */
+	public int getNumArrived() {
+		return numArrived.get();
+	}
+
+	/**
+	 * The messages of the first voters to contribute.
+	 * Only available if the accumulator was asked to keep messages.
+	 *
+	 * @param limit
+	 * 		the most messages to return
+	 * @return voter name => message, for at most limit voters in arrival order
+	 */
+	public Map<String, CryptoMessage> getMessages(int limit) {
+		Map<String, CryptoMessage> result = new LinkedHashMap<String, CryptoMessage>();
+		List<String> order = new ArrayList<String>(arrivalOrder);
+
+		for (String voter : order) {
+			if (result.size() >= limit) {
+				break;
+			}
+			result.put(voter, messages.get(voter));
+		}
+		return result;
+	}
+
+	/**
+	 * The product of every contribution to a component so far.
+	 *
+	 * @param component
+	 * 		which of the phase's values (e.g. 0 for c1, 1 for c2)
+	 * @return the product mod p
+	 */
+	public BigInteger product(int component) {
+		BigInteger result = BigInteger.ONE;
+		for (int s = 0; s < STRIPES; s++) {
+			result = result.multiply(products.get(component * STRIPES + s)).mod(p);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,214 @@
+package edu.harvard.cs262.crypto.server;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import edu.harvard.cs262.crypto.VPrint;
+
+/**
+ * How long voters take to send their contribution to each evote phase, measured from the
+ * moment the server opens the phase. Keeps the latest latencies of each phase (for its
+ * latency distribution) and, for each voter and phase, whether the voter held up the phase in
+ * its latest ballots.
+ *
+ * A voter holds up a phase if it misses the phase's deadline, or if it arrives more than
+ * SLOW_FACTOR times later than the median voter of that phase (and at least SLOW_MILLIS
+ * after the phase opened, so that a fast phase has no stragglers). A voter who held up a
+ * phase in at least half of its latest HISTORY ballots (and at least MIN_HISTORY of them)
+ * is a chronic straggler in that phase.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class PhaseTelemetry {
+	// latencies kept per phase
+	private static final int SAMPLES = 1024;
+	
+	// ballots remembered per voter and phase, and how many make a voter chronic
+	private static final int HISTORY = 10;
+	private static final int MIN_HISTORY = 3;
+	
+	private static final int SLOW_FACTOR = 3;
+	private static final long SLOW_MILLIS = 100;
+	
+	// latest latencies (ns) of each phase, in a ring
+	private final Map<EVotePhase, long[]> samples;
+	private final Map<EVotePhase, Integer> numSamples;
+	
+	// voter => phase => whether the voter held up the phase, for its latest ballots
+	private final Map<String, Map<EVotePhase, LinkedList<Boolean>>> history;
+	
+	// deadlines missed by each voter
+	private final Map<String, Integer> misses;
+	
+	private final VPrint log;
+	
+	/**
+	 * @param log
+	 * 		where to warn about chronic stragglers
+	 */
+	public PhaseTelemetry(VPrint log) {
+		this.log = log;
+		samples = new EnumMap<EVotePhase, long[]>(EVotePhase.class);
+		numSamples = new EnumMap<EVotePhase, Integer>(EVotePhase.class);
+		history = new HashMap<String, Map<EVotePhase, LinkedList<Boolean>>>();
+		misses = new HashMap<String, Integer>();
+		
+		for (EVotePhase phase : EVotePhase.values()) {
+			samples.put(phase, new long[SAMPLES]);
+			numSamples.put(phase, 0);
+		}
+	}
+	
+	/**
+	 * Records one ballot's run of a phase.
+	 * 
+	 * @param phase
+	 * 		the phase
+	 * @param latencies
+	 * 		voter => nanoseconds from the phase opening to the voter's contribution
+	 * @param missed
+	 * 		voters who missed the phase's deadline
+	 */
+	public synchronized void record(EVotePhase phase, Map<String, Long> latencies, Collection<String> missed) {
+		long[] ring = samples.get(phase);
+		int n = numSamples.get(phase);
+		for (long latency : latencies.values()) {
+			ring[n % SAMPLES] = latency;
+			n++;
+		}
+		numSamples.put(phase, n);
+		
+		long slow = Math.max(SLOW_FACTOR * median(latencies.values()), SLOW_MILLIS * 1000000L);
+		for (Map.Entry<String, Long> arrival : latencies.entrySet()) {
+			remember(arrival.getKey(), phase, latencies.size() > 1 && arrival.getValue() > slow);
+		}
+		
+		for (String voter : missed) {
+			Integer count = misses.get(voter);
+			misses.put(voter, (count == null) ? 1 : count + 1);
+			remember(voter, phase, true);
+		}
+	}
+	
+	// adds a voter's latest outcome in a phase, warning when that makes it a chronic straggler
+	private void remember(String voter, EVotePhase phase, boolean heldUp) {
+		Map<EVotePhase, LinkedList<Boolean>> phases = history.get(voter);
+		if (phases == null) {
+			phases = new EnumMap<EVotePhase, LinkedList<Boolean>>(EVotePhase.class);
+			history.put(voter, phases);
+		}
+		
+		LinkedList<Boolean> outcomes = phases.get(phase);
+		if (outcomes == null) {
+			outcomes = new LinkedList<Boolean>();
+			phases.put(phase, outcomes);
+		}
+		
+		boolean wasChronic = isChronic(outcomes);
+		outcomes.add(heldUp);
+		if (outcomes.size() > HISTORY) {
+			outcomes.removeFirst();
+		}
+		
+		if (!wasChronic && isChronic(outcomes)) {
+			log.print(VPrint.WARN, "%s is a chronic straggler in the %s phase (held up %d of its last %d)", 
+					voter, phase, count(outcomes), outcomes.size());
+		}
+	}
+	
+	private static boolean isChronic(LinkedList<Boolean> outcomes) {
+		return outcomes.size() >= MIN_HISTORY && 2 * count(outcomes) >= outcomes.size();
+	}
+	
+	private static int count(LinkedList<Boolean> outcomes) {
+		int heldUp = 0;
+		for (boolean outcome : outcomes) {
+			if (outcome) {
+				heldUp++;
+			}
+		}
+		return heldUp;
+	}
+	
+	private static long median(Collection<Long> values) {
+		if (values.isEmpty()) {
+			return 0;
+		}
+		Long[] sorted = values.toArray(new Long[values.size()]);
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+	
+	/** @return the number of latencies recorded for the phase (the latest SAMPLES are kept) */
+	public synchronized int getSampleCount(EVotePhase phase) {
+		return numSamples.get(phase);
+	}
+	
+	/**
+	 * A point of the phase's latency distribution, over its latest SAMPLES latencies.
+	 * 
+	 * @param phase
+	 * 		the phase
+	 * @param percentile
+	 * 		the percentile, from 0 to 100 (50 for the median)
+	 * @return the latency in milliseconds, or 0 if none were recorded
+	 */
+	public synchronized double getLatencyMillis(EVotePhase phase, double percentile) {
+		int n = Math.min(numSamples.get(phase), SAMPLES);
+		if (n == 0) {
+			return 0;
+		}
+		
+		long[] sorted = Arrays.copyOf(samples.get(phase), n);
+		Arrays.sort(sorted);
+		int rank = (int) Math.ceil(percentile / 100 * n) - 1;
+		return sorted[Math.min(n - 1, Math.max(0, rank))] / 1e6;
+	}
+	
+	/** @return the number of phase deadlines the voter missed */
+	public synchronized int getMisses(String voter) {
+		Integer count = misses.get(voter);
+		return (count == null) ? 0 : count;
+	}
+	
+	/** @return chronic straggler => the phases it is chronically slow in */
+	public synchronized Map<String, Set<EVotePhase>> getStragglers() {
+		Map<String, Set<EVotePhase>> stragglers = new TreeMap<String, Set<EVotePhase>>();
+		for (Map.Entry<String, Map<EVotePhase, LinkedList<Boolean>>> voter : history.entrySet()) {
+			Set<EVotePhase> phases = new TreeSet<EVotePhase>();
+			for (Map.Entry<EVotePhase, LinkedList<Boolean>> phase : voter.getValue().entrySet()) {
+				if (isChronic(phase.getValue())) {
+					phases.add(phase.getKey());
+				}
+			}
+			if (!phases.isEmpty()) {
+				stragglers.put(voter.getKey(), phases);
+			}
+		}
+		return stragglers;
+	}
+	
+	/** @return a table of each phase's latency distribution, followed by the chronic stragglers */
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-20s %8s %10s %10s %10s %10s%n", "phase", "samples", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+		for (EVotePhase phase : EVotePhase.values()) {
+			sb.append(String.format("%-20s %8d %10.1f %10.1f %10.1f %10.1f%n", phase, getSampleCount(phase), 
+					getLatencyMillis(phase, 50), getLatencyMillis(phase, 90), 
+					getLatencyMillis(phase, 99), getLatencyMillis(phase, 100)));
+		}
+		
+		for (Map.Entry<String, Set<EVotePhase>> straggler : getStragglers().entrySet()) {
+			sb.append(String.format("straggler %s in %s (%d deadlines missed)%n", 
+					straggler.getKey(), straggler.getValue(), getMisses(straggler.getKey())));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,182 @@
+package edu.harvard.cs262.crypto.server;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.harvard.cs262.crypto.CryptoMessage;
+
+/**
+ * Where the messages of one round of a session meet the threads waiting for them. Each
+ * participant sends at most one message per round.
+ *
+ * Waiting is done on futures: one for each participant's message and one that completes
+ * when every expected participant has reported. An arrival only completes the futures it
+ * finishes, so it never takes a shared lock or wakes a thread waiting on someone else.
+ *
+ * The expected participants may be given after some of them have already reported (the
+ * sender of a message usually doesn't know who else is in the round).
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+class Rendezvous {
+	private final ConcurrentMap<String, CryptoMessage> messages;
+	private final ConcurrentMap<String, Outcome<CryptoMessage>> arrivals;
+
+	// the participants the round waits for, once known
+	private volatile Set<String> expected;
+
+	// expected participants whose message has been counted, and how many are still missing
+	private final Set<String> counted;
+	private final AtomicInteger remaining;
+
+	private final Outcome<Map<String, CryptoMessage>> complete;
+
+	public Rendezvous() {
+		messages = new ConcurrentHashMap<String, CryptoMessage>();
+		arrivals = new ConcurrentHashMap<String, Outcome<CryptoMessage>>();
+		counted = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		remaining = new AtomicInteger(0);
+		complete = new Outcome<Map<String, CryptoMessage>>();
+	}
+
+	/**
+	 * @param expected
+	 * 		the participants the round waits for
+	 */
+	public Rendezvous(Set<String> expected) {
+		this();
+		expect(expected);
+	}
+
+	/**
+	 * Records a participant's message for the round.
+	 *
+	 * @return false if the participant already sent a message this round
+	 */
+	public boolean arrive(String from, CryptoMessage m) {
+		if (messages.putIfAbsent(from, m) != null) {
+			return false;
+		}
+
+		arrival(from).set(m);
+
+		Set<String> waitingFor = expected;
+		if (waitingFor != null && waitingFor.contains(from)) {
+			count(from);
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the participants the round waits for. Messages that already arrived count.
+	 *
+	 * @throws IllegalStateException
+	 * 		if the round is already waiting for a different set of participants
+	 */
+	public void expect(Set<String> participants) {
+		Set<String> waitingFor = new HashSet<String>(participants);
+
+		synchronized (this) {
+			if (expected != null) {
+				if (!expected.equals(waitingFor)) {
+					throw new IllegalStateException("round is already waiting for " + expected);
+				}
+				return;
+			}
+
+			// nobody can count before expected is set, so this can't race with an arrival
+			remaining.set(waitingFor.size());
+			expected = Collections.unmodifiableSet(waitingFor);
+		}
+
+		if (waitingFor.isEmpty()) {
+			complete.set(snapshot());
+		}
+
+		// participants who reported before we knew to expect them
+		for (String participant : waitingFor) {
+			if (messages.containsKey(participant)) {
+				count(participant);
+			}
+		}
+	}
+
+	/** @return a future holding every expected participant's message once they have all reported */
+	public Future<Map<String, CryptoMessage>> whenComplete() {
+		return complete;
+	}
+
+	/** @return a future holding the participant's message once it arrives */
+	public Future<CryptoMessage> messageFrom(String participant) {
+		return arrival(participant);
+	}
+
+	/** @return the expected participants who have not reported yet (empty if none are expected yet) */
+	public Set<String> getMissing() {
+		Set<String> missing = new HashSet<String>();
+		Set<String> waitingFor = expected;
+		if (waitingFor != null) {
+			for (String participant : waitingFor) {
+				if (!messages.containsKey(participant)) {
+					missing.add(participant);
+				}
+			}
+		}
+		return missing;
+	}
+
+	/** Counts an expected participant's message exactly once, completing the round on the last one */
+	private void count(String participant) {
+		if (counted.add(participant) && remaining.decrementAndGet() == 0) {
+			complete.set(snapshot());
+		}
+	}
+
+	private Map<String, CryptoMessage> snapshot() {
+		Map<String, CryptoMessage> result = new HashMap<String, CryptoMessage>();
+		for (String participant : expected) {
+			result.put(participant, messages.get(participant));
+		}
+		return result;
+	}
+
+	private Outcome<CryptoMessage> arrival(String participant) {
+		Outcome<CryptoMessage> arrival = arrivals.get(participant);
+		if (arrival == null) {
+			Outcome<CryptoMessage> created = new Outcome<CryptoMessage>();
+			arrival = arrivals.putIfAbsent(participant, created);
+			if (arrival == null) {
+				arrival = created;
+			}
+		}
+		return arrival;
+	}
+
+	/**
+	 * A future that is completed by hand. Only the first value set counts.
+	 */
+	private static class Outcome<V> extends FutureTask<V> {
+		public Outcome() {
+			super(new Callable<V>() {
+				@Override
+				public V call() {
+					throw new IllegalStateException("an outcome is set, not run");
+				}
+			});
+		}
+
+		@Override
+		public void set(V v) {
+			super.set(v);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package edu.harvard.cs262.crypto.server;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.harvard.cs262.crypto.CryptoMessage;
+
+/**
+ * The messages of one session that the server waits on. Each participant's messages are
+ * numbered in the order they arrive, and its n-th message goes to the session's n-th round
+ * (a Rendezvous). Waiting for a participant likewise takes its messages in order, so a
+ * sender never has to wait for the previous message to be picked up.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+class Session {
+	private final String id;
+	private final ConcurrentMap<Integer, Rendezvous> rounds;
+
+	// the round of each participant's next message, and of the next one to be waited on
+	private final ConcurrentMap<String, AtomicInteger> sent;
+	private final ConcurrentMap<String, AtomicInteger> taken;
+
+	public Session(String id) {
+		this.id = id;
+		rounds = new ConcurrentHashMap<Integer, Rendezvous>();
+		sent = new ConcurrentHashMap<String, AtomicInteger>();
+		taken = new ConcurrentHashMap<String, AtomicInteger>();
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	/** Records a message from a participant in its next round */
+	public void arrive(String from, CryptoMessage m) {
+		round(next(sent, from)).arrive(from, m);
+	}
+
+	/**
+	 * Blocks until the participant's next message arrives.
+	 *
+	 * @return the message
+	 * @throws InterruptedException
+	 */
+	public CryptoMessage take(String from) throws InterruptedException {
+		int r = next(taken, from);
+		return get(round(r).messageFrom(from));
+	}
+
+	/**
+	 * Blocks until each participant has sent its next message. The participants must be in
+	 * step (every one of them has had the same number of messages taken).
+	 *
+	 * @return the messages (keyed by participant)
+	 * @throws InterruptedException
+	 */
+	public Map<String, CryptoMessage> takeAll(Set<String> participants) throws InterruptedException {
+		Integer r = null;
+		for (String participant : participants) {
+			int next = next(taken, participant);
+			if (r != null && r.intValue() != next) {
+				throw new IllegalStateException(String.format("participants of session %s are out of step", id));
+			}
+			r = next;
+		}
+
+		if (r == null) {
+			// nobody to wait for
+			return new HashMap<String, CryptoMessage>();
+		}
+
+		Rendezvous round = round(r);
+		round.expect(participants);
+		Map<String, CryptoMessage> messages = get(round.whenComplete());
+
+		// every message of the round has been handed out
+		rounds.remove(r, round);
+		return messages;
+	}
+
+	private Rendezvous round(int r) {
+		Rendezvous round = rounds.get(r);
+		if (round == null) {
+			Rendezvous created = new Rendezvous();
+			round = rounds.putIfAbsent(r, created);
+			if (round == null) {
+				round = created;
+			}
+		}
+		return round;
+	}
+
+	private static int next(ConcurrentMap<String, AtomicInteger> counters, String participant) {
+		AtomicInteger counter = counters.get(participant);
+		if (counter == null) {
+			AtomicInteger created = new AtomicInteger(0);
+			counter = counters.putIfAbsent(participant, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		return counter.getAndIncrement();
+	}
+
+	private static <V> V get(Future<V> f) throws InterruptedException {
+		try {
+			return f.get();
+		} catch (ExecutionException e) {
+			// the rendezvous futures are only ever set, never failed
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package edu.harvard.cs262.tests;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.rmi.RemoteException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.harvard.cs262.crypto.AggregateResult;
+import edu.harvard.cs262.crypto.BallotRecord;
+import edu.harvard.cs262.crypto.EVote;
+import edu.harvard.cs262.crypto.cipher.PackedEncoding;
+import edu.harvard.cs262.crypto.client.EVoteClient;
+import edu.harvard.cs262.crypto.client.MetricSource;
+import edu.harvard.cs262.crypto.server.EVoteServer;
+
+/**
+ * JUnit tests for private aggregates of the clients' values.
+ * Here we test:
+ * (1) Packed vectors add up slot by slot, and values that don't fit are rejected
+ * (2) An aggregate returns the sums and averages of every client's values, the clients get
+ *     the same sums, every client's bulletin board audit passes, and the archive keeps the
+ *     sums (with no yes/no tally)
+ * (3) An aggregate fails when a client has no values, or when they are too big for the slots,
+ *     and the other clients stay registered
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class AggregateTests {
+
+	private static final int LENGTH = 100;
+
+	static EVoteServer server;
+	static EVoteClient c1, c2, c3, c4;
+
+	@BeforeClass
+	public static void setup() {
+		// dummy server
+		server = new EVoteServer("server");
+
+		// dummy clients
+		c1 = new EVoteClient("c1", server);
+		c2 = new EVoteClient("c2", server);
+		c3 = new EVoteClient("c3", server);
+		c4 = new EVoteClient("c4", server);
+
+		// client i's j-th value is 1000 * i + j
+		EVoteClient[] clients = { c1, c2, c3, c4 };
+		for (int i = 0; i < clients.length; i++) {
+			clients[i].setMetricSource(counters(1000 * (i + 1)));
+		}
+
+		try {
+			server.registerClient(c1);
+			server.registerClient(c2);
+			server.registerClient(c3);
+			server.registerClient(c4);
+		} catch (RemoteException e) {
+			fail("client registration failed");
+		}
+	}
+
+	private static MetricSource counters(final long base) {
+		return new MetricSource() {
+			@Override
+			public long[] getValues(EVote aggregate) {
+				long[] values = new long[aggregate.aggregateLength];
+				for (int j = 0; j < values.length; j++) {
+					values[j] = base + j;
+				}
+				return values;
+			}
+		};
+	}
+
+	/** Clients finish up after the server has its result, so wait until none is still contributing */
+	private static void awaitIdle() throws InterruptedException {
+		for (String client : new String[] { "c1", "c2", "c3", "c4" }) {
+			for (int i = 0; i < 100 && server.isVoting(client); i++) {
+				Thread.sleep(100);
+			}
+		}
+	}
+
+	/** Checks that the clients were not dropped by an aggregate another client made fail */
+	private static void assertRegistered(EVoteClient... honest) throws Exception {
+		for (EVoteClient client : honest) {
+			assertSame(client, server.getClient(client.getName()));
+		}
+	}
+
+	@Test
+	public void packing() {
+		PackedEncoding encoding = new PackedEncoding(32, 1000, 1024);
+		assertEquals(42, encoding.slotBits);
+		assertEquals(24, encoding.slots);
+		assertEquals(3, encoding.numIntegers(50));
+
+		long[] a = new long[50];
+		long[] b = new long[50];
+		for (int j = 0; j < a.length; j++) {
+			a[j] = 0xffffffffL - j;
+			b[j] = j * 7;
+		}
+
+		// adding the packed integers adds the values in each slot
+		BigInteger[] packedA = encoding.pack(a);
+		BigInteger[] packedB = encoding.pack(b);
+		BigInteger[] sums = new BigInteger[packedA.length];
+		for (int i = 0; i < sums.length; i++) {
+			assertTrue(packedA[i].bitLength() < 1024);
+			sums[i] = packedA[i].add(packedB[i]);
+		}
+		long[] unpacked = encoding.unpack(sums, a.length);
+		for (int j = 0; j < a.length; j++) {
+			assertEquals(a[j] + b[j], unpacked[j]);
+		}
+
+		assertArrayEquals(packedA, PackedEncoding.fromText(PackedEncoding.toText(packedA)));
+
+		try {
+			encoding.pack(new long[] { 1L << 32 });
+			fail("2^32 doesn't fit in 32 bits");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			encoding.pack(new long[] { -1 });
+			fail("values can't be negative");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new PackedEncoding(60, 1000, 1024);
+			fail("sums of 1000 60 bit values don't fit in a long");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void sums() throws Exception {
+		awaitIdle();
+		AggregateResult result = server.aggregate("counters", LENGTH, 32);
+		assertNotNull(result);
+		assertEquals(4, result.contributors);
+		assertEquals(LENGTH, result.sums.length);
+
+		// (1000 + 2000 + 3000 + 4000) + 4j
+		for (int j = 0; j < LENGTH; j++) {
+			assertEquals(10000 + 4 * j, result.sums[j]);
+			assertEquals(2500 + j, result.getAverages()[j], 1e-9);
+		}
+
+		awaitIdle();
+		for (EVoteClient client : new EVoteClient[] { c1, c2, c3, c4 }) {
+			assertArrayEquals(result.sums, client.getLastAggregate().sums);
+			assertEquals(Boolean.TRUE, client.getLastAudit());
+		}
+		
+		// the archive keeps the sums, not a made up tally
+		BallotRecord record = server.getBallotRecord(result.id);
+		assertEquals("aggregate", record.tally);
+		assertFalse(record.isAborted());
+		assertEquals(-1, record.yes);
+		assertEquals(-1, record.no);
+		assertEquals(4, record.contributors);
+		assertArrayEquals(result.sums, record.sums);
+	}
+
+	@Test
+	public void failedAggregate() throws Exception {
+		// c4's last values don't fit in 12 bits, so c4 fails (and is dropped)
+		awaitIdle();
+		assertNull(server.aggregate("too big", LENGTH, 12));
+		assertRegistered(c1, c2, c3);
+		assertTrue(server.registerClient(c4));
+
+		// c2 has no values
+		awaitIdle();
+		c2.setMetricSource(null);
+		try {
+			assertNull(server.aggregate("counters", LENGTH, 32));
+			assertRegistered(c1, c3, c4);
+		} finally {
+			c2.setMetricSource(counters(2000));
+			assertTrue(server.registerClient(c2));
+		}
+
+		awaitIdle();
+		AggregateResult result = server.aggregate("counters again", 10, 32);
+		assertNotNull(result);
+		assertEquals(4, result.contributors);
+	}
+}
@@ -0,0 +1,138 @@
+package edu.harvard.cs262.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.harvard.cs262.crypto.BallotRecord;
+import edu.harvard.cs262.crypto.EVote;
+import edu.harvard.cs262.crypto.client.EVoteClient;
+import edu.harvard.cs262.crypto.client.FixedVoteSource;
+import edu.harvard.cs262.crypto.client.VoteSource;
+import edu.harvard.cs262.crypto.server.EVotePhase;
+import edu.harvard.cs262.crypto.server.EVoteServer;
+
+/**
+ * JUnit tests for the archive of ballot results.
+ * Here we test:
+ * (1) Each ballot's record has its ballot, roster, tally, phase timings and transcript root,
+ *     and records can be looked up by id and by when the ballot ended
+ * (2) A server that opens the same archive file gets the same records back
+ * (3) An aborted ballot is archived without a tally
+ * (4) A ballot's bulletin board and roster are dropped once their retention is over, while its
+ *     record keeps the board's root
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class BallotArchiveTests {
+
+	/** A server with voters v1 and v3 in favor and v2 against (v3 never decides if stuck) */
+	private static EVoteServer serverWithVoters(String name, boolean stuck) throws Exception {
+		EVoteServer server = new EVoteServer(name);
+
+		EVoteClient v1 = new EVoteClient(name + "-v1", server);
+		EVoteClient v2 = new EVoteClient(name + "-v2", server);
+		EVoteClient v3 = new EVoteClient(name + "-v3", server);
+		v1.setVoteSource(new FixedVoteSource(true));
+		v2.setVoteSource(new FixedVoteSource(false));
+		v3.setVoteSource(!stuck ? new FixedVoteSource(true) : new VoteSource() {
+			@Override
+			public int getVote(EVote evote) throws InterruptedException {
+				Thread.sleep(Long.MAX_VALUE);
+				return 1;
+			}
+		});
+
+		server.registerClient(v1);
+		server.registerClient(v2);
+		server.registerClient(v3);
+		return server;
+	}
+
+	@Test
+	public void archive() throws Exception {
+		File file = File.createTempFile("ballots", ".archive");
+		file.deleteOnExit();
+
+		EVoteServer server = serverWithVoters("archive", false);
+		assertEquals(0, server.openArchive(file.getPath()));
+
+		long start = System.currentTimeMillis();
+		assertEquals("(2,1)", server.initiateEVote("first", 0));
+		assertEquals("(2,1)", server.initiateEVote("second", 0));
+		long end = System.currentTimeMillis() + 1;
+
+		// most recent first
+		List<BallotRecord> records = server.findBallotRecords(start, end, 10);
+		assertEquals(2, records.size());
+		assertEquals("second", records.get(0).ballot);
+		assertEquals("first", records.get(1).ballot);
+		assertEquals(1, server.findBallotRecords(start, end, 1).size());
+		assertEquals("second", server.findBallotRecords(start, end, 1).get(0).ballot);
+		assertTrue(server.findBallotRecords(0, start, 10).isEmpty());
+
+		BallotRecord first = server.getBallotRecord(records.get(1).ballotId);
+		assertEquals("(2,1)", first.getResult());
+		assertEquals(2, first.yes);
+		assertEquals(1, first.no);
+		assertEquals(3, first.numVoters);
+		assertEquals("ElGamal", first.tally);
+		assertNotNull(first.rosterHash);
+		assertTrue(first.startedAt <= first.endedAt);
+		assertEquals(Arrays.asList(EVotePhase.PUBLIC_KEY.toString(), EVotePhase.CIPHERTEXT.toString(),
+				EVotePhase.DECRYPTION.toString()), Arrays.asList(first.phaseMillis.keySet().toArray()));
+
+		// every voter posted its public key, vote and decryption share
+		assertEquals(9, first.transcriptSize);
+		assertEquals(32, first.transcriptRoot.length);
+
+		// a server reading the same archive gets the same records
+		EVoteServer reopened = new EVoteServer("reopened");
+		assertEquals(2, reopened.openArchive(file.getPath()));
+		BallotRecord again = reopened.getBallotRecord(first.ballotId);
+		assertEquals(first.ballot, again.ballot);
+		assertEquals(first.getResult(), again.getResult());
+		assertEquals(first.endedAt, again.endedAt);
+		assertEquals(first.phaseMillis, again.phaseMillis);
+		assertTrue(Arrays.equals(first.rosterHash, again.rosterHash));
+		assertTrue(Arrays.equals(first.transcriptRoot, again.transcriptRoot));
+		assertEquals(2, reopened.findBallotRecords(0, Long.MAX_VALUE, 10).size());
+	}
+
+	@Test
+	public void abortedBallot() throws Exception {
+		EVoteServer server = serverWithVoters("aborted", true);
+		server.setPhaseTimeout(EVotePhase.CIPHERTEXT, 1);
+
+		assertEquals("", server.initiateEVote("never decided", 0));
+
+		List<BallotRecord> records = server.findBallotRecords(0, Long.MAX_VALUE, 10);
+		assertEquals(1, records.size());
+		assertTrue(records.get(0).isAborted());
+		assertEquals("", records.get(0).getResult());
+		assertEquals("never decided", records.get(0).ballot);
+		assertTrue(records.get(0).phaseMillis.containsKey(EVotePhase.PUBLIC_KEY.toString()));
+		assertFalse(records.get(0).phaseMillis.containsKey(EVotePhase.CIPHERTEXT.toString()));
+	}
+
+	@Test
+	public void boardRetention() throws Exception {
+		EVoteServer server = serverWithVoters("retention", false);
+		server.setBoardRetention(1);
+
+		assertEquals("(2,1)", server.initiateEVote("short lived", 0));
+		String ballotId = server.findBallotRecords(0, Long.MAX_VALUE, 1).get(0).ballotId;
+
+		for (int i = 0; i < 100 && !server.getBulletinBoards().isEmpty(); i++) {
+			Thread.sleep(100);
+		}
+		assertTrue(server.getBulletinBoards().isEmpty());
+		assertNull(server.getBoardRoot(ballotId));
+		assertNull(server.getRoster(ballotId));
+		assertEquals(9, server.getBallotRecord(ballotId).transcriptSize);
+	}
+}
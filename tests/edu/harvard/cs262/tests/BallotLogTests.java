@@ -0,0 +1,238 @@
+package edu.harvard.cs262.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.rmi.ConnectException;
+import java.rmi.RemoteException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import edu.harvard.cs262.crypto.CryptoMessage;
+import edu.harvard.cs262.crypto.EVoteDealing;
+import edu.harvard.cs262.crypto.client.CryptoClient;
+import edu.harvard.cs262.crypto.client.EVoteClient;
+import edu.harvard.cs262.crypto.exception.ClientNotFound;
+import edu.harvard.cs262.crypto.server.EVoteServer;
+
+/**
+ * JUnit tests for resuming evotes after the server crashes.
+ * Here we test:
+ * (1) A restarted server finds the ballot its log says was interrupted, and resumes it to the
+ *     expected result with every voter's bulletin board audit passing
+ * (2) The same for a threshold evote interrupted after its first phase
+ * (3) Once the resumed ballot is over, the log has nothing left to resume
+ * (4) The key shares dealt in a threshold evote are sent encrypted only, and never reach the
+ *     log in the clear (even from a dealer that leaves them in the clear)
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class BallotLogTests {
+
+	/**
+	 * A server that "crashes" when the first message of a given phase arrives, i.e. right after
+	 * it has logged the phase before and sent its outcome. It takes a copy of its log as it was
+	 * then, and from then on can't be reached by or reach its voters (as far as they can tell
+	 * it is down), so nothing it does after the crash reaches the copy or the voters.
+	 */
+	private static class CrashingServer extends EVoteServer {
+		private final String crashTag;
+		private final File wal;
+		private final File snapshot;
+		private volatile boolean crashed;
+		
+		public CrashingServer(String crashTag, File wal, File snapshot) {
+			super("crashed");
+			this.crashTag = crashTag;
+			this.wal = wal;
+			this.snapshot = snapshot;
+		}
+		
+		@Override
+		public String recvMessage(String from, String to, CryptoMessage m) 
+				throws RemoteException, ClientNotFound, InterruptedException {
+			synchronized (this) {
+				if (!crashed && crashTag.equals(m.getTag())) {
+					try {
+						Files.copy(wal.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					} catch (IOException e) {
+						throw new RemoteException("could not copy the log", e);
+					}
+					crashed = true;
+				}
+			}
+			if (crashed) {
+				throw new ConnectException("server crashed");
+			}
+			return super.recvMessage(from, to, m);
+		}
+		
+		@Override
+		public CryptoClient getClient(String clientName) throws RemoteException, ClientNotFound {
+			if (crashed) {
+				throw new ConnectException("server crashed");
+			}
+			return super.getClient(clientName);
+		}
+		
+		public boolean hasCrashed() {
+			return crashed;
+		}
+	}
+
+	/**
+	 * Runs a ballot on a server that crashes when the first message with the given tag
+	 * arrives, then resumes it on a new server reading the log as it was at the crash.
+	 * 
+	 * @return the result of the resumed ballot
+	 */
+	private static String crashAndResume(final int threshold, String crashTag, EVoteClient[] voters, int... votes) 
+			throws Exception {
+		File wal = File.createTempFile("ballots", ".wal");
+		wal.deleteOnExit();
+		File snapshot = File.createTempFile("crashed", ".wal");
+		snapshot.deleteOnExit();
+
+		// the server that crashes
+		final CrashingServer crashed = new CrashingServer(crashTag, wal, snapshot);
+		assertTrue(crashed.openBallotLog(wal.getPath()).isEmpty());
+		for (int i = 0; i < voters.length; i++) {
+			voters[i] = new EVoteClient("v" + (i + 1), crashed);
+			voters[i].setTestVote(votes[i]);
+			crashed.registerClient(voters[i]);
+		}
+
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		Future<String> lost = pool.submit(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				return crashed.initiateEVote("resumed ballot", threshold);
+			}
+		});
+
+		while (!crashed.hasCrashed()) {
+			Thread.sleep(100);
+		}
+		pool.shutdown();
+
+		// the server that takes over: the voters reconnect to it, and it resumes the ballot
+		EVoteServer restarted = new EVoteServer("restarted");
+		List<String> interrupted = restarted.openBallotLog(snapshot.getPath());
+		assertEquals(1, interrupted.size());
+		for (EVoteClient voter : voters) {
+			restarted.registerClient(voter);
+		}
+
+		String result = restarted.resumeEVote(interrupted.get(0));
+
+		// nothing left to resume once the ballot is over
+		EVoteServer again = new EVoteServer("again");
+		assertTrue(again.openBallotLog(snapshot.getPath()).isEmpty());
+
+		// the crashed server never got a result
+		assertTrue(!lost.isDone() || lost.get().equals(""));
+		return result;
+	}
+
+	/** The resumed ballot doesn't wait for its voters to finish, so wait for their audits */
+	private static boolean awaitAudit(EVoteClient voter) throws InterruptedException {
+		for (int i = 0; i < 100 && voter.getLastAudit() == null; i++) {
+			Thread.sleep(100);
+		}
+		return Boolean.TRUE.equals(voter.getLastAudit());
+	}
+
+	@Test
+	public void resumeAfterCiphertext() throws Exception {
+		EVoteClient[] voters = new EVoteClient[3];
+
+		// key set up and ciphertexts are done; decryption is left
+		String result = crashAndResume(0, "decryption key partition", voters, 1, 0, 1);
+
+		assertEquals("(2,1)", result);
+		for (EVoteClient voter : voters) {
+			assertTrue(awaitAudit(voter));
+		}
+	}
+
+	@Test
+	public void resumeThresholdAfterPublicKey() throws Exception {
+		EVoteClient[] voters = new EVoteClient[3];
+
+		// only the public keys are done; dealing, ciphertexts and decryption are left
+		String result = crashAndResume(2, "secret key dealing", voters, 0, 1, 0);
+
+		assertEquals("(1,2)", result);
+		for (EVoteClient voter : voters) {
+			assertTrue(awaitAudit(voter));
+		}
+	}
+
+	@Test
+	public void sharesNotLogged() throws Exception {
+		File wal = File.createTempFile("ballots", ".wal");
+		wal.deleteOnExit();
+
+		// share plaintexts the voters sent, and the ones put in the clear here as a careless dealer would
+		final List<String> sentInClear = Collections.synchronizedList(new ArrayList<String>());
+		final List<String> leaked = Collections.synchronizedList(new ArrayList<String>());
+
+		EVoteServer server = new EVoteServer("dealer") {
+			@Override
+			public String recvMessage(String from, String to, CryptoMessage m) 
+					throws RemoteException, ClientNotFound, InterruptedException {
+				if (m.getEncryptionState() instanceof EVoteDealing) {
+					EVoteDealing d = (EVoteDealing) m.getEncryptionState();
+					Map<String, CryptoMessage> shares = new HashMap<String, CryptoMessage>();
+					for (Entry<String, CryptoMessage> share : d.shares.entrySet()) {
+						if (!share.getValue().getPlainText().isEmpty()) {
+							sentInClear.add(share.getValue().getPlainText());
+						}
+						String secret = String.format("%s's share for %s", from, share.getKey());
+						leaked.add(secret);
+						CryptoMessage leaky = new CryptoMessage(secret, share.getValue().getCipherText(), "");
+						leaky.setEncryptionState(share.getValue().getEncryptionState());
+						shares.put(share.getKey(), leaky);
+					}
+					
+					CryptoMessage dealing = new CryptoMessage(m.getPlainText(), m.getCipherText(), m.getSessionID());
+					dealing.setTag(m.getTag());
+					dealing.setEncryptionState(new EVoteDealing(d.commitments, shares));
+					m = dealing;
+				}
+				return super.recvMessage(from, to, m);
+			}
+		};
+		assertTrue(server.openBallotLog(wal.getPath()).isEmpty());
+
+		EVoteClient[] voters = new EVoteClient[3];
+		for (int i = 0; i < voters.length; i++) {
+			voters[i] = new EVoteClient("s" + (i + 1), server);
+			voters[i].setTestVote(i % 2);
+			server.registerClient(voters[i]);
+		}
+
+		assertEquals("(1,2)", server.initiateEVote("dealt ballot", 2));
+		assertTrue(sentInClear.isEmpty());
+		assertEquals(6, leaked.size());
+
+		String log = new String(Files.readAllBytes(wal.toPath()), StandardCharsets.ISO_8859_1);
+		for (String secret : leaked) {
+			assertFalse(log.contains(secret));
+		}
+	}
+}
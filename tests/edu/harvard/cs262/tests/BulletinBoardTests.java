@@ -0,0 +1,174 @@
+package edu.harvard.cs262.tests;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.harvard.cs262.crypto.BulletinProof;
+import edu.harvard.cs262.crypto.BulletinRoot;
+import edu.harvard.cs262.crypto.EVote;
+import edu.harvard.cs262.crypto.cipher.MerkleTree;
+import edu.harvard.cs262.crypto.cipher.SchnorrSignature;
+import edu.harvard.cs262.crypto.client.EVoteClient;
+import edu.harvard.cs262.crypto.exception.ClientNotFound;
+import edu.harvard.cs262.crypto.exception.EVoteInvalidResult;
+import edu.harvard.cs262.crypto.server.EVoteServer;
+
+/**
+ * JUnit tests for evote bulletin boards.
+ * Here we test:
+ * (1) Merkle tree inclusion proofs
+ * (2) Schnorr signatures
+ * (3) After an evote, voters and an outside auditor can check the board
+ * (4) Voters are sent a compact roster, and the names they fetch must match its hash
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class BulletinBoardTests {
+
+	static EVoteServer server;
+	static EVoteClient c1, c2, c3;
+
+	@BeforeClass
+	public static void setup() {
+		// dummy server
+		server = new EVoteServer("server");
+
+		// dummy clients
+		c1 = new EVoteClient("c1", server);
+		c2 = new EVoteClient("c2", server);
+		c3 = new EVoteClient("c3", server);
+
+		try {
+			server.registerClient(c1);
+			server.registerClient(c2);
+			server.registerClient(c3);
+		} catch (RemoteException e) {
+			fail("client registration failed");
+		}
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(Charset.forName("UTF-8"));
+	}
+
+	@Test
+	public void merkleProofs() {
+		MerkleTree tree = new MerkleTree();
+
+		for (int n = 1; n <= 20; n++) {
+			tree.append(bytes("entry " + (n - 1)));
+			byte[] root = tree.root(n);
+
+			for (int i = 0; i < n; i++) {
+				List<byte[]> proof = tree.proof(i, n);
+				assertTrue(MerkleTree.verify(bytes("entry " + i), i, n, proof, root));
+
+				// wrong entry or wrong index must not verify
+				assertFalse(MerkleTree.verify(bytes("entry x"), i, n, proof, root));
+				if (n > 1) {
+					assertFalse(MerkleTree.verify(bytes("entry " + i), (i + 1) % n, n, proof, root));
+				}
+			}
+		}
+
+		// proofs against an older root still work after more entries are appended
+		byte[] root7 = tree.root(7);
+		assertTrue(MerkleTree.verify(bytes("entry 5"), 5, 7, tree.proof(5, 7), root7));
+		assertFalse(MerkleTree.verify(bytes("entry 5"), 5, 20, tree.proof(5, 7), tree.root(20)));
+	}
+
+	@Test
+	public void schnorrSignatures() {
+		Random rand = new Random(262);
+		BigInteger x = SchnorrSignature.generateKey(EVote.Q, rand);
+		BigInteger y = EVote.G.modPow(x, EVote.P);
+
+		BigInteger[] sig = SchnorrSignature.sign(bytes("root"), x, EVote.P, EVote.Q, EVote.G, rand);
+		assertTrue(SchnorrSignature.verify(bytes("root"), sig, y, EVote.P, EVote.Q, EVote.G));
+		assertFalse(SchnorrSignature.verify(bytes("other root"), sig, y, EVote.P, EVote.Q, EVote.G));
+
+		BigInteger otherKey = EVote.G.modPow(x.add(BigInteger.ONE), EVote.P);
+		assertFalse(SchnorrSignature.verify(bytes("root"), sig, otherKey, EVote.P, EVote.Q, EVote.G));
+	}
+
+	@Test
+	public void auditEvote() throws RemoteException, ClientNotFound, InterruptedException {
+		c1.setTestVote(1);
+		c2.setTestVote(0);
+		c3.setTestVote(1);
+
+		String result = server.initiateEVote("audited ballot");
+		assertEquals("(2,1)", result);
+
+		// every voter found its own messages on the board
+		assertEquals(Boolean.TRUE, c1.getLastAudit());
+		assertEquals(Boolean.TRUE, c2.getLastAudit());
+		assertEquals(Boolean.TRUE, c3.getLastAudit());
+
+		// an auditor can check the whole transcript: 3 messages from each voter
+		List<String> ballots = server.getBulletinBoards();
+		String ballotId = ballots.get(ballots.size() - 1);
+		BulletinRoot root = server.getBoardRoot(ballotId);
+		assertTrue(root.verify());
+		assertEquals(9, root.size);
+
+		for (int i = 0; i < root.size; i++) {
+			BulletinProof proof = server.getBoardEntry(ballotId, i, root.size);
+			assertTrue(proof.verify(root));
+
+			// the board never shows the plaintext of an encrypted vote
+			if (proof.message.isEncrypted()) {
+				assertEquals("", proof.message.getPlainText());
+			}
+		}
+
+		assertNull(server.getBoardEntry(ballotId, root.size, root.size));
+	}
+
+	@Test
+	public void compactRoster() throws Exception {
+		EVote evote = new EVote("roster", new HashSet<String>(Arrays.asList("c3", "c1", "c2")));
+		EVote compact = evote.compact();
+		assertFalse(compact.hasRoster());
+		assertEquals(3, compact.numVoters);
+
+		try {
+			compact.getRoster();
+			fail("a compact evote has no names");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		try {
+			compact.setRoster(Arrays.asList("c1", "c2", "mallory"));
+			fail("the names don't match the roster hash");
+		} catch (EVoteInvalidResult e) {
+			// expected
+		}
+
+		compact.setRoster(Arrays.asList("c2", "c3", "c1"));
+		assertEquals(Arrays.asList("c1", "c2", "c3"), compact.getRoster());
+		assertEquals(2, compact.indexOf("c2"));
+
+		// the server hands out the roster of a ballot it ran, and the voters' audits (which check it) pass
+		c1.setTestVote(1);
+		c2.setTestVote(1);
+		c3.setTestVote(0);
+		assertEquals("(2,1)", server.initiateEVote("roster ballot"));
+
+		List<String> ballots = server.getBulletinBoards();
+		assertEquals(Arrays.asList("c1", "c2", "c3"), server.getRoster(ballots.get(ballots.size() - 1)));
+		assertNull(server.getRoster("no such ballot"));
+		assertEquals(Boolean.TRUE, c1.getLastAudit());
+	}
+}
@@ -4,13 +4,17 @@ import static org.junit.Assert.*;
 
 import java.math.BigInteger;
 import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 
 import edu.harvard.cs262.crypto.CryptoMessage;
+import edu.harvard.cs262.crypto.EVote;
 import edu.harvard.cs262.crypto.cipher.*;
 import edu.harvard.cs262.crypto.client.DHCryptoClient;
 import edu.harvard.cs262.crypto.exception.ClientNotFound;
@@ -26,6 +30,10 @@ import org.junit.Test;
  * (1) KeyExchange (DiffieHellman)
  * (2) Encryption/Decryption (ElGamal)
  * (3) Integration (proper client/server interaction)
+ * (4) ElGamal keys and encryption randomness precomputed by an ExponentPool
+ * (5) Vote validity proofs, checked one at a time and in batches (with multi-exponentiation)
+ * (6) Products of many values computed as a parallel product tree
+ * (7) Paillier encryption, its additive homomorphism, decryption with a joint key, and vote proofs
  *
  * @author Holly Anderson, Joshua Lee, and Tracy Lu
  */
@@ -119,6 +127,167 @@ public class CryptoCipherTests {
 		assertEquals(testInt.toString(), plainTextInt);
 	}
 	
+	@Test
+	public void precomputedElGamal() {
+		ExponentPool pool = new ExponentPool(EVote.P, EVote.Q, EVote.G, 4, "test-precompute");
+		assertTrue(pool.isFor(EVote.P, EVote.Q, EVote.G));
+		assertFalse(pool.isFor(BigInteger.valueOf(31123), EVote.Q, BigInteger.valueOf(2341)));
+		
+		// a precomputed key pair
+		BigInteger[] keyPair = pool.take();
+		assertEquals(EVote.G.modPow(keyPair[0], EVote.P), keyPair[1]);
+		
+		CryptoKey k = new CryptoKey(keyPair[0], new DHTuple(EVote.P, EVote.G, keyPair[1]), 32);
+		ElGamalCipher egc = new ElGamalCipher();
+		egc.setKey(k);
+		
+		// encrypting with precomputed randomness decrypts like any other cipher text
+		BigInteger testInt = BigInteger.valueOf(30421);
+		BigInteger[] y = pool.take();
+		CryptoMessage cipherTextInt = egc.encryptInteger(testInt, y[0], y[1]);
+		assertEquals(y[1], cipherTextInt.getEncryptionState());
+		assertEquals(testInt.toString(), egc.decryptInteger(cipherTextInt));
+		
+		// every pair is handed out once
+		assertFalse(keyPair[0].equals(y[0]));
+	}
+	
+	@Test
+	public void voteProofs() {
+		BigInteger p = EVote.P, q = EVote.Q, g = EVote.G;
+		Random rand = new Random(262);
+		BigInteger sk = SchnorrSignature.generateKey(q, rand);
+		BigInteger h = g.modPow(sk, p);
+		
+		// multi-exponentiation agrees with multiplying the powers one at a time
+		for (int n : new int[] { 1, 2, 7, 40 }) {
+			BigInteger[] bases = new BigInteger[n];
+			BigInteger[] exps = new BigInteger[n];
+			BigInteger expected = BigInteger.ONE;
+			for (int i = 0; i < n; i++) {
+				bases[i] = g.modPow(SchnorrSignature.generateKey(q, rand), p);
+				exps[i] = new BigInteger(40, rand);
+				expected = expected.multiply(bases[i].modPow(exps[i], p)).mod(p);
+			}
+			assertEquals(expected, MultiExp.product(bases, exps, p));
+		}
+		
+		// a batch of valid votes, with two bad ones: g^2, and a vote of 1 proved under another voter's name
+		int n = 100;
+		BigInteger[] c1 = new BigInteger[n];
+		BigInteger[] c2 = new BigInteger[n];
+		VoteProof[] proofs = new VoteProof[n];
+		byte[][] contexts = new byte[n][];
+		
+		for (int i = 0; i < n; i++) {
+			int vote = (i == 17) ? 2 : i % 2;
+			BigInteger y = SchnorrSignature.generateKey(q, rand);
+			BigInteger w = SchnorrSignature.generateKey(q, rand);
+			contexts[i] = ("ballot\nvoter" + i).getBytes();
+			c1[i] = g.modPow(y, p);
+			c2[i] = h.modPow(y, p).multiply(g.pow(vote)).mod(p);
+			
+			byte[] provedFor = (i == 63) ? contexts[0] : contexts[i];
+			proofs[i] = VoteProof.prove(p, q, g, h, c1[i], c2[i], Math.min(vote, 1), y, 
+					new BigInteger[] { w, g.modPow(w, p) }, provedFor, rand);
+		}
+		
+		assertTrue(proofs[0].verify(p, q, g, h, c1[0], c2[0], contexts[0]));
+		assertTrue(proofs[1].verify(p, q, g, h, c1[1], c2[1], contexts[1]));
+		assertFalse(proofs[17].verify(p, q, g, h, c1[17], c2[17], contexts[17]));
+		assertFalse(proofs[63].verify(p, q, g, h, c1[63], c2[63], contexts[63]));
+		
+		// a valid proof doesn't carry over to another ciphertext
+		assertFalse(proofs[0].verify(p, q, g, h, c1[2], c2[2], contexts[0]));
+		
+		assertFalse(VoteProof.verifyAll(p, q, g, h, c1, c2, proofs, contexts, rand));
+		assertEquals(Arrays.asList(17, 63), VoteProof.findInvalid(p, q, g, h, c1, c2, proofs, contexts, rand));
+	}
+	
+	@Test
+	public void productTree() {
+		Random rand = new Random(262);
+		BigInteger p = BigInteger.probablePrime(256, rand);
+		
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			// sizes around the point where the tree starts to fork
+			for (int n : new int[] { 0, 1, 511, 512, 513, 5000 }) {
+				BigInteger[] values = new BigInteger[n];
+				BigInteger expected = BigInteger.ONE;
+				for (int i = 0; i < n; i++) {
+					values[i] = new BigInteger(256, rand).mod(p);
+					expected = expected.multiply(values[i]).mod(p);
+				}
+				assertEquals(expected, ProductTree.product(Arrays.asList(values), p));
+				assertEquals(expected, ProductTree.product(values, p, pool));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void paillierHomomorphism() {
+		Random rand = new Random(262);
+		CryptoKey key = PaillierCipher.generateKey(512, rand);
+		BigInteger n = (BigInteger) key.getPublic();
+		
+		PaillierCipher cipher = new PaillierCipher();
+		cipher.setKey(key);
+		
+		String plaintext = "hello world";
+		assertEquals(plaintext, cipher.decrypt(cipher.encrypt(plaintext)));
+		
+		// multiplying ciphertexts adds their plaintexts
+		CryptoMessage a = cipher.encryptInteger(BigInteger.valueOf(17));
+		CryptoMessage b = cipher.encryptInteger(BigInteger.valueOf(25));
+		BigInteger sum = PaillierCipher.add(new BigInteger(a.getCipherText()), new BigInteger(b.getCipherText()), n);
+		assertEquals("42", cipher.decryptInteger(new CryptoMessage("", sum.toString(), "")));
+		
+		// a joint key: every voter's part is needed to decrypt
+		BigInteger n2 = n.multiply(n);
+		BigInteger g = PaillierCipher.generator(n);
+		assertEquals(g, PaillierCipher.generator(new BigInteger(n.toString())));
+		
+		BigInteger[] x = new BigInteger[4];
+		BigInteger h = BigInteger.ONE;
+		for (int i = 0; i < x.length; i++) {
+			x[i] = PaillierCipher.randomExponent(n, rand);
+			h = h.multiply(g.modPow(x[i], n2)).mod(n2);
+		}
+		
+		BigInteger[] ja = PaillierCipher.jointEncrypt(BigInteger.valueOf(17), PaillierCipher.randomExponent(n, rand), h, n);
+		BigInteger[] jb = PaillierCipher.jointEncrypt(BigInteger.valueOf(25), PaillierCipher.randomExponent(n, rand), h, n);
+		BigInteger[] jointSum = { PaillierCipher.add(ja[0], jb[0], n), PaillierCipher.add(ja[1], jb[1], n) };
+		
+		BigInteger all = BigInteger.ONE;
+		for (BigInteger x_i : x) {
+			all = all.multiply(PaillierCipher.partialDecrypt(jointSum[0], x_i, n)).mod(n2);
+		}
+		assertEquals(BigInteger.valueOf(42), PaillierCipher.jointDecrypt(jointSum[1], all, n));
+		
+		BigInteger missingOne = all.multiply(PaillierCipher.partialDecrypt(jointSum[0], x[0], n).modInverse(n2)).mod(n2);
+		try {
+			PaillierCipher.jointDecrypt(jointSum[1], missingOne, n);
+			fail("decrypted without every voter's part");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		
+		// vote proofs: valid for 0 and 1, but not for 2, under another key or under another context
+		byte[] context = "ballot\nvoter".getBytes();
+		for (int vote = 0; vote <= 2; vote++) {
+			BigInteger r = PaillierCipher.randomExponent(n, rand);
+			BigInteger[] c = PaillierCipher.jointEncrypt(BigInteger.valueOf(vote), r, h, n);
+			PaillierVoteProof proof = PaillierVoteProof.prove(n, h, c, Math.min(vote, 1), r, context, rand);
+			
+			assertEquals(vote < 2, proof.verify(n, h, c, context));
+			assertFalse(proof.verify(n, g, c, context));
+			assertFalse(proof.verify(n, h, c, "ballot\nother".getBytes()));
+		}
+	}
+	
 	@Test
 	public void integration() throws RemoteException, ClientNotFound, InterruptedException {
 		c1.dropKeys();
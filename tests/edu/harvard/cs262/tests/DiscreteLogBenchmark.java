@@ -0,0 +1,143 @@
+package edu.harvard.cs262.tests;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import edu.harvard.cs262.crypto.attack.PohligHellman;
+import edu.harvard.cs262.crypto.attack.PollardRho;
+import edu.harvard.cs262.crypto.cipher.DHTuple;
+
+/**
+ * Benchmark for breaking Diffie-Hellman with Pollard's rho. Recovers the secrets behind
+ * DHTuples an eavesdropper would see, first in DiffieHellman's own group (p = 31123) and then
+ * in groups mod safe primes p = 2q + 1 of growing size (where g = 4 has the prime order q, the
+ * hardest case for the size), and prints the time to break a secret with one walk per core.
+ * Then does the same with Pohlig-Hellman in DiffieHellman's group and in groups of growing size
+ * whose order is smooth (p - 1 is 2 times 24 bit primes).
+ *
+ * usage: java edu.harvard.cs262.tests.DiscreteLogBenchmark [max bits] [walks]
+ *
+ * The default goes up to 56 bit primes with one walk per core. The time doubles with every 2
+ * bits, so 60 bit primes take a few seconds or more even on many cores. The smooth groups grow
+ * with the number of factors, not their product: a 1024 bit group took half a second on one core
+ * (after the first key in a group, which also factors p - 1).
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class DiscreteLogBenchmark {
+	private static final int RUNS = 3;
+	private static final int STEP_BITS = 4;
+	private static final int SMOOTH_BITS = 24;
+
+	public static void main(String[] args) throws InterruptedException {
+		int maxBits = (args.length > 0) ? Integer.parseInt(args[0]) : 56;
+		int walks = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		Random rand = new Random(262);
+		PollardRho rho = new PollardRho(walks);
+
+		System.out.println(String.format("time to recover a DiffieHellman secret with %d walks (median of %d runs)", walks, RUNS));
+		System.out.println(String.format("%-6s %-8s %-12s %-14s %-10s %s", "bits", "order", "time (ms)", "steps", "points", "steps/s"));
+
+		// DiffieHellman's group
+		run(rho, BigInteger.valueOf(31123), BigInteger.valueOf(2341), rand);
+
+		for (int bits = 20; bits <= maxBits; bits += STEP_BITS) {
+			BigInteger q, p;
+			do {
+				q = BigInteger.probablePrime(bits - 1, rand);
+				p = q.shiftLeft(1).add(BigInteger.ONE);
+			} while (!p.isProbablePrime(40));
+			run(rho, p, BigInteger.valueOf(4), rand);
+		}
+
+		PohligHellman ph = new PohligHellman(walks, rho);
+		System.out.println();
+		System.out.println(String.format("time to recover a secret with Pohlig-Hellman, %d threads (median of %d runs, first run excluded)",
+				walks, RUNS));
+		System.out.println(String.format("%-6s %-8s %-12s %s", "bits", "order", "time (ms)", "first (ms)"));
+		run(ph, BigInteger.valueOf(31123), BigInteger.valueOf(2341), rand);
+		for (int bits = 64; bits <= 1024; bits <<= 1) {
+			run(ph, smoothPrime(bits, rand), BigInteger.valueOf(3), rand);
+		}
+		ph.shutdown();
+		rho.shutdown();
+	}
+
+	/** @return a prime p of about bits bits whose p - 1 is 2 times SMOOTH_BITS bit primes */
+	private static BigInteger smoothPrime(int bits, Random rand) {
+		while (true) {
+			BigInteger n = BigInteger.valueOf(2);
+			while (n.bitLength() < bits - SMOOTH_BITS) {
+				n = n.multiply(BigInteger.probablePrime(SMOOTH_BITS, rand));
+			}
+			for (int i = 0; i < 1000; i++) {
+				BigInteger p = n.multiply(BigInteger.probablePrime(SMOOTH_BITS, rand)).add(BigInteger.ONE);
+				if (p.isProbablePrime(40)) {
+					return p;
+				}
+			}
+		}
+	}
+
+	private static void run(PohligHellman ph, BigInteger p, BigInteger g, Random rand) throws InterruptedException {
+		double first = 0;
+		double[] millis = new double[RUNS];
+		for (int i = 0; i <= RUNS; i++) {
+			BigInteger x = new BigInteger(p.bitLength(), rand).mod(p.subtract(BigInteger.ONE));
+			DHTuple tuple = new DHTuple(p, g, g.modPow(x, p));
+
+			long start = System.nanoTime();
+			BigInteger recovered = ph.solve(tuple);
+			double elapsed = (System.nanoTime() - start) / 1e6;
+
+			if (!g.modPow(recovered, p).equals(tuple.xhat)) {
+				throw new IllegalStateException(String.format("wrong secret %s for %s", recovered, tuple.xhat));
+			}
+			if (i == 0) {
+				first = elapsed;
+			} else {
+				millis[i - 1] = elapsed;
+			}
+		}
+
+		Arrays.sort(millis);
+		BigInteger order = BigInteger.ONE;
+		for (Map.Entry<BigInteger, Integer> f : ph.orderFactors(g, p).entrySet()) {
+			order = order.multiply(f.getKey().pow(f.getValue()));
+		}
+		System.out.println(String.format("%-6d %-8d %-12.1f %.1f", p.bitLength(), order.bitLength(), millis[RUNS / 2], first));
+	}
+
+	private static void run(PollardRho rho, BigInteger p, BigInteger g, Random rand) throws InterruptedException {
+		double[] millis = new double[RUNS];
+		long steps = 0;
+		int points = 0;
+		PollardRho.Result result = null;
+
+		for (int i = 0; i < RUNS; i++) {
+			BigInteger x = new BigInteger(p.bitLength(), rand).mod(p.subtract(BigInteger.ONE));
+			DHTuple tuple = new DHTuple(p, g, g.modPow(x, p));
+
+			long start = System.nanoTime();
+			result = rho.solve(tuple);
+			millis[i] = (System.nanoTime() - start) / 1e6;
+
+			if (!g.modPow(result.x, p).equals(tuple.xhat)) {
+				throw new IllegalStateException(String.format("wrong secret %s for %s", result.x, tuple.xhat));
+			}
+			steps += result.steps;
+			points += result.distinguishedPoints;
+		}
+
+		Arrays.sort(millis);
+		double total = 0;
+		for (double m : millis) {
+			total += m;
+		}
+		System.out.println(String.format("%-6d %-8d %-12.1f %-14d %-10d %.3g", p.bitLength(), result.order.bitLength(),
+				millis[RUNS / 2], steps / RUNS, points / RUNS, steps / (total / 1000)));
+	}
+}
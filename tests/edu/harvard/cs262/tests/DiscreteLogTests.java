@@ -0,0 +1,211 @@
+package edu.harvard.cs262.tests;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.SortedMap;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.harvard.cs262.crypto.attack.Factorization;
+import edu.harvard.cs262.crypto.attack.Montgomery;
+import edu.harvard.cs262.crypto.attack.ParameterReport;
+import edu.harvard.cs262.crypto.attack.PohligHellman;
+import edu.harvard.cs262.crypto.attack.PollardRho;
+import edu.harvard.cs262.crypto.cipher.CommutativeBlinding;
+import edu.harvard.cs262.crypto.cipher.DHTuple;
+
+/**
+ * JUnit tests for the discrete log attacks on Diffie-Hellman.
+ * Here we test:
+ * (1) Montgomery multiplication agrees with BigInteger
+ * (2) Group orders factor, and the order of g is found from them
+ * (3) Pollard's rho recovers secrets in DiffieHellman's group and in larger prime order groups
+ * (4) Pohlig-Hellman recovers secrets in groups of smooth order, however large, and refuses others
+ * (5) The parameter report flags DiffieHellman's group and smooth groups, but not a safe prime group
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class DiscreteLogTests {
+
+	static final BigInteger DH_P = BigInteger.valueOf(31123);
+	static final BigInteger DH_G = BigInteger.valueOf(2341);
+
+	static PollardRho rho;
+	static PohligHellman ph;
+
+	@BeforeClass
+	public static void setup() {
+		// more walks and threads than cores, so they run side by side even on one core
+		rho = new PollardRho(4);
+		ph = new PohligHellman(4, rho);
+	}
+
+	@AfterClass
+	public static void teardown() {
+		ph.shutdown();
+		rho.shutdown();
+	}
+
+	/** @return a prime p whose p - 1 is 2 times primes of at most factorBits bits, with about bits bits */
+	static BigInteger smoothPrime(int bits, int factorBits, Random rand) {
+		while (true) {
+			BigInteger n = BigInteger.valueOf(2);
+			while (n.bitLength() < bits - factorBits) {
+				n = n.multiply(BigInteger.probablePrime(factorBits, rand));
+			}
+			for (int i = 0; i < 1000; i++) {
+				BigInteger p = n.multiply(BigInteger.probablePrime(factorBits, rand)).add(BigInteger.ONE);
+				if (p.isProbablePrime(40)) {
+					return p;
+				}
+			}
+		}
+	}
+
+	@Test
+	public void montgomery() {
+		Random rand = new Random(262);
+		for (int bits : new int[] { 15, 31, 48, 62 }) {
+			BigInteger m = BigInteger.probablePrime(bits, rand);
+			Montgomery mont = new Montgomery(m.longValue());
+			for (int i = 0; i < 1000; i++) {
+				BigInteger a = new BigInteger(bits, rand).mod(m);
+				BigInteger b = new BigInteger(bits, rand).mod(m);
+				long product = mont.multiply(mont.toMontgomery(a), mont.toMontgomery(b));
+				assertEquals(a.multiply(b).mod(m).longValue(), mont.fromMontgomery(product));
+			}
+			BigInteger x = new BigInteger(bits, rand).mod(m);
+			assertEquals(x.modPow(BigInteger.valueOf(12345), m).longValue(),
+					mont.fromMontgomery(mont.pow(mont.toMontgomery(x), 12345)));
+		}
+
+		try {
+			new Montgomery(1L << 62 | 1);
+			fail("63 bit moduli are too big");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void factoring() {
+		// DiffieHellman's p - 1 = 2 * 3^2 * 7 * 13 * 19
+		SortedMap<BigInteger, Integer> factors = Factorization.factor(DH_P.subtract(BigInteger.ONE));
+		assertEquals("{2=1, 3=2, 7=1, 13=1, 19=1}", factors.toString());
+
+		// two 31 bit primes, and a square
+		BigInteger p1 = BigInteger.valueOf(2147483647L);
+		BigInteger p2 = BigInteger.valueOf(2147483629L);
+		assertEquals(2, Factorization.factor(p1.multiply(p2)).size());
+		assertEquals(Integer.valueOf(2), Factorization.factor(p2.multiply(p2)).get(p2));
+
+		// g = 4 has order q mod the safe prime 2q + 1
+		BigInteger q = BigInteger.valueOf(1000000289L);
+		BigInteger p = q.shiftLeft(1).add(BigInteger.ONE);
+		assertTrue(p.isProbablePrime(40));
+		assertEquals(q, Factorization.order(BigInteger.valueOf(4), p));
+		assertEquals(p.subtract(BigInteger.ONE), Factorization.order(BigInteger.valueOf(2), p));
+	}
+
+	@Test
+	public void diffieHellmanGroup() throws Exception {
+		Random rand = new Random(262);
+		for (int i = 0; i < 20; i++) {
+			BigInteger x = new BigInteger(31, rand);
+			DHTuple tuple = new DHTuple(DH_P, DH_G, DH_G.modPow(x, DH_P));
+			PollardRho.Result result = rho.solve(tuple);
+			assertEquals(x.mod(result.order), result.x);
+		}
+	}
+
+	@Test
+	public void primeOrderGroups() throws Exception {
+		Random rand = new Random(262);
+		for (int bits : new int[] { 24, 32, 36 }) {
+			BigInteger q, p;
+			do {
+				q = BigInteger.probablePrime(bits - 1, rand);
+				p = q.shiftLeft(1).add(BigInteger.ONE);
+			} while (!p.isProbablePrime(40));
+
+			BigInteger g = BigInteger.valueOf(4);
+			BigInteger x = new BigInteger(bits, rand).mod(q);
+			PollardRho.Result result = rho.solve(new DHTuple(p, g, g.modPow(x, p)));
+			assertEquals(q, result.order);
+			assertEquals(x, result.x);
+			assertTrue(result.distinguishedPoints > 0);
+		}
+
+		// 2 is not a power of 4 mod 2q + 1 (it generates the whole group, so it isn't a square)
+		try {
+			rho.solve(BigInteger.valueOf(4), BigInteger.valueOf(2), BigInteger.valueOf(2000000579L), BigInteger.valueOf(1000000289L));
+			fail("2 is not a power of 4");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void pohligHellman() throws Exception {
+		// DiffieHellman's group, where the order of g has a square factor (3^2)
+		Random rand = new Random(262);
+		for (int i = 0; i < 50; i++) {
+			BigInteger x = new BigInteger(31, rand);
+			DHTuple tuple = new DHTuple(DH_P, DH_G, DH_G.modPow(x, DH_P));
+			BigInteger recovered = ph.solve(tuple);
+			assertEquals(tuple.xhat, DH_G.modPow(recovered, DH_P));
+		}
+
+		// a 256 bit group is out of rho's reach, but falls if its order is smooth
+		BigInteger p = smoothPrime(256, 24, rand);
+		BigInteger g = BigInteger.valueOf(3);
+		BigInteger x = new BigInteger(255, rand);
+		BigInteger recovered = ph.solve(new DHTuple(p, g, g.modPow(x, p)));
+		assertEquals(g.modPow(x, p), g.modPow(recovered, p));
+
+		// a 48 bit safe prime has a 47 bit factor, which is left to rho
+		BigInteger q = BigInteger.valueOf(140737488355781L);
+		BigInteger safe = q.shiftLeft(1).add(BigInteger.ONE);
+		assertTrue(q.isProbablePrime(40) && safe.isProbablePrime(40));
+		x = new BigInteger(47, rand);
+		assertEquals(x.mod(q), ph.solve(new DHTuple(safe, BigInteger.valueOf(4), BigInteger.valueOf(4).modPow(x, safe))));
+
+		// a 2048 bit safe prime is not smooth
+		try {
+			BigInteger two = BigInteger.valueOf(2);
+			ph.solve(new DHTuple(CommutativeBlinding.P, two, two.modPow(x, CommutativeBlinding.P)));
+			fail("the 2048 bit group has a 2047 bit prime order");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void parameterReport() {
+		Random rand = new Random(262);
+
+		ParameterReport dh = ParameterReport.analyze(new DHTuple(DH_P, DH_G, DH_G.modPow(BigInteger.valueOf(1234), DH_P)));
+		assertTrue(dh.isWeak());
+		assertTrue(dh.largestFactorBits <= 5);
+		assertTrue(dh.workBits < 10);
+
+		// a big p doesn't help if p - 1 is smooth
+		BigInteger p = smoothPrime(2100, 16, rand);
+		ParameterReport smooth = ParameterReport.analyze(new DHTuple(p, BigInteger.valueOf(3), null));
+		assertTrue(smooth.isWeak());
+		assertTrue(smooth.largestFactorBits <= 16);
+
+		// g = 2 has prime order (p - 1) / 2 in the RFC 3526 group
+		ParameterReport safe = ParameterReport.analyze(new DHTuple(CommutativeBlinding.P, BigInteger.valueOf(2), null));
+		assertFalse(safe.toString(), safe.isWeak());
+		assertEquals(2047, safe.largestFactorBits);
+		assertEquals(0, safe.leakedBits);
+
+		// g = p - 1 has order 2
+		assertTrue(ParameterReport.analyze(new DHTuple(CommutativeBlinding.P, CommutativeBlinding.P.subtract(BigInteger.ONE), null)).isWeak());
+	}
+}
@@ -0,0 +1,267 @@
+package edu.harvard.cs262.tests;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import edu.harvard.cs262.crypto.BallotRecord;
+import edu.harvard.cs262.crypto.EVote;
+import edu.harvard.cs262.crypto.VPrint;
+import edu.harvard.cs262.crypto.client.EVoteClient;
+import edu.harvard.cs262.crypto.client.VoteSource;
+import edu.harvard.cs262.crypto.server.EVotePhase;
+import edu.harvard.cs262.crypto.server.EVoteServer;
+import edu.harvard.cs262.crypto.server.PhaseTelemetry;
+
+/**
+ * Simulation of evotes at scale, as a baseline for e-vote performance changes. Starts an
+ * EVoteServer and thousands of EVoteClients in one JVM, each client voting from code (voter i
+ * votes against if i is a multiple of 3), and calls the server directly rather than through
+ * RMI, so it runs on one box without a network. After a warm-up ballot it runs a number of
+ * ballots one after another, checks each result, and prints
+ *
+ * - throughput, in ballots per minute, and percentiles of how long a ballot took
+ * - for each phase, percentiles of how long the phase took to complete (from the server's
+ *   archive) and of how long single voters took to answer it (from its phase telemetry)
+ * - how fast the JVM allocated memory, and its garbage collections
+ * - how many threads were alive, at the peak and at the end
+ *
+ * usage: java edu.harvard.cs262.tests.EVoteSimulation [voters] [ballots] [threshold | paillier]
+ *
+ * The default is 1000 voters and 10 ballots, tallied with ElGamal and no threshold. Every
+ * voter keeps a log in logs/ and a few threads, so many more voters may need higher open
+ * file and process limits (ulimit -n and -u).
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class EVoteSimulation {
+	// how often the threads' allocations are sampled
+	private static final int SAMPLE_MILLIS = 100;
+	
+	private static final double[] PERCENTILES = { 50, 90, 99 };
+	
+	public static void main(String[] args) throws Exception {
+		int voters = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+		int ballots = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+		boolean paillier = args.length > 2 && args[2].equalsIgnoreCase("paillier");
+		int threshold = (args.length > 2 && !paillier) ? Integer.parseInt(args[2]) : 0;
+		
+		// the server prints every registration and ballot, so its output is dropped
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+		
+		EVoteServer server = new EVoteServer("simulation");
+		server.setPaillierTally(paillier);
+		
+		out.println(String.format("starting %d voters", voters));
+		long setup = System.nanoTime();
+		List<String> names = new ArrayList<String>();
+		int expectedYes = 0;
+		for (int i = 0; i < voters; i++) {
+			final int vote = (i % 3 == 0) ? 0 : 1;
+			expectedYes += vote;
+			
+			names.add(String.format("voter%05d", i));
+			EVoteClient client = new EVoteClient(names.get(i), server);
+			client.getLog().verbosity = VPrint.NONE;
+			client.setVoteSource(new VoteSource() {
+				@Override
+				public int getVote(EVote evote) {
+					return vote;
+				}
+			});
+			
+			if (!server.registerClient(client)) {
+				throw new IllegalStateException("could not register " + client.getName());
+			}
+		}
+		String expected = String.format("(%d,%d)", expectedYes, voters - expectedYes);
+		out.println(String.format("started in %.1f s", (System.nanoTime() - setup) / 1e9));
+		
+		// the first ballot warms up the JIT and the thread pools, and isn't counted
+		check(server.initiateEVote("warm-up", threshold), expected);
+		awaitIdle(server, names);
+		
+		AllocationSampler sampler = new AllocationSampler();
+		ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+		long gcCount = gcCount();
+		long gcMillis = gcMillis();
+		long from = System.currentTimeMillis();
+		long start = System.nanoTime();
+		sampler.start();
+		
+		double[] ballotMillis = new double[ballots];
+		for (int b = 0; b < ballots; b++) {
+			long ballotStart = System.nanoTime();
+			check(server.initiateEVote("ballot " + b, threshold), expected);
+			ballotMillis[b] = (System.nanoTime() - ballotStart) / 1e6;
+			
+			// a threshold ballot returns before its slowest voters are done with it
+			awaitIdle(server, names);
+		}
+		
+		double seconds = (System.nanoTime() - start) / 1e9;
+		sampler.stop();
+		gcCount = gcCount() - gcCount;
+		gcMillis = gcMillis() - gcMillis;
+		
+		out.println();
+		out.println(String.format("%d ballots of %d voters (%s), all %s, in %.1f s", ballots, voters,
+				paillier ? "Paillier" : (threshold > 0 ? "ElGamal, threshold " + threshold : "ElGamal"), expected, seconds));
+		out.println(String.format("throughput %.2f ballots/min", ballots * 60 / seconds));
+		out.println(String.format("ballot     %s", percentiles(ballotMillis)));
+		
+		// how long each phase took to complete, from the archive records of the timed ballots
+		Map<String, List<Long>> phaseMillis = new HashMap<String, List<Long>>();
+		for (BallotRecord r : server.findBallotRecords(from, Long.MAX_VALUE, ballots)) {
+			for (Map.Entry<String, Long> phase : r.phaseMillis.entrySet()) {
+				List<Long> millis = phaseMillis.get(phase.getKey());
+				if (millis == null) {
+					millis = new ArrayList<Long>();
+					phaseMillis.put(phase.getKey(), millis);
+				}
+				millis.add(phase.getValue());
+			}
+		}
+		
+		out.println();
+		out.println(String.format("%-20s %-36s %s", "phase", "completed in (ms)", "voter latency (ms, last samples)"));
+		PhaseTelemetry telemetry = server.getTelemetry();
+		for (EVotePhase phase : EVotePhase.values()) {
+			List<Long> millis = phaseMillis.get(phase.name());
+			if (millis == null) {
+				continue;
+			}
+			double[] times = new double[millis.size()];
+			for (int i = 0; i < times.length; i++) {
+				times[i] = millis.get(i);
+			}
+			
+			String latency = "-";
+			if (telemetry.getSampleCount(phase) > 0) {
+				latency = String.format("p50 %.1f  p90 %.1f  p99 %.1f", telemetry.getLatencyMillis(phase, 50),
+						telemetry.getLatencyMillis(phase, 90), telemetry.getLatencyMillis(phase, 99));
+			}
+			out.println(String.format("%-20s %-36s %s", phase, percentiles(times), latency));
+		}
+		
+		long allocated = sampler.getAllocatedBytes();
+		out.println();
+		out.println(String.format("allocated %.1f MB, %.1f MB/s, %.1f MB per ballot", allocated / 1e6,
+				allocated / 1e6 / seconds, allocated / 1e6 / Math.max(1, ballots)));
+		out.println(String.format("gc        %d collections, %d ms", gcCount, gcMillis));
+		out.println(String.format("threads   %d peak, %d at the end", ManagementFactory.getThreadMXBean().getPeakThreadCount(),
+				ManagementFactory.getThreadMXBean().getThreadCount()));
+		
+		// the server's heartbeat threads would keep the JVM alive
+		System.exit(0);
+	}
+	
+	private static void check(String result, String expected) {
+		if (!expected.equals(result)) {
+			throw new IllegalStateException(String.format("ballot returned \"%s\", expected %s", result, expected));
+		}
+	}
+	
+	private static void awaitIdle(EVoteServer server, List<String> voters) throws InterruptedException {
+		for (String voter : voters) {
+			while (server.isVoting(voter)) {
+				Thread.sleep(10);
+			}
+		}
+	}
+	
+	private static String percentiles(double[] times) {
+		double[] sorted = Arrays.copyOf(times, times.length);
+		Arrays.sort(sorted);
+		
+		StringBuilder sb = new StringBuilder();
+		for (double p : PERCENTILES) {
+			int i = (int) Math.ceil(p / 100 * sorted.length) - 1;
+			sb.append(String.format("p%.0f %.1f  ", p, sorted[Math.max(0, i)]));
+		}
+		return sb.toString().trim();
+	}
+	
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+	
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return millis;
+	}
+	
+	/**
+	 * Adds up the bytes allocated by every thread while it runs. Threads come and go during a
+	 * ballot (e.g. the server's per-voter calls), so each thread's count is sampled every
+	 * SAMPLE_MILLIS and the last sample of each thread is kept; a thread's allocations after its
+	 * last sample are missed.
+	 */
+	private static class AllocationSampler implements Runnable {
+		private final com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		
+		// thread id => bytes allocated when sampling started, and when last sampled
+		private final Map<Long, Long> first = new HashMap<Long, Long>();
+		private final Map<Long, Long> last = new HashMap<Long, Long>();
+		
+		private ScheduledExecutorService timer;
+		
+		public void start() {
+			sample(first);
+			timer = Executors.newSingleThreadScheduledExecutor();
+			timer.scheduleAtFixedRate(this, SAMPLE_MILLIS, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		
+		public void stop() throws InterruptedException {
+			timer.shutdown();
+			timer.awaitTermination(1, TimeUnit.SECONDS);
+			run();
+		}
+		
+		@Override
+		public synchronized void run() {
+			sample(last);
+		}
+		
+		private void sample(Map<Long, Long> into) {
+			long[] ids = threads.getAllThreadIds();
+			long[] bytes = threads.getThreadAllocatedBytes(ids);
+			for (int i = 0; i < ids.length; i++) {
+				if (bytes[i] >= 0) {
+					into.put(ids[i], bytes[i]);
+				}
+			}
+		}
+		
+		public synchronized long getAllocatedBytes() {
+			long total = 0;
+			for (Map.Entry<Long, Long> thread : last.entrySet()) {
+				Long before = first.get(thread.getKey());
+				total += thread.getValue() - ((before != null) ? before : 0);
+			}
+			return total;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package edu.harvard.cs262.tests;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.rmi.RemoteException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.harvard.cs262.crypto.CryptoMessage;
+import edu.harvard.cs262.crypto.client.ClientPair;
+import edu.harvard.cs262.crypto.client.DHCryptoClient;
+import edu.harvard.cs262.crypto.client.SimpleCryptoClient;
+import edu.harvard.cs262.crypto.cipher.CommutativeBlinding;
+import edu.harvard.cs262.crypto.cipher.FingerprintTable;
+import edu.harvard.cs262.crypto.server.CentralServer;
+import edu.harvard.cs262.crypto.server.CryptoServer;
+
+/**
+ * JUnit tests for private set intersection between clients.
+ * Here we test:
+ * (1) Blinding commutes, and blinded values and fingerprints survive being sent as text
+ * (2) Two clients' intersection spans several batches, and is exactly the common elements
+ * (3) Intersections with clients that have no set, or can't intersect, fail
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class IntersectionTests {
+
+	static CryptoServer server;
+	static DHCryptoClient c1, c2, c3;
+	static SimpleCryptoClient simple;
+
+	@BeforeClass
+	public static void setup() {
+		// dummy server
+		server = new CentralServer("server");
+
+		// dummy clients (c3 has no set)
+		c1 = new DHCryptoClient("c1", server);
+		c2 = new DHCryptoClient("c2", server);
+		c3 = new DHCryptoClient("c3", server);
+		simple = new SimpleCryptoClient("simple", server);
+
+		try {
+			server.registerClient(c1);
+			server.registerClient(c2);
+			server.registerClient(c3);
+			server.registerClient(simple);
+		} catch (RemoteException e) {
+			fail("client registration failed");
+		}
+	}
+
+	private static List<String> ids(int from, int to) {
+		List<String> ids = new ArrayList<String>();
+		for (int i = from; i < to; i++) {
+			ids.add(String.format("user-%06d@example.com", i));
+		}
+		return ids;
+	}
+
+	@Test
+	public void blinding() {
+		SecureRandom rand = new SecureRandom();
+		BigInteger a = CommutativeBlinding.newSecret(rand);
+		BigInteger b = CommutativeBlinding.newSecret(rand);
+		List<String> elements = Arrays.asList("alice", "bob", "carol");
+
+		// H(x)^(ab) = H(x)^(ba), and only for the same x
+		BigInteger[] blindedA = CommutativeBlinding.hashAndBlind(elements, 0, 3, a);
+		BigInteger[] blindedB = CommutativeBlinding.hashAndBlind(elements, 0, 3, b);
+		long[] ab = CommutativeBlinding.blindFingerprints(blindedA, b);
+		long[] ba = CommutativeBlinding.blindFingerprints(blindedB, a);
+		assertArrayEquals(ab, ba);
+		assertEquals(3, new HashSet<Long>(Arrays.asList(ab[0], ab[1], ab[2])).size());
+
+		assertArrayEquals(blindedA, CommutativeBlinding.valuesFromText(CommutativeBlinding.toText(blindedA)));
+		assertArrayEquals(ab, CommutativeBlinding.fingerprintsFromText(CommutativeBlinding.toText(ab)));
+		assertEquals(0, CommutativeBlinding.valuesFromText("").length);
+
+		FingerprintTable table = new FingerprintTable(ab, 2);
+		assertEquals(2, table.size());
+		assertTrue(table.contains(ab[0]));
+		assertTrue(table.contains(ab[1]));
+		assertFalse(table.contains(ab[2]));
+
+		// 1 would give away H(x)^b = 1 for every x
+		try {
+			CommutativeBlinding.blindFingerprints(new BigInteger[] { BigInteger.ONE }, b);
+			fail("1 is not a blinded value");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void intersection() throws Exception {
+		// 1500 elements against 1200, with 300 in common
+		c2.setIntersectionSet(ids(1200, 2400));
+		List<String> mine = ids(0, 1500);
+
+		Set<String> common = c1.intersect("c2", mine);
+		assertEquals(new HashSet<String>(ids(1200, 1500)), common);
+
+		// nothing in common, and nothing at all
+		assertTrue(c1.intersect("c2", ids(0, 10)).isEmpty());
+		assertTrue(c1.intersect("c2", new ArrayList<String>()).isEmpty());
+
+		// the batches aren't kept in the message history
+		for (CryptoMessage m : c1.getMessages().get(new ClientPair("c2", "c1"))) {
+			assertFalse(m.getTag().equals("intersection batch"));
+		}
+	}
+
+	@Test
+	public void failedIntersection() throws Exception {
+		// c3 has no set, and a simple client can't intersect
+		assertNull(c1.intersect("c3", ids(0, 10)));
+		assertNull(c1.intersect("simple", ids(0, 10)));
+		assertNull(c1.intersect("fake client name", ids(0, 10)));
+	}
+}
@@ -0,0 +1,102 @@
+package edu.harvard.cs262.tests;
+
+import static org.junit.Assert.*;
+
+import java.rmi.RemoteException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.harvard.cs262.crypto.client.EVoteClient;
+import edu.harvard.cs262.crypto.server.EVoteServer;
+
+/**
+ * JUnit tests for evotes tallied with Paillier instead of ElGamal.
+ * Here we test:
+ * (1) A Paillier evote under the voters' joint key returns the expected result, and every voter's
+ * bulletin board audit passes
+ * (2) Paillier evotes refuse a threshold, and the server goes back to ElGamal when told to
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class PaillierEVoteTests {
+	
+	static EVoteServer server;
+	static EVoteClient c1, c2, c3, c4;
+	
+	@BeforeClass
+	public static void setup() {
+		// dummy server
+		server = new EVoteServer("server");
+		server.setPaillierTally(true);
+		
+		// dummy clients
+		c1 = new EVoteClient("c1", server);
+		c2 = new EVoteClient("c2", server);
+		c3 = new EVoteClient("c3", server);
+		c4 = new EVoteClient("c4", server);
+		
+		try {
+			server.registerClient(c1);
+			server.registerClient(c2);
+			server.registerClient(c3);
+			server.registerClient(c4);
+		} catch (RemoteException e) {
+			fail("client registration failed");
+		}
+	}
+	
+	/** The server returns before the voters finish, so wait for their audits */
+	private static boolean awaitAudit(EVoteClient voter) throws InterruptedException {
+		for (int i = 0; i < 100 && voter.getLastAudit() == null; i++) {
+			Thread.sleep(100);
+		}
+		return Boolean.TRUE.equals(voter.getLastAudit());
+	}
+	
+	/** Voters finish up after the server has its result, so wait until none is still voting */
+	private static void awaitIdle() throws InterruptedException {
+		for (String voter : new String[] { "c1", "c2", "c3", "c4" }) {
+			for (int i = 0; i < 100 && server.isVoting(voter); i++) {
+				Thread.sleep(100);
+			}
+		}
+	}
+	
+	@Test
+	public void paillierTally() throws Exception {
+		awaitIdle();
+		c1.setTestVote(1);
+		c2.setTestVote(0);
+		c3.setTestVote(1);
+		c4.setTestVote(1);
+		
+		assertEquals("(3,1)", server.initiateEVote("paillier"));
+		for (EVoteClient voter : new EVoteClient[] { c1, c2, c3, c4 }) {
+			assertTrue(awaitAudit(voter));
+		}
+		
+		// the voters make a new key for each ballot
+		awaitIdle();
+		c2.setTestVote(1);
+		assertEquals("(4,0)", server.initiateEVote("paillier again"));
+	}
+	
+	@Test
+	public void paillierThreshold() throws Exception {
+		awaitIdle();
+		c1.setTestVote(0);
+		c2.setTestVote(0);
+		c3.setTestVote(1);
+		c4.setTestVote(0);
+		
+		assertEquals("", server.initiateEVote("paillier threshold", 2));
+		
+		server.setPaillierTally(false);
+		try {
+			assertEquals("(1,3)", server.initiateEVote("elgamal threshold", 2));
+		} finally {
+			server.setPaillierTally(true);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package edu.harvard.cs262.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.harvard.cs262.crypto.EVote;
+import edu.harvard.cs262.crypto.client.EVoteClient;
+import edu.harvard.cs262.crypto.client.FixedVoteSource;
+import edu.harvard.cs262.crypto.client.VoteSource;
+import edu.harvard.cs262.crypto.server.EVotePhase;
+import edu.harvard.cs262.crypto.server.EVoteServer;
+import edu.harvard.cs262.crypto.server.PhaseTelemetry;
+
+/**
+ * JUnit tests for per-phase deadlines and straggler telemetry.
+ * Here we test:
+ * (1) The server records each phase's latencies, and flags a voter that keeps holding up a
+ *     phase as a chronic straggler in that phase
+ * (2) A phase deadline aborts an evote, or drops the late voter from a threshold evote, without
+ *     waiting for the default timeout
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class PhaseDeadlineTests {
+
+	/** Takes its time deciding, then votes in favor */
+	private static class SlowVoteSource implements VoteSource {
+		private final long millis;
+
+		public SlowVoteSource(long millis) {
+			this.millis = millis;
+		}
+
+		@Override
+		public int getVote(EVote evote) throws InterruptedException {
+			Thread.sleep(millis);
+			return 1;
+		}
+	}
+
+	/** A server with voters v1 (in favor), v2 (against) and a slow v3 */
+	private static EVoteServer serverWithSlowVoter(String name, long slowMillis) throws Exception {
+		EVoteServer server = new EVoteServer(name);
+
+		EVoteClient v1 = new EVoteClient(name + "-v1", server);
+		EVoteClient v2 = new EVoteClient(name + "-v2", server);
+		EVoteClient v3 = new EVoteClient(name + "-v3", server);
+		v1.setVoteSource(new FixedVoteSource(true));
+		v2.setVoteSource(new FixedVoteSource(false));
+		v3.setVoteSource(new SlowVoteSource(slowMillis));
+
+		server.registerClient(v1);
+		server.registerClient(v2);
+		server.registerClient(v3);
+		return server;
+	}
+
+	@Test
+	public void stragglers() throws Exception {
+		EVoteServer server = serverWithSlowVoter("telemetry", 300);
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals("(2,1)", server.initiateEVote("ballot " + i, 0));
+		}
+
+		PhaseTelemetry telemetry = server.getTelemetry();
+		assertEquals(9, telemetry.getSampleCount(EVotePhase.CIPHERTEXT));
+		assertEquals(9, telemetry.getSampleCount(EVotePhase.DECRYPTION));
+		// v3 started deciding when the ballot arrived, a little before the phase opened
+		assertTrue(telemetry.getLatencyMillis(EVotePhase.CIPHERTEXT, 100) >= 200);
+		assertTrue(telemetry.getLatencyMillis(EVotePhase.CIPHERTEXT, 50) < 200);
+
+		Map<String, Set<EVotePhase>> stragglers = telemetry.getStragglers();
+		assertEquals(Collections.singletonMap("telemetry-v3", Collections.singleton(EVotePhase.CIPHERTEXT)), stragglers);
+		assertEquals(0, telemetry.getMisses("telemetry-v3"));
+	}
+
+	@Test
+	public void abortAtPhaseDeadline() throws Exception {
+		EVoteServer server = serverWithSlowVoter("deadline", 10000);
+		server.setPhaseTimeout(EVotePhase.CIPHERTEXT, 1);
+
+		long start = System.currentTimeMillis();
+		assertEquals("", server.initiateEVote("too slow", 0));
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertEquals(1, server.getTelemetry().getMisses("deadline-v3"));
+	}
+
+	@Test
+	public void dropAtPhaseDeadline() throws Exception {
+		EVoteServer server = serverWithSlowVoter("threshold", 10000);
+		server.setPhaseTimeout(EVotePhase.CIPHERTEXT, 1);
+
+		// v3 is dropped, and v1 and v2 can still decrypt
+		assertEquals("(1,1)", server.initiateEVote("without v3", 2));
+		assertEquals(1, server.getTelemetry().getMisses("threshold-v3"));
+	}
+}
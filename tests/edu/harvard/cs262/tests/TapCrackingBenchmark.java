@@ -0,0 +1,99 @@
+package edu.harvard.cs262.tests;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.harvard.cs262.crypto.VPrint;
+import edu.harvard.cs262.crypto.cipher.DiffieHellman;
+import edu.harvard.cs262.crypto.cipher.ElGamalCipher;
+import edu.harvard.cs262.crypto.client.DHCryptoClient;
+import edu.harvard.cs262.crypto.client.TapCrackingClient;
+import edu.harvard.cs262.crypto.server.CentralServer;
+
+/**
+ * Benchmark for an eavesdropper breaking DiffieHellman exchanges as it taps them. Starts a
+ * CentralServer, pairs of DHCryptoClients that all talk at once (each sender exchanges a new
+ * key every so many messages) and a TapCrackingClient listening to every sender, all in one
+ * JVM. Prints the time from tapping an exchange to its keys and from tapping a ciphertext to
+ * its plaintext, and how many messages per second the pairs sent and the tapper read.
+ *
+ * usage: java edu.harvard.cs262.tests.TapCrackingBenchmark [pairs] [messages] [rekey]
+ *
+ * The default is 50 pairs sending 200 messages each, with a new key every 50 messages.
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class TapCrackingBenchmark {
+	private static final long TIMEOUT = 600000;
+
+	public static void main(String[] args) throws Exception {
+		int pairs = (args.length > 0) ? Integer.parseInt(args[0]) : 50;
+		final int messages = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+		final int rekey = (args.length > 2) ? Integer.parseInt(args[2]) : 50;
+
+		// the clients print every message, so their output is dropped
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+
+		CentralServer server = new CentralServer("benchmark");
+		TapCrackingClient tapper = new TapCrackingClient("tapper", server);
+		tapper.getLog().verbosity = VPrint.NONE;
+		server.registerClient(tapper);
+
+		List<DHCryptoClient> senders = new ArrayList<DHCryptoClient>();
+		for (int i = 0; i < pairs; i++) {
+			DHCryptoClient sender = new DHCryptoClient(String.format("sender%03d", i), server);
+			DHCryptoClient receiver = new DHCryptoClient(String.format("receiver%03d", i), server);
+			sender.getLog().verbosity = VPrint.NONE;
+			receiver.getLog().verbosity = VPrint.NONE;
+			server.registerClient(sender);
+			server.registerClient(receiver);
+			tapper.eavesdrop(sender.getName());
+			senders.add(sender);
+		}
+
+		out.println(String.format("%d pairs sending %d messages each, a new key every %d", pairs, messages, rekey));
+		ExecutorService pool = Executors.newFixedThreadPool(pairs);
+		List<Future<Object>> done = new ArrayList<Future<Object>>();
+		long start = System.nanoTime();
+		for (final DHCryptoClient sender : senders) {
+			done.add(pool.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					String to = sender.getName().replace("sender", "receiver");
+					for (int i = 0; i < messages; i++) {
+						if (i > 0 && i % rekey == 0) {
+							sender.initSecureChannel(to, new DiffieHellman(), new ElGamalCipher());
+						}
+						sender.sendEncryptedMessage(to, String.format("message %d from %s", i, sender.getName()), "");
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<Object> f : done) {
+			f.get();
+		}
+		double sent = (System.nanoTime() - start) / 1e9;
+
+		boolean complete = tapper.waitForPlaintexts(pairs * messages, TIMEOUT);
+		double read = (System.nanoTime() - start) / 1e9;
+		pool.shutdown();
+
+		out.println(String.format("sent %d messages in %.2f s (%.0f/s), read %d in %.2f s (%.0f/s)%s", pairs * messages, sent,
+				pairs * messages / sent, tapper.getDecryptedCount(), read, tapper.getDecryptedCount() / read,
+				complete ? "" : " (timed out)"));
+		out.print(tapper.report());
+		tapper.shutdown();
+		System.exit(0);
+	}
+}
@@ -0,0 +1,200 @@
+package edu.harvard.cs262.tests;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.harvard.cs262.crypto.attack.PohligHellman;
+import edu.harvard.cs262.crypto.cipher.DHTuple;
+import edu.harvard.cs262.crypto.cipher.DiffieHellman;
+import edu.harvard.cs262.crypto.cipher.ElGamalCipher;
+import edu.harvard.cs262.crypto.client.ClientPair;
+import edu.harvard.cs262.crypto.client.DHCryptoClient;
+import edu.harvard.cs262.crypto.client.TapCrackingClient;
+import edu.harvard.cs262.crypto.server.CentralServer;
+import edu.harvard.cs262.crypto.server.CryptoServer;
+
+/**
+ * JUnit tests for the eavesdropper that breaks DiffieHellman exchanges as it taps them.
+ * Here we test:
+ * (1) Messages after a tapped exchange are read as they are sent
+ * (2) Messages sent while the keys are being cracked are read, in order, once they are
+ * (3) A new exchange between the same pair is broken too, and tapping both ends reads each message once
+ * (4) Messages whose exchange wasn't overheard are counted as unreadable
+ * (5) Many pairs exchanging and talking at once are all read
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class TapCrackingTests {
+
+	static final long TIMEOUT = 30000;
+
+	static CryptoServer server;
+	static PohligHellman ph;
+	static TapCrackingClient eve;
+
+	@BeforeClass
+	public static void setup() throws RemoteException {
+		// dummy server
+		server = new CentralServer("server");
+		ph = new PohligHellman(2, null);
+		eve = new TapCrackingClient("eve", server, ph, 2);
+		server.registerClient(eve);
+	}
+
+	@AfterClass
+	public static void teardown() {
+		eve.shutdown();
+		ph.shutdown();
+	}
+
+	static DHCryptoClient client(String name) throws RemoteException {
+		DHCryptoClient c = new DHCryptoClient(name, server);
+		server.registerClient(c);
+		return c;
+	}
+
+	/** Sends count messages from "from" to "to" and returns them */
+	static List<String> talk(DHCryptoClient from, String to, int count) throws Exception {
+		List<String> sent = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			String text = String.format("%s to %s #%d", from.getName(), to, i);
+			assertEquals(text, from.sendEncryptedMessage(to, text, ""));
+			sent.add(text);
+		}
+		return sent;
+	}
+
+	@Test
+	public void liveMessages() throws Exception {
+		DHCryptoClient alice = client("alice");
+		client("bob");
+		eve.eavesdrop("alice");
+
+		int before = eve.getDecryptedCount();
+		List<String> sent = talk(alice, "bob", 10);
+		assertTrue(eve.waitForPlaintexts(before + 10, TIMEOUT));
+		assertEquals(sent, eve.getPlaintexts().get(new ClientPair("alice", "bob")));
+		assertTrue(eve.getLatencyMillis(50) > 0);
+		assertTrue(eve.getKeyLatencyMillis(100) > 0);
+	}
+
+	@Test
+	public void backlog() throws Exception {
+		// a solver that waits to be let go, so the messages pile up first
+		final CountDownLatch go = new CountDownLatch(1);
+		PohligHellman slow = new PohligHellman(1, null) {
+			public BigInteger solve(DHTuple tuple) throws InterruptedException {
+				go.await();
+				return super.solve(tuple);
+			}
+		};
+		TapCrackingClient mallory = new TapCrackingClient("mallory", server, slow, 1);
+		server.registerClient(mallory);
+
+		DHCryptoClient carol = client("carol");
+		DHCryptoClient dave = client("dave");
+		mallory.eavesdrop("dave");
+
+		List<String> sent = talk(carol, "dave", 5);
+		List<String> replies = talk(dave, "carol", 3);
+		assertEquals(0, mallory.getDecryptedCount());
+
+		go.countDown();
+		assertTrue(mallory.waitForPlaintexts(8, TIMEOUT));
+		assertEquals(sent, mallory.getPlaintexts().get(new ClientPair("carol", "dave")));
+		assertEquals(replies, mallory.getPlaintexts().get(new ClientPair("dave", "carol")));
+		assertEquals(1, mallory.getKeysRecovered());
+		assertEquals(0, mallory.getUnreadableCount());
+
+		mallory.shutdown();
+		slow.shutdown();
+	}
+
+	@Test
+	public void rekeyAndBothEnds() throws Exception {
+		DHCryptoClient frank = client("frank");
+		DHCryptoClient grace = client("grace");
+		eve.eavesdrop("frank");
+		eve.eavesdrop("grace");
+
+		int before = eve.getDecryptedCount();
+		int keys = eve.getKeysRecovered();
+		List<String> sent = talk(frank, "grace", 3);
+		List<String> replies = talk(grace, "frank", 2);
+
+		assertTrue(frank.initSecureChannel("grace", new DiffieHellman(), new ElGamalCipher()));
+		sent.addAll(talk(frank, "grace", 3));
+		replies.addAll(talk(grace, "frank", 2));
+
+		assertTrue(eve.waitForPlaintexts(before + 10, TIMEOUT));
+		assertEquals(sent, eve.getPlaintexts().get(new ClientPair("frank", "grace")));
+		assertEquals(replies, eve.getPlaintexts().get(new ClientPair("grace", "frank")));
+		assertEquals(keys + 2, eve.getKeysRecovered());
+	}
+
+	@Test
+	public void unreadable() throws Exception {
+		DHCryptoClient heidi = client("heidi");
+		client("ivan");
+
+		// the exchange happens before eve listens in
+		assertTrue(heidi.initSecureChannel("ivan", new DiffieHellman(), new ElGamalCipher()));
+		eve.eavesdrop("heidi");
+
+		int before = eve.getUnreadableCount();
+		talk(heidi, "ivan", 2);
+		for (long waited = 0; eve.getUnreadableCount() < before + 2 && waited < TIMEOUT; waited += 10) {
+			Thread.sleep(10);
+		}
+		assertEquals(before + 2, eve.getUnreadableCount());
+		assertNull(eve.getPlaintexts().get(new ClientPair("heidi", "ivan")));
+	}
+
+	@Test
+	public void heavyTraffic() throws Exception {
+		final int pairs = 6;
+		final int messages = 20;
+		int before = eve.getDecryptedCount();
+
+		ExecutorService pool = Executors.newFixedThreadPool(pairs);
+		List<Future<List<String>>> sent = new ArrayList<Future<List<String>>>();
+		for (int i = 0; i < pairs; i++) {
+			final DHCryptoClient from = client("sender" + i);
+			client("receiver" + i);
+			eve.eavesdrop(from.getName());
+			sent.add(pool.submit(new Callable<List<String>>() {
+				public List<String> call() throws Exception {
+					String to = from.getName().replace("sender", "receiver");
+					List<String> texts = talk(from, to, messages / 2);
+					assertTrue(from.initSecureChannel(to, new DiffieHellman(), new ElGamalCipher()));
+					texts.addAll(talk(from, to, messages / 2));
+					return texts;
+				}
+			}));
+		}
+
+		for (Future<List<String>> texts : sent) {
+			texts.get();
+		}
+		assertTrue(eve.waitForPlaintexts(before + pairs * messages, TIMEOUT));
+		for (int i = 0; i < pairs; i++) {
+			List<String> texts = sent.get(i).get();
+			assertEquals(texts, eve.getPlaintexts().get(new ClientPair("sender" + i, "receiver" + i)));
+		}
+		pool.shutdown();
+		assertTrue(eve.getLatencyMillis(99) >= eve.getLatencyMillis(50));
+	}
+}
@@ -0,0 +1,179 @@
+package edu.harvard.cs262.tests;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.harvard.cs262.crypto.EVote;
+import edu.harvard.cs262.crypto.cipher.FeldmanVSS;
+import edu.harvard.cs262.crypto.client.EVoteClient;
+import edu.harvard.cs262.crypto.exception.ClientNotFound;
+import edu.harvard.cs262.crypto.server.EVoteServer;
+
+/**
+ * JUnit tests for threshold evoting.
+ * Here we test:
+ * (1) Feldman secret sharing (share verification and recovery from any t shares)
+ * (2) Threshold evotes return the expected result of the vote
+ * (3) Threshold evotes carry on without a nonresponsive voter
+ * (4) With a quorum, evotes with or without a threshold finish without a nonresponsive voter,
+ *     evotes abort once fewer voters than the quorum remain, and a quorum below the threshold
+ *     or above the number of voters is refused
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class ThresholdEVoteTests {
+
+	static EVoteServer server;
+	static EVoteClient c1, c2, c3, c4;
+
+	@BeforeClass
+	public static void setup() {
+		// dummy server
+		server = new EVoteServer("server");
+
+		// dummy clients
+		c1 = new EVoteClient("c1", server);
+		c2 = new EVoteClient("c2", server);
+		c3 = new EVoteClient("c3", server);
+		c4 = new EVoteClient("c4", server);
+
+		try {
+			server.registerClient(c1);
+			server.registerClient(c2);
+			server.registerClient(c3);
+			server.registerClient(c4);
+		} catch (RemoteException e) {
+			fail("client registration failed");
+		}
+	}
+
+	/** Waits until no client is still taking part in a ballot */
+	private static void awaitIdle() throws InterruptedException {
+		for (String client : new String[] { "c1", "c2", "c3", "c4" }) {
+			for (int i = 0; i < 100 && server.isVoting(client); i++) {
+				Thread.sleep(100);
+			}
+		}
+	}
+
+	@Test
+	public void feldmanShares() {
+		EVote evote = new EVote("params only", new HashSet<String>());
+		BigInteger secret = BigInteger.valueOf(123456789L);
+
+		BigInteger[] poly = FeldmanVSS.randomPolynomial(secret, 3, evote.q, new Random(262));
+		BigInteger[] commitments = FeldmanVSS.commit(poly, evote.g, evote.p);
+
+		BigInteger[] shares = new BigInteger[6];
+		for (int j = 1; j <= 5; j++) {
+			shares[j] = FeldmanVSS.evaluate(poly, j, evote.q);
+			assertTrue(FeldmanVSS.verifyShare(shares[j], j, commitments, evote.g, evote.p, evote.q));
+		}
+
+		// a tampered share must not verify
+		assertFalse(FeldmanVSS.verifyShare(shares[1].add(BigInteger.ONE), 1, commitments, evote.g, evote.p, evote.q));
+
+		// any 3 of the 5 shares recover the secret
+		List<Integer> subset = Arrays.asList(2, 4, 5);
+		BigInteger recovered = BigInteger.ZERO;
+		for (int j : subset) {
+			BigInteger lambda = FeldmanVSS.lagrangeAtZero(j, subset, evote.q);
+			recovered = recovered.add(shares[j].multiply(lambda)).mod(evote.q);
+		}
+		assertEquals(secret, recovered);
+	}
+
+	@Test
+	public void thresholdEvote() throws RemoteException, ClientNotFound, InterruptedException {
+		c1.setTestVote(1);
+		c2.setTestVote(0);
+		c3.setTestVote(1);
+		c4.setTestVote(1);
+
+		String result = server.initiateEVote("threshold ballot", 3);
+		assertEquals("(3,1)", result);
+
+		// wait for any stragglers so the next ballot can start
+		awaitIdle();
+
+		c1.setTestVote(0);
+		c2.setTestVote(0);
+		c3.setTestVote(1);
+		c4.setTestVote(0);
+
+		String result2 = server.initiateEVote("second threshold ballot", 2);
+		assertEquals("(1,3)", result2);
+	}
+	
+	@Test
+	public void dropoutEvote() throws RemoteException, ClientNotFound, InterruptedException {
+		// separate server so the nonresponsive voter doesn't hold up the other tests
+		EVoteServer dropoutServer = new EVoteServer("dropout server");
+		EVoteClient d1 = new EVoteClient("d1", dropoutServer);
+		EVoteClient d2 = new EVoteClient("d2", dropoutServer);
+		EVoteClient d3 = new EVoteClient("d3", dropoutServer);
+		EVoteClient d4 = new EVoteClient("d4", dropoutServer);
+		
+		dropoutServer.registerClient(d1);
+		dropoutServer.registerClient(d2);
+		dropoutServer.registerClient(d3);
+		dropoutServer.registerClient(d4);
+		
+		d1.setTestVote(1);
+		d2.setTestVote(0);
+		d3.setTestVote(1);
+		d4.setTestVote(2); // nonresponsive
+		
+		EVoteServer.setTimeout(1);
+		try {
+			// d4 is dropped and the 3 remaining voters still meet the threshold
+			String result = dropoutServer.initiateEVote("dropout ballot", 3);
+			assertEquals("(2,1)", result);
+		} finally {
+			EVoteServer.setTimeout(120);
+		}
+	}
+	
+	/** A new server with a new client for each vote (2 for a nonresponsive voter) */
+	private static EVoteServer votersWith(String name, int... votes) throws RemoteException {
+		EVoteServer quorumServer = new EVoteServer(name);
+		for (int i = 0; i < votes.length; i++) {
+			EVoteClient client = new EVoteClient(name + "-q" + (i + 1), quorumServer);
+			client.setTestVote(votes[i]);
+			quorumServer.registerClient(client);
+		}
+		return quorumServer;
+	}
+	
+	@Test
+	public void quorumEvote() throws RemoteException, ClientNotFound, InterruptedException {
+		EVoteServer.setTimeout(1);
+		try {
+			// no threshold: the nonresponsive voter never sends its key, so it is left out of the election key
+			assertEquals("(2,1)", votersWith("no threshold", 1, 0, 1, 2).initiateEVote("quorum ballot", 0, 3));
+			
+			// a quorum above the threshold
+			assertEquals("(1,2)", votersWith("threshold", 0, 1, 0, 2).initiateEVote("quorum ballot", 2, 3));
+			
+			// the threshold alone would carry on with 2 voters, but the quorum needs 3
+			assertEquals("", votersWith("too few", 1, 1, 2, 2).initiateEVote("quorum ballot", 2, 3));
+		} finally {
+			EVoteServer.setTimeout(120);
+		}
+		
+		// quorums that can't be met or are too small to decrypt
+		EVoteServer invalid = votersWith("invalid", 1, 0, 1);
+		assertEquals("", invalid.initiateEVote("quorum ballot", 0, 4));
+		assertEquals("", invalid.initiateEVote("quorum ballot", 3, 2));
+		assertEquals("", invalid.initiateEVote("quorum ballot", 0, -1));
+	}
+}
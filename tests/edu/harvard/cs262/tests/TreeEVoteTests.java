@@ -0,0 +1,92 @@
+package edu.harvard.cs262.tests;
+
+import static org.junit.Assert.*;
+
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.harvard.cs262.crypto.client.EVoteClient;
+import edu.harvard.cs262.crypto.exception.ClientNotFound;
+import edu.harvard.cs262.crypto.server.EVoteServer;
+
+/**
+ * JUnit tests for evoting across a tree of servers.
+ * Here we test:
+ * (1) The root server sees the voters of its sub-servers
+ * (2) An evote run by the root counts the votes of every voter in the tree
+ * (3) Threshold evotes are refused when there are sub-servers
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class TreeEVoteTests {
+
+	static EVoteServer root, leaf1, leaf2;
+	static EVoteClient c1, c2, c3, c4, c5;
+
+	@BeforeClass
+	public static void setup() {
+		// dummy servers: root with one voter of its own and two leaves with two voters each
+		root = new EVoteServer("root");
+		leaf1 = new EVoteServer("leaf1");
+		leaf2 = new EVoteServer("leaf2");
+
+		// dummy clients
+		c1 = new EVoteClient("c1", root);
+		c2 = new EVoteClient("c2", leaf1);
+		c3 = new EVoteClient("c3", leaf1);
+		c4 = new EVoteClient("c4", leaf2);
+		c5 = new EVoteClient("c5", leaf2);
+
+		try {
+			assertTrue(leaf1.joinParent(root));
+			assertTrue(leaf2.joinParent(root));
+
+			root.registerClient(c1);
+			leaf1.registerClient(c2);
+			leaf1.registerClient(c3);
+			leaf2.registerClient(c4);
+			leaf2.registerClient(c5);
+		} catch (RemoteException e) {
+			fail("client registration failed");
+		}
+	}
+
+	@Test
+	public void electorate() throws RemoteException {
+		assertEquals(new HashSet<String>(Arrays.asList("c1", "c2", "c3", "c4", "c5")), root.getElectorate());
+		assertEquals(new HashSet<String>(Arrays.asList("c2", "c3")), leaf1.getElectorate());
+	}
+
+	@Test
+	public void treeEvote() throws RemoteException, ClientNotFound, InterruptedException {
+		c1.setTestVote(1);
+		c2.setTestVote(0);
+		c3.setTestVote(1);
+		c4.setTestVote(1);
+		c5.setTestVote(0);
+
+		String result = root.initiateEVote("tree ballot");
+		assertEquals("(3,2)", result);
+
+		// voters check their own server's bulletin board
+		assertEquals(Boolean.TRUE, c1.getLastAudit());
+		assertEquals(Boolean.TRUE, c2.getLastAudit());
+		assertEquals(Boolean.TRUE, c5.getLastAudit());
+
+		c1.setTestVote(0);
+		c2.setTestVote(0);
+		c3.setTestVote(0);
+		c4.setTestVote(1);
+		c5.setTestVote(0);
+
+		String result2 = root.initiateEVote("second tree ballot");
+		assertEquals("(1,4)", result2);
+
+		// threshold mode needs every voter's key share, so it isn't supported across servers
+		assertEquals("", root.initiateEVote("threshold tree ballot", 3));
+	}
+}
@@ -0,0 +1,98 @@
+package edu.harvard.cs262.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.harvard.cs262.crypto.EVote;
+import edu.harvard.cs262.crypto.client.EVoteClient;
+import edu.harvard.cs262.crypto.client.FixedVoteSource;
+import edu.harvard.cs262.crypto.client.ScriptedVoteSource;
+import edu.harvard.cs262.crypto.client.VoteSource;
+import edu.harvard.cs262.crypto.server.EVoteServer;
+
+/**
+ * JUnit tests for where evote clients get their votes.
+ * Here we test:
+ * (1) Vote scripts give their votes in order, or by proposal, and reject lines that aren't votes
+ * (2) Evotes with fixed, scripted and callback vote sources return the expected result
+ * (3) An evote fails instead of hanging when a voter's script has no vote for it
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class VoteSourceTests {
+
+	static EVoteServer server;
+	static EVoteClient c1, c2, c3;
+
+	@BeforeClass
+	public static void setup() throws IOException {
+		// dummy server
+		server = new EVoteServer("server");
+
+		// dummy clients, none of which reads the console
+		c1 = new EVoteClient("c1", server);
+		c2 = new EVoteClient("c2", server);
+		c3 = new EVoteClient("c3", server);
+
+		c1.setVoteSource(new FixedVoteSource(true));
+		c2.setVoteSource(new ScriptedVoteSource(Arrays.asList("# c2's votes", "n", "", "budget = y")));
+		c3.setVoteSource(new VoteSource() {
+			@Override
+			public int getVote(EVote evote) {
+				return evote.ballot.startsWith("budget") ? 0 : 1;
+			}
+		});
+
+		try {
+			server.registerClient(c1);
+			server.registerClient(c2);
+			server.registerClient(c3);
+		} catch (RemoteException e) {
+			fail("client registration failed");
+		}
+	}
+
+	@Test
+	public void scripts() throws IOException {
+		ScriptedVoteSource script = new ScriptedVoteSource(Arrays.asList("y", "n", "a = b = n", "lunch=y"));
+		EVote lunch = new EVote("lunch", new HashSet<String>());
+		EVote other = new EVote("other", new HashSet<String>());
+
+		assertEquals(1, script.getVote(lunch));
+		assertEquals(1, script.getVote(other));
+		assertEquals(0, script.getVote(other));
+		assertEquals(0, script.getVote(new EVote("a = b", new HashSet<String>())));
+		assertEquals(1, script.getVote(lunch));
+
+		try {
+			script.getVote(other);
+			fail("script has no votes left");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		try {
+			new ScriptedVoteSource(Arrays.asList("y", "maybe"));
+			fail("'maybe' is not a vote");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void sources() throws Exception {
+		// c2 votes on the budget by proposal, and its in-order vote goes to the other ballot
+		assertEquals("(2,1)", server.initiateEVote("budget", 0));
+		assertEquals("(2,1)", server.initiateEVote("new members", 0));
+
+		// c2's script is used up
+		assertEquals("", server.initiateEVote("anything else", 0));
+	}
+}
@@ -0,0 +1,165 @@
+package edu.harvard.cs262.tests;
+
+import static org.junit.Assert.*;
+
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.harvard.cs262.crypto.EVote;
+import edu.harvard.cs262.crypto.client.DHCryptoClient;
+import edu.harvard.cs262.crypto.client.EVoteClient;
+import edu.harvard.cs262.crypto.client.VoteSource;
+import edu.harvard.cs262.crypto.server.EVoteServer;
+
+/**
+ * JUnit tests for evotes with only some of the registered clients.
+ * Here we test:
+ * (1) Clients that don't support evoting are left out of ballots instead of stalling them
+ * (2) Evotes with a subset of the voters return the expected result of the vote
+ * (3) Evotes naming an unknown client, or one that can't evote, are refused
+ * (4) Evotes with a named voter group use its registered members
+ * (5) Of two ballots started at once with a voter in common, one runs and the other is refused
+ *
+ * @author Holly Anderson, Joshua Lee, and Tracy Lu
+ */
+public class VoterGroupTests {
+
+	static EVoteServer server;
+	static EVoteClient c1, c2, c3, c4;
+	static DHCryptoClient dh;
+
+	@BeforeClass
+	public static void setup() {
+		// dummy server
+		server = new EVoteServer("server");
+
+		// dummy clients; dh can message the others but can't evote
+		c1 = new EVoteClient("c1", server);
+		c2 = new EVoteClient("c2", server);
+		c3 = new EVoteClient("c3", server);
+		c4 = new EVoteClient("c4", server);
+		dh = new DHCryptoClient("dh", server);
+
+		c1.setTestVote(1);
+		c2.setTestVote(0);
+		c3.setTestVote(1);
+		c4.setTestVote(1);
+
+		try {
+			server.registerClient(c1);
+			server.registerClient(c2);
+			server.registerClient(c3);
+			server.registerClient(c4);
+			server.registerClient(dh);
+		} catch (RemoteException e) {
+			fail("client registration failed");
+		}
+	}
+
+	private static Set<String> names(String... names) {
+		return new HashSet<String>(Arrays.asList(names));
+	}
+
+	/** A threshold evote doesn't wait for its slowest voters, so wait for them before the next one */
+	private static void awaitIdle() throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			if (!server.isVoting("c1") && !server.isVoting("c2") && !server.isVoting("c3") && !server.isVoting("c4")) {
+				return;
+			}
+			Thread.sleep(100);
+		}
+		fail("voters still busy");
+	}
+
+	@Test
+	public void everyEVoteClient() throws Exception {
+		awaitIdle();
+		assertEquals(names("c1", "c2", "c3", "c4"), server.getElectorate());
+		assertEquals("(3,1)", server.initiateEVote("everyone", 0));
+	}
+
+	@Test
+	public void subset() throws Exception {
+		awaitIdle();
+		assertEquals("(1,1)", server.initiateEVote("committee", names("c1", "c2"), 0));
+		awaitIdle();
+		assertEquals("(2,1)", server.initiateEVote("threshold committee", names("c2", "c3", "c4"), 2));
+	}
+
+	@Test
+	public void ineligibleVoters() throws Exception {
+		assertEquals("", server.initiateEVote("with dh", names("c1", "dh"), 0));
+		assertEquals("", server.initiateEVote("with stranger", names("c1", "stranger"), 0));
+		assertEquals("", server.initiateGroupEVote("no such group", "nobody", 0));
+	}
+
+	@Test
+	public void group() throws Exception {
+		awaitIdle();
+		// members that can't evote or aren't registered are left out
+		server.defineVoterGroup("board", names("c1", "c3", "dh", "stranger"));
+		assertEquals("(2,0)", server.initiateGroupEVote("board meeting", "board", 0));
+
+		server.defineVoterGroup("board", new HashSet<String>());
+		assertEquals("", server.initiateGroupEVote("board dissolved", "board", 0));
+	}
+
+	@Test
+	public void overlappingBallots() throws Exception {
+		// separate server so the Paillier tally doesn't affect the other tests
+		final EVoteServer overlapServer = new EVoteServer("overlap server");
+		overlapServer.setPaillierTally(true);
+		EVoteClient[] voters = new EVoteClient[3];
+		for (int i = 0; i < voters.length; i++) {
+			voters[i] = new EVoteClient("o" + (i + 1), overlapServer);
+			voters[i].setTestVote(1);
+			overlapServer.registerClient(voters[i]);
+		}
+
+		// o2 is in both ballots, and holds up the one it gets until the other has been refused
+		final CountDownLatch refused = new CountDownLatch(1);
+		voters[1].setVoteSource(new VoteSource() {
+			public int getVote(EVote evote) throws InterruptedException {
+				refused.await(30, TimeUnit.SECONDS);
+				return 1;
+			}
+		});
+
+		// both ballots ask for their voters at once, so the second may ask while the first is generating its key
+		final CyclicBarrier go = new CyclicBarrier(2);
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		CompletionService<String> ballots = new ExecutorCompletionService<String>(pool);
+		for (final Set<String> voterNames : Arrays.asList(names("o1", "o2"), names("o2", "o3"))) {
+			ballots.submit(new Callable<String>() {
+				public String call() throws Exception {
+					go.await();
+					return overlapServer.initiateEVote("overlapping", voterNames, 0);
+				}
+			});
+		}
+
+		Future<String> first = ballots.poll(30, TimeUnit.SECONDS);
+		assertNotNull(first);
+		assertEquals("", first.get());
+		refused.countDown();
+
+		Future<String> second = ballots.poll(30, TimeUnit.SECONDS);
+		assertNotNull(second);
+		assertEquals("(2,0)", second.get());
+		pool.shutdown();
+	}
+}
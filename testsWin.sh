@@ -2,4 +2,17 @@
 (java -cp "bin/;lib/*" org.junit.runner.JUnitCore edu.harvard.cs262.tests.ClientServerTests)
 (java -cp "bin/;lib/*" org.junit.runner.JUnitCore edu.harvard.cs262.tests.CryptoCipherTests)
 (java -cp "bin/;lib/*" org.junit.runner.JUnitCore edu.harvard.cs262.tests.EVoteTests)
+(java -cp "bin/;lib/*" org.junit.runner.JUnitCore edu.harvard.cs262.tests.ThresholdEVoteTests)
+(java -cp "bin/;lib/*" org.junit.runner.JUnitCore edu.harvard.cs262.tests.BulletinBoardTests)
+(java -cp "bin/;lib/*" org.junit.runner.JUnitCore edu.harvard.cs262.tests.TreeEVoteTests)
+(java -cp "bin/;lib/*" org.junit.runner.JUnitCore edu.harvard.cs262.tests.BallotLogTests)
+(java -cp "bin/;lib/*" org.junit.runner.JUnitCore edu.harvard.cs262.tests.VoterGroupTests)
+(java -cp "bin/;lib/*" org.junit.runner.JUnitCore edu.harvard.cs262.tests.VoteSourceTests)
+(java -cp "bin/;lib/*" org.junit.runner.JUnitCore edu.harvard.cs262.tests.PhaseDeadlineTests)
+(java -cp "bin/;lib/*" org.junit.runner.JUnitCore edu.harvard.cs262.tests.PaillierEVoteTests)
+(java -cp "bin/;lib/*" org.junit.runner.JUnitCore edu.harvard.cs262.tests.BallotArchiveTests)
+(java -cp "bin/;lib/*" org.junit.runner.JUnitCore edu.harvard.cs262.tests.AggregateTests)
+(java -cp "bin/;lib/*" org.junit.runner.JUnitCore edu.harvard.cs262.tests.IntersectionTests)
+(java -cp "bin/;lib/*" org.junit.runner.JUnitCore edu.harvard.cs262.tests.DiscreteLogTests)
+(java -cp "bin/;lib/*" org.junit.runner.JUnitCore edu.harvard.cs262.tests.TapCrackingTests)
 (java -cp bin edu.harvard.cs262.tests.ConsoleTest)
\ No newline at end of file